@@ -0,0 +1,136 @@
+package bench;
+
+import java.util.regex.Pattern;
+
+import modello.Articolo;
+import modello.exception.ArticoloException;
+
+/**
+ * Misura il costo della costruzione in blocco di {@link Articolo}, come durante un'importazione o un caricamento
+ * <p>Confronta tre modi di validare il nome, ognuno seguito dalla costruzione dell'articolo:
+ * <ul>
+ *   <li> il costruttore attuale, che scorre i caratteri del nome senza creare oggetti </li>
+ *   <li> {@code String.matches} con {@link Articolo#NOME_REGEX}, che compila l'espressione a ogni chiamata,
+ *        come faceva il costruttore in precedenza </li>
+ *   <li> un {@link Pattern} compilato una sola volta, per riferimento </li>
+ * </ul>
+ * <p>Uso: {@code java -cp <classi> bench.BenchmarkArticoli [articoli] [ripetizioni]}
+ *
+ * @author Angie Albitres
+ */
+public final class BenchmarkArticoli {
+
+	/**
+	 * L'espressione del nome compilata una sola volta
+	 */
+	private static final Pattern NOME = Pattern.compile(Articolo.NOME_REGEX);
+
+	/**
+	 * Somma dei risultati delle costruzioni, perché il compilatore non le elimini
+	 */
+	private static volatile long scarto;
+
+	private BenchmarkArticoli() {
+	}
+
+	/**
+	 * Esegue la misura
+	 *
+	 * @param args Numero di articoli per ripetizione (predefinito 500000) e numero di ripetizioni (predefinito 10)
+	 *
+	 * @throws ArticoloException Se un nome di prova non è valido
+	 */
+	public static void main(String[] args) throws ArticoloException {
+		int quanti = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+		int ripetizioni = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		String[] nomi = new String[quanti];
+		for (int i = 0; i < quanti; i++)
+			nomi[i] = (i % 3 == 0 ? "Caffè macinato " : "articolo ") + i;
+
+		// riscaldamento del JIT, non misurato
+		for (int r = 0; r < 3; r++) {
+			costruisci(nomi);
+			costruisciConMatches(nomi);
+			costruisciConPattern(nomi);
+		}
+
+		long scanner = Long.MAX_VALUE, matches = Long.MAX_VALUE, pattern = Long.MAX_VALUE;
+		for (int r = 0; r < ripetizioni; r++) {
+			scanner = Math.min(scanner, costruisci(nomi));
+			matches = Math.min(matches, costruisciConMatches(nomi));
+			pattern = Math.min(pattern, costruisciConPattern(nomi));
+		}
+
+		System.out.printf("%,d articoli, miglior tempo su %d ripetizioni%n", quanti, ripetizioni);
+		System.out.printf("controllo carattere per carattere: %,8.1f ms (%,6.1f ns per articolo)%n",
+				scanner / 1e6, (double) scanner / quanti);
+		System.out.printf("String.matches:                    %,8.1f ms (%,6.1f ns per articolo)%n",
+				matches / 1e6, (double) matches / quanti);
+		System.out.printf("Pattern precompilato:              %,8.1f ms (%,6.1f ns per articolo)%n",
+				pattern / 1e6, (double) pattern / quanti);
+	}
+
+	/**
+	 * Costruisce gli articoli con il costruttore attuale
+	 *
+	 * @param nomi I nomi degli articoli
+	 *
+	 * @return Il tempo impiegato in nanosecondi
+	 *
+	 * @throws ArticoloException Se un nome non è valido
+	 */
+	private static long costruisci(String[] nomi) throws ArticoloException {
+		long somma = 0;
+		long inizio = System.nanoTime();
+		for (String nome : nomi)
+			somma += new Articolo(nome, "Dispensa", 1).getNome().length();
+		long tempo = System.nanoTime() - inizio;
+		scarto += somma;
+		return tempo;
+	}
+
+	/**
+	 * Valida i nomi con {@code String.matches} e costruisce gli articoli
+	 *
+	 * @param nomi I nomi degli articoli
+	 *
+	 * @return Il tempo impiegato in nanosecondi
+	 *
+	 * @throws ArticoloException Se un nome non è valido
+	 */
+	private static long costruisciConMatches(String[] nomi) throws ArticoloException {
+		long somma = 0;
+		long inizio = System.nanoTime();
+		for (String nome : nomi) {
+			if (!nome.matches(Articolo.NOME_REGEX))
+				throw new ArticoloException("Il formato del nome non è valido");
+			somma += new Articolo(nome, "Dispensa", 1).getNome().length();
+		}
+		long tempo = System.nanoTime() - inizio;
+		scarto += somma;
+		return tempo;
+	}
+
+	/**
+	 * Valida i nomi con l'espressione precompilata e costruisce gli articoli
+	 *
+	 * @param nomi I nomi degli articoli
+	 *
+	 * @return Il tempo impiegato in nanosecondi
+	 *
+	 * @throws ArticoloException Se un nome non è valido
+	 */
+	private static long costruisciConPattern(String[] nomi) throws ArticoloException {
+		long somma = 0;
+		long inizio = System.nanoTime();
+		for (String nome : nomi) {
+			if (!NOME.matcher(nome).matches())
+				throw new ArticoloException("Il formato del nome non è valido");
+			somma += new Articolo(nome, "Dispensa", 1).getNome().length();
+		}
+		long tempo = System.nanoTime() - inizio;
+		scarto += somma;
+		return tempo;
+	}
+}
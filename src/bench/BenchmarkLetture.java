@@ -0,0 +1,197 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import modello.Articolo;
+import modello.ListaDiArticoli;
+import modello.SistemaListe;
+
+/**
+ * Misura il throughput delle letture concorrenti su un {@link SistemaListe} con 1, 4 e 16 thread lettori
+ * <p>Ogni lettore esegue in ciclo le interrogazioni del catalogo: ricerca di una lista, controllo di una categoria,
+ * ricerca di un articolo nel registro, ricerca per prefisso nel registro e in una lista. Con l'argomento
+ * {@code scrittore} un thread in più modifica di continuo i prezzi degli articoli, per verificare che le letture
+ * non restino in attesa delle scritture
+ * <p>Uso: {@code java -cp <classi> bench.BenchmarkLetture [secondi] [scrittore]}; il risultato ha senso solo se la
+ * macchina ha almeno tanti core quanti i lettori
+ *
+ * @author Angie Albitres
+ */
+public final class BenchmarkLetture {
+
+	/**
+	 * Numeri di thread lettori misurati
+	 */
+	private static final int[] THREAD = { 1, 4, 16 };
+
+	/**
+	 * Dimensioni del catalogo di prova
+	 */
+	private static final int ARTICOLI = 100_000, CATEGORIE = 50, LISTE = 200, ARTICOLI_PER_LISTA = 500;
+
+	/**
+	 * Somma dei risultati delle letture, perché il compilatore non le elimini
+	 */
+	private static volatile long scarto;
+
+	private BenchmarkLetture() {
+	}
+
+	/**
+	 * Esegue la misura
+	 *
+	 * @param args Durata in secondi di ogni misura (predefinita 3) e, facoltativo, {@code scrittore}
+	 *
+	 * @throws Exception In caso di errori nella costruzione del catalogo
+	 */
+	public static void main(String[] args) throws Exception {
+		long durata = (args.length > 0 ? Long.parseLong(args[0]) : 3) * 1_000_000_000L;
+		boolean scrittore = args.length > 1 && args[1].equals("scrittore");
+
+		SistemaListe sistema = new SistemaListe();
+		List<Articolo> articoli = popola(sistema);
+		System.out.println("Core disponibili: " + Runtime.getRuntime().availableProcessors()
+				+ ", scrittore " + (scrittore ? "attivo" : "assente"));
+
+		// riscaldamento del JIT, non misurato
+		for (int n : THREAD)
+			misura(sistema, articoli, n, durata, scrittore);
+
+		double base = 0;
+		for (int n : THREAD) {
+			double operazioni = misura(sistema, articoli, n, durata, scrittore);
+			if (base == 0)
+				base = operazioni;
+			System.out.printf("%2d thread: %,14.0f letture/s  (%,12.0f per thread, x%.2f rispetto a 1 thread)%n",
+					n, operazioni, operazioni / n, operazioni / base);
+		}
+	}
+
+	/**
+	 * Riempie il sistema con il catalogo di prova
+	 *
+	 * @param sistema Il sistema da riempire
+	 *
+	 * @return Gli articoli inseriti nel registro
+	 *
+	 * @throws Exception In caso di dati non validi
+	 */
+	private static List<Articolo> popola(SistemaListe sistema) throws Exception {
+		for (int c = 0; c < CATEGORIE; c++)
+			sistema.inserisciCategoria("categoria " + c);
+
+		List<Articolo> articoli = new ArrayList<Articolo>(ARTICOLI);
+		for (int i = 0; i < ARTICOLI; i++) {
+			Articolo a = new Articolo("articolo " + i, "categoria " + (i % CATEGORIE), 1 + i % 100);
+			sistema.inserisciArticolo(a);
+			articoli.add(a);
+		}
+
+		for (int l = 0; l < LISTE; l++) {
+			ListaDiArticoli lista = new ListaDiArticoli("lista " + l);
+			for (int i = 0; i < ARTICOLI_PER_LISTA; i++)
+				lista.inserisciArticolo(articoli.get((l * ARTICOLI_PER_LISTA + i) % ARTICOLI));
+			sistema.inserisciLista(lista);
+		}
+		return articoli;
+	}
+
+	/**
+	 * Esegue i lettori per la durata indicata
+	 *
+	 * @param sistema Il sistema da interrogare
+	 * @param articoli Gli articoli del registro
+	 * @param lettori Il numero di thread lettori
+	 * @param durata La durata della misura in nanosecondi
+	 * @param scrittore Se avviare anche il thread che modifica i prezzi
+	 *
+	 * @return Le letture completate al secondo da tutti i lettori
+	 *
+	 * @throws InterruptedException Se l'attesa dei thread viene interrotta
+	 */
+	private static double misura(SistemaListe sistema, List<Articolo> articoli, int lettori, long durata,
+			boolean scrittore) throws InterruptedException {
+		CountDownLatch partenza = new CountDownLatch(1);
+		AtomicBoolean fine = new AtomicBoolean();
+		long[] conteggi = new long[lettori];
+		Thread[] thread = new Thread[lettori];
+
+		for (int t = 0; t < lettori; t++) {
+			int indice = t;
+			thread[t] = new Thread(() -> {
+				ThreadLocalRandom caso = ThreadLocalRandom.current();
+				long operazioni = 0, somma = 0;
+				try {
+					partenza.await();
+					while (!fine.get()) {
+						somma += leggi(sistema, caso);
+						operazioni += 5;
+					}
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+				conteggi[indice] = operazioni;
+				scarto += somma;
+			});
+			thread[t].start();
+		}
+
+		Thread modifiche = null;
+		if (scrittore) {
+			modifiche = new Thread(() -> {
+				ThreadLocalRandom caso = ThreadLocalRandom.current();
+				try {
+					partenza.await();
+					while (!fine.get())
+						articoli.get(caso.nextInt(ARTICOLI)).setPrezzoCentesimi(100 + caso.nextInt(10_000));
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			modifiche.start();
+		}
+
+		long inizio = System.nanoTime();
+		partenza.countDown();
+		Thread.sleep(durata / 1_000_000);
+		fine.set(true);
+		for (Thread t : thread)
+			t.join();
+		long trascorso = System.nanoTime() - inizio;
+		if (modifiche != null)
+			modifiche.join();
+
+		long totale = 0;
+		for (long c : conteggi)
+			totale += c;
+		return totale * 1e9 / trascorso;
+	}
+
+	/**
+	 * Esegue una serie di cinque letture casuali sul catalogo
+	 *
+	 * @param sistema Il sistema da interrogare
+	 * @param caso Il generatore del thread
+	 *
+	 * @return Un valore che dipende dai risultati
+	 *
+	 * @throws Exception Se una lista cercata non esiste
+	 */
+	private static long leggi(SistemaListe sistema, ThreadLocalRandom caso) throws Exception {
+		// nomi di cinque cifre, perché la ricerca per prefisso restituisca al più un articolo
+		int i = 10_000 + caso.nextInt(ARTICOLI - 10_000);
+		ListaDiArticoli lista = sistema.matchLista("lista " + caso.nextInt(LISTE));
+		long somma = lista.numEl();
+		if (sistema.esisteCategoria("categoria " + caso.nextInt(CATEGORIE)))
+			somma++;
+		if (sistema.trovaArticoloGlobale("articolo " + i, "categoria " + (i % CATEGORIE)) != null)
+			somma++;
+		somma += sistema.ricercaArticoloGlobale("articolo " + i).size();
+		somma += lista.ricercaArticolo("articolo " + caso.nextInt(10)).size();
+		return somma;
+	}
+}
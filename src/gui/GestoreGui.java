@@ -3,6 +3,7 @@ package gui;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JTabbedPane;
+import javax.swing.SwingUtilities;
 
 import gui.grafica.controllo.ControlloGestore;
 import gui.grafica.vista.PannelloArticoliGlobali;
@@ -32,7 +33,8 @@ public class GestoreGui extends JFrame {
 	 * Il costruttore esegue le seguenti operazioni:
 	 * <ol>
 	 *   <li>Imposta il titolo e le dimensioni della finestra.</li>
-	 *   <li>Configura un {@code WindowListener} per intercettare la chiusura e verificare la presenza di modifiche non salvate.</li>
+	 *   <li>Configura un {@code WindowListener} per intercettare la chiusura e verificare la presenza di modifiche non salvate,
+	 *   se il giornale delle modifiche non è attivo.</li>
 	 *   <li>Inizializza il {@link ControlloGestore} (Controller) e i pannelli (Vista), stabilendo il legame tra di essi.</li>
 	 *   <li>Organizza i pannelli all'interno di un componente a schede.</li>
 	 * </ol>
@@ -45,7 +47,9 @@ public class GestoreGui extends JFrame {
 		addWindowListener(new java.awt.event.WindowAdapter() {
 	        @Override
 	        public void windowClosing(java.awt.event.WindowEvent e) {
-	            if (GestioneListe.getModificato()) {
+	            // con il giornale attivo le modifiche sono già su disco e verranno ripristinate al prossimo avvio:
+	            // rinunciare al salvataggio non scarterebbe nulla, per cui non viene chiesto
+	            if (GestioneListe.getModificato() && !GestioneListe.isGiornaleAttivo()) {
 	                int risposta = JOptionPane.showConfirmDialog(null, 
 	                    "Ci sono modifiche non salvate. Vuoi salvare prima di uscire?", 
 	                    "Salvataggio richiesto", JOptionPane.YES_NO_CANCEL_OPTION);
@@ -95,7 +99,10 @@ public class GestoreGui extends JFrame {
 	/**
 	 * Punto di ingresso principale (Entry Point) dell'intera applicazione.
 	 * <p>
-	 * Il metodo tenta di ripristinare lo stato del sistema caricando i dati dal file {@code dati_sistema.txt}.
+	 * Il metodo tenta di ripristinare lo stato del sistema caricando i dati dal file {@code dati_sistema.txt}
+	 * e applicando le modifiche successive registrate nel giornale {@code dati_sistema.journal},
+	 * poi avvia il salvataggio automatico del sistema. Gli articoli di ciascuna lista vengono letti
+	 * solo alla prima apertura della lista.
 	 * In caso di successo, i dati saranno disponibili nelle classi di modello; in caso di assenza del file,
 	 * l'applicazione viene avviata con un database vuoto.
 	 * 
@@ -105,13 +112,22 @@ public class GestoreGui extends JFrame {
 		String nomeFile = "dati_sistema.txt";
 
         try {
-            // tenta il ripristino automatico
-            GestioneListe.caricaSistema(nomeFile);
-            System.out.println("Dati caricati correttamente da " + nomeFile);
+            // tenta il ripristino automatico, gli articoli di ogni lista vengono letti alla sua prima apertura
+            if (GestioneListe.apriGiornale(nomeFile, "dati_sistema.journal", true))
+            	System.out.println("Dati caricati correttamente da " + nomeFile);
+            else
+            	// se il file non esiste
+            	System.out.println("Nessun salvataggio trovato. Avvio con sistema vuoto.");
             
-        } catch (java.io.FileNotFoundException e) {
-            // se il file non esiste
-            System.out.println("Nessun salvataggio trovato. Avvio con sistema vuoto.");
+            if (GestioneListe.getRecordIgnorati() > 0)
+            	JOptionPane.showMessageDialog(null, 
+            		GestioneListe.getRecordIgnorati() + " modifiche registrate nel giornale non sono state ripristinate.", 
+            		"Giornale delle modifiche", 
+            		JOptionPane.WARNING_MESSAGE);
+            
+            // salvataggio automatico in background, le ultime modifiche vengono catturate sull'EDT
+            GestioneListe.avviaAutosalvataggio(nomeFile, GestioneListe.INTERVALLO_AUTOSALVATAGGIO_MS,
+            		GestioneListe.MAX_MODIFICHE_AUTOSALVATAGGIO, SwingUtilities::invokeLater);
             
         } catch (Exception e) {
             // altri errori
@@ -3,9 +3,11 @@ package gui.grafica.controllo;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
+import java.util.List;
 
 import javax.swing.JButton;
 import javax.swing.JOptionPane;
+import javax.swing.JTextField;
 
 import gui.ListaGui;
 import gui.grafica.vista.DialogoArticolo;
@@ -25,8 +27,8 @@ import modello.exception.GestioneListeException;
  * dall'interfaccia grafica relativi a:
  * <ul>
  *   <li>Gestione delle liste (creazione, eliminazione, apertura)</li>
- *   <li>Anagrafica delle categorie (aggiunta, rimozione)</li>
- *   <li>Registro globale degli articoli (inserimento, cancellazione)</li>
+ *   <li>Anagrafica delle categorie (aggiunta, rimozione, rinomina)</li>
+ *   <li>Registro globale degli articoli (inserimento, cancellazione, ricerca)</li>
  * </ul>
  * * @author Angie Albitres
  */
@@ -76,15 +78,25 @@ public class ControlloGestore implements ActionListener {
 	 */
 	@Override
 	public void actionPerformed(ActionEvent e) {
-		String comando = ((JButton) e.getSource()).getText();
+		String comando = "";
+		
+		if (e.getSource() instanceof JButton) {
+			comando = ((JButton) e.getSource()).getText();
+		} else if (e.getSource() instanceof JTextField) {
+			// pressione di INVIO nel campo di ricerca del catalogo
+			comando = "Cerca Articolo";
+		}
 
         switch (comando) {
             case "Aggiungi Categoria" -> gestisciAggiungiCategoria();
             case "Elimina Categoria" -> gestisciEliminaCategoria();
+            case "Rinomina Categoria" -> gestisciRinominaCategoria();
             
             case "Aggiungi Articolo" -> gestisciAggiungiArticoloGlobale();
             case "Elimina Articolo" -> gestisciEliminaArticoloGlobale();
             case "Modifica Articolo" -> gestisciModificaArticoloGlobale();
+            case "Cerca Articolo" -> { if (vistaArticoli != null) vistaArticoli.mostraRisultatiRicerca(); }
+            case "Mostra Tutti" -> { if (vistaArticoli != null) vistaArticoli.aggiornaDati(); }
             
             case "Nuova Lista" -> gestisciNuovaLista();
 			case "Elimina Lista" -> gestisciEliminaLista();
@@ -96,7 +108,7 @@ public class ControlloGestore implements ActionListener {
         
         // setta a true il valore modifica del GestoreListe
         switch(comando) {
-        	case "Aggiungi Categoria", "Elimina Categoria", 
+        	case "Aggiungi Categoria", "Elimina Categoria", "Rinomina Categoria", 
         		 "Aggiungi Articolo", "Elimina Articolo", "Modifica Articolo",
         		 "Nuova Lista", "Elimina Lista" -> GestioneListe.setModificato(true);
         }
@@ -200,6 +212,28 @@ public class ControlloGestore implements ActionListener {
 		}
     }
     
+    /**
+     * Gestisce la rinomina della categoria selezionata.
+     * Gli articoli della categoria passano al nuovo nome, quindi vengono aggiornate anche le viste degli articoli.
+     */
+    private void gestisciRinominaCategoria() {
+    	String selezionata = vistaCategorie.getCategoriaSelezionata();
+        if (selezionata == null) {
+            JOptionPane.showMessageDialog(null, "Seleziona una categoria da rinominare", "Nessuna selezione", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        
+        String nuovoNome = JOptionPane.showInputDialog(null, "Nuovo nome per la categoria " + selezionata + ":", selezionata);
+        if (nuovoNome != null && !nuovoNome.isBlank()) {
+        	try {
+        		GestioneListe.rinominaCategoria(selezionata, nuovoNome);
+        		aggiornaTutto();
+        	} catch (GestioneListeException ex) {
+        		JOptionPane.showMessageDialog(null, ex.getMessage(), "Errore", JOptionPane.ERROR_MESSAGE);
+        	}
+        }
+    }
+    
     // ARTICOLI
     /**
      * Gestisce l'inserimento di un nuovo articolo nel registro globale del sistema.
@@ -239,8 +273,16 @@ public class ControlloGestore implements ActionListener {
             return;
         }
 
-        int confirm = JOptionPane.showConfirmDialog(null, 
-            "Eliminare '" + sel.getNome() + "' dal registro globale?\nAttenzione: l'articolo verrà rimosso da tutte le liste esistenti (anche dal cestino)", 
+        StringBuilder messaggio = new StringBuilder("Eliminare '" + sel.getNome() + "' dal registro globale?");
+        List<ListaDiArticoli> coinvolte = GestioneListe.listeConArticolo(sel);
+        if (!coinvolte.isEmpty()) {
+        	messaggio.append("\nAttenzione: l'articolo verrà rimosso anche dalle liste (cestino compreso):");
+        	for (ListaDiArticoli l : coinvolte) {
+        		messaggio.append("\n - ").append(l.getNome());
+        	}
+        }
+
+        int confirm = JOptionPane.showConfirmDialog(null, messaggio.toString(), 
             "Conferma eliminazione", JOptionPane.YES_NO_OPTION);
             
         if (confirm == JOptionPane.YES_OPTION) {
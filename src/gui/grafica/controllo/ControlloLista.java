@@ -125,8 +125,8 @@ public class ControlloLista implements ActionListener {
 	 * Apre un dialogo per la creazione di un nuovo {@link Articolo}.
 	 * L'articolo viene inserito sia nella lista corrente che nel registro globale.
 	 * <p>
-	 * Gestisce internamente l'eventuale duplicazione nel catalogo globale 
-	 * senza interrompere il flusso dell'utente.
+	 * Se il catalogo globale contiene già un articolo con lo stesso nome e la stessa categoria,
+	 * nella lista viene inserito quello registrato, così che resti condiviso con le altre liste.
 	 */
 	private void gestisciAggiungi() {
 	    String[] inputs = new DialogoArticolo().getInputs("Aggiungi Articolo");
@@ -135,14 +135,13 @@ public class ControlloLista implements ActionListener {
 	        try {
 	            Articolo nuovo = new Articolo(inputs[0], inputs[1], 
 	                                          Double.parseDouble(inputs[2]), inputs[3]);
+	            Articolo registrato = GestioneListe.trovaArticoloGlobale(nuovo.getNome(), nuovo.getCategoria());
 
-	            // aggiunta dell'articolo nella lista locale
-	            model.inserisciArticolo(nuovo);
-	            try {
+	            // le liste del sistema accettano solo articoli registrati, per cui il nuovo articolo va prima nel registro
+	            if (registrato == null) {
 	                GestioneListe.inserisciArticolo(nuovo);
-	            } catch (Exception e) {
-	                // se l'articolo esiste già globalmente, il sistema ignora l'errore 
 	            }
+	            model.inserisciArticolo(registrato != null ? registrato : nuovo);
 
 	            // aggiorna la vista corrente
 	            contenutoLista.updateView(); 
@@ -104,10 +104,8 @@ public class ContentListaPanel extends JPanel {
      */
 	public void updateView() {
         tableModel.setRowCount(0);
-        List<Articolo> cancellati = model.getArticoliCancellati();
-        
         for (Articolo a : model) {
-            if (!cancellati.contains(a)) {
+            if (!model.isCancellato(a)) {
                 aggiungiRiga(a);
             }
         }
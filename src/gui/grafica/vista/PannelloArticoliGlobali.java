@@ -1,13 +1,16 @@
 package gui.grafica.vista;
 
 import java.awt.BorderLayout;
+import java.awt.FlowLayout;
 import java.util.List;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
+import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
 import javax.swing.table.DefaultTableModel;
 
@@ -29,7 +32,9 @@ import modello.GestioneListe;
  * </ul>
  * 
  * <p>Fornisce i comandi per aggiungere nuovi articoli al registro globale,
- * eliminare articoli esistenti o modificarne i dati.
+ * eliminare articoli esistenti o modificarne i dati, e un campo per cercare
+ * gli articoli per testo libero (senza distinzione di maiuscole e accenti,
+ * tollerando piccoli errori di battitura).
  * 
  * <p>Gli articoli presenti in questo registro sono condivisi
  * tra tutte le liste del sistema. La modifica di un articolo qui si riflette
@@ -45,6 +50,15 @@ public class PannelloArticoliGlobali extends JPanel{
     /** Modello dei dati che gestisce il contenuto e la struttura della tabella. */
     private DefaultTableModel tableModel;
 
+    /** Campo di testo per la ricerca nel catalogo. */
+    private JTextField campoRicerca;
+
+    /** Pulsante per tornare alla visualizzazione completa dopo una ricerca. */
+    private JButton btnReset;
+
+    /** Numero massimo di risultati mostrati da una ricerca. */
+    private static final int MAX_RISULTATI = 50;
+
     /**
      * Costruisce il pannello degli articoli globali inizializzando la tabella
      * e i comandi disponibili.
@@ -92,6 +106,21 @@ public class PannelloArticoliGlobali extends JPanel{
         bottoni.add(btnModifica);
         
         add(bottoni, BorderLayout.NORTH);
+        
+        // Ricerca nel catalogo
+        JPanel pnlRicerca = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        pnlRicerca.add(new JLabel("Cerca: "));
+        
+        campoRicerca = new JTextField(15);
+        campoRicerca.addActionListener(controllo);
+        pnlRicerca.add(campoRicerca);
+        
+        btnReset = new JButton("Mostra Tutti");
+        btnReset.setVisible(false); // nascosto all'avvio
+        btnReset.addActionListener(controllo);
+        pnlRicerca.add(btnReset);
+        
+        add(pnlRicerca, BorderLayout.SOUTH);
 
         aggiornaDati();
     }
@@ -105,11 +134,40 @@ public class PannelloArticoliGlobali extends JPanel{
      * con due decimali e nota descrittiva.
      */
     public void aggiornaDati() {
-        tableModel.setRowCount(0);
+        campoRicerca.setText("");
+        btnReset.setVisible(false);
         
-        List<Articolo> articoliGlobali = GestioneListe.getArticoli();
+        riempiTabella(GestioneListe.getArticoli());
+    }
+
+    /**
+     * Mostra nella tabella solo gli articoli del catalogo che corrispondono al testo cercato,
+     * in ordine di pertinenza, vedi {@link GestioneListe#ricercaApprossimata(String, int)}.
+     * <p>
+     * Se il testo è vuoto viene ripristinata la visualizzazione completa.
+     */
+    public void mostraRisultatiRicerca() {
+        String testo = campoRicerca.getText();
+        if (testo == null || testo.isBlank()) {
+            aggiornaDati();
+            return;
+        }
         
-        for (Articolo a : articoliGlobali) {
+        riempiTabella(GestioneListe.ricercaApprossimata(testo, MAX_RISULTATI));
+        btnReset.setVisible(true);
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Ripopola la tabella con gli articoli indicati, mostrando il prezzo formattato con due decimali.
+     * 
+     * @param elenco Gli articoli da visualizzare
+     */
+    private void riempiTabella(List<Articolo> elenco) {
+        tableModel.setRowCount(0);
+        
+        for (Articolo a : elenco) {
             Object[] riga = {
                 a.getNome(),
                 a.getCategoria(),
@@ -124,8 +182,8 @@ public class PannelloArticoliGlobali extends JPanel{
      * Identifica e restituisce l'articolo corrispondente alla riga attualmente
      * selezionata nella tabella.
      * <p>
-     * La ricerca viene effettuata nel registro globale confrontando nome e categoria
-     * (case-insensitive) dell'articolo visualizzato con quelli presenti in {@link GestioneListe}.
+     * La ricerca viene effettuata tramite l'indice del registro globale per nome e categoria
+     * (case-insensitive) dell'articolo visualizzato, vedi {@link GestioneListe#trovaArticoloGlobale(String, String)}.
      * 
      * @return L'oggetto {@code Articolo} selezionato dal registro globale,
      * oppure {@code null} se non c'è alcuna selezione o se l'articolo
@@ -139,11 +197,6 @@ public class PannelloArticoliGlobali extends JPanel{
         String nome = (String) tableModel.getValueAt(riga, 0);
         String categoria = (String) tableModel.getValueAt(riga, 1);
 
-        for (Articolo a : GestioneListe.getArticoli()) {
-            if (a.getNome().equalsIgnoreCase(nome) && a.getCategoria().equalsIgnoreCase(categoria)) {
-                return a;
-            }
-        }
-        return null;
+        return GestioneListe.trovaArticoloGlobale(nome, categoria);
     }
 }
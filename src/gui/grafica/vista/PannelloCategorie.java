@@ -27,8 +27,8 @@ import modello.ListaDiArticoli;
  *   <li>Il numero totale di articoli di quella categoria presenti nei cestini di tutte le liste</li>
  * </ul>
  * 
- * <p>Fornisce inoltre i comandi per aggiungere nuove categorie o eliminare quelle esistenti,
- * con il vincolo che la categoria predefinita non può essere rimossa.
+ * <p>Fornisce inoltre i comandi per aggiungere nuove categorie, eliminare o rinominare quelle esistenti,
+ * con il vincolo che la categoria predefinita non può essere rimossa né rinominata.
  * 
  * @author Angie Albitres
  */
@@ -46,7 +46,7 @@ public class PannelloCategorie extends JPanel {
 
     /**
      * Costruisce il pannello delle categorie inizializzando la tabella e i comandi disponibili.
-     * Configura il layout, crea i pulsanti per l'aggiunta e l'eliminazione di categorie,
+     * Configura il layout, crea i pulsanti per l'aggiunta, l'eliminazione e la rinomina di categorie,
      * e collega il controller per la gestione degli eventi.
      * 
      * @param controllo Il controller {@link ControlloGestore} che gestisce la logica delle operazioni
@@ -75,13 +75,16 @@ public class PannelloCategorie extends JPanel {
         JPanel bottoni = new JPanel();
         JButton btnAggiungi = new JButton("Aggiungi Categoria");
         JButton btnElimina = new JButton("Elimina Categoria");
+        JButton btnRinomina = new JButton("Rinomina Categoria");
 
         // Assegnazione del controller ai bottoni
         btnAggiungi.addActionListener(controllo);
         btnElimina.addActionListener(controllo);
+        btnRinomina.addActionListener(controllo);
 
         bottoni.add(btnAggiungi);
         bottoni.add(btnElimina);
+        bottoni.add(btnRinomina);
         add(bottoni, BorderLayout.NORTH);
 
         aggiornaDati();
@@ -92,8 +95,8 @@ public class PannelloCategorie extends JPanel {
      * <p>
      * Per ogni categoria registrata in {@link GestioneListe}, il metodo:
      * <ul>
+     *   <li>Conta gli articoli del registro appartenenti alla categoria tramite l'indice per categoria</li>
      *   <li>Scansiona tutte le liste esistenti nel sistema</li>
-     *   <li>Conta gli articoli attivi appartenenti alla categoria</li>
      *   <li>Conta gli articoli di quella categoria presenti nei cestini</li>
      *   <li>Aggiorna la riga corrispondente nella tabella con i conteggi ottenuti</li>
      * </ul>
@@ -105,14 +108,7 @@ public class PannelloCategorie extends JPanel {
         tableModel.setRowCount(0);
         
         for (String cat : GestioneListe.getCategorie()) {
-            int contaGlobali = 0;
-            
-            
-            for (Articolo a : GestioneListe.getArticoli()) {
-                if (a.getCategoria().equalsIgnoreCase(cat)) {
-                    contaGlobali++;
-                }
-            }
+            int contaGlobali = GestioneListe.articoliInCategoria(cat).size();
             
             int contaCestino = 0;
             for (ListaDiArticoli lista : GestioneListe.getListeArticoli()) {
@@ -135,7 +135,7 @@ public class InterfacciaRigaDiComando {
      */
     private void menuCategorie() throws GestioneListeException {
         System.out.println("\n--- GESTIONE CATEGORIE ---");
-        System.out.println("1 - Aggiungi Categoria\n2 - Elimina Categoria\n3 - Visualizza Categorie\n0 - Annulla");
+        System.out.println("1 - Aggiungi Categoria\n2 - Elimina Categoria\n3 - Visualizza Categorie\n4 - Rinomina Categoria\n5 - Articoli di una Categoria\n0 - Annulla");
         try {
             int scelta = Input.readInt("Scelta: ");
             switch (scelta) {
@@ -152,6 +152,19 @@ public class InterfacciaRigaDiComando {
                     System.out.println("Categoria rimossa.");
                 }
                 case 3 -> GestioneListe.getCategorie().forEach(System.out::println);
+                case 4 -> {
+                    String cat = Input.readString("Nome categoria da rinominare: ");
+                    String nuovo = Input.readString("Nuovo nome: ");
+                    GestioneListe.rinominaCategoria(cat, nuovo);
+                    GestioneListe.setModificato(true);
+                    System.out.println("Categoria rinominata.");
+                }
+                case 5 -> {
+                    String cat = Input.readString("Nome categoria: ");
+                    List<Articolo> membri = GestioneListe.articoliInCategoria(cat);
+                    if (membri.isEmpty()) System.out.println("Nessun articolo nella categoria.");
+                    else membri.forEach(a -> System.out.println("- " + a.getNome() + " € " + String.format("%.2f", a.getPrezzo())));
+                }
             }
         } catch (NumberFormatException e) {
             System.out.println("Errore: Inserisci un numero valido.");
@@ -166,7 +179,7 @@ public class InterfacciaRigaDiComando {
      */
     private void menuRegistroArticoli() throws ArticoloException, GestioneListeException {
         System.out.println("\n--- REGISTRO GLOBALE ARTICOLI ---");
-        System.out.println("1 - Aggiungi Articolo\n2 - Elimina Articolo\n3 - Modifica Articolo\n4 - Visualizza Catalogo\n0 - Annulla");
+        System.out.println("1 - Aggiungi Articolo\n2 - Elimina Articolo\n3 - Modifica Articolo\n4 - Visualizza Catalogo\n5 - Cerca nel Catalogo (prefisso)\n6 - Cerca nel Catalogo (testo libero)\n0 - Annulla");
         try {
             int scelta = Input.readInt("Scelta: ");
             switch (scelta) {
@@ -183,12 +196,30 @@ public class InterfacciaRigaDiComando {
                     String nome = Input.readString("Nome articolo da rimuovere globalmente: ");
                     Articolo trovato = trovaArticoloInCatalogo(nome);
                     if(trovato != null) {
+                        List<ListaDiArticoli> coinvolte = GestioneListe.listeConArticolo(trovato);
+                        if (!coinvolte.isEmpty()) {
+                            System.out.print("L'articolo verrà rimosso anche dalle liste:");
+                            coinvolte.forEach(l -> System.out.print(" '" + l.getNome() + "'"));
+                            System.out.println();
+                        }
                         GestioneListe.cancellaArticolo(trovato);
                         GestioneListe.setModificato(true);
                     } else System.out.println("Articolo non trovato.");
                 }
                 case 3 -> gestisciModificaGlobale();
                 case 4 -> visualizzaCatalogo();
+                case 5 -> {
+                    String pref = Input.readString("Inserisci prefisso di ricerca: ");
+                    List<Articolo> ris = GestioneListe.ricercaArticoloGlobale(pref);
+                    if(ris.isEmpty()) System.out.println("Nessun articolo corrispondente.");
+                    else ris.forEach(a -> System.out.println("Trovato: " + a.getNome() + " [" + a.getCategoria() + "]"));
+                }
+                case 6 -> {
+                    String testo = Input.readString("Testo da cercare: ");
+                    List<Articolo> ris = GestioneListe.ricercaApprossimata(testo, 10);
+                    if(ris.isEmpty()) System.out.println("Nessun articolo corrispondente.");
+                    else ris.forEach(a -> System.out.println("Trovato: " + a.getNome() + " [" + a.getCategoria() + "]"));
+                }
             }
         } catch (NumberFormatException e) {
             System.out.println("Errore: Inserisci un numero o prezzo valido.");
@@ -266,8 +297,15 @@ public class InterfacciaRigaDiComando {
             double pr = Input.readDouble("Prezzo: ");
             String nota = Input.readString("Nota: ");
             Articolo a = new Articolo(nome, cat, pr, nota);
-            lista.inserisciArticolo(a);
-            try { GestioneListe.inserisciArticolo(a); } catch (GestioneListeException e) { /* Ignora se già in catalogo */ }
+            Articolo registrato = GestioneListe.trovaArticoloGlobale(a.getNome(), a.getCategoria());
+            if (registrato != null) {
+                // se già in catalogo si usa l'articolo condiviso
+                lista.inserisciArticolo(registrato);
+            } else {
+                // le liste del sistema accettano solo articoli registrati
+                GestioneListe.inserisciArticolo(a);
+                lista.inserisciArticolo(a);
+            }
         } else {
             visualizzaCatalogo();
             String nome = Input.readString("Nome dell'articolo dal catalogo: ");
@@ -286,7 +324,7 @@ public class InterfacciaRigaDiComando {
     private void visualizzaContenutoLista(ListaDiArticoli lista) {
         System.out.println("\nArticoli attivi in '" + lista.getNome() + "':");
         for(Articolo a : lista) {
-            if(!lista.getArticoliCancellati().contains(a)) {
+            if(!lista.isCancellato(a)) {
                 System.out.println("- " + a.getNome() + " (" + a.getCategoria() + ") € " + String.format("%.2f", a.getPrezzo()));
             }
         }
@@ -314,7 +352,7 @@ public class InterfacciaRigaDiComando {
         visualizzaContenutoLista(lista);
         String nome = Input.readString("Nome articolo da spostare nel cestino: ");
         for(Articolo a : lista) {
-            if(a.getNome().equalsIgnoreCase(nome) && !lista.getArticoliCancellati().contains(a)) {
+            if(a.getNome().equalsIgnoreCase(nome) && !lista.isCancellato(a)) {
                 lista.cancellaArticolo(a);
                 GestioneListe.setModificato(true);
                 System.out.println("Articolo rimosso.");
@@ -357,7 +395,7 @@ public class InterfacciaRigaDiComando {
      * Gestisce il salvataggio o caricamento manuale tramite file.
      */
     private void gestisciFile() {
-        System.out.println("1 - Salva Stato Sistema\n2 - Carica Stato Sistema");
+        System.out.println("1 - Salva Stato Sistema\n2 - Carica Stato Sistema\n3 - Salva Snapshot Binario\n4 - Carica Snapshot Binario\n5 - Salva Archivio per Liste\n6 - Carica Archivio per Liste");
         try {
             int scelta = Input.readInt("Scelta: ");
             if (scelta == 1) {
@@ -366,6 +404,18 @@ public class InterfacciaRigaDiComando {
             } else if (scelta == 2) {
                 GestioneListe.caricaSistema("dati_sistema.txt");
                 System.out.println("Sistema ripristinato dal file.");
+            } else if (scelta == 3) {
+                GestioneListe.salvaSistemaBinario("dati_sistema.bin");
+                System.out.println("Snapshot salvato.");
+            } else if (scelta == 4) {
+                GestioneListe.caricaSistemaBinario("dati_sistema.bin", true);
+                System.out.println("Sistema ripristinato dallo snapshot.");
+            } else if (scelta == 5) {
+                int scritti = GestioneListe.salvaSistemaSuddiviso("dati_sistema");
+                System.out.println("Archivio salvato, segmenti riscritti: " + scritti);
+            } else if (scelta == 6) {
+                GestioneListe.caricaSistemaSuddiviso("dati_sistema");
+                System.out.println("Sistema ripristinato dall'archivio.");
             }
         } catch (IOException e) {
             System.out.println("Errore di I/O: " + e.getMessage());
@@ -380,7 +430,8 @@ public class InterfacciaRigaDiComando {
      * @return {@code true} se si conferma l'uscita, {@code false} altrimenti.
      */
     private boolean confermaUscita() {
-        if (!GestioneListe.getModificato()) {
+        // con il giornale attivo le modifiche sono già su disco, rinunciare al salvataggio non scarterebbe nulla
+        if (!GestioneListe.getModificato() || GestioneListe.isGiornaleAttivo()) {
             return true;
         }
 
@@ -5,6 +5,7 @@ import gui.rigaComando.InterfacciaRigaDiComando;
 
 import jbook.util.Input;
 import modello.GestioneListe;
+import server.ServerHttp;
 
 /**
  * Classe Main principale del programma che avvia le interfaccie disponibili dell'applicazione
@@ -16,17 +17,25 @@ public class Main {
 	 * <ul>
 	 *   <li> Interfaccia grafica </li>
 	 *   <li> Interfaccia da riga di comando </li>
+	 *   <li> Server HTTP, che espone le liste in JSON </li>
 	 * </ul>
 	 * @param args Argomenti da riga di comando
 	 */
 	public static void main(String[] args) {
-		// caricamento da file
+		// caricamento da file e dalle modifiche registrate nel giornale, gli articoli di ogni lista alla sua prima apertura
 		String nomeFile = "dati_sistema.txt";
         try {
-            GestioneListe.caricaSistema(nomeFile);
-            System.out.println("Dati caricati correttamente da " + nomeFile);
-        } catch (java.io.FileNotFoundException e) {
-            System.out.println("Nessun salvataggio trovato. Avvio con sistema vuoto.");
+            if (GestioneListe.apriGiornale(nomeFile, "dati_sistema.journal", true))
+            	System.out.println("Dati caricati correttamente da " + nomeFile);
+            else
+            	System.out.println("Nessun salvataggio trovato. Avvio con sistema vuoto.");
+            
+            if (GestioneListe.getRecordIgnorati() > 0)
+            	System.out.println("Attenzione: " + GestioneListe.getRecordIgnorati()
+            			+ " modifiche registrate nel giornale non sono state ripristinate.");
+            
+            GestioneListe.avviaAutosalvataggio(nomeFile, GestioneListe.INTERVALLO_AUTOSALVATAGGIO_MS,
+            		GestioneListe.MAX_MODIFICHE_AUTOSALVATAGGIO, null);
         } catch (Exception e) {
             System.out.println("Errore nel caricamento automatico: " + e.getMessage());
         }
@@ -47,17 +56,31 @@ public class Main {
 						System.out.println("Avvio interfaccia da riga di comando...");
 						interfacciaRigaComando();
 					}
+					case 3 -> {
+						System.out.println("Avvio server HTTP...");
+						serverHttp();
+					}
 					
 					default -> System.out.println("\nScelta non valida, riprova");
 				}
 			} catch (NumberFormatException e) {
-	            System.out.println("\nErrore: Inserisci un numero valido (da 0 a 2), riprova");
+	            System.out.println("\nErrore: Inserisci un numero valido (da 0 a 3), riprova");
 	        } catch (Exception e) {
 	            System.out.println("\nSi è verificato un errore: " + e.getMessage());
 	            System.out.println("Riprova");
 	        }
 		}
 		System.out.println("Chiusura del programma...");
+		try {
+			GestioneListe.fermaAutosalvataggio();
+		} catch (Exception e) {
+			System.out.println("Errore nel salvataggio automatico: " + e.getMessage());
+		}
+		try {
+			GestioneListe.chiudiGiornale();
+		} catch (java.io.IOException e) {
+			System.out.println("Errore nella chiusura del giornale: " + e.getMessage());
+		}
 	}
 	
 	/**
@@ -74,6 +97,18 @@ public class Main {
 	    new GestoreGui();			
 	}
 	
+	/**
+	 * Metodo per avviare il server HTTP, che resta attivo finché l'utente non preme invio
+	 * 
+	 * @throws java.io.IOException Se la porta del server non è disponibile
+	 */
+	private static void serverHttp() throws java.io.IOException {
+		try (ServerHttp server = new ServerHttp(GestioneListe.getSistema(), ServerHttp.PORTA_DEFAULT)) {
+			System.out.println("Server in ascolto su http://localhost:" + server.getPorta() + "/liste");
+			Input.readString("Premi invio per fermare il server");
+		}
+	}
+	
 	/**
 	 * Menu delle interfaccie disponibili per l'utente
 	 */
@@ -82,6 +117,7 @@ public class Main {
 		System.out.println("0 - Esci");
 		System.out.println("1 - Interfaccia grafica");	
 		System.out.println("2 - Interfaccia da riga di comando");	
+		System.out.println("3 - Server HTTP");	
 		System.out.println("------------------------------------\n");
 	}
 }
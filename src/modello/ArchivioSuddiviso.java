@@ -0,0 +1,323 @@
+package modello;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * La classe {@code ArchivioSuddiviso} salva il sistema in una cartella divisa in segmenti, così che un salvataggio
+ * riscriva solo le parti modificate dal salvataggio precedente
+ * <ul>
+ *   <li>{@code catalogo-n.bin}: categorie e registro globale degli articoli, nel formato di {@link SnapshotBinario}</li>
+ *   <li>{@code lista-n.txt}: una lista, nel formato di {@link SnapshotTesto}; gli articoli sono indicati
+ *   per nome e categoria, per cui il file resta valido quando il catalogo viene riscritto</li>
+ *   <li>{@code manifesto.bin}: il segmento del catalogo e i segmenti delle liste, in ordine, con il codice CRC32</li>
+ * </ul>
+ * <p>Ogni segmento riscritto riceve un nome nuovo e il manifesto viene sostituito con uno spostamento atomico
+ * solo dopo che i nuovi segmenti sono stati resi persistenti: un arresto durante il salvataggio lascia valido
+ * il salvataggio precedente. I segmenti non più indicati dal manifesto vengono poi eliminati
+ * <p>Una lista va riscritta se il suo numero di modifiche (vedi {@link ListaDiArticoli#getModifiche()}) è cambiato
+ * da quando è stata scritta o letta; il catalogo se è cambiato il numero di modifiche del catalogo indicato dal sistema
+ *
+ * @author Angie Albitres
+ */
+final class ArchivioSuddiviso {
+
+	/**
+	 * Nome del file del manifesto
+	 */
+	static final String MANIFESTO = "manifesto.bin";
+
+	/**
+	 * Byte iniziali che identificano il manifesto
+	 */
+	private static final byte[] MAGIC = { 'G', 'L', 'S', 'M' };
+
+	/**
+	 * Versione del formato del manifesto
+	 */
+	private static final byte VERSIONE = 1;
+
+	/**
+	 * Prefissi e suffissi dei nomi dei segmenti
+	 */
+	private static final String CATALOGO = "catalogo-", LISTA = "lista-", BIN = ".bin", TXT = ".txt";
+
+	/**
+	 * Segmento di una lista e numero di modifiche della lista quando il segmento è stato scritto o letto
+	 */
+	private static final class Voce {
+		/** Nome del segmento nella cartella */
+		final String file;
+		/** Numero di modifiche della lista, vedi {@link ListaDiArticoli#getModifiche()} */
+		final long modifiche;
+
+		Voce(String file, long modifiche) {
+			this.file = file;
+			this.modifiche = modifiche;
+		}
+	}
+
+	/**
+	 * Cartella dell'archivio
+	 */
+	private final Path cartella;
+
+	/**
+	 * Segmento del catalogo indicato dal manifesto, {@code null} se l'archivio è vuoto
+	 */
+	private String catalogo;
+
+	/**
+	 * Numero di modifiche del catalogo quando il suo segmento è stato scritto o letto, -1 se non è noto
+	 */
+	private long modificheCatalogo = -1;
+
+	/**
+	 * Segmenti delle liste indicati dal manifesto, nell'ordine delle liste
+	 */
+	private List<String> liste = new ArrayList<String>();
+
+	/**
+	 * Segmento di ciascuna lista scritta o letta dall'archivio
+	 */
+	private Map<ListaDiArticoli, Voce> voci = new IdentityHashMap<ListaDiArticoli, Voce>();
+
+	/**
+	 * Numero da assegnare al prossimo segmento scritto
+	 */
+	private long prossimo;
+
+	/**
+	 * Crea un archivio vuoto
+	 *
+	 * @param cartella La cartella dell'archivio
+	 */
+	private ArchivioSuddiviso(Path cartella) {
+		this.cartella = cartella;
+	}
+
+	/**
+	 * Apre l'archivio contenuto in una cartella, leggendone il manifesto
+	 *
+	 * @param cartella La cartella dell'archivio, può non esistere
+	 *
+	 * @return L'archivio, vuoto se la cartella non contiene un manifesto
+	 *
+	 * @throws IOException Se il manifesto non può essere letto, è troncato o danneggiato
+	 */
+	static ArchivioSuddiviso apri(Path cartella) throws IOException {
+		ArchivioSuddiviso archivio = new ArchivioSuddiviso(cartella);
+
+		byte[] contenuto;
+		try {
+			contenuto = Files.readAllBytes(cartella.resolve(MANIFESTO));
+		} catch (NoSuchFileException e) {
+			return archivio;
+		}
+
+		int lunghezza = contenuto.length - Long.BYTES;
+		if (lunghezza < MAGIC.length + 1 || !Arrays.equals(contenuto, 0, MAGIC.length, MAGIC, 0, MAGIC.length))
+			throw new IOException("Il file " + MANIFESTO + " non è un manifesto valido");
+		if (contenuto[MAGIC.length] > VERSIONE)
+			throw new IOException("Versione del manifesto non supportata: " + contenuto[MAGIC.length]);
+
+		CRC32 crc = new CRC32();
+		crc.update(contenuto, 0, lunghezza);
+		if (crc.getValue() != ByteBuffer.wrap(contenuto, lunghezza, Long.BYTES).getLong())
+			throw new IOException("Il manifesto è troncato o danneggiato");
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(contenuto, MAGIC.length + 1, lunghezza));
+		archivio.prossimo = in.readLong();
+		archivio.catalogo = in.readUTF();
+		int n = in.readInt();
+		for (int i = 0; i < n; i++)
+			archivio.liste.add(in.readUTF());
+		return archivio;
+	}
+
+	/**
+	 * Restituisce la cartella dell'archivio
+	 *
+	 * @return La cartella
+	 */
+	Path getCartella() {
+		return cartella;
+	}
+
+	/**
+	 * Restituisce il segmento del catalogo
+	 *
+	 * @return Il file del catalogo, {@code null} se l'archivio è vuoto
+	 */
+	Path getCatalogo() {
+		return catalogo != null ? cartella.resolve(catalogo) : null;
+	}
+
+	/**
+	 * Restituisce i segmenti delle liste, nell'ordine delle liste
+	 *
+	 * @return I file delle liste
+	 */
+	List<Path> getListe() {
+		List<Path> ris = new ArrayList<Path>();
+		for (String file : liste)
+			ris.add(cartella.resolve(file));
+		return ris;
+	}
+
+	/**
+	 * Segna come appena letto il segmento del catalogo, che non va riscritto finché il catalogo non viene modificato
+	 *
+	 * @param modifiche Il numero di modifiche del catalogo dopo la lettura
+	 */
+	void catalogoLetto(long modifiche) {
+		modificheCatalogo = modifiche;
+	}
+
+	/**
+	 * Segna una lista come appena letta dal suo segmento, che non va riscritto finché la lista non viene modificata
+	 *
+	 * @param lista La lista letta
+	 * @param file Il segmento da cui è stata letta, uno di quelli di {@link #getListe()}
+	 */
+	void listaLetta(ListaDiArticoli lista, Path file) {
+		voci.put(lista, new Voce(file.getFileName().toString(), lista.getModifiche()));
+	}
+
+	/**
+	 * Salva lo stato del sistema riscrivendo solo il catalogo e le liste modificati dall'ultimo salvataggio o lettura,
+	 * poi sostituisce il manifesto ed elimina i segmenti non più utilizzati
+	 *
+	 * @param categorie Le categorie del sistema
+	 * @param articoli Gli articoli del registro globale
+	 * @param listeSistema Le versioni delle liste del sistema
+	 * @param modifiche Il numero di modifiche del catalogo
+	 *
+	 * @return Il numero di segmenti scritti
+	 *
+	 * @throws IOException In caso di errori di scrittura; il salvataggio precedente resta valido
+	 */
+	int salva(Collection<String> categorie, Collection<Articolo> articoli, Collection<ListaDiArticoli.Versione> listeSistema,
+			long modifiche) throws IOException {
+		Files.createDirectories(cartella);
+
+		List<Path> scritti = new ArrayList<Path>();
+		boolean completato = false;
+		try {
+			String nuovoCatalogo = catalogo;
+			if (catalogo == null || modifiche != modificheCatalogo) {
+				nuovoCatalogo = CATALOGO + prossimo++ + BIN;
+				Path file = cartella.resolve(nuovoCatalogo);
+				scritti.add(file);
+				try (FileOutputStream fos = new FileOutputStream(file.toFile())) {
+					SnapshotBinario.scrivi(fos, categorie, articoli, List.of());
+					fos.getFD().sync();
+				}
+			}
+
+			List<String> nuoveListe = new ArrayList<String>();
+			Map<ListaDiArticoli, Voce> nuoveVoci = new IdentityHashMap<ListaDiArticoli, Voce>();
+			for (ListaDiArticoli.Versione l : listeSistema) {
+				Voce v = voci.get(l.lista);
+				if (v == null || v.modifiche != l.modifiche) {
+					v = new Voce(LISTA + prossimo++ + TXT, l.modifiche);
+					Path file = cartella.resolve(v.file);
+					scritti.add(file);
+					SnapshotTesto.scrivi(file, List.of(), List.of(), List.of(l), 0);
+				}
+				nuoveListe.add(v.file);
+				nuoveVoci.put(l.lista, v);
+			}
+
+			scriviManifesto(nuovoCatalogo, nuoveListe);
+			completato = true;
+
+			catalogo = nuovoCatalogo;
+			modificheCatalogo = modifiche;
+			liste = nuoveListe;
+			voci = nuoveVoci;
+		} finally {
+			if (!completato)
+				for (Path file : scritti)
+					Files.deleteIfExists(file);
+		}
+
+		eliminaInutilizzati();
+		return scritti.size();
+	}
+
+	/**
+	 * Scrive il manifesto in un file temporaneo e lo porta al posto di quello precedente
+	 *
+	 * @param fileCatalogo Il segmento del catalogo
+	 * @param fileListe I segmenti delle liste, in ordine
+	 *
+	 * @throws IOException In caso di errori di scrittura
+	 */
+	private void scriviManifesto(String fileCatalogo, List<String> fileListe) throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buf);
+		out.write(MAGIC);
+		out.writeByte(VERSIONE);
+		out.writeLong(prossimo);
+		out.writeUTF(fileCatalogo);
+		out.writeInt(fileListe.size());
+		for (String file : fileListe)
+			out.writeUTF(file);
+
+		CRC32 crc = new CRC32();
+		crc.update(buf.toByteArray());
+		out.writeLong(crc.getValue());
+
+		Path temporaneo = cartella.resolve(MANIFESTO + ".tmp");
+		try {
+			SnapshotTesto.scrivi(temporaneo, buf.toByteArray());
+			SnapshotTesto.sostituisci(temporaneo, cartella.resolve(MANIFESTO));
+		} finally {
+			Files.deleteIfExists(temporaneo);
+		}
+	}
+
+	/**
+	 * Elimina i segmenti della cartella non indicati dal manifesto, lasciati dai salvataggi precedenti;
+	 * un segmento che non può essere eliminato verrà eliminato da un salvataggio successivo
+	 */
+	private void eliminaInutilizzati() {
+		Set<String> usati = new HashSet<String>(liste);
+		usati.add(catalogo);
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(cartella)) {
+			for (Path file : files) {
+				String nome = file.getFileName().toString();
+				boolean segmento = (nome.startsWith(CATALOGO) && nome.endsWith(BIN)) || (nome.startsWith(LISTA) && nome.endsWith(TXT));
+				if (segmento && !usati.contains(nome))
+					Files.deleteIfExists(file);
+			}
+		} catch (IOException e) {
+			// il salvataggio è comunque completo
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ArchivioSuddiviso [cartella=" + cartella + ", liste=" + liste.size() + "]";
+	}
+}
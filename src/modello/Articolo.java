@@ -1,6 +1,9 @@
 package modello;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Objects;
+import java.util.Set;
 
 import modello.exception.ArticoloException;
 
@@ -29,9 +32,9 @@ public class Articolo{
 	 */
 	private String categoria;
 	/**
-	 * Prezzo dell'articolo
+	 * Prezzo dell'articolo in centesimi di euro, vedi {@link Prezzo}
 	 */
-	private double prezzo;
+	private long prezzo;
 	/**
 	 * Nota aggiuntiva che descrive l'articolo
 	 */
@@ -43,9 +46,38 @@ public class Articolo{
 	public static final String CATEGORIA_DEFAULT = "Non categorizzato";
 	
 	/**
-	 * Espressione regolare per validare il formato del nome accetta caratteri alfanumerici anche con accenti
+	 * Formato valido per il nome: caratteri alfanumerici anche con accenti, con spazi dopo il primo carattere
+	 * <p>Il costruttore verifica la regola con un controllo carattere per carattere, senza compilare l'espressione
 	 */
-	private final String nomeRegex = "[a-zA-Z0-9àèéìòù][a-zA-Z0-9\\sàèéìòù]*";
+	public static final String NOME_REGEX = "[a-zA-Z0-9àèéìòù][a-zA-Z0-9\\sàèéìòù]*";
+	
+	/**
+	 * Registro globale in cui l'articolo è inserito, viene avvisato quando cambia la categoria
+	 * perché la coppia (nome, categoria) è la chiave con cui l'articolo è indicizzato
+	 */
+	private volatile OsservatoreArticolo registro;
+	
+	/**
+	 * Indice inverso delle liste che contengono l'articolo, tra gli attivi o nel cestino
+	 * <p>Viene creato al primo inserimento in una lista
+	 */
+	private Set<ListaDiArticoli> liste;
+	
+	/**
+	 * Articolo di cui questo è una copia immutabile, vedi {@link #versione()}; {@code null} per gli articoli modificabili
+	 */
+	private final Articolo origine;
+	
+	/**
+	 * Numero di modifiche subite dall'articolo, per riconoscere se la copia in {@link #versione} è ancora attuale;
+	 * in una copia è il numero di modifiche dell'originale al momento della copia
+	 */
+	private volatile long revisione;
+	
+	/**
+	 * Ultima copia immutabile dell'articolo, riutilizzata finché l'articolo non viene modificato
+	 */
+	private volatile Articolo versione;
 	
 	/**
 	 * Crea un nuovo {@code Articolo} completo di tutte le sue informazioni
@@ -67,11 +99,27 @@ public class Articolo{
 	    	throw new ArticoloException("Il formato del nome non è valido");
 		
 		this.nome = nome;
+		this.origine = null;
 		this.setCategoria(categoria);
 		this.setPrezzo(prezzo);
 		this.setNota(nota);
 	}
 	
+	/**
+	 * Crea una copia immutabile di un articolo, vedi {@link #versione()}
+	 * 
+	 * @param origine L'articolo da copiare
+	 * @param revisione Il numero di modifiche dell'articolo, letto prima di copiarne i campi
+	 */
+	private Articolo(Articolo origine, long revisione) {
+		this.nome = origine.nome;
+		this.categoria = origine.categoria;
+		this.prezzo = origine.prezzo;
+		this.nota = origine.nota;
+		this.origine = origine;
+		this.revisione = revisione;
+	}
+	
 	/**
 	 * Crea un nuovo {@code Articolo} senza la nota, che di default sara' vuota
 	 * 
@@ -130,31 +178,96 @@ public class Articolo{
 	 * La categoria non può essere nulla o vuota
 	 * 
 	 * @param categoria Nuova categoria dell'articolo
+	 * 
+	 * @throws ArticoloException Viene lanciata se il registro o una delle liste che contengono l'articolo
+	 * hanno già un articolo con lo stesso nome nella nuova categoria
 	 */
-	public void setCategoria(String categoria){
+	public void setCategoria(String categoria) throws ArticoloException {
 		if(categoria==null || categoria.isBlank()) {
 			categoria = CATEGORIA_DEFAULT;
 		}
 		
-		this.categoria = categoria;
+		String vecchiaCategoria = this.categoria;
+		if (vecchiaCategoria == null) {
+			this.categoria = categoria;
+			return;
+		}
+		
+		OsservatoreArticolo r = inizioModifica();
+		try {
+			if (registro != null)
+				registro.verificaCategoria(this, categoria);
+			for (ListaDiArticoli l : getListe())
+				l.verificaCategoria(this, categoria);
+			
+			this.categoria = categoria;
+			revisione++;
+			
+			if (registro != null)
+				registro.categoriaModificata(this, vecchiaCategoria);
+			for (ListaDiArticoli l : getListe())
+				l.categoriaModificata(this, vecchiaCategoria);
+		} finally {
+			fineModifica(r);
+		}
 	}
 
 	/**
 	 * Restituisce il prezzo dell'articolo
 	 * 
-	 * @return Il prezzo dell'articolo
+	 * @return Il prezzo dell'articolo in euro
 	 */
 	public double getPrezzo() {
+		return Prezzo.inEuro(prezzo);
+	}
+	
+	/**
+	 * Restituisce il prezzo esatto dell'articolo
+	 * 
+	 * @return Il prezzo dell'articolo in centesimi
+	 */
+	public long getPrezzoCentesimi() {
 		return prezzo;
 	}
+	
 	/**
-	 * Modifica il prezzo dell'articolo
+	 * Modifica il prezzo dell'articolo, arrotondandolo al centesimo
+	 * Le liste che contengono l'articolo aggiornano il proprio totale
 	 * 
-	 * @param prezzo Nuovo prezzo dell'articolo
+	 * @param prezzo Nuovo prezzo dell'articolo in euro
 	 * @throws ArticoloException Viene lanciata se il prezzo è negativo 
 	 */
 	public void setPrezzo(double prezzo) throws ArticoloException {
-		this.prezzo = this.validaPrezzo(prezzo);
+		if (prezzo < 0)
+			throw new ArticoloException("Il prezzo non può essere negativo");
+		
+		setPrezzoCentesimi(Prezzo.daEuro(prezzo));
+	}
+	
+	/**
+	 * Modifica il prezzo dell'articolo
+	 * Le liste che contengono l'articolo aggiornano il proprio totale
+	 * 
+	 * @param centesimi Nuovo prezzo dell'articolo in centesimi
+	 * @throws ArticoloException Viene lanciata se il prezzo è negativo 
+	 */
+	public void setPrezzoCentesimi(long centesimi) throws ArticoloException {
+		long nuovoPrezzo = this.validaPrezzo(centesimi);
+		
+		OsservatoreArticolo r = inizioModifica();
+		try {
+			long vecchioPrezzo = this.prezzo;
+			this.prezzo = nuovoPrezzo;
+			revisione++;
+			
+			for (ListaDiArticoli l : getListe())
+				l.prezzoModificato(this, vecchioPrezzo);
+			
+			if (registro != null)
+				registro.prezzoModificato(this);
+		} finally {
+			fineModifica(r);
+		}
 	}
 
 	/**
@@ -176,7 +289,42 @@ public class Articolo{
 			nota = "";
 		}
 		
-		this.nota = nota;
+		OsservatoreArticolo r = inizioModifica();
+		try {
+			this.nota = nota;
+			revisione++;
+			
+			for (ListaDiArticoli l : getListe())
+				l.notaModificata(this);
+			
+			if (registro != null)
+				registro.notaModificata(this);
+		} finally {
+			fineModifica(r);
+		}
+	}
+	
+	/**
+	 * Avvisa il registro dell'inizio di una modifica, così che le copie del sistema non vedano l'articolo modificato
+	 * a metà, vedi {@link OsservatoreArticolo#inizioModifica()}
+	 * 
+	 * @return Il registro avvisato, da passare a {@link #fineModifica(OsservatoreArticolo)}; {@code null} se l'articolo non è registrato
+	 */
+	private OsservatoreArticolo inizioModifica() {
+		OsservatoreArticolo r = registro;
+		if (r != null)
+			r.inizioModifica();
+		return r;
+	}
+	
+	/**
+	 * Avvisa il registro della fine di una modifica iniziata con {@link #inizioModifica()}
+	 * 
+	 * @param r Il registro restituito da {@link #inizioModifica()}
+	 */
+	private static void fineModifica(OsservatoreArticolo r) {
+		if (r != null)
+			r.fineModifica();
 	}
 	
 	/**
@@ -188,7 +336,7 @@ public class Articolo{
 	 * 
 	 * @throws ArticoloException  Viene lanciata se il prezzo è negativo 
 	 */
-	private double validaPrezzo(double prezzo) throws ArticoloException {
+	private long validaPrezzo(long prezzo) throws ArticoloException {
 		if (prezzo < 0) {
 			throw new ArticoloException("Il prezzo non può essere negativo");
         }
@@ -196,14 +344,152 @@ public class Articolo{
     }
 	
 	/**
-	 * Controlla che il nome sia vlido
+	 * Controlla che il nome sia valido secondo {@link #NOME_REGEX}
+	 * <p>Il controllo scorre i caratteri una sola volta, senza creare oggetti
 	 * 
 	 * @param nome Nome da validare
 	 * 
 	 * @return true se il nome è valido, false altrimenti
 	 */
-	private boolean validaNome(String nome) {
-		return nome.matches(nomeRegex);
+	private static boolean validaNome(String nome) {
+		if (nome.isEmpty() || !isAlfanumerico(nome.charAt(0)))
+			return false;
+		
+		for (int i = 1; i < nome.length(); i++) {
+			char c = nome.charAt(i);
+			if (!isAlfanumerico(c) && !isSpazio(c))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Controlla che il carattere sia una lettera, una cifra o una delle lettere accentate ammesse
+	 * 
+	 * @param c Il carattere da controllare
+	 * 
+	 * @return true se il carattere è ammesso, false altrimenti
+	 */
+	private static boolean isAlfanumerico(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+				|| c == 'à' || c == 'è' || c == 'é' || c == 'ì' || c == 'ò' || c == 'ù';
+	}
+	
+	/**
+	 * Controlla che il carattere sia uno spazio, come la classe {@code \s} delle espressioni regolari
+	 * 
+	 * @param c Il carattere da controllare
+	 * 
+	 * @return true se il carattere è uno spazio, false altrimenti
+	 */
+	private static boolean isSpazio(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	/**
+	 * Restituisce il registro che indicizza l'articolo
+	 * 
+	 * @return Il registro, {@code null} se l'articolo non è registrato
+	 */
+	OsservatoreArticolo getRegistro() {
+		return registro;
+	}
+	
+	/**
+	 * Collega l'articolo al registro che lo indicizza, oppure lo scollega se {@code registro} è {@code null}
+	 * 
+	 * @param registro Il registro da avvisare alle modifiche della categoria
+	 */
+	void setRegistro(OsservatoreArticolo registro) {
+		this.registro = registro;
+	}
+	
+	/**
+	 * Registra che l'articolo è contenuto nella lista indicata
+	 * <p>Liste diverse possono essere modificate in parallelo, per cui l'indice inverso è protetto dal monitor dell'articolo
+	 * 
+	 * @param lista La lista in cui l'articolo è stato inserito
+	 */
+	synchronized void aggiungiLista(ListaDiArticoli lista) {
+		if (liste == null)
+			liste = Collections.newSetFromMap(new IdentityHashMap<ListaDiArticoli, Boolean>());
+		
+		liste.add(lista);
+	}
+	
+	/**
+	 * Registra che l'articolo non è più contenuto nella lista indicata
+	 * 
+	 * @param lista La lista da cui l'articolo è stato rimosso definitivamente
+	 */
+	synchronized void rimuoviLista(ListaDiArticoli lista) {
+		if (liste != null)
+			liste.remove(lista);
+	}
+	
+	/**
+	 * Restituisce le liste che contengono l'articolo, tra gli attivi o nel cestino
+	 * 
+	 * @return Una copia delle liste che contengono l'articolo, che non risente delle modifiche successive
+	 */
+	synchronized Set<ListaDiArticoli> getListe() {
+		if (liste == null || liste.isEmpty())
+			return Collections.emptySet();
+		
+		Set<ListaDiArticoli> copia = Collections.newSetFromMap(new IdentityHashMap<ListaDiArticoli, Boolean>());
+		copia.addAll(liste);
+		return copia;
+	}
+	
+	/**
+	 * Restituisce una copia immutabile dell'articolo nel suo stato attuale, da usare nelle versioni del sistema
+	 * (vedi {@link SistemaListe#versione()}); la copia viene riutilizzata finché l'articolo non viene modificato,
+	 * per cui versioni successive condividono le copie degli articoli non modificati
+	 * <p>La copia non è collegata a registro e liste e non va modificata
+	 * 
+	 * @return La copia, o l'articolo stesso se è già una copia
+	 */
+	Articolo versione() {
+		if (origine != null)
+			return this;
+		
+		long r = revisione;
+		Articolo v = versione;
+		if (v == null || v.revisione != r) {
+			v = new Articolo(this, r);
+			versione = v;
+		}
+		return v;
+	}
+	
+	/**
+	 * Restituisce l'articolo modificabile di cui questo è una copia, vedi {@link #versione()}
+	 * 
+	 * @return L'articolo originale, o l'articolo stesso se non è una copia
+	 */
+	Articolo getOrigine() {
+		return origine != null ? origine : this;
+	}
+	
+	/**
+	 * Restituisce la chiave normalizzata dell'articolo, coerente con {@link #equals(Object)} e {@link #hashCode()}
+	 * 
+	 * @return La chiave composta da nome e categoria in minuscolo
+	 */
+	String chiave() {
+		return chiave(nome, categoria);
+	}
+	
+	/**
+	 * Calcola la chiave normalizzata di un articolo a partire da nome e categoria
+	 * 
+	 * @param nome Il nome dell'articolo
+	 * @param categoria La categoria dell'articolo
+	 * 
+	 * @return La chiave composta da nome e categoria in minuscolo
+	 */
+	static String chiave(String nome, String categoria) {
+		return nome.toLowerCase() + '\u0000' + categoria.toLowerCase();
 	}
 
 	/**
@@ -244,6 +530,6 @@ public class Articolo{
 	 */
 	@Override
 	public String toString() {
-		return "\n Articolo [nome=" + nome +", categoria=" + categoria + ", prezzo=" + prezzo + ", nota=" + nota + "]";
+		return "\n Articolo [nome=" + nome +", categoria=" + categoria + ", prezzo=" + getPrezzo() + ", nota=" + nota + "]";
 	}
 }
@@ -0,0 +1,201 @@
+package modello;
+
+import java.io.Closeable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * La classe {@code Autosalvataggio} salva periodicamente il sistema quando è stato modificato, senza che il thread
+ * che modifica il sistema (l'EDT dell'interfaccia grafica o il thread della riga di comando) attenda la scrittura su disco
+ * <p>Il salvataggio si divide in due fasi:
+ * <ol>
+ *   <li>la cattura, eseguita sul thread che modifica il sistema perché lo stato sia coerente: produce una
+ *   {@link Scrittura} che non legge più lo stato del sistema</li>
+ *   <li>la scrittura, eseguita dal thread in background</li>
+ * </ol>
+ * <p>La cattura avviene dopo {@code maxModifiche} modifiche, oppure alla prima modifica trascorso {@code intervalloMs}
+ * dall'ultima cattura; se è disponibile un esecutore sul thread del sistema, le modifiche rimaste in sospeso vengono
+ * catturate anche allo scadere dell'intervallo. Più catture in attesa di scrittura vengono accorpate nell'ultima
+ *
+ * @author Angie Albitres
+ */
+final class Autosalvataggio implements Closeable {
+
+	/**
+	 * Scrittura su disco di uno stato già catturato
+	 */
+	interface Scrittura {
+		/**
+		 * Scrive il salvataggio
+		 *
+		 * @throws Exception In caso di errori di scrittura
+		 */
+		void scrivi() throws Exception;
+	}
+
+	/**
+	 * Intervallo massimo tra due salvataggi del sistema modificato, in millisecondi
+	 */
+	private final long intervalloMs;
+
+	/**
+	 * Numero di modifiche dopo il quale il sistema viene salvato senza attendere l'intervallo
+	 */
+	private final int maxModifiche;
+
+	/**
+	 * Esegue le catture sul thread che modifica il sistema, {@code null} se non disponibile
+	 */
+	private final Executor threadSistema;
+
+	/**
+	 * La cattura dello stato, eseguita sul thread del sistema
+	 */
+	private final Supplier<Scrittura> cattura;
+
+	/**
+	 * Thread in background che scrive i salvataggi e controlla l'intervallo
+	 */
+	private final ScheduledExecutorService scrittore;
+
+	/**
+	 * Ultima cattura non ancora scritta, le precedenti vengono scartate
+	 */
+	private final AtomicReference<Scrittura> inAttesa = new AtomicReference<Scrittura>();
+
+	/**
+	 * Modifiche dall'ultima cattura, aggiornate dal thread del sistema
+	 */
+	private volatile int modifiche;
+
+	/**
+	 * Istante dell'ultima cattura, in nanosecondi
+	 */
+	private volatile long ultimaCattura = System.nanoTime();
+
+	/**
+	 * Primo errore di scrittura non ancora segnalato
+	 */
+	private volatile Exception errore;
+
+	/**
+	 * Avvia l'autosalvataggio
+	 *
+	 * @param intervalloMs Intervallo massimo tra due salvataggi del sistema modificato, in millisecondi
+	 * @param maxModifiche Numero di modifiche dopo il quale il sistema viene salvato senza attendere l'intervallo
+	 * @param threadSistema Esegue le catture sul thread che modifica il sistema, {@code null} se non disponibile
+	 * @param cattura Cattura lo stato del sistema e restituisce la sua scrittura
+	 */
+	Autosalvataggio(long intervalloMs, int maxModifiche, Executor threadSistema, Supplier<Scrittura> cattura) {
+		this.intervalloMs = intervalloMs;
+		this.maxModifiche = maxModifiche;
+		this.threadSistema = threadSistema;
+		this.cattura = cattura;
+
+		scrittore = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "autosalvataggio");
+			t.setDaemon(true);
+			return t;
+		});
+		scrittore.scheduleWithFixedDelay(this::controllaIntervallo, intervalloMs, intervalloMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Segnala una modifica del sistema, va chiamato dal thread del sistema
+	 */
+	void modificato() {
+		modifiche++;
+		if (modifiche >= maxModifiche || intervalloScaduto())
+			catturaOra();
+	}
+
+	/**
+	 * Cattura lo stato del sistema se ci sono modifiche in sospeso, va chiamato dal thread del sistema
+	 */
+	private void catturaSeModificato() {
+		if (modifiche > 0)
+			catturaOra();
+	}
+
+	/**
+	 * Cattura lo stato del sistema, va chiamato dal thread del sistema
+	 */
+	private void catturaOra() {
+		modifiche = 0;
+		ultimaCattura = System.nanoTime();
+		accoda(cattura.get());
+	}
+
+	/**
+	 * Accoda la scrittura di uno stato catturato, sostituendo quella eventualmente ancora in attesa
+	 *
+	 * @param s La scrittura da eseguire
+	 */
+	private void accoda(Scrittura s) {
+		if (inAttesa.getAndSet(s) == null && !scrittore.isShutdown())
+			scrittore.execute(this::scriviInAttesa);
+	}
+
+	/**
+	 * Esegue l'ultima scrittura accodata, dal thread in background
+	 */
+	private void scriviInAttesa() {
+		Scrittura s = inAttesa.getAndSet(null);
+		if (s == null)
+			return;
+
+		try {
+			s.scrivi();
+		} catch (Exception e) {
+			if (errore == null)
+				errore = e;
+		}
+	}
+
+	/**
+	 * Controllo periodico, dal thread in background: le modifiche in sospeso da più di un intervallo
+	 * vengono catturate sul thread del sistema
+	 */
+	private void controllaIntervallo() {
+		if (threadSistema != null && modifiche > 0 && intervalloScaduto())
+			threadSistema.execute(this::catturaSeModificato);
+	}
+
+	/**
+	 * Controlla se dall'ultima cattura è trascorso l'intervallo
+	 *
+	 * @return true se l'intervallo è scaduto, false altrimenti
+	 */
+	private boolean intervalloScaduto() {
+		return System.nanoTime() - ultimaCattura >= TimeUnit.MILLISECONDS.toNanos(intervalloMs);
+	}
+
+	/**
+	 * Restituisce e azzera il primo errore di scrittura avvenuto in background
+	 *
+	 * @return L'errore, {@code null} se non ce ne sono stati
+	 */
+	Exception ultimoErrore() {
+		Exception e = errore;
+		errore = null;
+		return e;
+	}
+
+	/**
+	 * Ferma l'autosalvataggio dopo aver completato le scritture accodate
+	 */
+	@Override
+	public void close() {
+		scrittore.shutdown();
+		try {
+			scrittore.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		scriviInAttesa();
+	}
+}
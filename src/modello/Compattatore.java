@@ -0,0 +1,73 @@
+package modello;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * La classe {@code Compattatore} ricostruisce lo stato del sistema da un salvataggio e dai segmenti del {@link Giornale},
+ * in una copia indipendente dal sistema in uso, e lo scrive in un nuovo salvataggio
+ * <p>Viene eseguita dal thread di compattazione mentre il sistema continua a essere modificato: lo stato è un
+ * {@link SistemaListe} proprio, senza giornale, per cui le sue modifiche non vengono registrate. Salvataggio e giornale
+ * vengono applicati con la stessa {@link Riesecuzione} del ripristino all'avvio, quindi con le stesse regole
+ *
+ * @author Angie Albitres
+ */
+final class Compattatore implements Giornale.Applicatore {
+
+	/**
+	 * Lo stato ricostruito
+	 */
+	private final SistemaListe sistema = new SistemaListe();
+
+	/**
+	 * Applicazione di salvataggio e giornale allo stato
+	 */
+	private final Riesecuzione riesecuzione = new Riesecuzione(sistema);
+
+	/**
+	 * Restituisce l'ultimo segmento del giornale compreso nello stato
+	 *
+	 * @return Il numero del segmento, 0 se nessuno
+	 */
+	int getSegmento() {
+		return riesecuzione.getSegmento();
+	}
+
+	/**
+	 * Carica un salvataggio di testo, se esiste
+	 *
+	 * @param file Il salvataggio da caricare
+	 *
+	 * @throws Exception In caso di errori di lettura o di validazione dei dati
+	 */
+	void carica(Path file) throws Exception {
+		try (FileChannel canale = FileChannel.open(file, StandardOpenOption.READ)) {
+			SnapshotTesto.verifica(canale);
+			SnapshotTesto.leggi(canale, riesecuzione);
+		} catch (NoSuchFileException | FileNotFoundException e) {
+			// nessun salvataggio: lo stato resta vuoto
+		}
+	}
+
+	@Override
+	public void applica(byte tipo, Giornale.Campi campi) throws Exception {
+		riesecuzione.applica(tipo, campi);
+	}
+
+	/**
+	 * Scrive lo stato in un salvataggio di testo, attendendo che sia reso persistente
+	 *
+	 * @param file Il file da scrivere
+	 * @param segmento L'ultimo segmento del giornale compreso nello stato
+	 *
+	 * @throws IOException In caso di errori di scrittura
+	 */
+	void scrivi(Path file, int segmento) throws IOException {
+		SistemaListe.Versione stato = sistema.versione();
+		SnapshotTesto.scrivi(file, stato.categorie, stato.articoli, stato.liste, segmento);
+	}
+}
@@ -0,0 +1,198 @@
+package modello;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * La classe {@code ElencoArticoli} associa gli articoli di una lista alla loro chiave (nome, categoria) mantenendo
+ * l'ordine di inserimento, come una {@link java.util.LinkedHashMap}, ma permette di cambiare la chiave di un articolo
+ * senza spostarlo, vedi {@link #rinomina(String, String)}
+ * <p>Ogni articolo occupa un nodo di una lista doppiamente collegata, che ne stabilisce l'ordine; la ricerca per chiave
+ * usa una {@link HashMap} che punta ai nodi, per cui il cambio di chiave aggiorna solo la mappa e costa O(1),
+ * invece di ricostruire l'intero elenco
+ * <p>Non è thread-safe: va protetto da chi lo usa, come gli altri indici di una lista
+ *
+ * @author Angie Albitres
+ */
+final class ElencoArticoli extends AbstractMap<String, Articolo> {
+
+	/**
+	 * Nodo dell'elenco: un articolo con la sua chiave attuale
+	 */
+	private static final class Voce implements Map.Entry<String, Articolo> {
+		String chiave;
+		Articolo valore;
+		Voce precedente, successiva;
+
+		Voce(String chiave, Articolo valore) {
+			this.chiave = chiave;
+			this.valore = valore;
+		}
+
+		@Override
+		public String getKey() {
+			return chiave;
+		}
+
+		@Override
+		public Articolo getValue() {
+			return valore;
+		}
+
+		@Override
+		public Articolo setValue(Articolo valore) {
+			Articolo vecchio = this.valore;
+			this.valore = valore;
+			return vecchio;
+		}
+	}
+
+	/**
+	 * Nodi indicizzati per chiave
+	 */
+	private final HashMap<String, Voce> perChiave = new HashMap<String, Voce>();
+
+	/**
+	 * Primo e ultimo nodo nell'ordine di inserimento, {@code null} se l'elenco è vuoto
+	 */
+	private Voce primo, ultimo;
+
+	@Override
+	public Articolo get(Object chiave) {
+		Voce v = perChiave.get(chiave);
+		return v != null ? v.valore : null;
+	}
+
+	@Override
+	public boolean containsKey(Object chiave) {
+		return perChiave.containsKey(chiave);
+	}
+
+	/**
+	 * Aggiunge un articolo in fondo all'elenco; se la chiave è già presente l'articolo viene sostituito nella stessa posizione
+	 *
+	 * @param chiave La chiave dell'articolo
+	 * @param a L'articolo
+	 *
+	 * @return L'articolo sostituito, {@code null} se la chiave non era presente
+	 */
+	@Override
+	public Articolo put(String chiave, Articolo a) {
+		Voce v = perChiave.get(chiave);
+		if (v != null)
+			return v.setValue(a);
+
+		v = new Voce(chiave, a);
+		perChiave.put(chiave, v);
+		if (ultimo == null)
+			primo = v;
+		else {
+			ultimo.successiva = v;
+			v.precedente = ultimo;
+		}
+		ultimo = v;
+		return null;
+	}
+
+	@Override
+	public Articolo remove(Object chiave) {
+		Voce v = perChiave.remove(chiave);
+		if (v == null)
+			return null;
+
+		scollega(v);
+		return v.valore;
+	}
+
+	/**
+	 * Cambia la chiave di un articolo lasciandolo nella sua posizione
+	 *
+	 * @param vecchiaChiave La chiave attuale
+	 * @param nuovaChiave La nuova chiave, non ancora presente nell'elenco
+	 *
+	 * @return true se la chiave è stata cambiata, false se la vecchia chiave non era presente
+	 */
+	boolean rinomina(String vecchiaChiave, String nuovaChiave) {
+		Voce v = perChiave.remove(vecchiaChiave);
+		if (v == null)
+			return false;
+
+		v.chiave = nuovaChiave;
+		perChiave.put(nuovaChiave, v);
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		perChiave.clear();
+		primo = ultimo = null;
+	}
+
+	@Override
+	public int size() {
+		return perChiave.size();
+	}
+
+	@Override
+	public Set<Map.Entry<String, Articolo>> entrySet() {
+		return new AbstractSet<Map.Entry<String, Articolo>>() {
+			@Override
+			public Iterator<Map.Entry<String, Articolo>> iterator() {
+				return new Iterator<Map.Entry<String, Articolo>>() {
+					private Voce prossima = primo;
+					private Voce ultimaRestituita;
+
+					@Override
+					public boolean hasNext() {
+						return prossima != null;
+					}
+
+					@Override
+					public Map.Entry<String, Articolo> next() {
+						if (prossima == null)
+							throw new NoSuchElementException();
+						ultimaRestituita = prossima;
+						prossima = prossima.successiva;
+						return ultimaRestituita;
+					}
+
+					@Override
+					public void remove() {
+						if (ultimaRestituita == null)
+							throw new IllegalStateException();
+						perChiave.remove(ultimaRestituita.chiave);
+						scollega(ultimaRestituita);
+						ultimaRestituita = null;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return perChiave.size();
+			}
+		};
+	}
+
+	/**
+	 * Toglie un nodo dalla lista collegata
+	 *
+	 * @param v Il nodo da togliere
+	 */
+	private void scollega(Voce v) {
+		if (v.precedente == null)
+			primo = v.successiva;
+		else
+			v.precedente.successiva = v.successiva;
+
+		if (v.successiva == null)
+			ultimo = v.precedente;
+		else
+			v.successiva.precedente = v.precedente;
+	}
+}
@@ -1,62 +1,67 @@
 package modello;
 
 import java.io.*;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 import modello.exception.*;
 
 /**
  * La classe {@code GestioneListe} funge da centro di controllo statico per l'intero sistema
- * <p> Gestisce centralmente:
+ * <p> Gestisce centralmente, tramite un {@link SistemaListe} condiviso:
  * <ul>
- *   <li>L'elenco globale di tutte le liste create ({@code listeArticoli})</li>
+ *   <li>L'elenco globale di tutte le liste create</li>
  *   <li>L'anagrafica di tutte le categorie merceologiche disponibili</li>
  *   <li>Il registro di tutti gli articoli inseriti nel sistema</li>
  * </ul>
+ * <p>Salvataggio, caricamento, giornale delle modifiche e salvataggio automatico del sistema condiviso
+ * vengono delegati a una {@link Persistenza}
  * 
  * @author Angie Albitres
  */
 public class GestioneListe {
 	/**
-	 * Elenco di tutte le liste di articoli gestite dal sistema
+	 * Il sistema a cui vengono delegate le operazioni sulle liste, sulle categorie e sul registro degli articoli
 	 */
-	private static List<ListaDiArticoli> listeArticoli; 
+	private static final SistemaListe sistema = new SistemaListe();
+	
 	/**
-	 * Elenco delle categorie merceologiche definite dall'utente
+	 * Salvataggio, caricamento, giornale e salvataggio automatico del sistema condiviso
 	 */
-	private static List<String> categorie; 
+	private static final Persistenza persistenza = new Persistenza(sistema);
+	
 	/**
-	 * Registro globale di tutti gli articoli esistenti nel sistema
+	 * Nome della categoria predefinita assegnata agli articoli non categorizzati
 	 */
-	private static List<Articolo> articoli; 
+	public static final String CATEGORIA_DEFAULT = SistemaListe.CATEGORIA_DEFAULT;
 	
 	/**
-	 * Nome della categoria predefinita assegnata agli articoli non categorizzati
+	 * Intervallo predefinito tra due salvataggi automatici, vedi {@link #avviaAutosalvataggio(String, long, int, Executor)}
 	 */
-	public static final String CATEGORIA_DEFAULT = "Non categorizzato";
+	public static final long INTERVALLO_AUTOSALVATAGGIO_MS = 30_000;
 	
 	/**
-	 * Flag modifica, è true se si è eseguito una modfica ai dati del sistema, false altrimenti 
+	 * Numero predefinito di modifiche dopo il quale il sistema viene salvato automaticamente senza attendere l'intervallo
 	 */
-	private static boolean modificato = false; 
-
+	public static final int MAX_MODIFICHE_AUTOSALVATAGGIO = 50;
+	
 	/**
-	 * Getter del flag modifica
+	 * Getter del flag modifica, vedi {@link Persistenza#getModificato()}
 	 * 
-	 * @return true se il sistema è stato modificato, false altrimenti
+	 * @return true se il sistema è stato modificato dopo l'ultimo salvataggio, false altrimenti
 	 */
     public static boolean getModificato() { 
-    	return modificato; 
+    	return persistenza.getModificato(); 
     }
     
     /**
-     * Setter del flag modifica
+     * Setter del flag modifica, vedi {@link Persistenza#setModificato(boolean)}
      * 
      * @param stato Stato della modifica, true o false
      */
     public static void setModificato(boolean stato) {
-    	modificato = stato; 
+    	persistenza.setModificato(stato);
     }
 	
 	/**
@@ -64,36 +69,43 @@ public class GestioneListe {
 	 */
 	public GestioneListe() {}
 	
-	static {
-		reset();	
+	/**
+	 * Restituisce il sistema a cui {@code GestioneListe} delega le operazioni, per usarlo direttamente
+	 * o da altri thread; altri sistemi indipendenti possono essere creati con {@link SistemaListe#SistemaListe()}
+	 * 
+	 * @return Il sistema condiviso
+	 */
+	public static SistemaListe getSistema() {
+		return sistema;
+	}
+	
+	/**
+	 * Restituisce la persistenza del sistema condiviso, a cui {@code GestioneListe} delega salvataggi, caricamenti,
+	 * giornale e salvataggio automatico; un altro sistema può essere salvato con una propria {@link Persistenza}
+	 * 
+	 * @return La persistenza del sistema condiviso
+	 */
+	public static Persistenza getPersistenza() {
+		return persistenza;
 	}
+	
 	/**
 	 * Ripristina lo stato iniziale del sistema creando nuove liste vuote
 	 * La categoria di default viene aggiunta automaticamente
 	 */
 	public static void reset() {
-		listeArticoli = new ArrayList<ListaDiArticoli>();
-		categorie = new ArrayList<String>();
-		articoli = new ArrayList<Articolo>();
-		
-		categorie.add(CATEGORIA_DEFAULT);
+		persistenza.reset();
 	}
 
 	/**
-	 * Aggiunge una nuova lista al sistema verificando che non ne esista già una con lo stesso nome
+	 * Aggiunge una nuova lista al sistema, vedi {@link SistemaListe#inserisciLista(ListaDiArticoli)}
 	 * 
 	 * @param list L'oggetto {@code ListaDiArticoli} da inserire
 	 * 
 	 * @throws GestioneListeException Viene lanciata se la lista è nulla o se il nome è già presente
 	 */
 	public static void inserisciLista(ListaDiArticoli list) throws GestioneListeException{
-		if (list == null)
-			throw new GestioneListeException("La lista non può essere nulla");
-			
-		if (trovaListaPerNome(list.getNome()) != null) 
-            throw new GestioneListeException("Lista già presente");
-		
-		listeArticoli.add(list);
+		sistema.inserisciLista(list);
 	}	
 		
 	/**
@@ -104,15 +116,7 @@ public class GestioneListe {
 	 * @throws GestioneListeException Viene lanciata se il nome è vuoto o se la lista non viene trovata
 	 */
 	public static void cancellaLista(String nome) throws GestioneListeException {
-		if(nome== null ||nome.isBlank()) 
-			throw new GestioneListeException("Il nome della lista non può essere vuoto");
-		
-		ListaDiArticoli listCanc = trovaListaPerNome(nome);
-		
-		if (listCanc == null)
-			throw new GestioneListeException("Lista non trovata");
-		
-		listeArticoli.remove(listCanc);
+		sistema.cancellaLista(nome);
 	}
 	
 	/**
@@ -125,34 +129,8 @@ public class GestioneListe {
 	 * @throws GestioneListeException Viene lanciata se il nome è vuoto o se la lista non esiste
 	 */
 	public static ListaDiArticoli matchLista(String nome) throws GestioneListeException {
-		if(nome== null ||nome.isBlank()) 
-			throw new GestioneListeException("Il nome della lista non può essere vuoto");
-		
-		nome = nome.trim();
-		ListaDiArticoli listaTrovata = trovaListaPerNome(nome);
-        if (listaTrovata == null)
-             throw new GestioneListeException("Lista non trovata");
-        
-        return listaTrovata;
+		return sistema.matchLista(nome);
 	}
-	/**
-	 * Metodo interno per la ricerca di una lista nell'elenco statico
-	 * 
-	 * @param nome Nome della lista da trovare
-	 * 
-	 * @return Il riferimento alla lista se trovata, {@code null} altrimenti
-	 */
-	private static ListaDiArticoli trovaListaPerNome(String nome) {
-        if (nome == null) 
-        		return null;
-        
-        for (ListaDiArticoli l : listeArticoli) {
-            if (l.getNome().equalsIgnoreCase(nome)) {
-                return l;
-            }
-        }
-        return null; 
-    }
 
 	/**
 	 * Registra una nuova categoria nel sistema
@@ -162,13 +140,7 @@ public class GestioneListe {
 	 * @throws GestioneListeException Viene lanciata se il nome è vuoto o se la categoria esiste già
 	 */
 	public static void inserisciCategoria(String nome) throws GestioneListeException {
-		if(nome== null ||nome.isBlank()) 
-			throw new GestioneListeException("Il nome della categoria non può essere vuoto");
-		
-		if(categorie.contains(nome)) 
-			throw new GestioneListeException("Categoria già presente");
-		
-		categorie.add(nome);
+		sistema.inserisciCategoria(nome);
 	}
 	
 	/**
@@ -180,22 +152,32 @@ public class GestioneListe {
 	 * @throws GestioneListeException Viene lanciata se la categoria è quella di default o se non esiste
 	 */
 	public static void cancellaCategoria(String nome) throws GestioneListeException {
-		if(nome == null || nome.isBlank()) 
-	        throw new GestioneListeException("Il nome della categoria non può essere vuoto");
-	    
-	    if(!categorie.contains(nome)) 
-	        throw new GestioneListeException("Categoria non trovata");
-	    
-	    if(nome.equals(CATEGORIA_DEFAULT))
-	        throw new GestioneListeException("Non è possibile cancellare la categoria di default");
-	    
-	    categorie.remove(nome);
-
-	    for (Articolo a : articoli) {
-	        if (a.getCategoria().equalsIgnoreCase(nome)) {
-	            a.setCategoria(CATEGORIA_DEFAULT);
-	        }
-	    }
+		sistema.cancellaCategoria(nome);
+	}
+	
+	/**
+	 * Rinomina una categoria dell'anagrafica, gli articoli che vi appartengono passano alla nuova categoria
+	 * Non è permesso rinominare la categoria di default
+	 * 
+	 * @param vecchioNome Il nome attuale della categoria
+	 * @param nuovoNome Il nuovo nome della categoria
+	 * 
+	 * @throws GestioneListeException Viene lanciata se i nomi sono vuoti, se la categoria non esiste o è quella di default,
+	 * se il nuovo nome è già usato o se la rinomina renderebbe duplicato un articolo
+	 */
+	public static void rinominaCategoria(String vecchioNome, String nuovoNome) throws GestioneListeException {
+		sistema.rinominaCategoria(vecchioNome, nuovoNome);
+	}
+	
+	/**
+	 * Restituisce gli articoli del registro che appartengono a una categoria (senza distinzione tra maiuscole e minuscole)
+	 * 
+	 * @param categoria Il nome della categoria
+	 * 
+	 * @return Gli articoli della categoria, ordinati per nome
+	 */
+	public static List<Articolo> articoliInCategoria(String categoria) {
+		return sistema.articoliInCategoria(categoria);
 	}
 	
 	/**
@@ -206,7 +188,7 @@ public class GestioneListe {
 	 * @return true se la categoria esiste, false altrimenti
 	 */
 	public static boolean esisteCategoria(String nome) {
-	    return categorie.contains(nome);
+	    return sistema.esisteCategoria(nome);
 	}
 	
 	/**
@@ -218,16 +200,7 @@ public class GestioneListe {
 	 * @throws GestioneListeException Viene lanciata se l'articolo è già presente nel registro
 	 */
 	public static void inserisciArticolo(Articolo a) throws GestioneListeException {
-	    if (articoli.contains(a))
-	        throw new GestioneListeException("Articolo già esistente");
-	    
-	    // È qui che il gestore controlla la categoria dell'articolo
-	    String cat = a.getCategoria();
-	    if (!esisteCategoria(cat)) {
-	        inserisciCategoria(cat);
-	    }
-	    
-	    articoli.add(a);
+		sistema.inserisciArticolo(a);
 	}
 	
 	/**
@@ -238,13 +211,18 @@ public class GestioneListe {
 	 * @throws GestioneListeException Viene lanciata se l'articolo non è presente nel registro globale
 	 */
 	public static void cancellaArticolo(Articolo a) throws GestioneListeException {
-	    if(!articoli.contains(a)) throw new GestioneListeException("Articolo non trovato");
-	    
-	    articoli.remove(a);
-	    
-	    for (ListaDiArticoli lista : listeArticoli) {
-	        lista.rimuoviCompletamente(a);
-	    }
+		sistema.cancellaArticolo(a);
+	}
+	
+	/**
+	 * Restituisce le liste del sistema che contengono l'articolo, tra gli attivi o nel cestino
+	 * 
+	 * @param a L'articolo da cercare
+	 * 
+	 * @return Le liste che contengono l'articolo, ordinate per nome
+	 */
+	public static List<ListaDiArticoli> listeConArticolo(Articolo a) {
+		return sistema.listeConArticolo(a);
 	}
 	
 	/**
@@ -253,7 +231,7 @@ public class GestioneListe {
 	 * @return Tutti gli articoli
 	 */
 	public static List<Articolo> getArticoli() {
-		return articoli;
+		return sistema.getArticoli();
 	}
 	
 	/**
@@ -262,7 +240,7 @@ public class GestioneListe {
 	 * @return Tutte le categorie
 	 */
 	public static List<String> getCategorie() {
-		return categorie;
+		return sistema.getCategorie();
 	}
 
 	/**
@@ -271,123 +249,237 @@ public class GestioneListe {
 	 * @return Tutte le liste
 	 */
 	public static List<ListaDiArticoli> getListeArticoli() {
-	    return new ArrayList<>(listeArticoli);
+	    return sistema.getListeArticoli();
 	}
 	
 	// Salvataggio e caricamento da file 
 	
 	/**
-     * Salva l'intero stato del sistema (categorie, registro articoli e tutte le liste) in un file.
+     * Salva l'intero stato del sistema (categorie, registro articoli e tutte le liste) in un file,
+     * vedi {@link Persistenza#salvaSistema(String)}
      * 
      * @param nomeFile Il nome del file di salvataggio.
      * @throws IOException In caso di errori di scrittura.
      */
     public static void salvaSistema(String nomeFile) throws IOException {
-        PrintWriter out = new PrintWriter(new File(nomeFile));
-
-        // salva categorie
-        for (String cat : categorie) {
-            out.println("CATEGORIA:" + cat);
-        }
-
-        // salva articoli
-        for (Articolo a : articoli) {
-            out.printf("ARTICOLO:%s:%s:%.2f:%s%n", 
-                a.getNome(), a.getCategoria(), a.getPrezzo(), a.getNota());
-        }
-
-        // salva liste e articoli all'interno
-        for (ListaDiArticoli l : listeArticoli) {
-            out.println("LISTA:" + l.getNome());
-            
-            List<Articolo> cancellati = l.getArticoliCancellati();
-            for (Articolo a : l) { 
-                if (cancellati.contains(a)) {
-                    out.println("CANCELLATO:" + a.getNome() + ":" + a.getCategoria());
-                } else {
-                    out.println("ATTIVO:" + a.getNome() + ":" + a.getCategoria());
-                }
-            }
-        }
-        out.close();
-        modificato = false;
+        persistenza.salvaSistema(nomeFile);
     }
 
     /**
-     * Carica l'intero sistema da un file, ripristinando liste, articoli e categorie.
+     * Carica l'intero sistema da un file, ripristinando liste, articoli e categorie,
+     * vedi {@link Persistenza#caricaSistema(String)}
      * 
      * @param nomeFile Il file da cui caricare i dati.
-     * @throws IOException In caso di file mancante o errori di lettura.
+     * @throws IOException In caso di file mancante, danneggiato o errori di lettura.
      * @throws Exception Per errori di validazione dei dati caricati.
      */
     public static void caricaSistema(String nomeFile) throws Exception {
-        reset(); 
-        
-        BufferedReader in = new BufferedReader(new FileReader(nomeFile));
-        String linea;
-        ListaDiArticoli listaCorrente = null;
-
-        while ((linea = in.readLine()) != null) {
-            String[] dati = linea.split(":");
-            if (dati.length < 2) continue;
-
-            String tag = dati[0];
-
-            switch (tag) {
-            	case "CATEGORIA" -> {
-            		// controllo
-	                if (!esisteCategoria(dati[1])) {
-	                    inserisciCategoria(dati[1]);
-	                }
-	            }
-                
-	            case "ARTICOLO" -> {
-	                double prezzo = Double.parseDouble(dati[3].replace(",", "."));
-	                String nota = (dati.length == 5) ? dati[4] : "";
-	                Articolo nuovo = new Articolo(dati[1], dati[2], prezzo, nota);
-	                
-	                // controllo
-	                if (!articoli.contains(nuovo)) {
-	                    inserisciArticolo(nuovo);
-	                }
-	            }
-                
-                case "LISTA" -> {
-                    listaCorrente = new ListaDiArticoli(dati[1]);
-                    inserisciLista(listaCorrente);
-                }
-                
-                case "ATTIVO" -> {
-                    Articolo a = trovaArticoloGlobale(dati[1], dati[2]);
-                    if (listaCorrente != null && a != null) listaCorrente.inserisciArticolo(a);
-                }
-                
-                case "CANCELLATO" -> {
-                    Articolo a = trovaArticoloGlobale(dati[1], dati[2]);
-                    if (listaCorrente != null && a != null) {
-                        listaCorrente.inserisciArticolo(a);
-                        listaCorrente.cancellaArticolo(a);
-                    }
-                }
-            }
-        }
-        in.close();
-        modificato = false;
+        persistenza.caricaSistema(nomeFile);
     }
-
+    
+    /**
+     * Carica l'intero sistema da un file, leggendo subito solo categorie, articoli e nomi delle liste se richiesto,
+     * vedi {@link Persistenza#caricaSistema(String, boolean)}
+     * 
+     * @param nomeFile Il file da cui caricare i dati.
+     * @param suRichiesta true per leggere gli articoli delle liste al primo accesso, false per leggerli subito.
+     * @throws IOException In caso di file mancante, danneggiato o errori di lettura.
+     * @throws Exception Per errori di validazione dei dati caricati.
+     */
+    public static void caricaSistema(String nomeFile, boolean suRichiesta) throws Exception {
+        persistenza.caricaSistema(nomeFile, suRichiesta);
+    }
+    
+    /**
+     * Salva l'intero sistema in un file binario compatto, vedi {@link Persistenza#salvaSistemaBinario(String)}
+     * 
+     * @param nomeFile Il percorso del file di destinazione.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    public static void salvaSistemaBinario(String nomeFile) throws IOException {
+        persistenza.salvaSistemaBinario(nomeFile);
+    }
+    
     /**
-     * Metodo di utilità per trovare un articolo nel registro globale durante il caricamento.
+     * Carica l'intero sistema da un file scritto con {@link #salvaSistemaBinario(String)},
+     * vedi {@link Persistenza#caricaSistemaBinario(String)}
+     * 
+     * @param nomeFile Il file da cui caricare i dati.
+     * @throws IOException In caso di file mancante, non valido o errori di lettura.
+     * @throws Exception Per errori di validazione dei dati caricati.
+     */
+    public static void caricaSistemaBinario(String nomeFile) throws Exception {
+        persistenza.caricaSistemaBinario(nomeFile);
+    }
+    
+    /**
+     * Carica l'intero sistema da un file scritto con {@link #salvaSistemaBinario(String)}, leggendo subito
+     * solo categorie, articoli e nomi delle liste se richiesto, vedi {@link Persistenza#caricaSistemaBinario(String, boolean)}
+     * 
+     * @param nomeFile Il file da cui caricare i dati.
+     * @param suRichiesta true per leggere gli articoli delle liste al primo accesso, false per leggerli subito.
+     * @throws IOException In caso di file mancante, non valido o errori di lettura.
+     * @throws Exception Per errori di validazione dei dati caricati.
+     */
+    public static void caricaSistemaBinario(String nomeFile, boolean suRichiesta) throws Exception {
+        persistenza.caricaSistemaBinario(nomeFile, suRichiesta);
+    }
+    
+    /**
+     * Salva il sistema in una cartella divisa in segmenti, riscrivendo solo quelli modificati,
+     * vedi {@link Persistenza#salvaSistemaSuddiviso(String)}
+     * 
+     * @param cartella La cartella di destinazione, viene creata se non esiste.
+     * @return Il numero di segmenti scritti.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    public static int salvaSistemaSuddiviso(String cartella) throws IOException {
+        return persistenza.salvaSistemaSuddiviso(cartella);
+    }
+    
+    /**
+     * Carica il sistema da una cartella scritta con {@link #salvaSistemaSuddiviso(String)},
+     * vedi {@link Persistenza#caricaSistemaSuddiviso(String)}
+     * 
+     * @param cartella La cartella da cui caricare i dati.
+     * @throws IOException In caso di archivio mancante, non valido o errori di lettura.
+     * @throws Exception Per errori di validazione dei dati caricati.
+     */
+    public static void caricaSistemaSuddiviso(String cartella) throws Exception {
+        persistenza.caricaSistemaSuddiviso(cartella);
+    }
+    
+    // Salvataggio automatico
+    
+    /**
+     * Avvia il salvataggio automatico del sistema in un file di testo,
+     * vedi {@link Persistenza#avviaAutosalvataggio(String, long, int, Executor)}
+     * 
+     * @param nomeFile Il file di salvataggio.
+     * @param intervalloMs Intervallo massimo tra due salvataggi del sistema modificato, in millisecondi.
+     * @param maxModifiche Numero di modifiche dopo il quale il sistema viene salvato senza attendere l'intervallo.
+     * @param threadSistema Esegue un'operazione sul thread che modifica il sistema, {@code null} se non disponibile.
+     * @throws Exception Se il salvataggio automatico precedente ha riscontrato un errore.
+     */
+    public static void avviaAutosalvataggio(String nomeFile, long intervalloMs, int maxModifiche, Executor threadSistema) throws Exception {
+        persistenza.avviaAutosalvataggio(nomeFile, intervalloMs, maxModifiche, threadSistema);
+    }
+    
+    /**
+     * Ferma il salvataggio automatico, attendendo la scrittura dello stato già catturato
+     * 
+     * @throws Exception Se un salvataggio automatico ha riscontrato un errore.
+     */
+    public static void fermaAutosalvataggio() throws Exception {
+        persistenza.fermaAutosalvataggio();
+    }
+    
+    // Giornale delle modifiche
+    
+    /**
+     * Ripristina il sistema dall'ultimo salvataggio e dalle modifiche registrate nel giornale, poi attiva il giornale,
+     * vedi {@link Persistenza#apriGiornale(String, String)}
+     * 
+     * @param fileSalvataggio Il file di testo con l'ultimo salvataggio completo, può non esistere.
+     * @param fileGiornale Il file del giornale, viene creato se non esiste.
+     * @return true se è stato ripristinato un salvataggio o almeno una modifica, false se il sistema è vuoto.
+     * @throws Exception In caso di errori di lettura o di validazione dei dati caricati.
+     */
+    public static boolean apriGiornale(String fileSalvataggio, String fileGiornale) throws Exception {
+        return persistenza.apriGiornale(fileSalvataggio, fileGiornale);
+    }
+    
+    /**
+     * Ripristina il sistema e attiva il giornale, leggendo gli articoli delle liste al primo accesso se richiesto,
+     * vedi {@link Persistenza#apriGiornale(String, String, boolean)}
+     * 
+     * @param fileSalvataggio Il file di testo con l'ultimo salvataggio completo, può non esistere.
+     * @param fileGiornale Il file del giornale, viene creato se non esiste.
+     * @param suRichiesta true per leggere gli articoli delle liste al primo accesso, false per leggerli subito.
+     * @return true se è stato ripristinato un salvataggio o almeno una modifica, false se il sistema è vuoto.
+     * @throws Exception In caso di errori di lettura o di validazione dei dati caricati.
+     */
+    public static boolean apriGiornale(String fileSalvataggio, String fileGiornale, boolean suRichiesta) throws Exception {
+        return persistenza.apriGiornale(fileSalvataggio, fileGiornale, suRichiesta);
+    }
+    
+    /**
+     * Restituisce il numero dei record del giornale che non è stato possibile applicare all'ultima apertura
+     * del giornale, vedi {@link Persistenza#getRecordIgnorati()}
+     * 
+     * @return Il numero dei record ignorati
+     */
+    public static int getRecordIgnorati() {
+        return persistenza.getRecordIgnorati();
+    }
+    
+    /**
+     * Indica se il giornale è attivo, e quindi se le modifiche sono già persistenti senza un salvataggio completo
+     * 
+     * @return true se il giornale è attivo, false altrimenti
+     */
+    public static boolean isGiornaleAttivo() {
+        return persistenza.isGiornaleAttivo();
+    }
+    
+    /**
+     * Scrive su disco le modifiche registrate nel giornale senza attendere il prossimo commit periodico
+     * 
+     * @throws IOException In caso di errori di scrittura.
+     */
+    public static void sincronizzaGiornale() throws IOException {
+        persistenza.sincronizzaGiornale();
+    }
+    
+    /**
+     * Avvia in background la compattazione del giornale nel salvataggio, vedi {@link Persistenza#compattaGiornale()}
+     * 
+     * @return La compattazione in corso, il cui risultato indica se il salvataggio è stato sostituito,
+     * {@code null} se il giornale non è attivo
+     */
+    public static Future<Boolean> compattaGiornale() {
+        return persistenza.compattaGiornale();
+    }
+    
+    /**
+     * Scrive su disco le modifiche registrate e disattiva il giornale
+     * 
+     * @throws IOException In caso di errori di scrittura.
+     */
+    public static void chiudiGiornale() throws IOException {
+        persistenza.chiudiGiornale();
+    }
+    
+    /**
+     * Cerca un articolo nel registro globale tramite l'indice per nome e categoria (senza distinzione tra maiuscole e minuscole)
      * 
      * @param nome Il nome dell'articolo da cercare
      * @param categoria La categoria dell'articolo da cercare
      * @return L'oggetto {@link Articolo} trovato, oppure {@code null} se non presente
      */
-    private static Articolo trovaArticoloGlobale(String nome, String categoria) {
-        for (Articolo a : articoli) {
-            if (a.getNome().equalsIgnoreCase(nome) && a.getCategoria().equalsIgnoreCase(categoria)) {
-                return a;
-            }
-        }
-        return null;
+    public static Articolo trovaArticoloGlobale(String nome, String categoria) {
+        return sistema.trovaArticoloGlobale(nome, categoria);
+    }
+    
+    /**
+     * Cerca nel registro globale gli articoli il cui nome inizia con il prefisso indicato (senza distinzione tra maiuscole e minuscole)
+     * 
+     * @param prefisso Stringa da cercare all'inizio del nome
+     * @return Gli articoli trovati in ordine alfabetico, una lista vuota se il prefisso è nullo
+     */
+    public static List<Articolo> ricercaArticoloGlobale(String prefisso) {
+    	return sistema.ricercaArticoloGlobale(prefisso);
+    }
+    
+    /**
+     * Cerca nel registro globale gli articoli il cui nome contiene il testo indicato o gli somiglia,
+     * ignorando maiuscole, accenti e piccoli errori di battitura, vedi {@link SistemaListe#ricercaApprossimata(String, int)}
+     * 
+     * @param testo Il testo da cercare
+     * @param max Numero massimo di risultati da restituire
+     * @return Al più {@code max} articoli, dal più pertinente; una lista vuota se il testo è nullo o vuoto
+     */
+    public static List<Articolo> ricercaApprossimata(String testo, int max) {
+    	return sistema.ricercaApprossimata(testo, max);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,660 @@
+package modello;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * La classe {@code Giornale} registra in un file ad accodamento (write-ahead journal) ogni modifica apportata al sistema
+ * dopo l'ultimo salvataggio completo, così che all'avvio lo stato possa essere ricostruito rileggendo il salvataggio
+ * e applicando le modifiche registrate
+ * <p>Ogni file non vuoto inizia con {@link #INTESTAZIONE}, seguita dai record: ciascuno è composto da lunghezza, codice CRC32 e contenuto,
+ * cioè il tipo dell'operazione seguito dai suoi campi (stringhe come lunghezza e byte UTF-8, senza limiti di lunghezza,
+ * prezzi con {@link DataOutputStream#writeLong(long)}). I file senza intestazione, scritti dalle versioni precedenti,
+ * codificano le stringhe con {@link DataOutputStream#writeUTF(String)} e vengono ancora riletti
+ * <p>I record vengono accumulati in memoria e scritti su disco, con {@link FileChannel#force(boolean)}, da un thread
+ * in background ogni {@link #INTERVALLO_COMMIT_MS} millisecondi (group commit): un arresto improvviso fa perdere al più
+ * le modifiche dell'ultimo intervallo
+ * <p>Il giornale è diviso in segmenti: il file corrente, in cui vengono accodati i record, e i segmenti chiusi
+ * {@code <file>.1}, {@code <file>.2}, ... Quando il file corrente supera {@link #SOGLIA_COMPATTAZIONE} byte
+ * viene chiuso in un nuovo segmento e un thread in background lo compatta: rilegge il salvataggio, vi applica
+ * i segmenti chiusi con un {@link Compattatore} e sostituisce il salvataggio con il risultato, senza accedere
+ * allo stato del sistema e senza fermare le scritture. Il salvataggio indica l'ultimo segmento che comprende,
+ * per cui all'avvio vanno riletti solo i segmenti successivi e il file corrente
+ *
+ * @author Angie Albitres
+ */
+final class Giornale implements Closeable {
+
+	/** Inserimento di una lista vuota: nome */
+	static final byte INSERISCI_LISTA = 1;
+	/** Cancellazione di una lista: nome */
+	static final byte CANCELLA_LISTA = 2;
+	/** Inserimento di una categoria: nome */
+	static final byte INSERISCI_CATEGORIA = 3;
+	/** Cancellazione di una categoria: nome */
+	static final byte CANCELLA_CATEGORIA = 4;
+	/** Rinomina di una categoria: vecchio nome, nuovo nome */
+	static final byte RINOMINA_CATEGORIA = 5;
+	/** Inserimento di un articolo nel registro: nome, categoria, prezzo, nota */
+	static final byte INSERISCI_ARTICOLO = 6;
+	/** Cancellazione di un articolo dal registro: nome, categoria */
+	static final byte CANCELLA_ARTICOLO = 7;
+	/** Cambio di categoria di un articolo del registro: nome, categoria, nuova categoria */
+	static final byte CATEGORIA_ARTICOLO = 8;
+	/** Cambio di prezzo di un articolo del registro: nome, categoria, prezzo */
+	static final byte PREZZO_ARTICOLO = 9;
+	/** Cambio della nota di un articolo del registro: nome, categoria, nota */
+	static final byte NOTA_ARTICOLO = 10;
+	/** Inserimento di un articolo in una lista: lista, nome, categoria, prezzo, nota */
+	static final byte LISTA_INSERISCI = 11;
+	/** Spostamento di un articolo di una lista nel cestino: lista, nome, categoria */
+	static final byte LISTA_CANCELLA = 12;
+	/** Recupero di un articolo dal cestino di una lista: lista, nome, categoria */
+	static final byte LISTA_RECUPERA = 13;
+	/** Svuotamento del cestino di una lista: lista */
+	static final byte LISTA_SVUOTA_CESTINO = 14;
+	/** Rimozione definitiva di un articolo da una lista: lista, nome, categoria */
+	static final byte LISTA_RIMUOVI = 15;
+
+	/**
+	 * Intervallo tra due scritture su disco dei record accumulati
+	 */
+	static final long INTERVALLO_COMMIT_MS = 50;
+
+	/**
+	 * Dimensione del file corrente oltre la quale il giornale viene compattato nel salvataggio
+	 */
+	static final long SOGLIA_COMPATTAZIONE = 4L << 20;
+
+	/**
+	 * Intestazione dei file del giornale: una lunghezza nulla, che nessun record può avere, e la versione del formato
+	 */
+	private static final byte[] INTESTAZIONE = { 0, 0, 0, 0, 'G', 'L', 'A', 2 };
+
+	/**
+	 * Operazione da applicare durante la rilettura di un record
+	 */
+	interface Applicatore {
+		/**
+		 * Applica l'operazione registrata
+		 *
+		 * @param tipo Il tipo dell'operazione
+		 * @param campi I campi del record, da leggere nell'ordine in cui sono stati scritti
+		 *
+		 * @throws Exception Se l'operazione non può essere applicata
+		 */
+		void applica(byte tipo, Campi campi) throws Exception;
+	}
+
+	/**
+	 * Lettura dei campi di un record, nel formato del file da cui proviene
+	 */
+	static final class Campi {
+
+		/**
+		 * Il contenuto del record, dopo il tipo
+		 */
+		private final DataInputStream in;
+
+		/**
+		 * true se il file precede l'intestazione e le stringhe sono codificate con {@link DataOutputStream#writeUTF(String)}
+		 */
+		private final boolean precedente;
+
+		/**
+		 * Crea la lettura dei campi di un record
+		 *
+		 * @param in Il contenuto del record, dopo il tipo
+		 * @param precedente true se il file non ha l'intestazione
+		 */
+		private Campi(DataInputStream in, boolean precedente) {
+			this.in = in;
+			this.precedente = precedente;
+		}
+
+		/**
+		 * Legge il prossimo campo come stringa
+		 *
+		 * @return La stringa
+		 *
+		 * @throws IOException Se il record non contiene un'altra stringa
+		 */
+		String leggiStringa() throws IOException {
+			if (precedente)
+				return in.readUTF();
+
+			byte[] b = new byte[in.readInt()];
+			in.readFully(b);
+			return new String(b, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Legge il prossimo campo come numero
+		 *
+		 * @return Il numero
+		 *
+		 * @throws IOException Se il record non contiene un altro numero
+		 */
+		long leggiNumero() throws IOException {
+			return in.readLong();
+		}
+	}
+
+	/**
+	 * Conteggio dei record riletti con {@link Giornale#rileggi(Path, Applicatore, Rilettura)}, anche da più file
+	 */
+	static final class Rilettura {
+		/** Numero dei record applicati */
+		int applicati;
+		/** Numero dei record validi che non è stato possibile applicare */
+		int ignorati;
+	}
+
+	/**
+	 * Scrittura di un salvataggio completo del sistema
+	 */
+	interface Salvataggio {
+		/**
+		 * Scrive il salvataggio
+		 *
+		 * @param segmento L'ultimo segmento del giornale compreso nel salvataggio
+		 *
+		 * @throws IOException In caso di errori di scrittura
+		 */
+		void scrivi(int segmento) throws IOException;
+	}
+
+	/**
+	 * File corrente del giornale
+	 */
+	private final Path file;
+
+	/**
+	 * File di salvataggio a cui si riferisce il giornale
+	 */
+	private final Path salvataggio;
+
+	/**
+	 * Canale aperto sul file corrente, posizionato in fondo
+	 */
+	private FileChannel canale;
+
+	/**
+	 * Dimensione del file corrente
+	 */
+	private long dimensione;
+
+	/**
+	 * Numero dell'ultimo segmento chiuso
+	 */
+	private int ultimoSegmento;
+
+	/**
+	 * Protegge il canale: le scritture su disco non bloccano l'accodamento dei record
+	 */
+	private final Object disco = new Object();
+
+	/**
+	 * Serializza le sostituzioni del file di salvataggio
+	 */
+	private final Object sostituzione = new Object();
+
+	/**
+	 * Numero dei salvataggi completi, una compattazione iniziata prima di un salvataggio completo viene scartata
+	 */
+	private int generazione;
+
+	/**
+	 * Record non ancora scritti su disco
+	 */
+	private ByteArrayOutputStream inAttesa = new ByteArrayOutputStream();
+
+	/**
+	 * Appoggio per la codifica del contenuto di un record
+	 */
+	private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+	/**
+	 * Thread che scrive periodicamente i record accumulati
+	 */
+	private final ScheduledExecutorService commit;
+
+	/**
+	 * Thread che esegue le compattazioni
+	 */
+	private final ExecutorService compattazione;
+
+	/**
+	 * Compattazione accodata che non ha ancora chiuso il file corrente, {@code null} se nessuna
+	 */
+	private Future<Boolean> inCoda;
+
+	/**
+	 * Apre il giornale in accodamento, creando il file se non esiste
+	 * <p>I segmenti chiusi già compresi nel salvataggio vengono eliminati; un file corrente scritto da una versione
+	 * precedente, senza intestazione, viene chiuso in un segmento così da non mescolare i due formati
+	 *
+	 * @param file Il file corrente del giornale
+	 * @param salvataggio Il file di salvataggio a cui si riferisce il giornale
+	 * @param segmentoSalvato L'ultimo segmento compreso nel salvataggio
+	 *
+	 * @throws IOException In caso di errori di apertura
+	 */
+	Giornale(Path file, Path salvataggio, int segmentoSalvato) throws IOException {
+		this.file = file;
+		this.salvataggio = salvataggio;
+		ultimoSegmento = segmentoSalvato;
+		for (int n : segmenti(file))
+			ultimoSegmento = Math.max(ultimoSegmento, n);
+		eliminaSegmenti(segmentoSalvato);
+
+		if (Files.exists(file) && Files.size(file) > 0 && !intestato(file)) {
+			ultimoSegmento++;
+			Files.move(file, segmento(file, ultimoSegmento), StandardCopyOption.ATOMIC_MOVE);
+		}
+		apri();
+
+		commit = Executors.newSingleThreadScheduledExecutor(demone("giornale-commit"));
+		compattazione = Executors.newSingleThreadExecutor(demone("giornale-compattazione"));
+		commit.scheduleWithFixedDelay(this::commitPeriodico, INTERVALLO_COMMIT_MS, INTERVALLO_COMMIT_MS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Apre il file corrente posizionandosi in fondo, creandolo se non esiste
+	 *
+	 * @throws IOException In caso di errori di apertura
+	 */
+	private void apri() throws IOException {
+		canale = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		dimensione = canale.size();
+		canale.position(dimensione);
+	}
+
+	/**
+	 * Verifica se un file del giornale inizia con {@link #INTESTAZIONE}
+	 *
+	 * @param file Il file
+	 *
+	 * @return true se il file ha l'intestazione, false se è vuoto o scritto da una versione precedente
+	 *
+	 * @throws IOException In caso di errori di lettura
+	 */
+	private static boolean intestato(Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			return Arrays.equals(in.readNBytes(INTESTAZIONE.length), INTESTAZIONE);
+		}
+	}
+
+	/**
+	 * Crea i thread in background del giornale, che non impediscono la terminazione della JVM
+	 *
+	 * @param nome Il nome del thread
+	 *
+	 * @return La factory dei thread
+	 */
+	private static ThreadFactory demone(String nome) {
+		return r -> {
+			Thread t = new Thread(r, nome);
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
+	/**
+	 * Restituisce il file del giornale
+	 *
+	 * @return Il percorso del file
+	 */
+	Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Accoda un record; verrà scritto su disco al prossimo commit
+	 * <p>Il record viene codificato per intero prima di essere accodato: se la codifica fallisce l'errore
+	 * raggiunge subito chi ha eseguito la modifica e nessun altro record ne risente
+	 *
+	 * @param tipo Il tipo dell'operazione
+	 * @param campi I campi dell'operazione, di tipo {@link String} o {@link Long}
+	 *
+	 * @throws IllegalArgumentException Se un campo non è di un tipo previsto
+	 */
+	synchronized void scrivi(byte tipo, Object... campi) {
+		try {
+			record.reset();
+			DataOutputStream dati = new DataOutputStream(record);
+			dati.writeByte(tipo);
+			for (Object c : campi) {
+				if (c instanceof Long)
+					dati.writeLong((Long) c);
+				else if (c instanceof String) {
+					byte[] b = ((String) c).getBytes(StandardCharsets.UTF_8);
+					dati.writeInt(b.length);
+					dati.write(b);
+				} else
+					throw new IllegalArgumentException("Campo non valido: " + c);
+			}
+
+			CRC32 crc = new CRC32();
+			crc.update(record.toByteArray());
+
+			DataOutputStream out = new DataOutputStream(inAttesa);
+			out.writeInt(record.size());
+			out.writeInt((int) crc.getValue());
+			record.writeTo(out);
+		} catch (IOException e) {
+			// la scrittura in memoria non fallisce
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Scrive su disco i record accumulati e attende che siano resi persistenti
+	 * <p>Durante la scrittura su disco è possibile continuare ad accodare record. Se la scrittura fallisce il file
+	 * viene riportato alla dimensione precedente e i record tornano in attesa, davanti a quelli accodati nel frattempo,
+	 * così che la sincronizzazione successiva li scriva di nuovo
+	 *
+	 * @throws IOException In caso di errori di scrittura
+	 */
+	void sincronizza() throws IOException {
+		synchronized (disco) {
+			ByteArrayOutputStream daScrivere;
+			synchronized (this) {
+				if (inAttesa.size() == 0)
+					return;
+
+				daScrivere = inAttesa;
+				inAttesa = new ByteArrayOutputStream();
+			}
+
+			try {
+				// l'intestazione precede il primo record, un file senza record resta vuoto
+				ByteBuffer[] buf = { ByteBuffer.wrap(dimensione == 0 ? INTESTAZIONE : new byte[0]), ByteBuffer.wrap(daScrivere.toByteArray()) };
+				while (buf[1].hasRemaining())
+					canale.write(buf);
+				canale.force(false);
+				dimensione = canale.position();
+			} catch (IOException e) {
+				synchronized (this) {
+					inAttesa.writeTo(daScrivere);
+					inAttesa = daScrivere;
+				}
+				try {
+					canale.truncate(dimensione);
+					canale.position(dimensione);
+				} catch (IOException e2) {
+					e.addSuppressed(e2);
+				}
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Commit eseguito periodicamente dal thread in background, avvia la compattazione quando il file corrente
+	 * supera {@link #SOGLIA_COMPATTAZIONE}; un errore non interrompe i commit successivi, che ritentano la scrittura
+	 */
+	private void commitPeriodico() {
+		try {
+			sincronizza();
+			if (dimensione >= SOGLIA_COMPATTAZIONE)
+				compatta();
+		} catch (IOException e) {
+			// i record restano in attesa e vengono riscritti al prossimo commit
+		}
+	}
+
+	/**
+	 * Chiude il file corrente in un nuovo segmento e apre un file corrente vuoto
+	 *
+	 * @return Il numero del segmento chiuso
+	 *
+	 * @throws IOException In caso di errori di scrittura
+	 */
+	private int ruota() throws IOException {
+		synchronized (disco) {
+			sincronizza();
+			canale.close();
+
+			int segmento = ultimoSegmento + 1;
+			Files.move(file, segmento(file, segmento), StandardCopyOption.ATOMIC_MOVE);
+			ultimoSegmento = segmento;
+
+			apri();
+			return segmento;
+		}
+	}
+
+	/**
+	 * Esegue un salvataggio completo del sistema, che comprende tutte le modifiche registrate finora:
+	 * il giornale viene chiuso in un segmento, il salvataggio lo indica come compreso e i segmenti chiusi
+	 * vengono eliminati
+	 *
+	 * @param scrittura La scrittura del salvataggio
+	 *
+	 * @throws IOException In caso di errori di scrittura
+	 */
+	void salvataggioCompleto(Salvataggio scrittura) throws IOException {
+		int segmento = ruota();
+		synchronized (sostituzione) {
+			scrittura.scrivi(segmento);
+			generazione++;
+		}
+		eliminaSegmenti(segmento);
+	}
+
+	/**
+	 * Accoda in background una compattazione del giornale nel salvataggio, che comprenderà tutti i record accodati
+	 * finora; se una compattazione è già in coda e non ha ancora iniziato, viene restituita quella
+	 *
+	 * @return La compattazione, il cui risultato indica se il salvataggio è stato sostituito
+	 */
+	synchronized Future<Boolean> compatta() {
+		if (inCoda == null)
+			inCoda = compattazione.submit(this::eseguiCompattazione);
+		return inCoda;
+	}
+
+	/**
+	 * Compatta il giornale: chiude il file corrente in un segmento, applica al salvataggio i segmenti che non comprende
+	 * e lo sostituisce con il risultato, infine elimina i segmenti compattati
+	 *
+	 * @return true se il salvataggio è stato sostituito, false se nel frattempo è stato eseguito un salvataggio completo
+	 *
+	 * @throws Exception In caso di errori di lettura o scrittura
+	 */
+	private boolean eseguiCompattazione() throws Exception {
+		int segmento;
+		try {
+			segmento = ruota();
+		} finally {
+			synchronized (this) {
+				inCoda = null;
+			}
+		}
+		int inizio;
+		synchronized (sostituzione) {
+			inizio = generazione;
+		}
+
+		Compattatore stato = new Compattatore();
+		stato.carica(salvataggio);
+		if (stato.getSegmento() >= segmento)
+			return false;
+
+		Rilettura esito = new Rilettura();
+		for (int n : segmenti(file))
+			if (n > stato.getSegmento() && n <= segmento)
+				rileggi(segmento(file, n), stato, esito);
+
+		Path temporaneo = salvataggio.resolveSibling(salvataggio.getFileName() + ".compattazione");
+		stato.scrivi(temporaneo, segmento);
+
+		synchronized (sostituzione) {
+			if (generazione != inizio) {
+				Files.deleteIfExists(temporaneo);
+				return false;
+			}
+			SnapshotTesto.sostituisci(temporaneo, salvataggio);
+		}
+		eliminaSegmenti(segmento);
+		return true;
+	}
+
+	/**
+	 * Scrive su disco i record accumulati e chiude il giornale, attendendo la fine di un'eventuale compattazione
+	 *
+	 * @throws IOException In caso di errori di scrittura
+	 */
+	@Override
+	public void close() throws IOException {
+		commit.shutdown();
+		compattazione.shutdown();
+		try {
+			compattazione.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		synchronized (disco) {
+			try {
+				sincronizza();
+			} finally {
+				canale.close();
+			}
+		}
+	}
+
+	/**
+	 * Restituisce il percorso di un segmento chiuso
+	 *
+	 * @param file Il file corrente del giornale
+	 * @param segmento Il numero del segmento
+	 *
+	 * @return Il percorso del segmento
+	 */
+	static Path segmento(Path file, int segmento) {
+		return file.resolveSibling(file.getFileName() + "." + segmento);
+	}
+
+	/**
+	 * Elenca i segmenti chiusi di un giornale
+	 *
+	 * @param file Il file corrente del giornale
+	 *
+	 * @return I numeri dei segmenti esistenti, in ordine crescente
+	 *
+	 * @throws IOException In caso di errori di lettura della cartella
+	 */
+	static List<Integer> segmenti(Path file) throws IOException {
+		String prefisso = file.getFileName() + ".";
+		List<Integer> ris = new ArrayList<Integer>();
+
+		try (Stream<Path> cartella = Files.list(file.toAbsolutePath().getParent())) {
+			cartella.forEach(p -> {
+				String nome = p.getFileName().toString();
+				if (nome.length() > prefisso.length() && nome.startsWith(prefisso)
+						&& nome.substring(prefisso.length()).chars().allMatch(c -> c >= '0' && c <= '9'))
+					ris.add(Integer.parseInt(nome.substring(prefisso.length())));
+			});
+		}
+
+		ris.sort(null);
+		return ris;
+	}
+
+	/**
+	 * Elimina i segmenti chiusi già compresi nel salvataggio
+	 *
+	 * @param finoA L'ultimo segmento da eliminare
+	 *
+	 * @throws IOException In caso di errori di eliminazione
+	 */
+	private void eliminaSegmenti(int finoA) throws IOException {
+		for (int n : segmenti(file))
+			if (n <= finoA)
+				Files.deleteIfExists(segmento(file, n));
+	}
+
+	/**
+	 * Rilegge un giornale applicando i record nell'ordine in cui sono stati scritti
+	 * <p>Il formato delle stringhe dipende dalla presenza di {@link #INTESTAZIONE}.
+	 * La lettura si ferma al primo record incompleto o danneggiato, tipicamente l'ultimo scritto prima di un arresto
+	 * improvviso, e il file viene troncato in quel punto. I record integri che non possono essere applicati
+	 * (ad esempio un'operazione già compresa nel salvataggio, se l'arresto è avvenuto tra la scrittura del salvataggio
+	 * e lo svuotamento del giornale) vengono saltati e contati in {@link Rilettura#ignorati}
+	 *
+	 * @param file Il file del giornale, se non esiste non viene applicato nulla
+	 * @param applicatore L'operazione che applica ciascun record
+	 * @param esito Il conteggio a cui aggiungere i record applicati e ignorati
+	 *
+	 * @throws IOException In caso di errori di lettura
+	 */
+	static void rileggi(Path file, Applicatore applicatore, Rilettura esito) throws IOException {
+		if (!Files.exists(file))
+			return;
+
+		byte[] contenuto = Files.readAllBytes(file);
+		ByteBuffer buf = ByteBuffer.wrap(contenuto);
+		boolean precedente = contenuto.length < INTESTAZIONE.length
+				|| !Arrays.equals(contenuto, 0, INTESTAZIONE.length, INTESTAZIONE, 0, INTESTAZIONE.length);
+		if (!precedente)
+			buf.position(INTESTAZIONE.length);
+		int valido = buf.position();
+
+		while (buf.remaining() >= 8) {
+			int lunghezza = buf.getInt();
+			int crcAtteso = buf.getInt();
+			if (lunghezza <= 0 || lunghezza > buf.remaining())
+				break;
+
+			CRC32 crc = new CRC32();
+			crc.update(contenuto, buf.position(), lunghezza);
+			if ((int) crc.getValue() != crcAtteso)
+				break;
+
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(contenuto, buf.position(), lunghezza));
+			buf.position(buf.position() + lunghezza);
+			valido = buf.position();
+
+			try {
+				applicatore.applica(in.readByte(), new Campi(in, precedente));
+				esito.applicati++;
+			} catch (Exception e) {
+				// operazione già presente nel salvataggio o non più applicabile
+				esito.ignorati++;
+			}
+		}
+
+		if (valido < contenuto.length) {
+			try (FileChannel c = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				c.truncate(valido);
+				c.force(true);
+			}
+		}
+	}
+}
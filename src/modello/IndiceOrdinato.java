@@ -0,0 +1,258 @@
+package modello;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * La classe {@code IndiceOrdinato} associa valori a chiavi mantenendo l'ordine di inserimento, come una
+ * {@link java.util.LinkedHashMap}, ma può essere letta da più thread senza lock mentre un solo thread alla volta la modifica
+ * <p>La ricerca per chiave usa una {@link ConcurrentHashMap}; l'ordine è dato dalla posizione assegnata a ogni
+ * inserimento, in una {@link ConcurrentSkipListMap}. Le letture non si bloccano mai: l'elenco dei valori riflette
+ * le modifiche completate prima della lettura e, al più, parte di quella in corso
+ * <p>Chi modifica l'indice può anche ottenerne una versione immutabile, vedi {@link #versione(UnaryOperator)}:
+ * le posizioni sono divise in blocchi e ogni versione riusa i blocchi delle versioni precedenti non modificati da allora
+ *
+ * @param <V> Il tipo dei valori
+ *
+ * @author Angie Albitres
+ */
+final class IndiceOrdinato<V> {
+
+	/**
+	 * Numero di bit della posizione che individuano un valore all'interno del suo blocco, vedi {@link #versione(UnaryOperator)}
+	 */
+	private static final int BIT_BLOCCO = 10;
+
+	/**
+	 * Valore associato a una chiave, con la sua posizione nell'ordine di inserimento
+	 */
+	private static final class Voce<V> {
+		final long posizione;
+		final V valore;
+
+		Voce(long posizione, V valore) {
+			this.posizione = posizione;
+			this.valore = valore;
+		}
+	}
+
+	/**
+	 * Voci indicizzate per chiave
+	 */
+	private final ConcurrentHashMap<String, Voce<V>> perChiave = new ConcurrentHashMap<String, Voce<V>>();
+
+	/**
+	 * Valori per posizione, nell'ordine di inserimento
+	 */
+	private final ConcurrentSkipListMap<Long, V> inOrdine = new ConcurrentSkipListMap<Long, V>();
+
+	/**
+	 * Posizione da assegnare al prossimo inserimento, usata solo da chi modifica l'indice
+	 */
+	private long prossima;
+
+	/**
+	 * Numero di valori presenti in ogni blocco non vuoto, usato solo da chi modifica l'indice
+	 */
+	private final TreeMap<Long, Integer> perBlocco = new TreeMap<Long, Integer>();
+
+	/**
+	 * Copie immutabili dei blocchi non modificati dall'ultima versione, usate solo da chi modifica l'indice
+	 */
+	private final Map<Long, Object[]> congelati = new HashMap<Long, Object[]>();
+
+	/**
+	 * Elenco immutabile dei valori di una versione, formato dai blocchi copiati
+	 */
+	private static final class Versione<V> extends AbstractList<V> implements RandomAccess {
+		private final Object[][] blocchi;
+
+		/** Posizione nell'elenco del primo valore di ogni blocco (mai vuoto), più la dimensione dell'elenco in fondo */
+		private final int[] inizi;
+
+		Versione(Object[][] blocchi) {
+			this.blocchi = blocchi;
+			this.inizi = new int[blocchi.length + 1];
+			for (int i = 0; i < blocchi.length; i++)
+				inizi[i + 1] = inizi[i] + blocchi[i].length;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V get(int indice) {
+			if (indice < 0 || indice >= size())
+				throw new IndexOutOfBoundsException(indice);
+
+			int b = Arrays.binarySearch(inizi, indice);
+			if (b < 0)
+				b = -b - 2;
+			return (V) blocchi[b][indice - inizi[b]];
+		}
+
+		@Override
+		public int size() {
+			return inizi[blocchi.length];
+		}
+	}
+
+	/**
+	 * Restituisce il valore associato a una chiave
+	 *
+	 * @param chiave La chiave
+	 *
+	 * @return Il valore, {@code null} se la chiave non è presente
+	 */
+	V get(String chiave) {
+		Voce<V> v = perChiave.get(chiave);
+		return v != null ? v.valore : null;
+	}
+
+	/**
+	 * Controlla se una chiave è presente
+	 *
+	 * @param chiave La chiave
+	 *
+	 * @return true se la chiave è presente, false altrimenti
+	 */
+	boolean contiene(String chiave) {
+		return perChiave.containsKey(chiave);
+	}
+
+	/**
+	 * Associa un valore a una chiave, in fondo all'ordine; se la chiave era già presente il valore precedente
+	 * viene sostituito e spostato in fondo
+	 *
+	 * @param chiave La chiave
+	 * @param valore Il valore
+	 */
+	void aggiungi(String chiave, V valore) {
+		long posizione = prossima++;
+		inOrdine.put(posizione, valore);
+		perBlocco.merge(posizione >>> BIT_BLOCCO, 1, Integer::sum);
+		congelati.remove(posizione >>> BIT_BLOCCO);
+		Voce<V> precedente = perChiave.put(chiave, new Voce<V>(posizione, valore));
+		if (precedente != null)
+			rimuoviPosizione(precedente.posizione);
+	}
+
+	/**
+	 * Sostituisce chiave e valore di una voce mantenendone la posizione
+	 *
+	 * @param vecchiaChiave La chiave attuale
+	 * @param nuovaChiave La nuova chiave, non ancora presente
+	 * @param valore Il nuovo valore
+	 *
+	 * @return true se la chiave era presente ed è stata sostituita, false altrimenti
+	 */
+	boolean rinomina(String vecchiaChiave, String nuovaChiave, V valore) {
+		Voce<V> v = perChiave.get(vecchiaChiave);
+		if (v == null)
+			return false;
+
+		inOrdine.put(v.posizione, valore);
+		congelati.remove(v.posizione >>> BIT_BLOCCO);
+		perChiave.put(nuovaChiave, new Voce<V>(v.posizione, valore));
+		perChiave.remove(vecchiaChiave);
+		return true;
+	}
+
+	/**
+	 * Rimuove una chiave e il suo valore
+	 *
+	 * @param chiave La chiave
+	 *
+	 * @return Il valore rimosso, {@code null} se la chiave non era presente
+	 */
+	V rimuovi(String chiave) {
+		Voce<V> v = perChiave.remove(chiave);
+		if (v == null)
+			return null;
+
+		rimuoviPosizione(v.posizione);
+		return v.valore;
+	}
+
+	/**
+	 * Rimuove il valore in una posizione, aggiornando il conteggio del suo blocco
+	 *
+	 * @param posizione La posizione
+	 */
+	private void rimuoviPosizione(long posizione) {
+		inOrdine.remove(posizione);
+		long blocco = posizione >>> BIT_BLOCCO;
+		congelati.remove(blocco);
+		if (perBlocco.merge(blocco, -1, Integer::sum) == 0)
+			perBlocco.remove(blocco);
+	}
+
+	/**
+	 * Segnala che il valore associato a una chiave è cambiato senza essere sostituito, per cui la sua copia
+	 * nelle versioni successive va rifatta
+	 *
+	 * @param chiave La chiave
+	 */
+	void modificato(String chiave) {
+		Voce<V> v = perChiave.get(chiave);
+		if (v != null)
+			congelati.remove(v.posizione >>> BIT_BLOCCO);
+	}
+
+	/**
+	 * Restituisce una versione immutabile dei valori, nell'ordine di inserimento; va chiamato da chi modifica l'indice
+	 * <p>Vengono copiati solo i blocchi modificati dall'ultima versione, gli altri sono condivisi con essa:
+	 * una versione costa quindi quanto le modifiche intercorse, più un riferimento per blocco
+	 *
+	 * @param congela Restituisce la copia immutabile di un valore
+	 *
+	 * @return I valori copiati, in un elenco non modificabile
+	 */
+	List<V> versione(UnaryOperator<V> congela) {
+		Object[][] blocchi = new Object[perBlocco.size()][];
+		int i = 0;
+		for (Map.Entry<Long, Integer> e : perBlocco.entrySet()) {
+			long blocco = e.getKey();
+			Object[] copia = congelati.get(blocco);
+			if (copia == null) {
+				copia = new Object[e.getValue()];
+				int j = 0;
+				for (V valore : inOrdine.subMap(blocco << BIT_BLOCCO, (blocco + 1) << BIT_BLOCCO).values())
+					copia[j++] = congela.apply(valore);
+				congelati.put(blocco, copia);
+			}
+			blocchi[i++] = copia;
+		}
+		return new Versione<V>(blocchi);
+	}
+
+	/**
+	 * Restituisce una copia dei valori, nell'ordine di inserimento
+	 *
+	 * @return I valori
+	 */
+	List<V> valori() {
+		return new ArrayList<V>(inOrdine.values());
+	}
+
+	/**
+	 * Restituisce il numero di chiavi presenti
+	 *
+	 * @return Il numero di chiavi
+	 */
+	int dimensione() {
+		return perChiave.size();
+	}
+
+	@Override
+	public String toString() {
+		return "IndiceOrdinato [dimensione=" + dimensione() + "]";
+	}
+}
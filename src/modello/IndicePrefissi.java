@@ -0,0 +1,97 @@
+package modello;
+
+import java.util.Collection;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * La classe {@code IndicePrefissi} mantiene un insieme di articoli ordinati per chiave (nome, categoria) in minuscolo,
+ * così da rispondere alle ricerche per prefisso del nome senza scorrere tutti gli articoli
+ * <p>Poiché la chiave inizia con il nome in minuscolo, gli articoli il cui nome inizia con un prefisso occupano
+ * un intervallo contiguo dell'indice: una ricerca costa O(log n) per individuarlo più il numero di risultati
+ * <p>L'indice creato con {@link #concorrente()} può essere letto da più thread senza lock mentre un solo thread
+ * alla volta lo modifica; quello creato con il costruttore va protetto da chi lo usa
+ *
+ * @author Angie Albitres
+ */
+class IndicePrefissi {
+
+	/**
+	 * Articoli indicizzati per chiave, in ordine alfabetico
+	 */
+	private final NavigableMap<String, Articolo> indice;
+
+	/**
+	 * Crea un indice vuoto, da usare da un thread alla volta
+	 */
+	IndicePrefissi() {
+		this(new TreeMap<String, Articolo>());
+	}
+
+	/**
+	 * Crea un indice vuoto sulla mappa indicata
+	 *
+	 * @param indice La mappa, vuota
+	 */
+	private IndicePrefissi(NavigableMap<String, Articolo> indice) {
+		this.indice = indice;
+	}
+
+	/**
+	 * Crea un indice vuoto che può essere letto durante le modifiche, vedi {@link IndicePrefissi}
+	 *
+	 * @return L'indice
+	 */
+	static IndicePrefissi concorrente() {
+		return new IndicePrefissi(new ConcurrentSkipListMap<String, Articolo>());
+	}
+
+	/**
+	 * Aggiunge un articolo all'indice
+	 *
+	 * @param a L'articolo da indicizzare
+	 */
+	void aggiungi(Articolo a) {
+		indice.put(a.chiave(), a);
+	}
+
+	/**
+	 * Rimuove dall'indice l'articolo con la chiave indicata
+	 *
+	 * @param chiave La chiave dell'articolo da rimuovere
+	 */
+	void rimuovi(String chiave) {
+		indice.remove(chiave);
+	}
+
+	/**
+	 * Aggiorna la posizione di un articolo dopo il cambio della sua chiave
+	 *
+	 * @param vecchiaChiave La chiave con cui l'articolo era indicizzato
+	 * @param a L'articolo, già con la nuova chiave
+	 */
+	void rinomina(String vecchiaChiave, Articolo a) {
+		if (indice.get(vecchiaChiave) == a) {
+			indice.put(a.chiave(), a);
+			indice.remove(vecchiaChiave);
+		}
+	}
+
+	/**
+	 * Svuota l'indice
+	 */
+	void svuota() {
+		indice.clear();
+	}
+
+	/**
+	 * Aggiunge a {@code ris} gli articoli il cui nome inizia con il prefisso, in ordine alfabetico
+	 *
+	 * @param prefisso Il prefisso da cercare, già in minuscolo
+	 * @param ris La collezione in cui raccogliere i risultati
+	 */
+	void cerca(String prefisso, Collection<Articolo> ris) {
+		ris.addAll(indice.subMap(prefisso, true, prefisso + Character.MAX_VALUE, false).values());
+	}
+}
@@ -0,0 +1,391 @@
+package modello;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * La classe {@code IndiceTrigrammi} indicizza i nomi degli articoli per sequenze di tre caratteri (trigrammi)
+ * e risponde a ricerche per sottostringa, tolleranti agli errori di battitura e senza distinzione di accenti
+ * <p>I nomi vengono normalizzati in minuscolo, senza accenti e con gli spazi compattati; per la ricerca vengono
+ * visitati solo gli articoli che condividono almeno un trigramma con il testo cercato
+ * <p>I risultati sono ordinati per pertinenza: nome identico, nome che inizia con il testo, nome che lo contiene
+ * e infine somiglianza dei trigrammi (coefficiente di Dice)
+ * <p>Le modifiche vanno eseguite da un solo thread alla volta; le ricerche possono procedere in parallelo
+ * e non si bloccano: leggono l'indice in modo ottimistico con uno {@link StampedLock} e vengono ripetute
+ * solo se una modifica è avvenuta durante la lettura
+ *
+ * @author Angie Albitres
+ */
+class IndiceTrigrammi {
+
+	/**
+	 * Somiglianza minima perché un articolo che non contiene il testo cercato venga considerato un risultato
+	 */
+	static final double SOGLIA_SOMIGLIANZA = 0.45;
+
+	/**
+	 * Numero di letture ottimistiche tentate da una ricerca prima di attendere la fine delle modifiche
+	 */
+	private static final int TENTATIVI_OTTIMISTICI = 1;
+
+	/**
+	 * Voce dell'indice: l'articolo con il nome normalizzato e il numero dei suoi trigrammi
+	 */
+	private static class Voce {
+		/** Articolo indicizzato */
+		final Articolo articolo;
+		/** Nome dell'articolo normalizzato */
+		final String normalizzato;
+		/** Numero di trigrammi distinti del nome */
+		final int numTrigrammi;
+		/** Posizione della voce in {@link IndiceTrigrammi#voci} */
+		final int id;
+
+		Voce(Articolo articolo, String normalizzato, int numTrigrammi, int id) {
+			this.articolo = articolo;
+			this.normalizzato = normalizzato;
+			this.numTrigrammi = numTrigrammi;
+			this.id = id;
+		}
+	}
+
+	/**
+	 * Lista di occorrenze di un trigramma: gli identificativi delle voci che lo contengono, in ordine crescente
+	 * <p>Gli identificativi sono assegnati in ordine di inserimento, quindi l'aggiunta avviene sempre in coda
+	 */
+	private static class Occorrenze {
+		/** Identificativi delle voci */
+		int[] id = new int[4];
+		/** Numero di identificativi validi */
+		int dimensione;
+
+		void aggiungi(int v) {
+			if (dimensione == id.length)
+				id = Arrays.copyOf(id, dimensione * 2);
+			id[dimensione++] = v;
+		}
+
+		boolean rimuovi(int v) {
+			int pos = Arrays.binarySearch(id, 0, dimensione, v);
+			if (pos < 0)
+				return false;
+
+			System.arraycopy(id, pos + 1, id, pos, dimensione - pos - 1);
+			dimensione--;
+			return true;
+		}
+	}
+
+	/**
+	 * Conteggi di una ricerca, riutilizzati dalle ricerche successive dello stesso thread
+	 */
+	private static class Conteggi {
+		/** Trigrammi in comune con il testo cercato, per identificativo di voce */
+		int[] conteggi = new int[0];
+		/** Ricerca in cui è stato aggiornato ciascun conteggio, evita di azzerare {@link #conteggi} a ogni ricerca */
+		int[] ricercaConteggio = new int[0];
+		/** Contatore delle ricerche */
+		int ricerche;
+	}
+
+	/**
+	 * Risultato candidato di una ricerca, con la sua pertinenza
+	 */
+	private static class Candidato {
+		final Voce voce;
+		final double punteggio;
+
+		Candidato(Voce voce, double punteggio) {
+			this.voce = voce;
+			this.punteggio = punteggio;
+		}
+	}
+
+	/**
+	 * Ordine crescente di pertinenza, a parità di punteggio il nome alfabeticamente successivo è meno pertinente
+	 */
+	private static final Comparator<Candidato> PERTINENZA = Comparator.<Candidato>comparingDouble(c -> c.punteggio)
+			.thenComparing(c -> c.voce.normalizzato, Comparator.reverseOrder());
+
+	/**
+	 * Per ogni trigramma le voci il cui nome lo contiene
+	 */
+	private final Map<String, Occorrenze> occorrenze = new ConcurrentHashMap<String, Occorrenze>();
+
+	/**
+	 * Voci indicizzate per identificativo, {@code null} per le voci rimosse
+	 */
+	private final List<Voce> voci = new ArrayList<Voce>();
+
+	/**
+	 * Voce associata a ciascun articolo indicizzato
+	 */
+	private final Map<Articolo, Voce> vociPerArticolo = new IdentityHashMap<Articolo, Voce>();
+
+	/**
+	 * Conteggi delle ricerche, uno per thread così che le ricerche non si intralcino
+	 */
+	private final ThreadLocal<Conteggi> statoRicerche = ThreadLocal.withInitial(Conteggi::new);
+
+	/**
+	 * Segnala alle ricerche le modifiche avvenute durante la lettura dell'indice
+	 */
+	private final StampedLock blocco = new StampedLock();
+
+	/**
+	 * Aggiunge un articolo all'indice
+	 *
+	 * @param a L'articolo da indicizzare
+	 */
+	void aggiungi(Articolo a) {
+		if (vociPerArticolo.containsKey(a))
+			return;
+
+		String normalizzato = normalizza(a.getNome());
+		Set<String> trigrammi = trigrammi(normalizzato);
+
+		long stamp = blocco.writeLock();
+		try {
+			Voce v = new Voce(a, normalizzato, trigrammi.size(), voci.size());
+
+			voci.add(v);
+			vociPerArticolo.put(a, v);
+			for (String t : trigrammi)
+				occorrenze.computeIfAbsent(t, k -> new Occorrenze()).aggiungi(v.id);
+		} finally {
+			blocco.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Rimuove un articolo dall'indice
+	 *
+	 * @param a L'articolo da rimuovere
+	 */
+	void rimuovi(Articolo a) {
+		Voce v = vociPerArticolo.remove(a);
+		if (v == null)
+			return;
+
+		long stamp = blocco.writeLock();
+		try {
+			voci.set(v.id, null);
+			for (String t : trigrammi(v.normalizzato)) {
+				Occorrenze o = occorrenze.get(t);
+				if (o != null && o.rimuovi(v.id) && o.dimensione == 0)
+					occorrenze.remove(t);
+			}
+		} finally {
+			blocco.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Cerca gli articoli più pertinenti rispetto al testo indicato
+	 *
+	 * @param testo Il testo da cercare
+	 * @param max Numero massimo di risultati
+	 *
+	 * @return Al più {@code max} articoli, dal più pertinente
+	 */
+	List<Articolo> cerca(String testo, int max) {
+		List<Articolo> ris = new ArrayList<Articolo>();
+		if (testo == null || max <= 0)
+			return ris;
+
+		String query = normalizza(testo);
+		if (query.isEmpty())
+			return ris;
+
+		for (int tentativo = 0; tentativo < TENTATIVI_OTTIMISTICI; tentativo++) {
+			long stamp = blocco.tryOptimisticRead();
+			if (stamp == 0)
+				continue;
+
+			try {
+				List<Voce> trovate = cercaVoci(query, max);
+				if (blocco.validate(stamp))
+					return articoli(trovate);
+			} catch (RuntimeException e) {
+				// una modifica concorrente può rendere incoerente la lettura, che va ripetuta
+				if (blocco.validate(stamp))
+					throw e;
+			}
+		}
+
+		long stamp = blocco.readLock();
+		try {
+			return articoli(cercaVoci(query, max));
+		} finally {
+			blocco.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Estrae gli articoli dalle voci trovate
+	 *
+	 * @param trovate Le voci, dalla più pertinente
+	 *
+	 * @return Gli articoli nello stesso ordine
+	 */
+	private static List<Articolo> articoli(List<Voce> trovate) {
+		List<Articolo> ris = new ArrayList<Articolo>(trovate.size());
+		for (Voce v : trovate)
+			ris.add(v.articolo);
+		return ris;
+	}
+
+	/**
+	 * Cerca le voci più pertinenti rispetto al testo normalizzato; se l'indice viene modificato durante la ricerca
+	 * il risultato può essere incoerente o può essere lanciata un'eccezione
+	 *
+	 * @param query Il testo normalizzato, non vuoto
+	 * @param max Numero massimo di risultati
+	 *
+	 * @return Al più {@code max} voci, dalla più pertinente
+	 */
+	private List<Voce> cercaVoci(String query, int max) {
+		List<Voce> ris = new ArrayList<Voce>();
+		Conteggi stato = statoRicerche.get();
+		int numVoci = voci.size();
+		if (stato.conteggi.length < numVoci) {
+			stato.conteggi = new int[numVoci];
+			stato.ricercaConteggio = new int[numVoci];
+		}
+		int[] conteggi = stato.conteggi, ricercaConteggio = stato.ricercaConteggio;
+
+		int ricerca = ++stato.ricerche;
+		int numTrigrammiQuery = 0;
+		int[] candidati = new int[16];
+		int numCandidati = 0;
+
+		List<Occorrenze> daVisitare = new ArrayList<Occorrenze>();
+		if (query.length() < 3) {
+			// testo troppo corto per avere trigrammi propri: si visitano i trigrammi che lo contengono
+			for (Map.Entry<String, Occorrenze> e : occorrenze.entrySet())
+				if (e.getKey().contains(query))
+					daVisitare.add(e.getValue());
+		} else {
+			for (String t : trigrammi(query)) {
+				numTrigrammiQuery++;
+				Occorrenze o = occorrenze.get(t);
+				if (o != null)
+					daVisitare.add(o);
+			}
+		}
+
+		for (Occorrenze o : daVisitare) {
+			for (int i = 0; i < o.dimensione; i++) {
+				int id = o.id[i];
+				if (ricercaConteggio[id] != ricerca) {
+					ricercaConteggio[id] = ricerca;
+					conteggi[id] = 0;
+					if (numCandidati == candidati.length)
+						candidati = Arrays.copyOf(candidati, numCandidati * 2);
+					candidati[numCandidati++] = id;
+				}
+				conteggi[id]++;
+			}
+		}
+
+		PriorityQueue<Candidato> migliori = new PriorityQueue<Candidato>(PERTINENZA);
+		for (int i = 0; i < numCandidati; i++) {
+			Voce v = voci.get(candidati[i]);
+			double dice = numTrigrammiQuery == 0 ? 0 : 2.0 * conteggi[v.id] / (numTrigrammiQuery + v.numTrigrammi);
+
+			// un nome che contiene il testo ne contiene tutti i trigrammi, esclusi al più i due di bordo
+			int pos = conteggi[v.id] >= numTrigrammiQuery - 2 ? v.normalizzato.indexOf(query) : -1;
+
+			if (pos < 0 && dice < SOGLIA_SOMIGLIANZA)
+				continue;
+
+			double punteggio = dice;
+			if (pos >= 0)
+				punteggio += 1;
+			if (pos == 0)
+				punteggio += 1;
+			if (v.normalizzato.length() == query.length() && pos == 0)
+				punteggio += 1;
+
+			if (migliori.size() < max) {
+				migliori.add(new Candidato(v, punteggio));
+			} else if (punteggio >= migliori.peek().punteggio) {
+				Candidato c = new Candidato(v, punteggio);
+				if (PERTINENZA.compare(c, migliori.peek()) > 0) {
+					migliori.poll();
+					migliori.add(c);
+				}
+			}
+		}
+
+		while (!migliori.isEmpty())
+			ris.add(migliori.poll().voce);
+
+		Collections.reverse(ris);
+		return ris;
+	}
+
+	/**
+	 * Normalizza un testo per il confronto: minuscolo, senza accenti, senza spazi iniziali e finali
+	 * e con gli spazi interni ridotti a uno solo
+	 *
+	 * @param testo Il testo da normalizzare
+	 *
+	 * @return Il testo normalizzato
+	 */
+	static String normalizza(String testo) {
+		String scomposto = Normalizer.normalize(testo, Normalizer.Form.NFD);
+		StringBuilder sb = new StringBuilder(scomposto.length());
+
+		boolean spazio = false;
+		for (int i = 0; i < scomposto.length(); i++) {
+			char c = scomposto.charAt(i);
+
+			if (Character.getType(c) == Character.NON_SPACING_MARK)
+				continue;
+
+			if (Character.isWhitespace(c)) {
+				spazio = sb.length() > 0;
+				continue;
+			}
+
+			if (spazio) {
+				sb.append(' ');
+				spazio = false;
+			}
+			sb.append(c);
+		}
+
+		return sb.toString().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Calcola i trigrammi distinti di un testo normalizzato, delimitato da uno spazio a inizio e fine
+	 * così che anche i bordi delle parole contribuiscano alla somiglianza
+	 *
+	 * @param normalizzato Il testo normalizzato
+	 *
+	 * @return L'insieme dei trigrammi
+	 */
+	private static Set<String> trigrammi(String normalizzato) {
+		String s = " " + normalizzato + " ";
+		Set<String> ris = new LinkedHashSet<String>();
+
+		for (int i = 0; i + 3 <= s.length(); i++)
+			ris.add(s.substring(i, i + 3));
+
+		return ris;
+	}
+}
@@ -1,10 +1,18 @@
 package modello;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import modello.exception.ArticoloException;
 import modello.exception.ListaDiArticoliException;
@@ -19,18 +27,199 @@ import modello.exception.ListaDiArticoliException;
  * <p>La classe implementa {@code Iterable} per permettere di scorrere sequenzialmente 
  * tutti i prodotti (sia attivi che cancellati) con un unico ciclo.
  * 
+ * <p>Una lista caricata su richiesta (vedi {@link Persistenza#caricaSistemaBinario(String, boolean)}) legge
+ * i suoi articoli dalla {@link Sorgente} al primo accesso; finché non viene modificata, la JVM può rilasciarli
+ * in caso di memoria insufficiente, e vengono riletti all'accesso successivo.
+ * 
+ * <p>Ogni lista ha un proprio lock, per cui liste diverse possono essere lette e modificate in parallelo da più thread.
+ * Le operazioni che modificano più liste insieme le bloccano con {@link #blocca(List)}, sempre nello stesso ordine,
+ * così da non poter restare in attesa l'una dell'altra.
+ * 
  * @author Angie Albitres
  */
 public class ListaDiArticoli implements Iterable<Articolo>{
 	
+	/** Contatore usato per assegnare a ogni lista la sua posizione nell'ordine di acquisizione dei lock. */
+	private static final AtomicLong CREAZIONI = new AtomicLong();
+	
+	/** Ordine in cui acquisire i lock di più liste: crescente per posizione di creazione, vedi {@link #blocca(List)}. */
+	private static final Comparator<ListaDiArticoli> ORDINE_BLOCCO = Comparator.comparingLong(l -> l.ordine);
+	
 	/** Nome identificativo della lista di articoli. */
     private String nome;
 
-    /** Elenco dei prodotti attualmente attivi e presenti nella lista della spesa. */
-    private List<Articolo> articoli;
+    /** Articoli della lista, {@code null} se la lista è caricata su richiesta e non è stata modificata, vedi {@link #contenuto()}. */
+    private Contenuto contenuto;
+    
+    /** Articoli letti dalla sorgente, che la JVM può rilasciare in caso di memoria insufficiente. */
+    private SoftReference<Contenuto> contenutoRilasciabile;
+    
+    /** Provenienza degli articoli di una lista caricata su richiesta, {@code null} se la lista è interamente in memoria. */
+    private Sorgente sorgente;
+    
+    /** Indica se gli articoli letti dalla sorgente sanno di essere contenuti nella lista, vedi {@link Articolo#getListe()}. */
+    private boolean collegata;
+    
+    /** Sistema in cui la lista è inserita, {@code null} se non è inserita: solo le modifiche di queste liste vengono registrate nel giornale. */
+    private volatile SistemaListe sistema;
+    
+    /** Numero di modifiche subite dalla lista, per riconoscere le liste da riscrivere in un archivio suddiviso, vedi {@link ArchivioSuddiviso}. */
+    private long modifiche;
+    
+    /** Ultima versione immutabile della lista, {@code null} se la lista è stata modificata dopo averla creata, vedi {@link #versione()}. */
+    private volatile Versione versione;
+    
+    /** Protegge gli articoli della lista e il loro caricamento; le modifiche di liste diverse non si attendono a vicenda. */
+    private final ReentrantLock blocco = new ReentrantLock();
+    
+    /** Posizione di creazione della lista, unica, che stabilisce l'ordine in cui acquisire i lock di più liste. */
+    private final long ordine = CREAZIONI.incrementAndGet();
+	
+	/**
+	 * Articoli attivi e cancellati di una lista, con i loro indici e il totale
+	 */
+	private static final class Contenuto {
+	    /** Prodotti attualmente attivi e presenti nella lista della spesa, indicizzati per chiave (nome, categoria) in ordine di inserimento. */
+	    final ElencoArticoli articoli = new ElencoArticoli();
+
+	    /** Storico dei prodotti rimossi (cestino) che possono essere recuperati, indicizzati per chiave (nome, categoria) in ordine di rimozione. */
+	    final ElencoArticoli articoliCancellati = new ElencoArticoli();
+	    
+	    /** Indice alfabetico degli articoli attivi, usato per la ricerca per prefisso. */
+	    final IndicePrefissi indiceArticoli = new IndicePrefissi();
 
-    /** Storico dei prodotti rimossi (cestino) che possono essere recuperati. */
-    private List<Articolo> articoliCancellati;
+	    /** Indice alfabetico degli articoli cancellati, usato per la ricerca per prefisso. */
+	    final IndicePrefissi indiceCancellati = new IndicePrefissi();
+	    
+	    /** Somma in centesimi dei prezzi degli articoli attivi, aggiornata a ogni operazione sulla lista e a ogni cambio di prezzo. */
+	    long totale;
+	    
+	    /**
+	     * Aggiunge un articolo letto da un salvataggio
+	     * 
+	     * @param a L'articolo da aggiungere
+	     * @param cancellato true se l'articolo va nel cestino, false se tra gli attivi
+	     * 
+	     * @return false se la lista contiene già un articolo con la stessa chiave, true altrimenti
+	     */
+	    boolean aggiungi(Articolo a, boolean cancellato) {
+	    	String chiave = a.chiave();
+	    	if (articoli.containsKey(chiave) || articoliCancellati.containsKey(chiave))
+	    		return false;
+	    	
+	    	if (cancellato) {
+	    		articoliCancellati.put(chiave, a);
+	    		indiceCancellati.aggiungi(a);
+	    	}
+	    	else {
+	    		articoli.put(chiave, a);
+	    		indiceArticoli.aggiungi(a);
+	    		totale += a.getPrezzoCentesimi();
+	    	}
+	    	return true;
+	    }
+	}
+	
+	/**
+	 * Copia immutabile del contenuto di una lista in un certo momento, vedi {@link ListaDiArticoli#versione()}
+	 * <p>Contiene le copie immutabili degli articoli (vedi {@link Articolo#versione()}), condivise con le altre versioni
+	 * finché gli articoli non vengono modificati, e può essere letta da qualsiasi thread senza lock
+	 * <p>Fuori dal modello si ottiene con {@link Versioni#lista(ListaDiArticoli)}
+	 */
+	public static final class Versione {
+		/** La lista di cui questa è una versione */
+		final ListaDiArticoli lista;
+		
+		/** Nome della lista */
+		final String nome;
+		
+		/** Articoli attivi, in ordine di inserimento */
+		final List<Articolo> attivi;
+		
+		/** Articoli nel cestino, in ordine di rimozione */
+		final List<Articolo> cancellati;
+		
+		/** Somma in centesimi dei prezzi degli articoli attivi */
+		final long totale;
+		
+		/** Numero di modifiche della lista al momento della copia, vedi {@link ListaDiArticoli#getModifiche()} */
+		final long modifiche;
+		
+		Versione(ListaDiArticoli lista, List<Articolo> attivi, List<Articolo> cancellati, long modifiche) {
+			this.lista = lista;
+			this.nome = lista.nome;
+			this.attivi = attivi;
+			this.cancellati = cancellati;
+			this.modifiche = modifiche;
+			
+			long t = 0;
+			for (Articolo a : attivi)
+				t += a.getPrezzoCentesimi();
+			this.totale = t;
+		}
+		
+		/**
+		 * Restituisce il nome della lista
+		 * 
+		 * @return Il nome
+		 */
+		public String getNome() {
+			return nome;
+		}
+		
+		/**
+		 * Restituisce gli articoli attivi
+		 * 
+		 * @return Le copie immutabili degli articoli, in ordine di inserimento, in una lista non modificabile
+		 */
+		public List<Articolo> getAttivi() {
+			return attivi;
+		}
+		
+		/**
+		 * Restituisce gli articoli nel cestino
+		 * 
+		 * @return Le copie immutabili degli articoli, in ordine di rimozione, in una lista non modificabile
+		 */
+		public List<Articolo> getCancellati() {
+			return cancellati;
+		}
+		
+		/**
+		 * Restituisce il totale degli articoli attivi
+		 * 
+		 * @return La somma dei prezzi in centesimi
+		 */
+		public long getTotaleCentesimi() {
+			return totale;
+		}
+	}
+	
+	/**
+	 * Provenienza degli articoli di una lista caricata su richiesta
+	 */
+	interface Sorgente {
+		/**
+		 * Legge gli articoli della lista
+		 * 
+		 * @param attivi Riceve gli articoli attivi, in ordine di inserimento
+		 * @param cancellati Riceve gli articoli nel cestino, in ordine di rimozione
+		 * 
+		 * @throws IOException In caso di errori di lettura o di dati non validi
+		 */
+		void leggi(List<Articolo> attivi, List<Articolo> cancellati) throws IOException;
+		
+		/**
+		 * Controlla, senza leggere l'intera lista, se contiene un articolo tra gli attivi o nel cestino
+		 * 
+		 * @param a L'articolo da cercare
+		 * 
+		 * @return true se la lista contiene l'articolo, false altrimenti
+		 * 
+		 * @throws IOException In caso di errori di lettura o di dati non validi
+		 */
+		boolean contiene(Articolo a) throws IOException;
+	}
 	
 	/**
 	 * Restituisce un iteratore che attraversa prima gli articoli attivi e poi quelli cancellati
@@ -44,16 +233,29 @@ public class ListaDiArticoli implements Iterable<Articolo>{
 	
 	/**
 	 * Classe interna (privata) che implementa la logica di iterazione su due liste distinte
+	 * <p>Gli articoli vengono copiati alla creazione dell'iteratore, per cui la lista può essere modificata
+	 * da altri thread durante l'iterazione
 	 */
 	private class IteratoreArticoli implements Iterator<Articolo>{
 		/**
 		 * Iteratore per la lista degli articoli attivi
 		 */
-		private final Iterator<Articolo> it1 = articoli.iterator();
+		private final Iterator<Articolo> it1;
 		/**
 		 * Iteratore per la lista degli articoli cancellati
 		 */
-        private final Iterator<Articolo> it2 = articoliCancellati.iterator();
+        private final Iterator<Articolo> it2;
+        
+        IteratoreArticoli() {
+        	blocco.lock();
+        	try {
+        		Contenuto c = contenuto();
+        		it1 = new ArrayList<Articolo>(c.articoli.values()).iterator();
+        		it2 = new ArrayList<Articolo>(c.articoliCancellati.values()).iterator();
+        	} finally {
+        		blocco.unlock();
+        	}
+        }
         
 		@Override
 		public boolean hasNext() {
@@ -85,8 +287,117 @@ public class ListaDiArticoli implements Iterable<Articolo>{
         }
 		
 		this.nome = nome.trim();
-		this.articoli = new ArrayList<Articolo>();
-		this.articoliCancellati = new ArrayList<Articolo>();
+		this.contenuto = new Contenuto();
+	}
+	
+	/**
+	 * Crea una lista caricata su richiesta, i cui articoli vengono letti dalla sorgente al primo accesso
+	 * 
+	 * @param nome Il nome della lista
+	 * @param sorgente La provenienza degli articoli
+	 * 
+	 * @throws ListaDiArticoliException Viene lanciata se il nome della lista è nullo o vuoto
+	 */
+	ListaDiArticoli(String nome, Sorgente sorgente) throws ListaDiArticoliException {
+		this(nome);
+		this.contenuto = null;
+		this.sorgente = sorgente;
+	}
+	
+	/**
+	 * Restituisce gli articoli della lista, leggendoli dalla sorgente se non sono in memoria; va chiamato con il lock della lista
+	 * 
+	 * @return Gli articoli della lista
+	 */
+	private Contenuto contenuto() {
+		Contenuto c = inMemoria();
+		if (c == null) {
+			c = leggiSorgente();
+			contenutoRilasciabile = new SoftReference<Contenuto>(c);
+		}
+		return c;
+	}
+	
+	/**
+	 * Restituisce gli articoli della lista se sono in memoria, senza leggerli dalla sorgente
+	 * 
+	 * @return Gli articoli della lista, {@code null} se non sono in memoria
+	 */
+	private Contenuto inMemoria() {
+		if (contenuto != null)
+			return contenuto;
+		return contenutoRilasciabile != null ? contenutoRilasciabile.get() : null;
+	}
+	
+	/**
+	 * Restituisce gli articoli della lista prima di una modifica: da questo momento restano in memoria,
+	 * perché non corrispondono più alla sorgente
+	 * 
+	 * @return Gli articoli della lista
+	 */
+	private Contenuto modificabile() {
+		if (contenuto == null) {
+			contenuto = contenuto();
+			contenutoRilasciabile = null;
+			sorgente = null;
+		}
+		return contenuto;
+	}
+	
+	/**
+	 * Legge gli articoli dalla sorgente; alla prima lettura gli articoli vengono collegati alla lista
+	 * <p>Gli articoli con la stessa chiave di uno già letto vengono ignorati
+	 * 
+	 * @return Gli articoli della lista
+	 * 
+	 * @throws UncheckedIOException Se la sorgente non può essere letta
+	 */
+	private Contenuto leggiSorgente() {
+		List<Articolo> attivi = new ArrayList<Articolo>();
+		List<Articolo> cancellati = new ArrayList<Articolo>();
+		try {
+			sorgente.leggi(attivi, cancellati);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Impossibile leggere la lista " + nome, e);
+		}
+		
+		Contenuto c = new Contenuto();
+		for (Articolo a : attivi)
+			c.aggiungi(a, false);
+		for (Articolo a : cancellati)
+			c.aggiungi(a, true);
+		
+		if (!collegata) {
+			for (Articolo a : c.articoli.values())
+				a.aggiungiLista(this);
+			for (Articolo a : c.articoliCancellati.values())
+				a.aggiungiLista(this);
+			collegata = true;
+		}
+		return c;
+	}
+	
+	/**
+	 * Legge dalla sorgente una lista caricata su richiesta e mai letta, se contiene l'articolo indicato:
+	 * da quel momento l'articolo sa di essere contenuto nella lista
+	 * 
+	 * @param a L'articolo da cercare
+	 * 
+	 * @throws UncheckedIOException Se la sorgente non può essere letta
+	 */
+	void leggiSeContiene(Articolo a) {
+		blocco.lock();
+		try {
+			if (sorgente == null || collegata)
+				return;
+			
+			if (sorgente.contiene(a))
+				contenuto();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Impossibile leggere la lista " + nome, e);
+		} finally {
+			blocco.unlock();
+		}
 	}
 	
 	/**
@@ -99,12 +410,36 @@ public class ListaDiArticoli implements Iterable<Articolo>{
 	}
 	
 	/**
-	 * Restituisce la lista dei cancellati
+	 * Restituisce una copia della lista dei cancellati
 	 * 
 	 * @return La lista dei cancellati
 	 */
 	public List<Articolo> getArticoliCancellati() {
-		return articoliCancellati;
+		blocco.lock();
+		try {
+			return new ArrayList<>(contenuto().articoliCancellati.values());
+		} finally {
+			blocco.unlock();
+		}
+	}
+	
+	/**
+	 * Verifica se un articolo si trova nel cestino della lista
+	 * 
+	 * @param a L'articolo da controllare
+	 * 
+	 * @return true se l'articolo è tra i cancellati, false altrimenti
+	 */
+	public boolean isCancellato(Articolo a) {
+		if (a == null)
+			return false;
+		
+		blocco.lock();
+		try {
+			return contenuto().articoliCancellati.containsKey(a.chiave());
+		} finally {
+			blocco.unlock();
+		}
 	}
 	
 	/**
@@ -113,7 +448,12 @@ public class ListaDiArticoli implements Iterable<Articolo>{
 	 * @return Numero di articoli attivi
 	 */
 	public int numEl() {
-		return articoli.size();
+		blocco.lock();
+		try {
+			return contenuto().articoli.size();
+		} finally {
+			blocco.unlock();
+		}
 	}
 	
 	/**
@@ -122,25 +462,140 @@ public class ListaDiArticoli implements Iterable<Articolo>{
 	 * @return Numero di articoli cancellati
 	 */
 	public int numElCanc() {
-		return articoliCancellati.size();
+		blocco.lock();
+		try {
+			return contenuto().articoliCancellati.size();
+		} finally {
+			blocco.unlock();
+		}
 	}
 	
 	/**
 	 * Aggiunge un nuovo articolo alla lista attiva. Se il prodotto era tra i cancellati, lo ripristina
+	 * <p>Se la lista è inserita in un sistema viene inserito l'articolo registrato con lo stesso nome e la stessa categoria
 	 * 
 	 * @param a L'oggetto {@code Articolo} da inserire
 	 * 
 	 * @throws ListaDiArticoliException Viene lanciata se l'articolo è già presente negli attivi
+	 * o se la lista è inserita in un sistema che non lo registra
 	 */
 	public void inserisciArticolo(Articolo a) throws ListaDiArticoliException {
-		if(articoli.contains(a))
+		Lock inserimento = bloccaArticoli();
+		try {
+			a = inserisci(a, sistema);
+			registra(Giornale.LISTA_INSERISCI, a, a.getPrezzoCentesimi(), a.getNota());
+		} finally {
+			sbloccaArticoli(inserimento);
+		}
+	}
+	
+	/**
+	 * Acquisisce il lock della lista per un'operazione che cerca un articolo per chiave o lo collega alla lista
+	 * <p>Se la lista è inserita in un sistema acquisisce prima il lock che esclude le operazioni a cascata,
+	 * vedi {@link SistemaListe#inserimento()}, così che la categoria di un articolo registrato, e quindi la sua chiave,
+	 * non possa cambiare durante l'operazione
+	 * 
+	 * @return Il lock del sistema acquisito, da passare a {@link #sbloccaArticoli(Lock)}; {@code null} se la lista non è in un sistema
+	 */
+	private Lock bloccaArticoli() {
+		while (true) {
+			SistemaListe s = sistema;
+			Lock inserimento = s != null ? s.inserimento() : null;
+			if (inserimento != null)
+				inserimento.lock();
+			blocco.lock();
+			
+			// la lista è stata inserita in un sistema o rimossa nel frattempo
+			if (sistema == s)
+				return inserimento;
+			
+			blocco.unlock();
+			if (inserimento != null)
+				inserimento.unlock();
+		}
+	}
+	
+	/**
+	 * Rilascia i lock acquisiti con {@link #bloccaArticoli()}
+	 * 
+	 * @param inserimento Il lock del sistema restituito da {@link #bloccaArticoli()}
+	 */
+	private void sbloccaArticoli(Lock inserimento) {
+		blocco.unlock();
+		if (inserimento != null)
+			inserimento.unlock();
+	}
+	
+	/**
+	 * Aggiunge un articolo alla lista attiva senza registrare l'operazione nel giornale, vedi {@link #inserisciArticolo(Articolo)};
+	 * va chiamato con il lock della lista
+	 * <p>In una lista inserita in un sistema entra solo l'articolo registrato nel sistema con lo stesso nome e la stessa
+	 * categoria, al posto di una sua copia, così che le modifiche e le cancellazioni del registro raggiungano la lista
+	 * 
+	 * @param a L'articolo da inserire
+	 * @param s Il sistema in cui la lista è inserita, {@code null} se non è inserita
+	 * 
+	 * @return L'articolo inserito
+	 * 
+	 * @throws ListaDiArticoliException Viene lanciata se l'articolo è già presente negli attivi
+	 * o se la lista è inserita in un sistema che non registra l'articolo
+	 */
+	private Articolo inserisci(Articolo a, SistemaListe s) throws ListaDiArticoliException {
+		if (s != null) {
+			Articolo registrato = s.trovaArticoloGlobale(a.getNome(), a.getCategoria());
+			if (registrato == null)
+				throw new ListaDiArticoliException("L'articolo " + a.getNome() + " non è registrato nel sistema della lista");
+			a = registrato;
+		}
+		
+		String chiave = a.chiave();
+		if(contenuto().articoli.containsKey(chiave))
 			throw new ListaDiArticoliException("Articolo già presente");
 		
-		if(articoliCancellati.contains(a)) {
-			articoliCancellati.remove(a);
+		Contenuto c = modificabile();
+		// l'articolo che torna dal cestino non smette mai di risultare nella lista, vedi Articolo#getListe()
+		a.aggiungiLista(this);
+		Articolo cancellato = c.articoliCancellati.remove(chiave);
+		if(cancellato != null) {
+			c.indiceCancellati.rimuovi(chiave);
+			if (cancellato != a)
+				cancellato.rimuoviLista(this);
 		}
 		
-		articoli.add(a);
+		c.articoli.put(chiave, a);
+		c.indiceArticoli.aggiungi(a);
+		c.totale += a.getPrezzoCentesimi();
+		modificata();
+		return a;
+	}
+
+	/**
+	 * Aggiunge alla lista, appena creata, un articolo letto da un salvataggio, senza registrarla tra le liste dell'articolo
+	 * <p>Modifica solo la lista, per cui liste diverse che condividono articoli possono essere caricate in parallelo;
+	 * a caricamento terminato va chiamato {@link #collegaArticoli()}
+	 *
+	 * @param a L'articolo da aggiungere
+	 * @param cancellato true se l'articolo va nel cestino, false se tra gli attivi
+	 *
+	 * @throws ListaDiArticoliException Viene lanciata se l'articolo è già presente nella lista
+	 */
+	void caricaArticolo(Articolo a, boolean cancellato) throws ListaDiArticoliException {
+		blocco.lock();
+		try {
+			if(!modificabile().aggiungi(a, cancellato))
+				throw new ListaDiArticoliException("Articolo già presente");
+			modificata();
+		} finally {
+			blocco.unlock();
+		}
+	}
+
+	/**
+	 * Registra la lista tra le liste di ciascuno dei suoi articoli, dopo {@link #caricaArticolo(Articolo, boolean)}
+	 */
+	void collegaArticoli() {
+		for(Articolo a : this)
+			a.aggiungiLista(this);
 	}
 	/**
 	 * Crea e inserisce un nuovo articolo fornendo solo il nome
@@ -196,6 +651,7 @@ public class ListaDiArticoli implements Iterable<Articolo>{
 	
 	/**
 	 * Cerca articoli il cui nome inizia con il prefisso indicato, sia tra gli attivi che tra i cancellati
+	 * <p>Vengono restituiti prima gli articoli attivi e poi quelli cancellati, ciascun gruppo in ordine alfabetico
 	 * 
 	 * @param prefisso Stringa da cercare all'inizio del nome
 	 * 
@@ -210,9 +666,14 @@ public class ListaDiArticoli implements Iterable<Articolo>{
 		// normalizzazione prefisso
 		prefisso = prefisso.toLowerCase();
 		
-		for(Articolo a: this) 
-			if(a.getNome().toLowerCase().startsWith(prefisso))
-				ris.add(a);
+		blocco.lock();
+		try {
+			Contenuto c = contenuto();
+			c.indiceArticoli.cerca(prefisso, ris);
+			c.indiceCancellati.cerca(prefisso, ris);
+		} finally {
+			blocco.unlock();
+		}
 		return ris;
 	}
 	
@@ -224,12 +685,27 @@ public class ListaDiArticoli implements Iterable<Articolo>{
 	 * @throws ListaDiArticoliException Viene lanciata se l'articolo non è presente negli attivi
 	 */
 	public void cancellaArticolo(Articolo a) throws ListaDiArticoliException {
-		if(articoli.contains(a)) {
-			articoli.remove(a);
-			articoliCancellati.add(a);
-		}
-		else {
-			throw new ListaDiArticoliException("Articolo non presente nella lista, è impossibile rimuoverlo");
+		Lock inserimento = bloccaArticoli();
+		try {
+			String chiave = a.chiave();
+			Contenuto c = modificabile();
+			Articolo presente = c.articoli.remove(chiave);
+			if(presente != null) {
+				c.indiceArticoli.rimuovi(chiave);
+				presente.rimuoviLista(this);
+				c.totale -= presente.getPrezzoCentesimi();
+				// nel cestino va l'articolo della lista, non quello ricevuto, che può esserne una copia
+				c.articoliCancellati.put(chiave, presente);
+				c.indiceCancellati.aggiungi(presente);
+				presente.aggiungiLista(this);
+				modificata();
+				registra(Giornale.LISTA_CANCELLA, presente);
+			}
+			else {
+				throw new ListaDiArticoliException("Articolo non presente nella lista, è impossibile rimuoverlo");
+			}
+		} finally {
+			sbloccaArticoli(inserimento);
 		}
 	}
 	
@@ -241,15 +717,27 @@ public class ListaDiArticoli implements Iterable<Articolo>{
 	 * @throws ListaDiArticoliException Viene lanciata se l'articolo non è tra i cancellati o se la lista dei cancellati è vuota
 	 */
 	public void recuperaArticolo(Articolo a) throws ListaDiArticoliException{
-		if(articoliCancellati.isEmpty())
-			throw new ListaDiArticoliException("La lista dei cancellati è vuota");
-		
-		if(articoliCancellati.contains(a)) {
-			articoliCancellati.remove(a);
-			this.inserisciArticolo(a); 
-		}
-		else {
-			throw new ListaDiArticoliException("Articolo non presente nei cancellati, è impossibile recuperarlo");
+		Lock inserimento = bloccaArticoli();
+		try {
+			if(contenuto().articoliCancellati.isEmpty())
+				throw new ListaDiArticoliException("La lista dei cancellati è vuota");
+			
+			Contenuto c = modificabile();
+			Articolo cancellato = c.articoliCancellati.remove(a.chiave());
+			if(cancellato != null) {
+				// l'articolo resta nella lista, per cui non serve aggiornare le liste che lo contengono
+				c.indiceCancellati.rimuovi(a.chiave());
+				c.articoli.put(cancellato.chiave(), cancellato);
+				c.indiceArticoli.aggiungi(cancellato);
+				c.totale += cancellato.getPrezzoCentesimi();
+				modificata();
+				registra(Giornale.LISTA_RECUPERA, cancellato);
+			}
+			else {
+				throw new ListaDiArticoliException("Articolo non presente nei cancellati, è impossibile recuperarlo");
+			}
+		} finally {
+			sbloccaArticoli(inserimento);
 		}
 	}
 	
@@ -257,25 +745,46 @@ public class ListaDiArticoli implements Iterable<Articolo>{
 	 * Svuota definitivamente la lista degli articoli cancellati
 	 */
 	public void svuotaCancellati() {
-		articoliCancellati.clear();
+		blocco.lock();
+		try {
+			Contenuto c = modificabile();
+			for (Articolo a : c.articoliCancellati.values())
+				a.rimuoviLista(this);
+			
+			c.articoliCancellati.clear();
+			c.indiceCancellati.svuota();
+			modificata();
+			
+			SistemaListe s = sistema;
+			if (s != null)
+				s.registra(Giornale.LISTA_SVUOTA_CESTINO, nome);
+		} finally {
+			blocco.unlock();
+		}
 	}
 	
 	/**
-	 * Calcola la somma dei prezzi di tutti i prodotti presenti nella lista attiva
+	 * Restituisce la somma dei prezzi di tutti i prodotti presenti nella lista attiva
+	 * <p>Il totale è mantenuto a ogni modifica, quindi la lettura non dipende dalla dimensione della lista
 	 * 
 	 * @return Il prezzo totale degli articoli attivi
 	 */
 	public double calcoloPrezzoTotale(){
-		double prezzoTotale = 0;
-		
-		if (articoli.isEmpty()) 
-			return 0.0;
-		
-		for(Articolo a: articoli) {
-			prezzoTotale += a.getPrezzo();
+		return Prezzo.inEuro(calcoloPrezzoTotaleCentesimi());
+	}
+	
+	/**
+	 * Restituisce la somma esatta dei prezzi di tutti i prodotti presenti nella lista attiva
+	 * 
+	 * @return Il prezzo totale degli articoli attivi in centesimi
+	 */
+	public long calcoloPrezzoTotaleCentesimi(){
+		blocco.lock();
+		try {
+			return contenuto().totale;
+		} finally {
+			blocco.unlock();
 		}
-		
-		return prezzoTotale;
 	}
 	
 	/**
@@ -284,8 +793,321 @@ public class ListaDiArticoli implements Iterable<Articolo>{
 	 * @param a L'articolo da rimuovere definitivamente da entrambe le liste
 	 */
 	public void rimuoviCompletamente(Articolo a) {
-	    this.articoli.remove(a);
-	    this.articoliCancellati.remove(a);
+		Lock inserimento = bloccaArticoli();
+		try {
+			String chiave = a.chiave();
+			Contenuto c = modificabile();
+			
+			Articolo rimosso = c.articoli.remove(chiave);
+			if (rimosso != null) {
+				c.indiceArticoli.rimuovi(chiave);
+				rimosso.rimuoviLista(this);
+				c.totale -= rimosso.getPrezzoCentesimi();
+			}
+			
+			rimosso = c.articoliCancellati.remove(chiave);
+			if (rimosso != null) {
+				c.indiceCancellati.rimuovi(chiave);
+				rimosso.rimuoviLista(this);
+			}
+			
+			modificata();
+			registra(Giornale.LISTA_RIMUOVI, a);
+		} finally {
+			sbloccaArticoli(inserimento);
+		}
+	}
+	
+	/**
+	 * Cerca un articolo della lista, tra gli attivi o nel cestino, per nome e categoria
+	 * 
+	 * @param nome Il nome dell'articolo
+	 * @param categoria La categoria dell'articolo
+	 * 
+	 * @return L'articolo trovato, {@code null} se non è presente
+	 */
+	Articolo trovaArticolo(String nome, String categoria) {
+		String chiave = Articolo.chiave(nome, categoria);
+		blocco.lock();
+		try {
+			Contenuto c = contenuto();
+			Articolo a = c.articoli.get(chiave);
+			return a != null ? a : c.articoliCancellati.get(chiave);
+		} finally {
+			blocco.unlock();
+		}
+	}
+	
+	/**
+	 * Restituisce il numero di modifiche subite dalla lista: se non è cambiato, la lista non è stata modificata
+	 * 
+	 * @return Il numero di modifiche
+	 */
+	long getModifiche() {
+		blocco.lock();
+		try {
+			return modifiche;
+		} finally {
+			blocco.unlock();
+		}
+	}
+	
+	/**
+	 * Restituisce una versione immutabile della lista nel suo stato attuale
+	 * <p>La versione viene riutilizzata finché la lista e i suoi articoli non vengono modificati, per cui
+	 * la lettura di una lista non modificata non copia nulla e non attende il lock della lista
+	 * 
+	 * @return La versione della lista
+	 */
+	Versione versione() {
+		Versione v = versione;
+		if (v != null)
+			return v;
+		
+		blocco.lock();
+		try {
+			v = versione;
+			if (v == null) {
+				Contenuto c = contenuto();
+				v = new Versione(this, copia(c.articoli), copia(c.articoliCancellati), modifiche);
+				versione = v;
+			}
+			return v;
+		} finally {
+			blocco.unlock();
+		}
+	}
+	
+	/**
+	 * Copia gli articoli di una mappa nelle loro versioni immutabili
+	 * 
+	 * @param articoli Gli articoli da copiare
+	 * 
+	 * @return Le copie, in una lista non modificabile
+	 */
+	private static List<Articolo> copia(Map<String, Articolo> articoli) {
+		Articolo[] ris = new Articolo[articoli.size()];
+		int i = 0;
+		for (Articolo a : articoli.values())
+			ris[i++] = a.versione();
+		return List.of(ris);
+	}
+	
+	/**
+	 * Registra una modifica della lista, da riscrivere al prossimo salvataggio; va chiamato con il lock della lista
+	 */
+	private void modificata() {
+		modifiche++;
+		versione = null;
+	}
+	
+	/**
+	 * Restituisce il sistema in cui la lista è inserita
+	 * 
+	 * @return Il sistema, {@code null} se la lista non è inserita in un sistema
+	 */
+	SistemaListe getSistema() {
+		return sistema;
+	}
+	
+	/**
+	 * Segna la lista come non più inserita in un sistema
+	 * 
+	 * @param sistema Il sistema in cui la lista è inserita, {@code null} se è stata rimossa
+	 */
+	void setSistema(SistemaListe sistema) {
+		blocco.lock();
+		try {
+			this.sistema = sistema;
+		} finally {
+			blocco.unlock();
+		}
+	}
+	
+	/**
+	 * Segna la lista come inserita in un sistema, che da questo momento ne registra le modifiche
+	 * <p>Le copie di articoli registrati nel sistema vengono sostituite con gli articoli del registro,
+	 * come in {@link #inserisci(Articolo, SistemaListe)}; una lista caricata su richiesta e non modificata
+	 * contiene già gli articoli del registro
+	 * 
+	 * @param sistema Il sistema in cui la lista viene inserita
+	 * 
+	 * @throws ListaDiArticoliException Viene lanciata se la lista contiene un articolo non registrato nel sistema
+	 */
+	void inserisciNelSistema(SistemaListe sistema) throws ListaDiArticoliException {
+		blocco.lock();
+		try {
+			if (sorgente == null) {
+				Contenuto c = contenuto;
+				for (Articolo a : this)
+					if (sistema.trovaArticoloGlobale(a.getNome(), a.getCategoria()) == null)
+						throw new ListaDiArticoliException("L'articolo " + a.getNome() + " non è registrato nel sistema");
+				
+				boolean sostituiti = sostituisciCopie(c.articoli, c.indiceArticoli, sistema, c);
+				if (sostituisciCopie(c.articoliCancellati, c.indiceCancellati, sistema, null) || sostituiti)
+					modificata();
+			}
+			this.sistema = sistema;
+		} finally {
+			blocco.unlock();
+		}
+	}
+	
+	/**
+	 * Sostituisce le copie di articoli registrati nel sistema con gli articoli del registro; va chiamato con il lock della lista
+	 * 
+	 * @param articoli Gli articoli attivi o cancellati della lista
+	 * @param indice L'indice per prefisso degli stessi articoli
+	 * @param sistema Il sistema in cui cercare gli articoli registrati
+	 * @param totale Il contenuto di cui aggiornare il totale se gli articoli sono gli attivi, {@code null} per il cestino
+	 * 
+	 * @return true se almeno un articolo è stato sostituito
+	 */
+	private boolean sostituisciCopie(Map<String, Articolo> articoli, IndicePrefissi indice, SistemaListe sistema, Contenuto totale) {
+		boolean sostituiti = false;
+		for (Map.Entry<String, Articolo> e : articoli.entrySet()) {
+			Articolo copia = e.getValue();
+			Articolo registrato = sistema.trovaArticoloGlobale(copia.getNome(), copia.getCategoria());
+			if (registrato == null || registrato == copia)
+				continue;
+			
+			e.setValue(registrato);
+			indice.rimuovi(e.getKey());
+			indice.aggiungi(registrato);
+			if (totale != null)
+				totale.totale += registrato.getPrezzoCentesimi() - copia.getPrezzoCentesimi();
+			copia.rimuoviLista(this);
+			registrato.aggiungiLista(this);
+			sostituiti = true;
+		}
+		return sostituiti;
+	}
+	
+	/**
+	 * Acquisisce i lock di più liste, in ordine di creazione: due thread che bloccano liste in comune
+	 * le acquisiscono nello stesso ordine e non possono attendersi a vicenda
+	 * 
+	 * @param liste Le liste da bloccare, senza ripetizioni; vengono ordinate come i lock acquisiti
+	 */
+	static void blocca(List<ListaDiArticoli> liste) {
+		liste.sort(ORDINE_BLOCCO);
+		for (ListaDiArticoli l : liste)
+			l.blocco.lock();
+	}
+	
+	/**
+	 * Rilascia i lock acquisiti con {@link #blocca(List)}, in ordine inverso
+	 * 
+	 * @param liste Le liste bloccate, nell'ordine lasciato da {@link #blocca(List)}
+	 */
+	static void sblocca(List<ListaDiArticoli> liste) {
+		for (int i = liste.size() - 1; i >= 0; i--)
+			liste.get(i).blocco.unlock();
+	}
+	
+	/**
+	 * Accoda al giornale un'operazione su un articolo della lista, se la lista è inserita nel sistema
+	 * 
+	 * @param tipo Il tipo dell'operazione, vedi le costanti di {@link Giornale}
+	 * @param a L'articolo coinvolto
+	 * @param altri Eventuali altri campi dell'operazione
+	 */
+	private void registra(byte tipo, Articolo a, Object... altri) {
+		SistemaListe s = sistema;
+		if (s == null)
+			return;
+		
+		Object[] campi = new Object[3 + altri.length];
+		campi[0] = nome;
+		campi[1] = a.getNome();
+		campi[2] = a.getCategoria();
+		System.arraycopy(altri, 0, campi, 3, altri.length);
+		s.registra(tipo, campi);
+	}
+	
+	/**
+	 * Controlla, prima della modifica, che il cambio di categoria di un articolo della lista
+	 * non lo renda un duplicato di un altro articolo presente
+	 * 
+	 * @param a L'articolo che sta per cambiare categoria
+	 * @param nuovaCategoria La categoria che verrà assegnata
+	 * 
+	 * @throws ArticoloException Viene lanciata se la lista contiene già un articolo con lo stesso nome nella nuova categoria
+	 */
+	void verificaCategoria(Articolo a, String nuovaCategoria) throws ArticoloException {
+		Articolo presente = trovaArticolo(a.getNome(), nuovaCategoria);
+		
+		if (presente != null && presente != a)
+			throw new ArticoloException("La lista " + nome + " contiene già " + a.getNome() + " nella categoria " + nuovaCategoria);
+	}
+	
+	/**
+	 * Aggiorna la chiave di un articolo della lista dopo il cambio di categoria, mantenendone la posizione;
+	 * costa O(1) per gli elenchi e O(log n) per l'indice alfabetico, vedi {@link ElencoArticoli#rinomina(String, String)}
+	 * 
+	 * @param a L'articolo modificato
+	 * @param vecchiaCategoria La categoria precedente dell'articolo
+	 */
+	void categoriaModificata(Articolo a, String vecchiaCategoria) {
+		String vecchiaChiave = Articolo.chiave(a.getNome(), vecchiaCategoria);
+		String nuovaChiave = a.chiave();
+		if (vecchiaChiave.equals(nuovaChiave))
+			return;
+		
+		blocco.lock();
+		try {
+			// la lista salvata contiene la vecchia categoria anche se gli articoli non sono in memoria
+			modificata();
+			
+			// gli articoli non in memoria verranno riletti con la nuova chiave
+			Contenuto c = inMemoria();
+			if (c == null)
+				return;
+			
+			if (c.articoli.get(vecchiaChiave) == a) {
+				c.articoli.rinomina(vecchiaChiave, nuovaChiave);
+				c.indiceArticoli.rinomina(vecchiaChiave, a);
+			}
+			else if (c.articoliCancellati.get(vecchiaChiave) == a) {
+				c.articoliCancellati.rinomina(vecchiaChiave, nuovaChiave);
+				c.indiceCancellati.rinomina(vecchiaChiave, a);
+			}
+		} finally {
+			blocco.unlock();
+		}
+	}
+	
+	/**
+	 * Aggiorna il totale dopo il cambio di prezzo di un articolo della lista
+	 * 
+	 * @param a L'articolo modificato
+	 * @param vecchioPrezzo Il prezzo precedente dell'articolo in centesimi
+	 */
+	void prezzoModificato(Articolo a, long vecchioPrezzo) {
+		// il totale degli articoli non in memoria verrà ricalcolato alla lettura
+		blocco.lock();
+		try {
+			versione = null;
+			Contenuto c = inMemoria();
+			if (c != null && c.articoli.get(a.chiave()) == a)
+				c.totale += a.getPrezzoCentesimi() - vecchioPrezzo;
+		} finally {
+			blocco.unlock();
+		}
+	}
+	
+	/**
+	 * Avvisa la lista che la nota di un suo articolo è cambiata, per cui la sua versione non è più attuale
+	 * 
+	 * @param a L'articolo modificato
+	 */
+	void notaModificata(Articolo a) {
+		blocco.lock();
+		try {
+			versione = null;
+		} finally {
+			blocco.unlock();
+		}
 	}
 	
 	/**
@@ -320,7 +1142,13 @@ public class ListaDiArticoli implements Iterable<Articolo>{
 	 */
 	@Override
 	public String toString() {
-		return "ListaDiArticoli [nome=" + nome + ", articoli=" + articoli + ", articoliCancellati=" + articoliCancellati
-				+ "]";
+		blocco.lock();
+		try {
+			Contenuto c = contenuto();
+			return "ListaDiArticoli [nome=" + nome + ", articoli=" + c.articoli.values() + ", articoliCancellati=" + c.articoliCancellati.values()
+					+ "]";
+		} finally {
+			blocco.unlock();
+		}
 	}
 }
@@ -0,0 +1,58 @@
+package modello;
+
+import modello.exception.ArticoloException;
+
+/**
+ * L'interfaccia {@code OsservatoreArticolo} viene implementata dai registri che indicizzano gli articoli
+ * per nome e categoria e che devono quindi essere avvisati quando la categoria di un articolo cambia,
+ * oltre che delle altre modifiche da registrare nel {@link Giornale}
+ * <p>Ogni modifica dell'articolo è racchiusa tra {@link #inizioModifica()} e {@link #fineModifica()}, chiamati
+ * sullo stesso thread
+ *
+ * @author Angie Albitres
+ */
+interface OsservatoreArticolo {
+
+	/**
+	 * Avvisa il registro che una modifica dell'articolo sta per iniziare: fino a {@link #fineModifica()}
+	 * il registro può impedire che lo stato del sistema venga copiato o modificato da altri thread
+	 */
+	void inizioModifica();
+
+	/**
+	 * Avvisa il registro che la modifica iniziata con {@link #inizioModifica()} è terminata
+	 */
+	void fineModifica();
+
+	/**
+	 * Controlla, prima della modifica, che la nuova categoria sia compatibile con il registro
+	 *
+	 * @param a L'articolo che sta per cambiare categoria
+	 * @param nuovaCategoria La categoria che verrà assegnata
+	 *
+	 * @throws ArticoloException Viene lanciata se la modifica renderebbe l'articolo un duplicato
+	 */
+	void verificaCategoria(Articolo a, String nuovaCategoria) throws ArticoloException;
+
+	/**
+	 * Aggiorna il registro dopo che l'articolo ha cambiato categoria
+	 *
+	 * @param a L'articolo modificato
+	 * @param vecchiaCategoria La categoria precedente dell'articolo
+	 */
+	void categoriaModificata(Articolo a, String vecchiaCategoria);
+
+	/**
+	 * Avvisa il registro che il prezzo dell'articolo è cambiato
+	 *
+	 * @param a L'articolo modificato
+	 */
+	void prezzoModificato(Articolo a);
+
+	/**
+	 * Avvisa il registro che la nota dell'articolo è cambiata
+	 *
+	 * @param a L'articolo modificato
+	 */
+	void notaModificata(Articolo a);
+}
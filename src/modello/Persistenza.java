@@ -0,0 +1,641 @@
+package modello;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * La classe {@code Persistenza} si occupa di salvataggio, caricamento, giornale delle modifiche e salvataggio automatico
+ * di un {@link SistemaListe}
+ * <p>Ogni istanza gestisce un solo sistema, con il proprio stato: il flag di modifica, il giornale attivo,
+ * il salvataggio automatico e l'ultimo archivio suddiviso. Più sistemi indipendenti nella stessa JVM possono quindi
+ * essere salvati e ripristinati separatamente; {@link GestioneListe} usa un'istanza per il sistema condiviso
+ * <p>Come per il sistema, le operazioni di salvataggio e caricamento vanno eseguite dal thread che modifica il sistema;
+ * i salvataggi automatici e le compattazioni del giornale vengono scritti in background
+ *
+ * @author Angie Albitres
+ */
+public final class Persistenza {
+
+	/**
+	 * Il sistema salvato e caricato
+	 */
+	private final SistemaListe sistema;
+
+	/**
+	 * Giornale in cui vengono registrate le modifiche successive all'ultimo salvataggio, {@code null} se non è attivo
+	 */
+	private Giornale giornale;
+
+	/**
+	 * File di salvataggio a cui si riferisce il giornale
+	 */
+	private Path salvataggioGiornale;
+
+	/**
+	 * Indica se è già stata predisposta la chiusura del giornale alla terminazione della JVM
+	 */
+	private boolean chiusuraRegistrata;
+
+	/**
+	 * Numero dei record del giornale che non è stato possibile applicare all'ultima apertura del giornale
+	 */
+	private int recordIgnorati;
+
+	/**
+	 * Contatore delle modifiche ai dati del sistema, il flag modifica è true se differisce da {@link #modificheSalvate}
+	 * <p>I contatori sono atomici perché i salvataggi automatici terminano su un altro thread
+	 */
+	private final AtomicLong modifiche = new AtomicLong();
+
+	/**
+	 * Valore di {@link #modifiche} al momento dell'ultimo salvataggio
+	 */
+	private final AtomicLong modificheSalvate = new AtomicLong();
+
+	/**
+	 * Salvataggio automatico attivo, {@code null} se non è attivo
+	 */
+	private Autosalvataggio autosalvataggio;
+
+	/**
+	 * Per ogni file di salvataggio, il valore di {@link #modifiche} dello stato che contiene
+	 */
+	private final Map<Path, Long> modificheNelFile = new HashMap<Path, Long>();
+
+	/**
+	 * Archivio suddiviso dell'ultimo salvataggio o caricamento, {@code null} se non è stato usato
+	 * dall'ultimo {@link #reset()}, vedi {@link #salvaSistemaSuddiviso(String)}
+	 */
+	private ArchivioSuddiviso archivio;
+
+	/**
+	 * Crea la persistenza di un sistema, senza giornale né salvataggio automatico
+	 *
+	 * @param sistema Il sistema da salvare e caricare
+	 */
+	public Persistenza(SistemaListe sistema) {
+		this.sistema = sistema;
+	}
+
+	/**
+	 * Restituisce il sistema salvato e caricato
+	 *
+	 * @return Il sistema
+	 */
+	public SistemaListe getSistema() {
+		return sistema;
+	}
+
+	/**
+	 * Getter del flag modifica
+	 *
+	 * @return true se il sistema è stato modificato dopo l'ultimo salvataggio, false altrimenti
+	 */
+	public boolean getModificato() {
+		return modifiche.get() != modificheSalvate.get();
+	}
+
+	/**
+	 * Setter del flag modifica, segnalare una modifica avvia il salvataggio automatico se è il momento
+	 *
+	 * @param stato Stato della modifica, true o false
+	 */
+	public void setModificato(boolean stato) {
+		if (!stato) {
+			segnaSalvato(modifiche.get());
+			return;
+		}
+
+		modifiche.incrementAndGet();
+		if (autosalvataggio != null)
+			autosalvataggio.modificato();
+	}
+
+	/**
+	 * Segna come salvate le modifiche fino a quella indicata; un salvataggio terminato in ritardo
+	 * non annulla le modifiche successive
+	 *
+	 * @param modifica Il valore del contatore delle modifiche al momento della cattura dello stato salvato
+	 */
+	private void segnaSalvato(long modifica) {
+		modificheSalvate.accumulateAndGet(modifica, Math::max);
+	}
+
+	/**
+	 * Svuota il sistema, lasciando la sola categoria predefinita, e dimentica l'ultimo archivio suddiviso
+	 */
+	public void reset() {
+		sistema.svuota();
+		archivio = null;
+	}
+
+	// Salvataggio e caricamento da file
+
+	/**
+	 * Salva l'intero stato del sistema (categorie, registro articoli e tutte le liste) in un file.
+	 *
+	 * @param nomeFile Il nome del file di salvataggio.
+	 * @throws IOException In caso di errori di scrittura.
+	 */
+	public void salvaSistema(String nomeFile) throws IOException {
+		Path file = percorso(nomeFile);
+
+		// il salvataggio completo comprende tutte le modifiche registrate finora nel giornale
+		if (giornale != null && salvataggioGiornale.equals(file))
+			giornale.salvataggioCompleto(segmento -> scriviSistema(file, segmento));
+		else
+			scriviSistema(file, 0);
+		segnaSalvato(modifiche.get());
+	}
+
+	/**
+	 * Scrive il file di testo del sistema, vedi {@link SnapshotTesto}
+	 * <p>Il contenuto viene scritto in un file temporaneo, reso persistente e spostato al posto del file di destinazione
+	 * solo a scrittura completata: un arresto o un disco pieno durante il salvataggio lasciano intatto il salvataggio
+	 * precedente, e chi lo sta leggendo (la compattazione del giornale) non vede mai un file a metà
+	 *
+	 * @param file Il file di destinazione.
+	 * @param segmento L'ultimo segmento del giornale compreso nel salvataggio, 0 se non va indicato.
+	 * @throws IOException In caso di errori di scrittura.
+	 */
+	private void scriviSistema(Path file, int segmento) throws IOException {
+		Path temporaneo = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			SistemaListe.Versione stato = sistema.versione();
+			SnapshotTesto.scrivi(temporaneo, stato.categorie, stato.articoli, stato.liste, segmento);
+			sostituisciSalvataggio(temporaneo, file, modifiche.get());
+		} finally {
+			Files.deleteIfExists(temporaneo);
+		}
+	}
+
+	/**
+	 * Porta al suo posto un salvataggio appena scritto, a meno che il file non contenga già uno stato più recente
+	 * scritto da un altro thread (un salvataggio automatico terminato dopo un salvataggio successivo)
+	 *
+	 * @param temporaneo Il file appena scritto.
+	 * @param file Il file di destinazione.
+	 * @param modifica Il valore del contatore delle modifiche al momento della cattura dello stato.
+	 * @throws IOException In caso di errori nello spostamento.
+	 */
+	private void sostituisciSalvataggio(Path temporaneo, Path file, long modifica) throws IOException {
+		synchronized (modificheNelFile) {
+			Long presente = modificheNelFile.get(file);
+			if (presente != null && presente > modifica)
+				return;
+
+			SnapshotTesto.sostituisci(temporaneo, file);
+			modificheNelFile.put(file, modifica);
+		}
+	}
+
+	/**
+	 * Carica l'intero sistema da un file, ripristinando liste, articoli e categorie.
+	 * <p>Il file viene letto a finestre in un buffer e interpretato direttamente dai byte, vedi {@link RigheFile}:
+	 * le righe non vengono copiate e le stringhe vengono create solo per i campi utilizzati.
+	 * <p>Prima del caricamento viene verificata la riga di chiusura del file: un file troncato o danneggiato
+	 * viene rifiutato lasciando invariato lo stato del sistema.
+	 *
+	 * @param nomeFile Il file da cui caricare i dati.
+	 * @throws IOException In caso di file mancante o errori di lettura.
+	 * @throws Exception Per errori di validazione dei dati caricati.
+	 */
+	public void caricaSistema(String nomeFile) throws Exception {
+		caricaSistema(nomeFile, false);
+	}
+
+	/**
+	 * Carica l'intero sistema da un file come {@link #caricaSistema(String)}, leggendo subito solo categorie,
+	 * articoli e nomi delle liste se richiesto
+	 * <p>Gli articoli di ciascuna lista restano in memoria come righe del file e vengono interpretati al primo
+	 * accesso alla lista (ad esempio dopo {@link SistemaListe#matchLista(String)}); finché la lista non viene modificata,
+	 * possono essere rilasciati in caso di memoria insufficiente e interpretati di nuovo, vedi {@link ListaDiArticoli}
+	 *
+	 * @param nomeFile Il file da cui caricare i dati.
+	 * @param suRichiesta true per leggere gli articoli delle liste al primo accesso, false per leggerli subito.
+	 * @throws IOException In caso di file mancante o errori di lettura.
+	 * @throws Exception Per errori di validazione dei dati caricati.
+	 */
+	public void caricaSistema(String nomeFile, boolean suRichiesta) throws Exception {
+		sistema.sospendiGiornale();
+		try {
+			leggiSistema(nomeFile, suRichiesta);
+		} finally {
+			sistema.riprendiGiornale();
+		}
+		allineaGiornale(nomeFile);
+		segnaSalvato(modifiche.get());
+	}
+
+	/**
+	 * Legge il file di testo del sistema, vedi {@link #caricaSistema(String, boolean)}
+	 *
+	 * @param nomeFile Il file da cui caricare i dati.
+	 * @param suRichiesta true per leggere gli articoli delle liste al primo accesso, false per leggerli subito.
+	 * @return L'ultimo segmento del giornale compreso nel file, 0 se non indicato.
+	 * @throws IOException In caso di file mancante o errori di lettura.
+	 * @throws Exception Per errori di validazione dei dati caricati.
+	 */
+	private int leggiSistema(String nomeFile, boolean suRichiesta) throws Exception {
+		try (FileChannel canale = apriInLettura(nomeFile)) {
+			SnapshotTesto.verifica(canale);
+			reset();
+
+			Riesecuzione riesecuzione = new Riesecuzione(sistema);
+			SnapshotTesto.leggi(canale, riesecuzione, suRichiesta);
+			return riesecuzione.getSegmento();
+		}
+	}
+
+	/**
+	 * Apre un file in sola lettura, segnalando il file mancante con {@link FileNotFoundException}
+	 * come facevano i lettori basati su {@link java.io.FileReader}
+	 *
+	 * @param nomeFile Il file da aprire.
+	 * @return Il canale aperto sul file.
+	 * @throws IOException In caso di file mancante o errori di apertura.
+	 */
+	private FileChannel apriInLettura(String nomeFile) throws IOException {
+		try {
+			return FileChannel.open(Paths.get(nomeFile), StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			throw new FileNotFoundException(nomeFile);
+		}
+	}
+
+	/**
+	 * Salva l'intero sistema in un file binario compatto, vedi {@link SnapshotBinario}
+	 * <p>Nomi, categorie e note sono scritti una sola volta e le liste fanno riferimento agli articoli del catalogo
+	 * per posizione, per cui il file è molto più piccolo e veloce da leggere di quello testuale
+	 *
+	 * @param nomeFile Il percorso del file di destinazione.
+	 * @throws IOException In caso di errori di scrittura.
+	 */
+	public void salvaSistemaBinario(String nomeFile) throws IOException {
+		try (OutputStream out = new FileOutputStream(nomeFile)) {
+			SistemaListe.Versione stato = sistema.versione();
+			SnapshotBinario.scrivi(out, stato.categorie, stato.articoli, stato.liste);
+		}
+		segnaSalvato(modifiche.get());
+	}
+
+	/**
+	 * Carica l'intero sistema da un file scritto con {@link #salvaSistemaBinario(String)}
+	 * <p>Il file viene mappato in memoria e decodificato direttamente dal buffer, senza copiarlo.
+	 * La mappatura resta attiva finché il garbage collector non la rilascia, anche dopo il caricamento: su Windows,
+	 * nel frattempo, lo stesso file non può essere sovrascritto, per cui conviene salvare in un file diverso,
+	 * ad esempio con {@link #salvaSistema(String)} che non mappa il file di testo
+	 *
+	 * @param nomeFile Il file da cui caricare i dati.
+	 * @throws IOException In caso di file mancante, non valido o errori di lettura.
+	 * @throws Exception Per errori di validazione dei dati caricati.
+	 */
+	public void caricaSistemaBinario(String nomeFile) throws Exception {
+		caricaSistemaBinario(nomeFile, false);
+	}
+
+	/**
+	 * Carica l'intero sistema da un file scritto con {@link #salvaSistemaBinario(String)}, leggendo subito
+	 * solo categorie, articoli e nomi delle liste se richiesto
+	 * <p>Gli articoli di ciascuna lista vengono letti al primo accesso alla lista (ad esempio dopo {@link SistemaListe#matchLista(String)})
+	 * e, finché la lista non viene modificata, possono essere rilasciati in caso di memoria insufficiente e riletti.
+	 * Le liste ancora da leggere vengono consultate, senza crearle, quando serve sapere quali liste contengono un articolo.
+	 * <p>Il file viene decodificato in un sistema separato, che prende il posto dello stato attuale solo a lettura riuscita:
+	 * un file troncato o danneggiato viene rifiutato lasciando invariato lo stato del sistema.
+	 *
+	 * @param nomeFile Il file da cui caricare i dati.
+	 * @param suRichiesta true per leggere gli articoli delle liste al primo accesso, false per leggerli subito.
+	 * @throws IOException In caso di file mancante, non valido o errori di lettura.
+	 * @throws Exception Per errori di validazione dei dati caricati.
+	 */
+	public void caricaSistemaBinario(String nomeFile, boolean suRichiesta) throws Exception {
+		SistemaListe letto = new SistemaListe();
+		try (FileChannel canale = apriInLettura(nomeFile)) {
+			SnapshotBinario.leggi(canale.map(FileChannel.MapMode.READ_ONLY, 0, canale.size()), letto, suRichiesta);
+		}
+
+		sistema.sostituisci(letto);
+		archivio = null;
+		allineaGiornale(nomeFile);
+		segnaSalvato(modifiche.get());
+	}
+
+	/**
+	 * Salva il sistema in una cartella divisa in segmenti, vedi {@link ArchivioSuddiviso}: categorie e registro
+	 * globale in un segmento, ogni lista in un file, più un manifesto che li elenca
+	 * <p>Se la cartella è quella dell'ultimo salvataggio o caricamento suddiviso, vengono riscritti solo i segmenti
+	 * modificati da allora: dopo la modifica di una lista viene riscritta solo quella lista, e il catalogo solo
+	 * dopo la modifica di categorie o articoli del registro. Il manifesto viene sostituito solo a scrittura completata,
+	 * per cui un errore durante il salvataggio lascia valido il salvataggio precedente.
+	 *
+	 * @param cartella La cartella di destinazione, viene creata se non esiste.
+	 * @return Il numero di segmenti scritti.
+	 * @throws IOException In caso di errori di scrittura.
+	 */
+	public int salvaSistemaSuddiviso(String cartella) throws IOException {
+		Path dir = percorso(cartella);
+		if (archivio == null || !archivio.getCartella().equals(dir))
+			archivio = ArchivioSuddiviso.apri(dir);
+
+		SistemaListe.Versione stato = sistema.versione();
+		int scritti = archivio.salva(stato.categorie, stato.articoli, stato.liste, stato.modificheCatalogo);
+		segnaSalvato(modifiche.get());
+		return scritti;
+	}
+
+	/**
+	 * Carica il sistema da una cartella scritta con {@link #salvaSistemaSuddiviso(String)}
+	 * <p>Prima del caricamento vengono verificati il manifesto e i segmenti delle liste: un archivio incompleto
+	 * o danneggiato viene rifiutato lasciando invariato lo stato del sistema
+	 *
+	 * @param cartella La cartella da cui caricare i dati.
+	 * @throws IOException In caso di archivio mancante, non valido o errori di lettura.
+	 * @throws Exception Per errori di validazione dei dati caricati.
+	 */
+	public void caricaSistemaSuddiviso(String cartella) throws Exception {
+		ArchivioSuddiviso letto = ArchivioSuddiviso.apri(percorso(cartella));
+		if (letto.getCatalogo() == null)
+			throw new FileNotFoundException(letto.getCartella().resolve(ArchivioSuddiviso.MANIFESTO).toString());
+
+		List<Path> liste = letto.getListe();
+		for (Path file : liste) {
+			try (FileChannel canale = apriInLettura(file.toString())) {
+				SnapshotTesto.verifica(canale);
+			}
+		}
+
+		sistema.sospendiGiornale();
+		try {
+			reset();
+
+			try (FileChannel canale = apriInLettura(letto.getCatalogo().toString())) {
+				SnapshotBinario.leggi(canale.map(FileChannel.MapMode.READ_ONLY, 0, canale.size()), sistema, false);
+			}
+			letto.catalogoLetto(sistema.versione().modificheCatalogo);
+
+			for (Path file : liste) {
+				try (FileChannel canale = apriInLettura(file.toString())) {
+					Riesecuzione riesecuzione = new Riesecuzione(sistema);
+					SnapshotTesto.leggi(canale, riesecuzione);
+					if (riesecuzione.getListaCorrente() != null)
+						letto.listaLetta(riesecuzione.getListaCorrente(), file);
+				}
+			}
+			archivio = letto;
+		} finally {
+			sistema.riprendiGiornale();
+		}
+		allineaGiornale(cartella);
+		segnaSalvato(modifiche.get());
+	}
+
+	// Salvataggio automatico
+
+	/**
+	 * Avvia il salvataggio automatico del sistema in un file di testo, dopo un certo numero di modifiche o trascorso
+	 * un intervallo dall'ultimo salvataggio; le modifiche sono quelle segnalate con {@link #setModificato(boolean)}.
+	 * <p>Lo stato viene catturato sul thread che modifica il sistema e scritto su disco da un thread in background,
+	 * per cui l'interfaccia non attende la scrittura; le catture in attesa di scrittura vengono accorpate.
+	 * Se il file è il salvataggio del giornale attivo, la cattura si limita a richiedere la compattazione del giornale,
+	 * che aggiorna il salvataggio senza leggere lo stato del sistema.
+	 *
+	 * @param nomeFile Il file di salvataggio.
+	 * @param intervalloMs Intervallo massimo tra due salvataggi del sistema modificato, in millisecondi.
+	 * @param maxModifiche Numero di modifiche dopo il quale il sistema viene salvato senza attendere l'intervallo.
+	 * @param threadSistema Esegue un'operazione sul thread che modifica il sistema (ad esempio
+	 * {@code SwingUtilities::invokeLater}), per salvare allo scadere dell'intervallo le ultime modifiche;
+	 * {@code null} se non disponibile, in tal caso vengono salvate alla modifica successiva o all'uscita.
+	 * @throws Exception Se il salvataggio automatico precedente ha riscontrato un errore.
+	 */
+	public void avviaAutosalvataggio(String nomeFile, long intervalloMs, int maxModifiche, Executor threadSistema) throws Exception {
+		fermaAutosalvataggio();
+
+		Path file = percorso(nomeFile);
+		autosalvataggio = new Autosalvataggio(intervalloMs, maxModifiche, threadSistema, () -> catturaSalvataggio(file));
+	}
+
+	/**
+	 * Ferma il salvataggio automatico, attendendo la scrittura dello stato già catturato
+	 *
+	 * @throws Exception Se un salvataggio automatico ha riscontrato un errore.
+	 */
+	public void fermaAutosalvataggio() throws Exception {
+		Autosalvataggio a = autosalvataggio;
+		autosalvataggio = null;
+
+		if (a != null) {
+			a.close();
+			Exception errore = a.ultimoErrore();
+			if (errore != null)
+				throw errore;
+		}
+	}
+
+	/**
+	 * Cattura lo stato del sistema per il salvataggio automatico, sul thread che modifica il sistema
+	 * <p>Viene catturata solo una versione immutabile dello stato, codificata e scritta in background mentre
+	 * le modifiche proseguono; con il giornale attivo sullo stesso file
+	 * viene invece accodata una compattazione, che comprenderà tutte le modifiche registrate finora
+	 *
+	 * @param file Il file di salvataggio.
+	 * @return La scrittura da eseguire in background.
+	 */
+	private Autosalvataggio.Scrittura catturaSalvataggio(Path file) {
+		long modifica = modifiche.get();
+
+		if (giornale != null && salvataggioGiornale.equals(file)) {
+			Future<Boolean> compattazione = giornale.compatta();
+			return () -> {
+				compattazione.get();
+				segnaSalvato(modifica);
+			};
+		}
+
+		SistemaListe.Versione stato = sistema.versione();
+		return () -> {
+			Path temporaneo = file.resolveSibling(file.getFileName() + ".autosalvataggio");
+			try {
+				SnapshotTesto.scrivi(temporaneo, stato.categorie, stato.articoli, stato.liste, 0);
+				sostituisciSalvataggio(temporaneo, file, modifica);
+			} finally {
+				Files.deleteIfExists(temporaneo);
+			}
+			segnaSalvato(modifica);
+		};
+	}
+
+	// Giornale delle modifiche
+
+	/**
+	 * Ripristina il sistema dall'ultimo salvataggio e dalle modifiche registrate nel giornale, poi attiva il giornale:
+	 * da quel momento ogni modifica al sistema viene accodata al file del giornale e resa persistente entro
+	 * {@link Giornale#INTERVALLO_COMMIT_MS} millisecondi, senza riscrivere l'intero salvataggio.
+	 * <p>Un salvataggio completo con {@link #salvaSistema(String)} sullo stesso file svuota il giornale;
+	 * inoltre, quando il giornale supera {@link Giornale#SOGLIA_COMPATTAZIONE} byte, viene compattato nel salvataggio
+	 * da un thread in background, così che il tempo di ripristino resti limitato qualunque sia la durata della sessione.
+	 * <p>Vengono registrate le modifiche delle liste inserite nel sistema e degli articoli del registro globale.
+	 *
+	 * @param fileSalvataggio Il file di testo con l'ultimo salvataggio completo, può non esistere.
+	 * @param fileGiornale Il file del giornale, viene creato se non esiste.
+	 * @return true se è stato ripristinato un salvataggio o almeno una modifica, false se il sistema è vuoto.
+	 * @throws Exception In caso di errori di lettura o di validazione dei dati caricati.
+	 */
+	public boolean apriGiornale(String fileSalvataggio, String fileGiornale) throws Exception {
+		return apriGiornale(fileSalvataggio, fileGiornale, false);
+	}
+
+	/**
+	 * Ripristina il sistema e attiva il giornale come {@link #apriGiornale(String, String)}, leggendo gli articoli
+	 * delle liste del salvataggio al primo accesso se richiesto, vedi {@link #caricaSistema(String, boolean)}
+	 * <p>All'avvio vengono così letti subito solo categorie, registro e nomi delle liste; le liste modificate
+	 * dalle operazioni del giornale vengono lette durante il ripristino, le altre alla prima apertura
+	 *
+	 * @param fileSalvataggio Il file di testo con l'ultimo salvataggio completo, può non esistere.
+	 * @param fileGiornale Il file del giornale, viene creato se non esiste.
+	 * @param suRichiesta true per leggere gli articoli delle liste al primo accesso, false per leggerli subito.
+	 * @return true se è stato ripristinato un salvataggio o almeno una modifica, false se il sistema è vuoto.
+	 * @throws Exception In caso di errori di lettura o di validazione dei dati caricati.
+	 */
+	public boolean apriGiornale(String fileSalvataggio, String fileGiornale, boolean suRichiesta) throws Exception {
+		chiudiGiornale();
+
+		boolean ripristinato = true;
+		int segmentoSalvato = 0;
+		try {
+			segmentoSalvato = leggiSistema(fileSalvataggio, suRichiesta);
+		} catch (FileNotFoundException e) {
+			reset();
+			ripristinato = false;
+		}
+
+		// segmenti chiusi non ancora compattati nel salvataggio, poi il file corrente
+		Path file = percorso(fileGiornale);
+		Riesecuzione riesecuzione = new Riesecuzione(sistema);
+		Giornale.Rilettura esito = new Giornale.Rilettura();
+		for (int n : Giornale.segmenti(file))
+			if (n > segmentoSalvato)
+				Giornale.rileggi(Giornale.segmento(file, n), riesecuzione, esito);
+		Giornale.rileggi(file, riesecuzione, esito);
+		int applicati = esito.applicati;
+		recordIgnorati = esito.ignorati;
+
+		giornale = new Giornale(file, percorso(fileSalvataggio), segmentoSalvato);
+		sistema.setGiornale(giornale);
+		salvataggioGiornale = percorso(fileSalvataggio);
+		if (!chiusuraRegistrata) {
+			Runtime.getRuntime().addShutdownHook(new Thread(this::chiudiGiornaleInChiusura, "giornale-chiusura"));
+			chiusuraRegistrata = true;
+		}
+
+		// le modifiche rilette sono già persistenti, ma non ancora nel salvataggio completo
+		if (applicati > 0)
+			modifiche.incrementAndGet();
+		else
+			segnaSalvato(modifiche.get());
+		return ripristinato || applicati > 0;
+	}
+
+	/**
+	 * Restituisce il numero dei record del giornale che non è stato possibile applicare all'ultima
+	 * {@link #apriGiornale(String, String)}: i record integri ma in conflitto con lo stato ripristinato vengono saltati,
+	 * e un numero diverso da zero va segnalato all'utente perché indica modifiche che non compaiono nel sistema
+	 *
+	 * @return Il numero dei record ignorati, 0 se il giornale non è mai stato aperto
+	 */
+	public int getRecordIgnorati() {
+		return recordIgnorati;
+	}
+
+	/**
+	 * Indica se il giornale è attivo: in tal caso ogni modifica al sistema viene resa persistente entro
+	 * {@link Giornale#INTERVALLO_COMMIT_MS} millisecondi e ripristinata alla prossima apertura del giornale,
+	 * anche senza un salvataggio completo
+	 *
+	 * @return true se il giornale è attivo, false altrimenti
+	 */
+	public boolean isGiornaleAttivo() {
+		return giornale != null;
+	}
+
+	/**
+	 * Scrive su disco le modifiche registrate nel giornale senza attendere il prossimo commit periodico
+	 *
+	 * @throws IOException In caso di errori di scrittura.
+	 */
+	public void sincronizzaGiornale() throws IOException {
+		if (giornale != null)
+			giornale.sincronizza();
+	}
+
+	/**
+	 * Avvia in background la compattazione del giornale nel salvataggio, senza attendere che il giornale
+	 * raggiunga la dimensione prevista; lo stato del sistema non viene letto e può continuare a essere modificato
+	 *
+	 * @return La compattazione in corso, il cui risultato indica se il salvataggio è stato sostituito,
+	 * {@code null} se il giornale non è attivo
+	 */
+	public Future<Boolean> compattaGiornale() {
+		return giornale != null ? giornale.compatta() : null;
+	}
+
+	/**
+	 * Scrive su disco le modifiche registrate e disattiva il giornale
+	 *
+	 * @throws IOException In caso di errori di scrittura.
+	 */
+	public void chiudiGiornale() throws IOException {
+		Giornale g = giornale;
+		giornale = null;
+		sistema.setGiornale(null);
+		salvataggioGiornale = null;
+
+		if (g != null)
+			g.close();
+	}
+
+	/**
+	 * Chiude il giornale alla terminazione della JVM, così che le ultime modifiche non vadano perse
+	 */
+	private void chiudiGiornaleInChiusura() {
+		try {
+			chiudiGiornale();
+		} catch (IOException e) {
+			System.err.println("Errore nella chiusura del giornale: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Dopo un caricamento con il giornale attivo, porta il salvataggio del giornale allo stato appena caricato
+	 *
+	 * @param nomeFile Il file appena caricato
+	 * @throws IOException In caso di errori di scrittura.
+	 */
+	private void allineaGiornale(String nomeFile) throws IOException {
+		if (giornale != null)
+			salvaSistema(salvataggioGiornale.toString());
+	}
+
+	/**
+	 * Normalizza il percorso di un file, per confrontare i file indicati in modi diversi
+	 *
+	 * @param nomeFile Il nome del file
+	 * @return Il percorso assoluto del file
+	 */
+	private Path percorso(String nomeFile) {
+		return Paths.get(nomeFile).toAbsolutePath().normalize();
+	}
+}
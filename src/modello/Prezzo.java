@@ -0,0 +1,141 @@
+package modello;
+
+/**
+ * La classe {@code Prezzo} raccoglie le operazioni sui prezzi espressi in centesimi di euro
+ * <p>I prezzi del modello sono memorizzati come {@code long} in centesimi, così somme e differenze
+ * sono esatte e non richiedono la creazione di oggetti
+ *
+ * @author Angie Albitres
+ */
+public final class Prezzo {
+
+	/**
+	 * Costruttore privato per impedire l'istanziazione della classe
+	 */
+	private Prezzo() {}
+
+	/**
+	 * Converte un importo in euro nel corrispondente numero di centesimi, arrotondando al centesimo più vicino
+	 *
+	 * @param euro L'importo in euro
+	 *
+	 * @return L'importo in centesimi
+	 */
+	public static long daEuro(double euro) {
+		return Math.round(euro * 100);
+	}
+
+	/**
+	 * Converte un importo in centesimi nel corrispondente valore in euro
+	 *
+	 * @param centesimi L'importo in centesimi
+	 *
+	 * @return L'importo in euro
+	 */
+	public static double inEuro(long centesimi) {
+		return centesimi / 100.0;
+	}
+
+	/**
+	 * Formatta un importo in centesimi con due cifre decimali separate da virgola (es. {@code 12,05})
+	 *
+	 * @param centesimi L'importo in centesimi
+	 *
+	 * @return La rappresentazione testuale dell'importo
+	 */
+	public static String formatta(long centesimi) {
+		StringBuilder sb = new StringBuilder(24);
+
+		if (centesimi < 0) {
+			sb.append('-');
+			centesimi = -centesimi;
+		}
+
+		long decimali = centesimi % 100;
+		sb.append(centesimi / 100).append(',');
+		if (decimali < 10)
+			sb.append('0');
+
+		return sb.append(decimali).toString();
+	}
+
+	/**
+	 * Interpreta un importo testuale in euro, accettando sia la virgola che il punto come separatore decimale
+	 * <p>Le cifre oltre la seconda decimale vengono arrotondate al centesimo più vicino
+	 *
+	 * @param testo L'importo da interpretare (es. {@code 12,05} oppure {@code 3.5})
+	 *
+	 * @return L'importo in centesimi
+	 *
+	 * @throws NumberFormatException Viene lanciata se il testo non rappresenta un importo valido
+	 */
+	public static long parse(String testo) {
+		if (testo == null)
+			throw new NumberFormatException("Prezzo mancante");
+
+		return parse(testo, 0, testo.length());
+	}
+
+	/**
+	 * Interpreta un importo testuale contenuto in una porzione di stringa, senza creare sottostringhe
+	 *
+	 * @param testo Il testo che contiene l'importo
+	 * @param inizio Indice del primo carattere dell'importo
+	 * @param fine Indice successivo all'ultimo carattere dell'importo
+	 *
+	 * @return L'importo in centesimi
+	 *
+	 * @throws NumberFormatException Viene lanciata se il testo non rappresenta un importo valido
+	 */
+	static long parse(CharSequence testo, int inizio, int fine) {
+		while (inizio < fine && Character.isWhitespace(testo.charAt(inizio)))
+			inizio++;
+		while (fine > inizio && Character.isWhitespace(testo.charAt(fine - 1)))
+			fine--;
+
+		boolean negativo = false;
+		if (inizio < fine && (testo.charAt(inizio) == '-' || testo.charAt(inizio) == '+')) {
+			negativo = testo.charAt(inizio) == '-';
+			inizio++;
+		}
+
+		long euro = 0;
+		long centesimi = 0;
+		int cifre = 0;
+		int cifreDecimali = 0;
+		boolean separatore = false;
+		boolean arrotonda = false;
+
+		for (int i = inizio; i < fine; i++) {
+			char c = testo.charAt(i);
+
+			if (c == ',' || c == '.') {
+				if (separatore)
+					throw new NumberFormatException("Prezzo non valido: " + testo.subSequence(inizio, fine));
+				separatore = true;
+			} else if (c >= '0' && c <= '9') {
+				cifre++;
+				if (!separatore) {
+					euro = Math.addExact(Math.multiplyExact(euro, 10), c - '0');
+				} else if (cifreDecimali < 2) {
+					centesimi = centesimi * 10 + (c - '0');
+					cifreDecimali++;
+				} else if (cifreDecimali == 2) {
+					arrotonda = c >= '5';
+					cifreDecimali++;
+				}
+			} else {
+				throw new NumberFormatException("Prezzo non valido: " + testo.subSequence(inizio, fine));
+			}
+		}
+
+		if (cifre == 0)
+			throw new NumberFormatException("Prezzo non valido: " + testo.subSequence(inizio, fine));
+
+		if (cifreDecimali == 1)
+			centesimi *= 10;
+
+		long ris = Math.addExact(Math.multiplyExact(euro, 100), centesimi + (arrotonda ? 1 : 0));
+		return negativo ? -ris : ris;
+	}
+}
@@ -0,0 +1,204 @@
+package modello;
+
+import java.io.IOException;
+
+import modello.exception.GestioneListeException;
+import modello.exception.ListaDiArticoliException;
+
+/**
+ * La classe {@code Riesecuzione} ricostruisce lo stato di un {@link SistemaListe} da un salvataggio di testo
+ * e dalle operazioni registrate nel {@link Giornale}
+ * <p>È l'unico punto in cui salvataggio e giornale vengono applicati a un sistema: la usano sia il ripristino
+ * all'avvio, sul sistema di una {@link Persistenza}, sia il {@link Compattatore}, su un sistema proprio non visibile
+ * al resto del programma. Le operazioni vengono eseguite con i metodi pubblici del sistema, per cui valgono
+ * le stesse regole e gli stessi controlli delle modifiche originali
+ * <p>Il sistema di destinazione non deve avere un giornale attivo, altrimenti le operazioni rilette
+ * verrebbero registrate una seconda volta
+ *
+ * @author Angie Albitres
+ */
+final class Riesecuzione implements SnapshotTesto.Destinazione, Giornale.Applicatore {
+
+	/**
+	 * Il sistema a cui vengono applicati salvataggio e giornale
+	 */
+	private final SistemaListe sistema;
+
+	/**
+	 * Ultimo segmento del giornale compreso nel salvataggio letto, 0 se non indicato
+	 */
+	private int segmento;
+
+	/**
+	 * Ultima lista letta dal salvataggio, a cui appartengono gli articoli successivi
+	 */
+	private ListaDiArticoli listaCorrente;
+
+	/**
+	 * Crea la riesecuzione su un sistema
+	 *
+	 * @param sistema Il sistema da ricostruire, senza giornale attivo
+	 */
+	Riesecuzione(SistemaListe sistema) {
+		this.sistema = sistema;
+	}
+
+	/**
+	 * Restituisce l'ultimo segmento del giornale compreso nel salvataggio letto
+	 *
+	 * @return Il numero del segmento, 0 se non indicato
+	 */
+	int getSegmento() {
+		return segmento;
+	}
+
+	/**
+	 * Restituisce l'ultima lista letta dal salvataggio
+	 *
+	 * @return La lista, {@code null} se il salvataggio non contiene liste
+	 */
+	ListaDiArticoli getListaCorrente() {
+		return listaCorrente;
+	}
+
+	// Lettura del salvataggio: gli elementi già presenti vengono ignorati, gli articoli delle liste vengono cercati nel registro
+
+	@Override
+	public void segmento(int n) {
+		segmento = n;
+	}
+
+	@Override
+	public void categoria(String nome) throws GestioneListeException {
+		if (!sistema.esisteCategoria(nome))
+			sistema.inserisciCategoria(nome);
+	}
+
+	@Override
+	public Articolo articolo(Articolo a) throws GestioneListeException {
+		Articolo presente = sistema.trovaArticoloGlobale(a.getNome(), a.getCategoria());
+		if (presente != null)
+			return presente;
+
+		sistema.inserisciArticolo(a);
+		return a;
+	}
+
+	@Override
+	public void lista(String nome) throws GestioneListeException, ListaDiArticoliException {
+		listaCorrente = new ListaDiArticoli(nome);
+		sistema.inserisciLista(listaCorrente);
+	}
+
+	@Override
+	public void lista(String nome, ListaDiArticoli.Sorgente sorgente) throws GestioneListeException, ListaDiArticoliException {
+		listaCorrente = new ListaDiArticoli(nome, sorgente);
+		sistema.inserisciLista(listaCorrente);
+	}
+
+	@Override
+	public void articoloInLista(String nome, String categoria, boolean cancellato) throws ListaDiArticoliException {
+		Articolo a = sistema.trovaArticoloGlobale(nome, categoria);
+		if (listaCorrente == null || a == null)
+			return;
+
+		listaCorrente.inserisciArticolo(a);
+		if (cancellato)
+			listaCorrente.cancellaArticolo(a);
+	}
+
+	// Applicazione del giornale
+
+	@Override
+	public void applica(byte tipo, Giornale.Campi in) throws Exception {
+		switch (tipo) {
+			case Giornale.INSERISCI_LISTA -> sistema.inserisciLista(new ListaDiArticoli(in.leggiStringa()));
+			case Giornale.CANCELLA_LISTA -> sistema.cancellaLista(in.leggiStringa());
+			case Giornale.INSERISCI_CATEGORIA -> sistema.inserisciCategoria(in.leggiStringa());
+			case Giornale.CANCELLA_CATEGORIA -> sistema.cancellaCategoria(in.leggiStringa());
+			case Giornale.RINOMINA_CATEGORIA -> {
+				String vecchioNome = in.leggiStringa();
+				sistema.rinominaCategoria(vecchioNome, in.leggiStringa());
+			}
+			case Giornale.INSERISCI_ARTICOLO -> sistema.inserisciArticolo(leggiArticolo(in));
+			case Giornale.CANCELLA_ARTICOLO -> sistema.cancellaArticolo(articoloRegistrato(in));
+			case Giornale.CATEGORIA_ARTICOLO -> articoloRegistrato(in).setCategoria(in.leggiStringa());
+			case Giornale.PREZZO_ARTICOLO -> articoloRegistrato(in).setPrezzoCentesimi(in.leggiNumero());
+			case Giornale.NOTA_ARTICOLO -> articoloRegistrato(in).setNota(in.leggiStringa());
+			case Giornale.LISTA_INSERISCI -> {
+				ListaDiArticoli l = sistema.matchLista(in.leggiStringa());
+				Articolo letto = leggiArticolo(in);
+				Articolo registrato = sistema.trovaArticoloGlobale(letto.getNome(), letto.getCategoria());
+				l.inserisciArticolo(registrato != null ? registrato : letto);
+			}
+			case Giornale.LISTA_CANCELLA -> {
+				ListaDiArticoli l = sistema.matchLista(in.leggiStringa());
+				l.cancellaArticolo(articoloInLista(l, in));
+			}
+			case Giornale.LISTA_RECUPERA -> {
+				ListaDiArticoli l = sistema.matchLista(in.leggiStringa());
+				l.recuperaArticolo(articoloInLista(l, in));
+			}
+			case Giornale.LISTA_SVUOTA_CESTINO -> sistema.matchLista(in.leggiStringa()).svuotaCancellati();
+			case Giornale.LISTA_RIMUOVI -> {
+				ListaDiArticoli l = sistema.matchLista(in.leggiStringa());
+				l.rimuoviCompletamente(articoloInLista(l, in));
+			}
+			default -> throw new IOException("Operazione del giornale sconosciuta: " + tipo);
+		}
+	}
+
+	/**
+	 * Legge dal giornale nome, categoria, prezzo e nota di un articolo e lo crea
+	 *
+	 * @param in I campi dell'operazione
+	 *
+	 * @return Il nuovo articolo
+	 *
+	 * @throws Exception Se i dati non sono validi
+	 */
+	private static Articolo leggiArticolo(Giornale.Campi in) throws Exception {
+		String nome = in.leggiStringa();
+		String categoria = in.leggiStringa();
+		long prezzo = in.leggiNumero();
+
+		Articolo a = new Articolo(nome, categoria, 0, in.leggiStringa());
+		a.setPrezzoCentesimi(prezzo);
+		return a;
+	}
+
+	/**
+	 * Legge dal giornale nome e categoria di un articolo e lo cerca nel registro
+	 *
+	 * @param in I campi dell'operazione
+	 *
+	 * @return L'articolo registrato
+	 *
+	 * @throws Exception Se l'articolo non è nel registro
+	 */
+	private Articolo articoloRegistrato(Giornale.Campi in) throws Exception {
+		String nome = in.leggiStringa();
+		Articolo a = sistema.trovaArticoloGlobale(nome, in.leggiStringa());
+		if (a == null)
+			throw new GestioneListeException("Articolo non trovato");
+		return a;
+	}
+
+	/**
+	 * Legge dal giornale nome e categoria di un articolo e lo cerca in una lista
+	 *
+	 * @param l La lista in cui cercare
+	 * @param in I campi dell'operazione
+	 *
+	 * @return L'articolo della lista
+	 *
+	 * @throws Exception Se l'articolo non è nella lista
+	 */
+	private static Articolo articoloInLista(ListaDiArticoli l, Giornale.Campi in) throws Exception {
+		String nome = in.leggiStringa();
+		Articolo a = l.trovaArticolo(nome, in.leggiStringa());
+		if (a == null)
+			throw new ListaDiArticoliException("Articolo non presente nella lista");
+		return a;
+	}
+}
@@ -0,0 +1,344 @@
+package modello;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * La classe {@code RigheFile} scorre le righe di un file di testo letto a finestre in un buffer in memoria,
+ * dividendo ciascuna riga in campi separati da {@code ':'} senza creare stringhe
+ * <p>Per ogni riga vengono memorizzate solo le posizioni dei campi; le stringhe vengono create su richiesta
+ * con {@link #campo(int)}, e i campi possono essere confrontati o interpretati direttamente dai byte
+ * <p>Come {@link String#split(String)}, i campi vuoti in fondo alla riga vengono ignorati
+ * <p>Se abilitate con {@link #setSequenzeEscape(boolean)}, le sequenze {@code \\:}, {@code \\\\}, {@code \\n}
+ * e {@code \\r} rappresentano i caratteri corrispondenti all'interno di un campo e non lo dividono
+ * <p>Il file viene letto con {@link FileChannel#read(ByteBuffer, long)} a finestre di {@link #FINESTRA} byte, riusando
+ * lo stesso buffer; una riga più lunga di una finestra allarga il buffer. Il file non viene mappato in memoria,
+ * perché su alcuni sistemi (Windows) un file mappato non può essere sostituito finché la mappatura non viene
+ * rilasciata dal garbage collector, e il salvataggio successivo nello stesso file fallirebbe
+ * <p>Le stesse righe possono essere lette da un array di byte già in memoria, vedi {@link #RigheFile(byte[], Charset)}
+ *
+ * @author Angie Albitres
+ */
+final class RigheFile implements CharSequence {
+
+	/**
+	 * Dimensione iniziale del buffer, e quindi di ciascuna porzione del file letta
+	 */
+	static final int FINESTRA = 1 << 23;
+
+	/**
+	 * Il file da leggere, {@code null} se le righe sono lette da un array in memoria
+	 */
+	private final FileChannel canale;
+
+	/**
+	 * Codifica dei caratteri del file, la stessa usata da {@link java.io.PrintWriter} in scrittura
+	 */
+	private final Charset codifica;
+
+	/**
+	 * Porzione del file attualmente letta, valida fino a {@link #limite}
+	 */
+	private byte[] buf;
+
+	/**
+	 * Numero di byte validi in {@link #buf}
+	 */
+	private int limite;
+
+	/**
+	 * Posizione nel file dell'inizio di {@link #buf}
+	 */
+	private long inizioFinestra;
+
+	/**
+	 * Posizione in {@link #buf} della riga successiva
+	 */
+	private int prossima;
+
+	/**
+	 * Inizio e fine di ciascun campo della riga corrente, come posizioni in {@link #buf}
+	 */
+	private int[] campi = new int[16];
+
+	/**
+	 * Numero di campi della riga corrente
+	 */
+	private int numCampi;
+
+	/**
+	 * Fine della riga corrente, escluso il terminatore, come posizione in {@link #buf}
+	 */
+	private int fineRiga;
+
+	/**
+	 * Indica se il carattere {@code '\\'} introduce una sequenza di escape
+	 */
+	private boolean sequenzeEscape;
+
+	/**
+	 * Indica se la riga corrente contiene sequenze di escape, altrimenti i campi vengono decodificati direttamente
+	 */
+	private boolean escapeNellaRiga;
+
+	/**
+	 * Crea il lettore posizionandolo prima della prima riga
+	 *
+	 * @param canale Il file da leggere
+	 * @param codifica La codifica dei caratteri del file
+	 *
+	 * @throws IOException In caso di errori di lettura
+	 */
+	RigheFile(FileChannel canale, Charset codifica) throws IOException {
+		this.canale = canale;
+		this.codifica = codifica;
+		buf = new byte[(int) Math.min(FINESTRA, Math.max(canale.size(), 1))];
+		leggi(0);
+	}
+
+	/**
+	 * Crea il lettore delle righe contenute in un array di byte, posizionandolo prima della prima riga
+	 *
+	 * @param dati Le righe, nello stesso formato del file; l'array non viene copiato
+	 * @param codifica La codifica dei caratteri
+	 */
+	RigheFile(byte[] dati, Charset codifica) {
+		this.canale = null;
+		this.codifica = codifica;
+		buf = dati;
+		limite = dati.length;
+	}
+
+	/**
+	 * Abilita o disabilita le sequenze di escape, a partire dalla riga successiva
+	 *
+	 * @param sequenzeEscape true se il carattere {@code '\\'} introduce una sequenza di escape
+	 */
+	void setSequenzeEscape(boolean sequenzeEscape) {
+		this.sequenzeEscape = sequenzeEscape;
+	}
+
+	/**
+	 * Legge nel buffer la porzione del file che inizia alla posizione indicata
+	 *
+	 * @param inizio La posizione nel file
+	 *
+	 * @throws IOException In caso di errori di lettura
+	 */
+	private void leggi(long inizio) throws IOException {
+		ByteBuffer b = ByteBuffer.wrap(buf);
+		while (b.hasRemaining() && canale.read(b, inizio + b.position()) >= 0)
+			;
+		limite = b.position();
+		inizioFinestra = inizio;
+		prossima = 0;
+	}
+
+	/**
+	 * Passa alla riga successiva e ne individua i campi
+	 *
+	 * @return false se il file è terminato, true altrimenti
+	 *
+	 * @throws IOException In caso di errori di lettura
+	 */
+	boolean prossima() throws IOException {
+		if (prossima >= limite) {
+			if (canale == null || limite < buf.length)
+				return false;
+			leggi(inizioFinestra + limite);
+			if (limite == 0)
+				return false;
+		}
+
+		int fine = prossima;
+		while (fine < limite && buf[fine] != '\n')
+			fine++;
+
+		if (fine == limite && limite == buf.length && canale != null) {
+			// la riga prosegue nella finestra successiva: se occupa già tutto il buffer, il buffer viene allargato
+			if (prossima == 0)
+				buf = new byte[Math.multiplyExact(buf.length, 2)];
+			leggi(inizioFinestra + prossima);
+			return prossima();
+		}
+
+		int inizio = prossima;
+		prossima = fine + 1;
+		if (fine > inizio && buf[fine - 1] == '\r')
+			fine--;
+
+		dividi(inizio, fine);
+		return true;
+	}
+
+	/**
+	 * Individua i campi della riga compresa tra le posizioni indicate
+	 *
+	 * @param inizio Inizio della riga
+	 * @param fine Fine della riga, escluso il terminatore
+	 */
+	private void dividi(int inizio, int fine) {
+		numCampi = 0;
+		fineRiga = fine;
+		escapeNellaRiga = false;
+		int campo = inizio;
+		for (int i = inizio; ; i++) {
+			if (sequenzeEscape && i < fine && buf[i] == '\\') {
+				// il carattere successivo appartiene al campo
+				escapeNellaRiga = true;
+				if (++i == fine)
+					i--;
+				continue;
+			}
+
+			if (i == fine || buf[i] == ':') {
+				if (2 * numCampi + 2 > campi.length)
+					campi = Arrays.copyOf(campi, campi.length * 2);
+				campi[2 * numCampi] = campo;
+				campi[2 * numCampi + 1] = i;
+				numCampi++;
+				campo = i + 1;
+
+				if (i == fine)
+					break;
+			}
+		}
+
+		while (numCampi > 1 && campi[2 * numCampi - 2] == campi[2 * numCampi - 1])
+			numCampi--;
+	}
+
+	/**
+	 * Restituisce il numero di campi della riga corrente
+	 *
+	 * @return Il numero di campi
+	 */
+	int numCampi() {
+		return numCampi;
+	}
+
+	/**
+	 * Controlla, senza creare stringhe, se un campo della riga corrente coincide con il testo indicato
+	 *
+	 * @param i L'indice del campo
+	 * @param testo Il testo da confrontare, composto da soli caratteri ASCII
+	 *
+	 * @return true se il campo coincide con il testo, false altrimenti
+	 */
+	boolean campoUguale(int i, String testo) {
+		Objects.checkIndex(i, numCampi);
+		int inizio = campi[2 * i];
+		int fine = campi[2 * i + 1];
+		if (fine - inizio != testo.length())
+			return false;
+
+		for (int j = 0; j < testo.length(); j++)
+			if (buf[inizio + j] != testo.charAt(j))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Crea la stringa di un campo della riga corrente
+	 *
+	 * @param i L'indice del campo
+	 *
+	 * @return Il contenuto del campo
+	 */
+	String campo(int i) {
+		Objects.checkIndex(i, numCampi);
+		int inizio = campi[2 * i];
+		int fine = campi[2 * i + 1];
+		if (!escapeNellaRiga)
+			return new String(buf, inizio, fine - inizio, codifica);
+
+		byte[] b = new byte[fine - inizio];
+
+		// le sequenze di escape sono ASCII, per cui possono essere risolte direttamente sui byte
+		int n = 0;
+		for (int j = inizio; j < fine; j++) {
+			byte c = buf[j];
+			if (c == '\\' && j + 1 < fine) {
+				c = buf[++j];
+				if (c == 'n')
+					c = '\n';
+				else if (c == 'r')
+					c = '\r';
+			}
+			b[n++] = c;
+		}
+		return new String(b, 0, n, codifica);
+	}
+
+	/**
+	 * Crea la stringa che va dall'inizio di un campo alla fine della riga, separatori compresi e senza risolvere
+	 * le sequenze di escape: serve a leggere l'ultimo campo dei file che non proteggevano i separatori
+	 *
+	 * @param i L'indice del primo campo
+	 *
+	 * @return Il contenuto della riga dal campo indicato
+	 */
+	String resto(int i) {
+		Objects.checkIndex(i, numCampi);
+		int inizio = campi[2 * i];
+		return new String(buf, inizio, fineRiga - inizio, codifica);
+	}
+
+	/**
+	 * Copia i byte della riga corrente, senza risolvere le sequenze di escape, seguiti dal terminatore {@code '\n'}
+	 *
+	 * @param out Dove copiare la riga
+	 */
+	void copiaRiga(ByteArrayOutputStream out) {
+		int inizio = campi[0];
+		out.write(buf, inizio, fineRiga - inizio);
+		out.write('\n');
+	}
+
+	/**
+	 * Interpreta un campo della riga corrente come prezzo, senza creare stringhe
+	 *
+	 * @param i L'indice del campo
+	 *
+	 * @return Il prezzo in centesimi
+	 *
+	 * @throws NumberFormatException Viene lanciata se il campo non è un prezzo valido
+	 */
+	long prezzo(int i) {
+		Objects.checkIndex(i, numCampi);
+		return Prezzo.parse(this, campi[2 * i], campi[2 * i + 1]);
+	}
+
+	/**
+	 * Lunghezza della porzione letta, vista come sequenza di caratteri ASCII
+	 */
+	@Override
+	public int length() {
+		return limite;
+	}
+
+	/**
+	 * Carattere alla posizione indicata della porzione letta, valido per i caratteri ASCII
+	 */
+	@Override
+	public char charAt(int index) {
+		Objects.checkIndex(index, limite);
+		return (char) (buf[index] & 0xFF);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		Objects.checkFromToIndex(start, end, limite);
+		return new String(buf, start, end - start, codifica);
+	}
+
+	@Override
+	public String toString() {
+		return "RigheFile [posizione=" + (inizioFinestra + prossima) + "]";
+	}
+}
@@ -0,0 +1,892 @@
+package modello;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import modello.exception.ArticoloException;
+import modello.exception.GestioneListeException;
+import modello.exception.ListaDiArticoliException;
+
+/**
+ * La classe {@code SistemaListe} contiene i dati di un sistema di liste: l'elenco delle liste, l'anagrafica
+ * delle categorie e il registro globale degli articoli con i loro indici
+ * <p>Ogni istanza è indipendente, per cui più sistemi possono convivere nella stessa JVM, ciascuno salvato con una
+ * propria {@link Persistenza}; {@link GestioneListe} delega a un'istanza condivisa e alla sua persistenza
+ * <p>Le operazioni possono essere chiamate da più thread. Le modifiche vengono eseguite una alla volta, sotto un unico
+ * lock; le letture (ricerche, elenchi, verifica di liste e categorie) non acquisiscono lock e non attendono mai
+ * le modifiche, perché lo stato è conservato in strutture che ammettono letture concorrenti a un solo scrittore.
+ * Una lettura vede le modifiche completate prima del suo inizio e, al più, parte di quella in corso; gli elenchi
+ * restituiti sono copie, che non risentono delle modifiche successive
+ * <p>Il contenuto di ciascuna lista è protetto dal lock della lista stessa, per cui le modifiche a liste diverse
+ * non si attendono a vicenda né attendono il lock del sistema. Le operazioni sul catalogo che si propagano alle liste
+ * (cancellazione di un articolo, cancellazione e rinomina di una categoria) acquisiscono prima il lock del sistema
+ * e poi quelli di tutte le liste coinvolte, nell'ordine di {@link ListaDiArticoli#blocca(List)}
+ *
+ * @author Angie Albitres
+ */
+public class SistemaListe {
+
+	/**
+	 * Nome della categoria predefinita assegnata agli articoli non categorizzati
+	 */
+	public static final String CATEGORIA_DEFAULT = "Non categorizzato";
+
+	/**
+	 * Elenco di tutte le liste di articoli gestite dal sistema, indicizzate per nome in minuscolo
+	 * <p>L'indice mantiene l'ordine di inserimento delle liste
+	 */
+	private volatile IndiceOrdinato<ListaDiArticoli> listeArticoli = new IndiceOrdinato<ListaDiArticoli>();
+	/**
+	 * Insieme delle categorie merceologiche definite dall'utente, in ordine di inserimento
+	 */
+	private volatile IndiceOrdinato<String> categorie = new IndiceOrdinato<String>();
+	/**
+	 * Indice inverso dalla categoria (in minuscolo) agli articoli registrati che vi appartengono, per chiave dell'articolo
+	 */
+	private volatile Map<String, Map<String, Articolo>> articoliPerCategoria = new ConcurrentHashMap<String, Map<String, Articolo>>();
+	/**
+	 * Registro globale di tutti gli articoli esistenti nel sistema, indicizzati per la coppia (nome, categoria) normalizzata
+	 * <p>L'indice mantiene l'ordine di inserimento; un articolo che cambia categoria viene spostato in fondo
+	 */
+	private volatile IndiceOrdinato<Articolo> articoli = new IndiceOrdinato<Articolo>();
+	/**
+	 * Indice alfabetico del registro globale, usato per la ricerca per prefisso
+	 */
+	private volatile IndicePrefissi indiceArticoli = IndicePrefissi.concorrente();
+	/**
+	 * Indice per trigrammi dei nomi del registro globale, usato per la ricerca approssimata
+	 */
+	private volatile IndiceTrigrammi indiceTrigrammi = new IndiceTrigrammi();
+	/**
+	 * Contatore delle modifiche a categorie e registro globale, per riconoscere quando il catalogo
+	 * di un archivio suddiviso va riscritto; le modifiche delle liste sono contate da ciascuna lista
+	 */
+	private long modificheCatalogo;
+
+	/**
+	 * Serializza le modifiche del sistema; è rientrante perché le modifiche degli articoli registrati
+	 * notificate all'osservatore avvengono anche durante altre modifiche
+	 */
+	private final ReentrantLock scrittura = new ReentrantLock();
+
+	/**
+	 * Esclude gli inserimenti di articoli nelle liste del sistema durante le operazioni a cascata: gli inserimenti
+	 * lo acquisiscono in lettura, senza attendersi tra loro, le operazioni a cascata in scrittura, così che nessuna lista
+	 * riceva un articolo coinvolto dopo che le liste da modificare sono state bloccate
+	 * <p>Anche la modifica di un singolo articolo registrato è un'operazione a cascata, perché raggiunge tutte le liste
+	 * che lo contengono; cancellazioni e recuperi nelle liste lo acquisiscono in lettura come gli inserimenti, perché
+	 * cercano l'articolo per chiave. Va sempre acquisito dopo {@link #scrittura}
+	 */
+	private final ReentrantReadWriteLock cascate = new ReentrantReadWriteLock();
+
+	/**
+	 * Giornale in cui vengono registrate le modifiche, {@code null} se non è attivo
+	 */
+	private volatile Giornale giornale;
+	/**
+	 * Numero di operazioni in corso sul thread le cui modifiche interne non vanno registrate nel giornale,
+	 * perché vengono ripetute rieseguendo l'operazione stessa
+	 */
+	private final ThreadLocal<int[]> giornaleSospeso = ThreadLocal.withInitial(() -> new int[1]);
+
+	/**
+	 * Mantiene allineato l'indice del registro quando un articolo registrato cambia categoria
+	 */
+	private final OsservatoreArticolo osservatoreRegistro = new OsservatoreArticolo() {
+		// la modifica raggiunge le liste che contengono l'articolo, come le operazioni a cascata, vedi bloccaListeCon
+		@Override
+		public void inizioModifica() {
+			scrittura.lock();
+			cascate.writeLock().lock();
+		}
+
+		@Override
+		public void fineModifica() {
+			cascate.writeLock().unlock();
+			scrittura.unlock();
+		}
+
+		@Override
+		public void verificaCategoria(Articolo a, String nuovaCategoria) throws ArticoloException {
+			Articolo presente = articoli.get(Articolo.chiave(a.getNome(), nuovaCategoria));
+			if (presente != null && presente != a)
+				throw new ArticoloException("Esiste già un articolo " + a.getNome() + " nella categoria " + nuovaCategoria);
+		}
+
+		@Override
+		public void categoriaModificata(Articolo a, String vecchiaCategoria) {
+			scrittura.lock();
+			try {
+				String vecchiaChiave = Articolo.chiave(a.getNome(), vecchiaCategoria);
+				articoli.rimuovi(vecchiaChiave);
+				articoli.aggiungi(a.chiave(), a);
+				indiceArticoli.rinomina(vecchiaChiave, a);
+
+				rimuoviDaCategoria(vecchiaChiave, vecchiaCategoria);
+				aggiungiACategoria(a);
+				modificheCatalogo++;
+
+				registra(Giornale.CATEGORIA_ARTICOLO, a.getNome(), vecchiaCategoria, a.getCategoria());
+			} finally {
+				scrittura.unlock();
+			}
+		}
+
+		@Override
+		public void prezzoModificato(Articolo a) {
+			scrittura.lock();
+			try {
+				articoli.modificato(a.chiave());
+				modificheCatalogo++;
+				registra(Giornale.PREZZO_ARTICOLO, a.getNome(), a.getCategoria(), a.getPrezzoCentesimi());
+			} finally {
+				scrittura.unlock();
+			}
+		}
+
+		@Override
+		public void notaModificata(Articolo a) {
+			scrittura.lock();
+			try {
+				articoli.modificato(a.chiave());
+				modificheCatalogo++;
+				registra(Giornale.NOTA_ARTICOLO, a.getNome(), a.getCategoria(), a.getNota());
+			} finally {
+				scrittura.unlock();
+			}
+		}
+	};
+
+	/**
+	 * Stato immutabile del sistema in un dato istante, da salvare o esportare mentre le modifiche proseguono
+	 * <p>Articoli e liste sono copie immutabili (vedi {@link Articolo#versione()} e {@link ListaDiArticoli#versione()}),
+	 * condivise con le versioni precedenti per le parti non modificate nel frattempo
+	 */
+	static final class Versione {
+		/** Le categorie, in ordine di inserimento */
+		final List<String> categorie;
+		/** Le copie degli articoli del registro globale, in ordine di inserimento */
+		final List<Articolo> articoli;
+		/** Le versioni delle liste, in ordine di inserimento */
+		final List<ListaDiArticoli.Versione> liste;
+		/** Il contatore delle modifiche del catalogo */
+		final long modificheCatalogo;
+
+		Versione(List<String> categorie, List<Articolo> articoli, List<ListaDiArticoli.Versione> liste, long modificheCatalogo) {
+			this.categorie = categorie;
+			this.articoli = articoli;
+			this.liste = liste;
+			this.modificheCatalogo = modificheCatalogo;
+		}
+	}
+
+	/**
+	 * Crea un sistema vuoto, con la sola categoria di default
+	 */
+	public SistemaListe() {
+		categorie.aggiungi(CATEGORIA_DEFAULT, CATEGORIA_DEFAULT);
+	}
+
+	/**
+	 * Ripristina lo stato iniziale del sistema creando nuove liste vuote
+	 * La categoria di default viene aggiunta automaticamente
+	 */
+	public void svuota() {
+		scrittura.lock();
+		try {
+			scollega();
+			azzera();
+			modificheCatalogo++;
+		} finally {
+			scrittura.unlock();
+		}
+	}
+
+	/**
+	 * Sostituisce lo stato del sistema con quello di un altro sistema, che resta vuoto
+	 * <p>Serve ai caricamenti che leggono un salvataggio in un sistema separato e lo rendono visibile solo a lettura
+	 * riuscita, così che un file danneggiato lasci invariato questo sistema. Liste e articoli passano a questo sistema
+	 * senza essere copiati; l'operazione non viene registrata nel giornale
+	 *
+	 * @param letto Il sistema da cui prendere lo stato, senza giornale e non usato da altri thread
+	 */
+	void sostituisci(SistemaListe letto) {
+		scrittura.lock();
+		try {
+			scollega();
+			for (ListaDiArticoli l : letto.listeArticoli.valori())
+				l.setSistema(this);
+			for (Articolo a : letto.articoli.valori())
+				a.setRegistro(osservatoreRegistro);
+
+			listeArticoli = letto.listeArticoli;
+			categorie = letto.categorie;
+			articoliPerCategoria = letto.articoliPerCategoria;
+			articoli = letto.articoli;
+			indiceArticoli = letto.indiceArticoli;
+			indiceTrigrammi = letto.indiceTrigrammi;
+			modificheCatalogo++;
+
+			letto.azzera();
+		} finally {
+			scrittura.unlock();
+		}
+	}
+
+	/**
+	 * Scollega liste e articoli dal sistema, prima di sostituirne lo stato; va chiamato con il lock di scrittura
+	 */
+	private void scollega() {
+		for (ListaDiArticoli l : listeArticoli.valori())
+			l.setSistema(null);
+		for (Articolo a : articoli.valori())
+			a.setRegistro(null);
+	}
+
+	/**
+	 * Crea indici vuoti, con la sola categoria di default, senza toccare liste e articoli presenti;
+	 * va chiamato con il lock di scrittura
+	 */
+	private void azzera() {
+		IndiceOrdinato<String> soloDefault = new IndiceOrdinato<String>();
+		soloDefault.aggiungi(CATEGORIA_DEFAULT, CATEGORIA_DEFAULT);
+
+		listeArticoli = new IndiceOrdinato<ListaDiArticoli>();
+		categorie = soloDefault;
+		articoliPerCategoria = new ConcurrentHashMap<String, Map<String, Articolo>>();
+		articoli = new IndiceOrdinato<Articolo>();
+		indiceArticoli = IndicePrefissi.concorrente();
+		indiceTrigrammi = new IndiceTrigrammi();
+	}
+
+	/**
+	 * Aggiunge una nuova lista al sistema verificando che non ne esista già una con lo stesso nome
+	 *
+	 * @param list L'oggetto {@code ListaDiArticoli} da inserire
+	 *
+	 * @throws GestioneListeException Viene lanciata se la lista è nulla, se il nome è già presente,
+	 * se la lista è inserita in un altro sistema o se contiene articoli non registrati nel sistema
+	 */
+	public void inserisciLista(ListaDiArticoli list) throws GestioneListeException{
+		if (list == null)
+			throw new GestioneListeException("La lista non può essere nulla");
+
+		scrittura.lock();
+		try {
+			String chiave = chiaveLista(list.getNome());
+			if (listeArticoli.contiene(chiave))
+	            throw new GestioneListeException("Lista già presente");
+			if (list.getSistema() != null)
+				throw new GestioneListeException("La lista è già inserita in un altro sistema");
+
+			try {
+				list.inserisciNelSistema(this);
+			} catch (ListaDiArticoliException e) {
+				throw new GestioneListeException(e.getMessage());
+			}
+			listeArticoli.aggiungi(chiave, list);
+
+			if (!giornaleAttivo())
+				return;
+
+			registra(Giornale.INSERISCI_LISTA, list.getNome());
+			for (Articolo a : list) {
+				registra(Giornale.LISTA_INSERISCI, list.getNome(), a.getNome(), a.getCategoria(), a.getPrezzoCentesimi(), a.getNota());
+				if (list.isCancellato(a))
+					registra(Giornale.LISTA_CANCELLA, list.getNome(), a.getNome(), a.getCategoria());
+			}
+		} finally {
+			scrittura.unlock();
+		}
+	}
+
+	/**
+	 * Rimuove definitivamente una lista dal sistema cercandola per nome
+	 *
+	 * @param nome Il nome della lista da eliminare
+	 *
+	 * @throws GestioneListeException Viene lanciata se il nome è vuoto o se la lista non viene trovata
+	 */
+	public void cancellaLista(String nome) throws GestioneListeException {
+		if(nome== null ||nome.isBlank())
+			throw new GestioneListeException("Il nome della lista non può essere vuoto");
+
+		scrittura.lock();
+		try {
+			ListaDiArticoli listCanc = listeArticoli.rimuovi(chiaveLista(nome));
+
+			if (listCanc == null)
+				throw new GestioneListeException("Lista non trovata");
+
+			listCanc.setSistema(null);
+			registra(Giornale.CANCELLA_LISTA, listCanc.getNome());
+		} finally {
+			scrittura.unlock();
+		}
+	}
+
+	/**
+	 * Ricerca e restituisce una lista specifica tramite il suo nome
+	 *
+	 * @param nome Il nome della lista da cercare
+	 *
+	 * @return L'oggetto {@code ListaDiArticoli} corrispondente
+	 *
+	 * @throws GestioneListeException Viene lanciata se il nome è vuoto o se la lista non esiste
+	 */
+	public ListaDiArticoli matchLista(String nome) throws GestioneListeException {
+		if(nome== null ||nome.isBlank())
+			throw new GestioneListeException("Il nome della lista non può essere vuoto");
+
+		ListaDiArticoli listaTrovata = listeArticoli.get(chiaveLista(nome.trim()));
+
+        if (listaTrovata == null)
+             throw new GestioneListeException("Lista non trovata");
+
+        return listaTrovata;
+	}
+
+	/**
+	 * Calcola la chiave con cui una lista viene indicizzata, il confronto tra i nomi non distingue maiuscole e minuscole
+	 *
+	 * @param nome Nome della lista
+	 *
+	 * @return Il nome della lista in minuscolo
+	 */
+	private static String chiaveLista(String nome) {
+		return nome.toLowerCase();
+	}
+
+	/**
+	 * Registra una nuova categoria nel sistema
+	 *
+	 * @param nome Il nome della categoria da aggiungere
+	 *
+	 * @throws GestioneListeException Viene lanciata se il nome è vuoto o se la categoria esiste già
+	 */
+	public void inserisciCategoria(String nome) throws GestioneListeException {
+		if(nome== null ||nome.isBlank())
+			throw new GestioneListeException("Il nome della categoria non può essere vuoto");
+
+		scrittura.lock();
+		try {
+			if(categorie.contiene(nome))
+				throw new GestioneListeException("Categoria già presente");
+
+			categorie.aggiungi(nome, nome);
+			modificheCatalogo++;
+			registra(Giornale.INSERISCI_CATEGORIA, nome);
+		} finally {
+			scrittura.unlock();
+		}
+	}
+
+	/**
+	 * Rimuove una categoria dall'anagrafica
+	 * Non è permesso rimuovere la categoria di default
+	 *
+	 * @param nome Il nome della categoria da eliminare
+	 *
+	 * @throws GestioneListeException Viene lanciata se la categoria è quella di default o se non esiste
+	 */
+	public void cancellaCategoria(String nome) throws GestioneListeException {
+		if(nome == null || nome.isBlank())
+	        throw new GestioneListeException("Il nome della categoria non può essere vuoto");
+
+		scrittura.lock();
+		try {
+		    if(!categorie.contiene(nome))
+		        throw new GestioneListeException("Categoria non trovata");
+
+		    if(nome.equals(CATEGORIA_DEFAULT))
+		        throw new GestioneListeException("Non è possibile cancellare la categoria di default");
+
+		    List<Articolo> daSpostare = articoliInCategoria(nome);
+		    verificaSpostamento(daSpostare, CATEGORIA_DEFAULT);
+
+		    List<ListaDiArticoli> coinvolte = bloccaListeCon(daSpostare);
+		    try {
+		    	categorie.rimuovi(nome);
+		    	spostaArticoli(daSpostare, CATEGORIA_DEFAULT);
+		    	modificheCatalogo++;
+		    	registra(Giornale.CANCELLA_CATEGORIA, nome);
+		    } finally {
+		    	sbloccaListe(coinvolte);
+		    }
+		} finally {
+			scrittura.unlock();
+		}
+	}
+
+	/**
+	 * Rinomina una categoria dell'anagrafica, gli articoli che vi appartengono passano alla nuova categoria
+	 * Non è permesso rinominare la categoria di default
+	 *
+	 * @param vecchioNome Il nome attuale della categoria
+	 * @param nuovoNome Il nuovo nome della categoria
+	 *
+	 * @throws GestioneListeException Viene lanciata se i nomi sono vuoti, se la categoria non esiste o è quella di default,
+	 * se il nuovo nome è già usato o se la rinomina renderebbe duplicato un articolo
+	 */
+	public void rinominaCategoria(String vecchioNome, String nuovoNome) throws GestioneListeException {
+		if(vecchioNome == null || vecchioNome.isBlank() || nuovoNome == null || nuovoNome.isBlank())
+	        throw new GestioneListeException("Il nome della categoria non può essere vuoto");
+
+		scrittura.lock();
+		try {
+			if(!categorie.contiene(vecchioNome))
+		        throw new GestioneListeException("Categoria non trovata");
+
+			if(vecchioNome.equals(CATEGORIA_DEFAULT))
+		        throw new GestioneListeException("Non è possibile rinominare la categoria di default");
+
+			if(categorie.contiene(nuovoNome))
+				throw new GestioneListeException("Categoria già presente");
+
+			List<Articolo> daSpostare = articoliInCategoria(vecchioNome);
+			verificaSpostamento(daSpostare, nuovoNome);
+
+			List<ListaDiArticoli> coinvolte = bloccaListeCon(daSpostare);
+			try {
+				categorie.rinomina(vecchioNome, nuovoNome, nuovoNome);
+				spostaArticoli(daSpostare, nuovoNome);
+				modificheCatalogo++;
+				registra(Giornale.RINOMINA_CATEGORIA, vecchioNome, nuovoNome);
+			} finally {
+				sbloccaListe(coinvolte);
+			}
+		} finally {
+			scrittura.unlock();
+		}
+	}
+
+	/**
+	 * Restituisce gli articoli del registro che appartengono a una categoria (senza distinzione tra maiuscole e minuscole)
+	 *
+	 * @param categoria Il nome della categoria
+	 *
+	 * @return Gli articoli della categoria, ordinati per nome
+	 */
+	public List<Articolo> articoliInCategoria(String categoria) {
+		List<Articolo> ris = new ArrayList<Articolo>();
+
+		if (categoria == null)
+			return ris;
+
+		Map<String, Articolo> membri = articoliPerCategoria.get(categoria.toLowerCase());
+		if (membri != null)
+			ris.addAll(membri.values());
+
+		ris.sort(Comparator.comparing(Articolo::getNome, String.CASE_INSENSITIVE_ORDER));
+		return ris;
+	}
+
+	/**
+	 * Controlla che gli articoli possano passare alla nuova categoria senza diventare duplicati di articoli già registrati
+	 *
+	 * @param daSpostare Gli articoli da spostare
+	 * @param nuovaCategoria La categoria di destinazione
+	 *
+	 * @throws GestioneListeException Viene lanciata se uno degli articoli esiste già nella categoria di destinazione
+	 */
+	private void verificaSpostamento(List<Articolo> daSpostare, String nuovaCategoria) throws GestioneListeException {
+		for (Articolo a : daSpostare) {
+			Articolo presente = trovaArticoloGlobale(a.getNome(), nuovaCategoria);
+			if (presente != null && presente != a)
+				throw new GestioneListeException("Impossibile spostare l'articolo " + a.getNome() + ": esiste già in " + nuovaCategoria);
+		}
+	}
+
+	/**
+	 * Assegna la nuova categoria agli articoli indicati, l'indice viene aggiornato dall'osservatore del registro
+	 *
+	 * @param daSpostare Gli articoli da spostare
+	 * @param nuovaCategoria La categoria di destinazione
+	 *
+	 * @throws GestioneListeException Viene lanciata se la modifica di un articolo non va a buon fine
+	 */
+	private void spostaArticoli(List<Articolo> daSpostare, String nuovaCategoria) throws GestioneListeException {
+		sospendiGiornale();
+		try {
+			for (Articolo a : daSpostare) {
+		    	try {
+		    		a.setCategoria(nuovaCategoria);
+		    	} catch (ArticoloException e) {
+		    		throw new GestioneListeException(e.getMessage());
+		    	}
+		    }
+		} finally {
+			riprendiGiornale();
+		}
+	}
+
+	/**
+	 * Blocca le liste che contengono gli articoli indicati, così che un'operazione le modifichi tutte senza interferenze
+	 * e ne registri il risultato nel giornale prima di qualsiasi altra loro modifica
+	 * <p>Gli inserimenti nelle liste del sistema restano esclusi fino a {@link #sbloccaListe(List)}; se nel frattempo
+	 * un articolo viene inserito in una lista esterna al sistema, i lock vengono rilasciati e riacquisiti includendola
+	 *
+	 * @param articoli Gli articoli coinvolti
+	 *
+	 * @return Le liste bloccate, da passare a {@link #sbloccaListe(List)}
+	 */
+	private List<ListaDiArticoli> bloccaListeCon(Collection<Articolo> articoli) {
+		cascate.writeLock().lock();
+		while (true) {
+			Set<ListaDiArticoli> contenenti = listeCon(articoli);
+			List<ListaDiArticoli> bloccate = new ArrayList<ListaDiArticoli>(contenenti);
+			ListaDiArticoli.blocca(bloccate);
+
+			// le liste bloccate non possono più cambiare, ne possono comparire solo di nuove
+			if (contenenti.containsAll(listeCon(articoli)))
+				return bloccate;
+
+			ListaDiArticoli.sblocca(bloccate);
+		}
+	}
+
+	/**
+	 * Rilascia le liste bloccate con {@link #bloccaListeCon(Collection)} e riammette gli inserimenti nelle liste
+	 *
+	 * @param bloccate Le liste bloccate
+	 */
+	private void sbloccaListe(List<ListaDiArticoli> bloccate) {
+		ListaDiArticoli.sblocca(bloccate);
+		cascate.writeLock().unlock();
+	}
+
+	/**
+	 * Restituisce il lock da acquisire, prima di quello della lista, per inserire, cancellare, recuperare o rimuovere
+	 * un articolo in una lista del sistema
+	 *
+	 * @return Il lock, condiviso tra queste operazioni ed esclusivo rispetto alle operazioni a cascata
+	 */
+	Lock inserimento() {
+		return cascate.readLock();
+	}
+
+	/**
+	 * Raccoglie le liste che contengono almeno uno degli articoli, tra gli attivi o nel cestino
+	 *
+	 * @param articoli Gli articoli da cercare
+	 *
+	 * @return Le liste, senza ripetizioni
+	 */
+	private static Set<ListaDiArticoli> listeCon(Collection<Articolo> articoli) {
+		Set<ListaDiArticoli> ris = Collections.newSetFromMap(new IdentityHashMap<ListaDiArticoli, Boolean>());
+		for (Articolo a : articoli)
+			ris.addAll(a.getListe());
+		return ris;
+	}
+
+	/**
+	 * Aggiunge un articolo registrato all'indice della sua categoria
+	 *
+	 * @param a L'articolo da indicizzare
+	 */
+	private void aggiungiACategoria(Articolo a) {
+		articoliPerCategoria
+			.computeIfAbsent(a.getCategoria().toLowerCase(), k -> new ConcurrentHashMap<String, Articolo>())
+			.put(a.chiave(), a);
+	}
+
+	/**
+	 * Rimuove un articolo dall'indice di una categoria
+	 *
+	 * @param chiaveArticolo La chiave con cui l'articolo era registrato
+	 * @param categoria La categoria da cui rimuoverlo
+	 */
+	private void rimuoviDaCategoria(String chiaveArticolo, String categoria) {
+		String chiave = categoria.toLowerCase();
+		Map<String, Articolo> membri = articoliPerCategoria.get(chiave);
+
+		if (membri != null && membri.remove(chiaveArticolo) != null && membri.isEmpty())
+			articoliPerCategoria.remove(chiave);
+	}
+
+	/**
+	 * Verifica la presenza di una categoria nell'anagrafica di sistema
+	 *
+	 * @param nome Il nome della categoria da controllare
+	 *
+	 * @return true se la categoria esiste, false altrimenti
+	 */
+	public boolean esisteCategoria(String nome) {
+		return nome != null && categorie.contiene(nome);
+	}
+
+	/**
+	 * Inserisce un nuovo articolo nel registro globale
+	 * Se la categoria dell'articolo non esiste, viene creata automaticamente
+	 *
+	 * @param a L'oggetto {@code Articolo} da registrare
+	 *
+	 * @throws GestioneListeException Viene lanciata se l'articolo è già presente nel registro
+	 * o se è registrato in un altro sistema
+	 */
+	public void inserisciArticolo(Articolo a) throws GestioneListeException {
+		scrittura.lock();
+		try {
+		    if (articoli.contiene(a.chiave()))
+		        throw new GestioneListeException("Articolo già esistente");
+		    if (a.getRegistro() != null)
+		    	throw new GestioneListeException("Articolo già registrato in un altro sistema");
+
+		    // È qui che il gestore controlla la categoria dell'articolo
+		    String cat = a.getCategoria();
+		    if (!categorie.contiene(cat)) {
+		        categorie.aggiungi(cat, cat);
+		    }
+
+		    articoli.aggiungi(a.chiave(), a);
+		    indiceArticoli.aggiungi(a);
+		    indiceTrigrammi.aggiungi(a);
+		    aggiungiACategoria(a);
+		    a.setRegistro(osservatoreRegistro);
+		    modificheCatalogo++;
+
+		    registra(Giornale.INSERISCI_ARTICOLO, a.getNome(), a.getCategoria(), a.getPrezzoCentesimi(), a.getNota());
+		} finally {
+			scrittura.unlock();
+		}
+	}
+
+	/**
+	 * Rimuove un articolo dal registro globale del sistema e da tutte le liste in cui è presente.
+	 * <p>Grazie all'indice inverso dell'articolo vengono visitate solo le liste che lo contengono
+	 *
+	 * @param a L'articolo da eliminare dal sistema
+	 *
+	 * @throws GestioneListeException Viene lanciata se l'articolo non è presente nel registro globale
+	 */
+	public void cancellaArticolo(Articolo a) throws GestioneListeException {
+		scrittura.lock();
+		try {
+		    Articolo registrato = articoli.rimuovi(a.chiave());
+		    if(registrato == null) throw new GestioneListeException("Articolo non trovato");
+
+		    leggiListeCon(registrato);
+		    indiceArticoli.rimuovi(registrato.chiave());
+		    indiceTrigrammi.rimuovi(registrato);
+		    registrato.setRegistro(null);
+		    rimuoviDaCategoria(registrato.chiave(), registrato.getCategoria());
+		    modificheCatalogo++;
+
+		    List<ListaDiArticoli> coinvolte = bloccaListeCon(List.of(registrato));
+		    try {
+		    	sospendiGiornale();
+		    	try {
+		    		for (ListaDiArticoli lista : coinvolte) {
+		    			lista.rimuoviCompletamente(registrato);
+		    		}
+		    	} finally {
+		    		riprendiGiornale();
+		    	}
+		    	registra(Giornale.CANCELLA_ARTICOLO, registrato.getNome(), registrato.getCategoria());
+		    } finally {
+		    	sbloccaListe(coinvolte);
+		    }
+		} finally {
+			scrittura.unlock();
+		}
+	}
+
+	/**
+	 * Restituisce le liste del sistema che contengono l'articolo, tra gli attivi o nel cestino
+	 *
+	 * @param a L'articolo da cercare
+	 *
+	 * @return Le liste che contengono l'articolo, ordinate per nome
+	 */
+	public List<ListaDiArticoli> listeConArticolo(Articolo a) {
+		List<ListaDiArticoli> ris = new ArrayList<ListaDiArticoli>();
+
+		if (a == null)
+			return ris;
+
+		leggiListeCon(a);
+		for (ListaDiArticoli l : a.getListe()) {
+			if (l.getSistema() == this)
+				ris.add(l);
+		}
+
+		ris.sort(Comparator.comparing(ListaDiArticoli::getNome, String.CASE_INSENSITIVE_ORDER));
+
+		return ris;
+	}
+
+	/**
+	 * Legge le liste caricate su richiesta che contengono l'articolo e non sono ancora state lette,
+	 * così che l'articolo conosca tutte le liste che lo contengono
+	 *
+	 * @param a L'articolo da cercare
+	 */
+	private void leggiListeCon(Articolo a) {
+		for (ListaDiArticoli l : getListeArticoli())
+			l.leggiSeContiene(a);
+	}
+
+	/**
+	 * Restituisce una copia dell'elenco degli articoli presenti nel sistema
+	 *
+	 * @return Tutti gli articoli
+	 */
+	public List<Articolo> getArticoli() {
+		return articoli.valori();
+	}
+
+	/**
+	 * Restituisce una copia dell'elenco delle categorie presenti nel sistema
+	 *
+	 * @return Tutte le categorie
+	 */
+	public List<String> getCategorie() {
+		return categorie.valori();
+	}
+
+	/**
+	 * Restituisce una copia dell'elenco delle liste presenti nel sistema
+	 *
+	 * @return Tutte le liste
+	 */
+	public List<ListaDiArticoli> getListeArticoli() {
+		return listeArticoli.valori();
+	}
+
+	/**
+	 * Restituisce una versione immutabile di categorie, registro e liste in un unico istante, senza modifiche intermedie
+	 * <p>Vengono copiati solo articoli, liste e blocchi del registro modificati dalla versione precedente; le liste
+	 * vengono copiate prima di bloccare il sistema, per cui le modifiche attendono solo la raccolta delle copie
+	 * e le letture non attendono mai
+	 *
+	 * @return Lo stato del sistema
+	 */
+	Versione versione() {
+		for (ListaDiArticoli l : listeArticoli.valori())
+			l.versione();
+
+		scrittura.lock();
+		try {
+			List<ListaDiArticoli> liste = listeArticoli.valori();
+			List<ListaDiArticoli> bloccate = new ArrayList<ListaDiArticoli>(liste);
+			List<ListaDiArticoli.Versione> versioni = new ArrayList<ListaDiArticoli.Versione>(liste.size());
+			ListaDiArticoli.blocca(bloccate);
+			try {
+				for (ListaDiArticoli l : liste)
+					versioni.add(l.versione());
+			} finally {
+				ListaDiArticoli.sblocca(bloccate);
+			}
+
+			return new Versione(categorie.valori(), articoli.versione(Articolo::versione),
+					Collections.unmodifiableList(versioni), modificheCatalogo);
+		} finally {
+			scrittura.unlock();
+		}
+	}
+
+    /**
+     * Cerca un articolo nel registro globale tramite l'indice per nome e categoria (senza distinzione tra maiuscole e minuscole)
+     *
+     * @param nome Il nome dell'articolo da cercare
+     * @param categoria La categoria dell'articolo da cercare
+     * @return L'oggetto {@link Articolo} trovato, oppure {@code null} se non presente
+     */
+    public Articolo trovaArticoloGlobale(String nome, String categoria) {
+        if (nome == null || categoria == null)
+        	return null;
+
+        return articoli.get(Articolo.chiave(nome.trim(), categoria));
+    }
+
+    /**
+     * Cerca nel registro globale gli articoli il cui nome inizia con il prefisso indicato (senza distinzione tra maiuscole e minuscole)
+     *
+     * @param prefisso Stringa da cercare all'inizio del nome
+     * @return Gli articoli trovati in ordine alfabetico, una lista vuota se il prefisso è nullo
+     */
+    public List<Articolo> ricercaArticoloGlobale(String prefisso) {
+    	List<Articolo> ris = new ArrayList<Articolo>();
+
+    	if (prefisso == null)
+    		return ris;
+
+    	indiceArticoli.cerca(prefisso.toLowerCase(), ris);
+    	return ris;
+    }
+
+    /**
+     * Cerca nel registro globale gli articoli il cui nome contiene il testo indicato o gli somiglia,
+     * ignorando maiuscole, accenti e piccoli errori di battitura
+     * <p>I risultati sono ordinati per pertinenza: prima il nome identico, poi i nomi che iniziano con il testo,
+     * quelli che lo contengono e infine quelli simili
+     *
+     * @param testo Il testo da cercare
+     * @param max Numero massimo di risultati da restituire
+     * @return Al più {@code max} articoli, dal più pertinente; una lista vuota se il testo è nullo o vuoto
+     */
+    public List<Articolo> ricercaApprossimata(String testo, int max) {
+    	return indiceTrigrammi.cerca(testo, max);
+    }
+
+    // Giornale delle modifiche
+
+    /**
+     * Imposta il giornale in cui registrare le modifiche del sistema
+     *
+     * @param giornale Il giornale, {@code null} per non registrare le modifiche
+     */
+    void setGiornale(Giornale giornale) {
+    	this.giornale = giornale;
+    }
+
+    /**
+     * Indica se le modifiche eseguite ora su questo thread vengono registrate nel giornale
+     *
+     * @return true se il giornale è attivo e non è sospeso, false altrimenti
+     */
+    boolean giornaleAttivo() {
+    	return giornale != null && giornaleSospeso.get()[0] == 0;
+    }
+
+    /**
+     * Sospende la registrazione nel giornale delle modifiche eseguite su questo thread, fino a {@link #riprendiGiornale()}
+     */
+    void sospendiGiornale() {
+    	giornaleSospeso.get()[0]++;
+    }
+
+    /**
+     * Riprende la registrazione nel giornale sospesa con {@link #sospendiGiornale()}
+     */
+    void riprendiGiornale() {
+    	giornaleSospeso.get()[0]--;
+    }
+
+    /**
+     * Accoda un'operazione al giornale, se è attivo e se l'operazione non fa parte di un'altra già registrata
+     *
+     * @param tipo Il tipo dell'operazione, vedi le costanti di {@link Giornale}
+     * @param campi I campi dell'operazione
+     */
+    void registra(byte tipo, Object... campi) {
+    	Giornale g = giornale;
+        if (g != null && giornaleSospeso.get()[0] == 0)
+            g.scrivi(tipo, campi);
+    }
+
+    @Override
+    public String toString() {
+    	return "SistemaListe [liste=" + listeArticoli.dimensione() + ", articoli=" + articoli.dimensione() + "]";
+    }
+}
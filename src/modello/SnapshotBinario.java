@@ -0,0 +1,908 @@
+package modello;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import modello.exception.ArticoloException;
+import modello.exception.GestioneListeException;
+import modello.exception.ListaDiArticoliException;
+
+/**
+ * La classe {@code SnapshotBinario} scrive e legge lo stato del sistema in un formato binario compatto,
+ * alternativo al file di testo di {@link GestioneListe#salvaSistema(String)}
+ * <p>Il file è composto da:
+ * <ol>
+ *   <li>l'intestazione: i byte {@code GLSB} e la versione del formato</li>
+ *   <li>la tabella dei blocchi: per ogni blocco la sezione, il numero di elementi e la posizione nel file,
+ *   seguita dalla lunghezza del file</li>
+ *   <li>la tabella delle stringhe: ogni nome, categoria e nota compare una sola volta</li>
+ *   <li>le categorie, come indici nella tabella delle stringhe</li>
+ *   <li>il catalogo: per ogni articolo gli indici di nome, categoria e nota e il prezzo in centesimi su 8 byte</li>
+ *   <li>le liste: il nome e gli articoli attivi e cancellati, come posizioni nel catalogo</li>
+ * </ol>
+ * <p>Stringhe, catalogo e liste sono divisi in blocchi di circa {@link #BLOCCO} elementi, che grazie alla tabella
+ * vengono decodificati in parallelo: prima le stringhe, poi il catalogo, infine le liste, che fanno riferimento
+ * agli articoli del catalogo già letto. L'inserimento nel sistema resta sequenziale
+ * <p>Nella tabella i numeri sono scritti su 1, 4 e 8 byte; negli altri blocchi tutti i contatori e gli indici sono
+ * scritti come interi a lunghezza variabile (varint, 7 bit per byte). I file della versione 1, senza tabella,
+ * vengono letti in sequenza
+ *
+ * @author Angie Albitres
+ */
+final class SnapshotBinario {
+
+	/**
+	 * Byte iniziali che identificano un file di snapshot
+	 */
+	static final byte[] MAGIC = { 'G', 'L', 'S', 'B' };
+
+	/**
+	 * Versione del formato scritta da questa classe
+	 */
+	static final byte VERSIONE = 2;
+
+	/**
+	 * Sezioni del file, come indicate nella tabella dei blocchi
+	 */
+	static final byte STRINGHE = 1, CATEGORIE = 2, CATALOGO = 3, LISTE = 4;
+
+	/**
+	 * Numero di elementi di un blocco; per le liste si contano anche i loro articoli
+	 */
+	static final int BLOCCO = 1 << 14;
+
+	/**
+	 * Dimensione in byte di una voce della tabella dei blocchi: sezione, numero di elementi e posizione
+	 */
+	private static final int VOCE = 1 + 4 + 8;
+
+	/**
+	 * Costruttore privato per impedire l'istanziazione della classe
+	 */
+	private SnapshotBinario() {}
+
+	/**
+	 * Scrive lo snapshot del sistema
+	 * <p>Il contenuto viene codificato in memoria e scritto sullo stream con un'unica operazione
+	 *
+	 * @param out Lo stream di destinazione
+	 * @param categorie Le categorie del sistema
+	 * @param catalogo Gli articoli del registro globale, di norma copie (vedi {@link Articolo#versione()})
+	 * @param liste Le versioni delle liste del sistema
+	 *
+	 * @throws IOException In caso di errori di scrittura
+	 */
+	static void scrivi(OutputStream out, Collection<String> categorie, Collection<Articolo> catalogo,
+			Collection<ListaDiArticoli.Versione> liste) throws IOException {
+		Map<String, Integer> indiciStringhe = new HashMap<String, Integer>();
+		List<String> stringhe = new ArrayList<String>();
+		Map<String, Integer> posizioni = new HashMap<String, Integer>();
+
+		for (String cat : categorie)
+			indice(cat, indiciStringhe, stringhe);
+		for (Articolo a : catalogo) {
+			indice(a.getNome(), indiciStringhe, stringhe);
+			indice(a.getCategoria(), indiciStringhe, stringhe);
+			indice(a.getNota(), indiciStringhe, stringhe);
+			// le liste possono contenere copie dell'articolo del catalogo, per cui la posizione è cercata per chiave
+			posizioni.put(a.chiave(), posizioni.size());
+		}
+		for (ListaDiArticoli.Versione l : liste)
+			indice(l.nome, indiciStringhe, stringhe);
+
+		Scrittore w = new Scrittore(1 << 16);
+		List<Blocco> blocchi = new ArrayList<Blocco>();
+
+		for (int i = 0; i < stringhe.size(); i += BLOCCO) {
+			Blocco b = new Blocco(STRINGHE, w.dimensione());
+			blocchi.add(b);
+			for (String s : stringhe.subList(i, Math.min(i + BLOCCO, stringhe.size()))) {
+				byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+				w.varint(utf8.length);
+				w.byte_(utf8);
+				b.elementi++;
+			}
+		}
+
+		Blocco bloccoCategorie = new Blocco(CATEGORIE, w.dimensione());
+		blocchi.add(bloccoCategorie);
+		for (String cat : categorie) {
+			w.varint(indiciStringhe.get(cat));
+			bloccoCategorie.elementi++;
+		}
+
+		Blocco bloccoCatalogo = null;
+		for (Articolo a : catalogo) {
+			if (bloccoCatalogo == null || bloccoCatalogo.elementi == BLOCCO) {
+				bloccoCatalogo = new Blocco(CATALOGO, w.dimensione());
+				blocchi.add(bloccoCatalogo);
+			}
+			w.varint(indiciStringhe.get(a.getNome()));
+			w.varint(indiciStringhe.get(a.getCategoria()));
+			w.varint(indiciStringhe.get(a.getNota()));
+			w.long_(a.getPrezzoCentesimi());
+			bloccoCatalogo.elementi++;
+		}
+
+		Blocco bloccoListe = null;
+		int articoliNelBlocco = 0;
+		int[] attivi = new int[16];
+		int[] cancellati = new int[16];
+		for (ListaDiArticoli.Versione l : liste) {
+			if (bloccoListe == null || articoliNelBlocco >= BLOCCO) {
+				bloccoListe = new Blocco(LISTE, w.dimensione());
+				blocchi.add(bloccoListe);
+				articoliNelBlocco = 0;
+			}
+
+			int numAttivi = 0;
+			int numCancellati = 0;
+
+			// come al caricamento del file di testo, gli articoli sono risolti per nome e categoria
+			// e quelli assenti dal catalogo vengono scartati
+			for (Articolo a : l.attivi) {
+				Integer pos = posizioni.get(a.chiave());
+				if (pos != null) {
+					if (numAttivi == attivi.length)
+						attivi = Arrays.copyOf(attivi, numAttivi * 2);
+					attivi[numAttivi++] = pos;
+				}
+			}
+			for (Articolo a : l.cancellati) {
+				Integer pos = posizioni.get(a.chiave());
+				if (pos != null) {
+					if (numCancellati == cancellati.length)
+						cancellati = Arrays.copyOf(cancellati, numCancellati * 2);
+					cancellati[numCancellati++] = pos;
+				}
+			}
+
+			w.varint(indiciStringhe.get(l.nome));
+			w.varint(numAttivi);
+			for (int j = 0; j < numAttivi; j++)
+				w.varint(attivi[j]);
+			w.varint(numCancellati);
+			for (int j = 0; j < numCancellati; j++)
+				w.varint(cancellati[j]);
+
+			bloccoListe.elementi++;
+			articoliNelBlocco += 1 + numAttivi + numCancellati;
+		}
+
+		// le posizioni nella tabella sono relative all'inizio del file, che precede la tabella stessa
+		int intestazione = MAGIC.length + 1 + 4 + blocchi.size() * VOCE + 8;
+		Scrittore h = new Scrittore(intestazione);
+		h.byte_(MAGIC);
+		h.byte_(new byte[] { VERSIONE });
+		h.int_(blocchi.size());
+		for (Blocco b : blocchi) {
+			h.byte_(new byte[] { b.sezione });
+			h.int_(b.elementi);
+			h.long_(intestazione + b.inizio);
+		}
+		h.long_((long) intestazione + w.dimensione());
+
+		h.scriviSu(out);
+		w.scriviSu(out);
+	}
+
+	/**
+	 * Legge uno snapshot e ne inserisce il contenuto in un sistema, che deve essere già stato azzerato
+	 * <p>Se richiesto, gli articoli delle liste non vengono letti subito: ogni lista li legge al primo accesso
+	 * da una copia in memoria del proprio blocco, ancora codificata, vedi {@link ListaDiArticoli.Sorgente}.
+	 * Le liste dei file della versione 1 vengono sempre lette subito
+	 *
+	 * @param buf Il contenuto del file, dalla posizione corrente
+	 * @param sistema Il sistema in cui inserire il contenuto
+	 * @param suRichiesta true per leggere gli articoli delle liste al primo accesso, false per leggerli subito
+	 *
+	 * @throws IOException Viene lanciata se il file non è uno snapshot valido
+	 * @throws ArticoloException Viene lanciata se un articolo salvato non è valido
+	 * @throws GestioneListeException Viene lanciata se una lista o un articolo sono duplicati
+	 * @throws ListaDiArticoliException Viene lanciata se una lista salvata non è valida
+	 */
+	static void leggi(ByteBuffer buf, SistemaListe sistema, boolean suRichiesta) throws IOException, ArticoloException, GestioneListeException, ListaDiArticoliException {
+		try {
+			leggiContenuto(new Lettore(buf), sistema, suRichiesta);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Snapshot danneggiato: il file è troncato");
+		}
+	}
+
+	/**
+	 * Legge le sezioni dello snapshot, vedi {@link #leggi(ByteBuffer, SistemaListe, boolean)}
+	 *
+	 * @param r Il lettore posizionato all'inizio del file
+	 * @param sistema Il sistema in cui inserire il contenuto
+	 * @param suRichiesta true per leggere gli articoli delle liste al primo accesso, false per leggerli subito
+	 *
+	 * @throws IOException Viene lanciata se il file non è uno snapshot valido
+	 * @throws ArticoloException Viene lanciata se un articolo salvato non è valido
+	 * @throws GestioneListeException Viene lanciata se una lista o un articolo sono duplicati
+	 * @throws ListaDiArticoliException Viene lanciata se una lista salvata non è valida
+	 */
+	private static void leggiContenuto(Lettore r, SistemaListe sistema, boolean suRichiesta) throws IOException, ArticoloException, GestioneListeException, ListaDiArticoliException {
+		for (int i = 0; i < MAGIC.length; i++)
+			if (r.byte_() != MAGIC[i])
+				throw new IOException("Il file non è uno snapshot del sistema");
+
+		int versione = r.byte_() & 0xFF;
+		if (versione == 1)
+			leggiSequenziale(r, sistema);
+		else if (versione == VERSIONE)
+			leggiBlocchi(r, sistema, suRichiesta);
+		else
+			throw new IOException("Versione dello snapshot non supportata: " + versione);
+	}
+
+	/**
+	 * Legge in sequenza le sezioni di uno snapshot della versione 1, senza tabella dei blocchi
+	 *
+	 * @param r Il lettore posizionato dopo la versione
+	 * @param sistema Il sistema in cui inserire il contenuto
+	 *
+	 * @throws IOException Viene lanciata se il file non è uno snapshot valido
+	 * @throws ArticoloException Viene lanciata se un articolo salvato non è valido
+	 * @throws GestioneListeException Viene lanciata se una lista o un articolo sono duplicati
+	 * @throws ListaDiArticoliException Viene lanciata se una lista salvata non è valida
+	 */
+	private static void leggiSequenziale(Lettore r, SistemaListe sistema) throws IOException, ArticoloException, GestioneListeException, ListaDiArticoliException {
+		String[] stringhe = new String[r.varint()];
+		for (int i = 0; i < stringhe.length; i++)
+			stringhe[i] = r.stringa(r.varint());
+
+		int numCategorie = r.varint();
+		for (int i = 0; i < numCategorie; i++) {
+			String cat = stringa(stringhe, r.varint());
+			if (!sistema.esisteCategoria(cat))
+				sistema.inserisciCategoria(cat);
+		}
+
+		Articolo[] catalogo = new Articolo[r.varint()];
+		for (int i = 0; i < catalogo.length; i++) {
+			String nome = stringa(stringhe, r.varint());
+			String categoria = stringa(stringhe, r.varint());
+			String nota = stringa(stringhe, r.varint());
+
+			Articolo a = new Articolo(nome, categoria, 0, nota);
+			a.setPrezzoCentesimi(r.long_());
+
+			Articolo presente = sistema.trovaArticoloGlobale(a.getNome(), a.getCategoria());
+			if (presente == null)
+				sistema.inserisciArticolo(a);
+			catalogo[i] = presente == null ? a : presente;
+		}
+
+		int numListe = r.varint();
+		for (int i = 0; i < numListe; i++) {
+			ListaDiArticoli l = new ListaDiArticoli(stringa(stringhe, r.varint()));
+			sistema.inserisciLista(l);
+
+			int numAttivi = r.varint();
+			for (int j = 0; j < numAttivi; j++)
+				l.inserisciArticolo(articolo(catalogo, r.varint()));
+
+			int numCancellati = r.varint();
+			for (int j = 0; j < numCancellati; j++) {
+				Articolo a = articolo(catalogo, r.varint());
+				l.inserisciArticolo(a);
+				l.cancellaArticolo(a);
+			}
+		}
+	}
+
+	/**
+	 * Legge uno snapshot diviso in blocchi: i blocchi di ciascuna sezione vengono decodificati in parallelo,
+	 * mentre l'inserimento nel sistema avviene su questo thread, nell'ordine del file
+	 *
+	 * @param r Il lettore posizionato dopo la versione
+	 * @param sistema Il sistema in cui inserire il contenuto
+	 * @param suRichiesta true per leggere gli articoli delle liste al primo accesso, false per leggerli subito
+	 *
+	 * @throws IOException Viene lanciata se il file non è uno snapshot valido
+	 * @throws ArticoloException Viene lanciata se un articolo salvato non è valido
+	 * @throws GestioneListeException Viene lanciata se una lista o un articolo sono duplicati
+	 * @throws ListaDiArticoliException Viene lanciata se una lista salvata non è valida
+	 */
+	private static void leggiBlocchi(Lettore r, SistemaListe sistema, boolean suRichiesta) throws IOException, ArticoloException, GestioneListeException, ListaDiArticoliException {
+		List<Blocco> tabella = leggiTabella(r);
+		int numThread = Math.min(tabella.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService esecutore = numThread <= 1 ? null : Executors.newFixedThreadPool(numThread, t -> {
+			Thread thread = new Thread(t, "caricamento-snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		try {
+			String[] stringhe = new String[numeroElementi(tabella, STRINGHE)];
+			List<Compito> compiti = new ArrayList<Compito>();
+			for (Blocco b : sezione(tabella, STRINGHE)) {
+				compiti.add(() -> {
+					Lettore l = r.blocco(b);
+					for (int i = 0; i < b.elementi; i++)
+						stringhe[b.primo + i] = l.stringa(l.varint());
+				});
+			}
+			esegui(esecutore, compiti);
+
+			for (Blocco b : sezione(tabella, CATEGORIE)) {
+				Lettore l = r.blocco(b);
+				for (int i = 0; i < b.elementi; i++) {
+					String cat = stringa(stringhe, l.varint());
+					if (!sistema.esisteCategoria(cat))
+						sistema.inserisciCategoria(cat);
+				}
+			}
+
+			Articolo[] catalogo = new Articolo[numeroElementi(tabella, CATALOGO)];
+			compiti.clear();
+			for (Blocco b : sezione(tabella, CATALOGO)) {
+				compiti.add(() -> {
+					Lettore l = r.blocco(b);
+					for (int i = 0; i < b.elementi; i++) {
+						String nome = stringa(stringhe, l.varint());
+						String categoria = stringa(stringhe, l.varint());
+						String nota = stringa(stringhe, l.varint());
+
+						Articolo a = new Articolo(nome, categoria, 0, nota);
+						a.setPrezzoCentesimi(l.long_());
+						catalogo[b.primo + i] = a;
+					}
+				});
+			}
+			esegui(esecutore, compiti);
+
+			for (int i = 0; i < catalogo.length; i++) {
+				Articolo presente = sistema.trovaArticoloGlobale(catalogo[i].getNome(), catalogo[i].getCategoria());
+				if (presente == null)
+					sistema.inserisciArticolo(catalogo[i]);
+				else
+					catalogo[i] = presente;
+			}
+
+			ListaDiArticoli[] liste = new ListaDiArticoli[numeroElementi(tabella, LISTE)];
+			if (suRichiesta) {
+				// vengono letti solo i nomi, gli articoli restano codificati in una copia del blocco indipendente dal file
+				for (Blocco b : sezione(tabella, LISTE)) {
+					Lettore l = r.blocco(b).copia();
+					for (int i = 0; i < b.elementi; i++) {
+						String nome = stringa(stringhe, l.varint());
+						long inizio = l.posizione();
+						l.saltaInteri(l.varint());
+						l.saltaInteri(l.varint());
+						liste[b.primo + i] = new ListaDiArticoli(nome, new ListaSalvata(l.porzione(inizio, l.posizione()), catalogo));
+					}
+				}
+
+				for (ListaDiArticoli lista : liste)
+					sistema.inserisciLista(lista);
+				return;
+			}
+
+			// ogni lista viene riempita da un solo thread; le liste vengono registrate negli articoli solo dopo
+			compiti.clear();
+			for (Blocco b : sezione(tabella, LISTE)) {
+				compiti.add(() -> {
+					Lettore l = r.blocco(b);
+					for (int i = 0; i < b.elementi; i++) {
+						ListaDiArticoli lista = new ListaDiArticoli(stringa(stringhe, l.varint()));
+						int numAttivi = l.varint();
+						for (int j = 0; j < numAttivi; j++)
+							lista.caricaArticolo(articolo(catalogo, l.varint()), false);
+						int numCancellati = l.varint();
+						for (int j = 0; j < numCancellati; j++)
+							lista.caricaArticolo(articolo(catalogo, l.varint()), true);
+						liste[b.primo + i] = lista;
+					}
+				});
+			}
+			esegui(esecutore, compiti);
+
+			for (ListaDiArticoli lista : liste) {
+				lista.collegaArticoli();
+				sistema.inserisciLista(lista);
+			}
+		} finally {
+			if (esecutore != null)
+				esecutore.shutdownNow();
+		}
+	}
+
+	/**
+	 * Legge la tabella dei blocchi e ne controlla la coerenza con la dimensione del file
+	 *
+	 * @param r Il lettore posizionato dopo la versione
+	 *
+	 * @return I blocchi, nell'ordine del file
+	 *
+	 * @throws IOException Viene lanciata se la tabella non è valida o il file è troncato
+	 */
+	private static List<Blocco> leggiTabella(Lettore r) throws IOException {
+		int numBlocchi = r.int_();
+		if (numBlocchi < 0 || numBlocchi > r.rimanenti() / VOCE)
+			throw new IOException("Snapshot danneggiato: tabella dei blocchi non valida");
+
+		List<Blocco> tabella = new ArrayList<Blocco>(numBlocchi);
+		for (int i = 0; i < numBlocchi; i++) {
+			byte sezione = r.byte_();
+			int elementi = r.int_();
+			Blocco b = new Blocco(sezione, r.long_());
+			b.elementi = elementi;
+			tabella.add(b);
+		}
+		long fine = r.long_();
+		if (fine > r.dimensione())
+			throw new IOException("Snapshot danneggiato: il file è troncato");
+
+		long precedente = r.posizione();
+		for (int i = tabella.size() - 1; i >= 0; i--) {
+			Blocco b = tabella.get(i);
+			b.fine = fine;
+			fine = b.inizio;
+		}
+		for (Blocco b : tabella) {
+			// ogni elemento occupa almeno un byte
+			if (b.inizio < precedente || b.inizio > b.fine || b.elementi < 0 || b.elementi > b.fine - b.inizio)
+				throw new IOException("Snapshot danneggiato: tabella dei blocchi non valida");
+			precedente = b.inizio;
+		}
+		return tabella;
+	}
+
+	/**
+	 * Restituisce i blocchi di una sezione, assegnando a ciascuno la posizione del suo primo elemento nella sezione
+	 *
+	 * @param tabella I blocchi del file
+	 * @param sezione La sezione
+	 *
+	 * @return I blocchi della sezione, nell'ordine del file
+	 */
+	private static List<Blocco> sezione(List<Blocco> tabella, byte sezione) {
+		List<Blocco> ris = new ArrayList<Blocco>();
+		int primo = 0;
+		for (Blocco b : tabella) {
+			if (b.sezione == sezione) {
+				b.primo = primo;
+				primo += b.elementi;
+				ris.add(b);
+			}
+		}
+		return ris;
+	}
+
+	/**
+	 * Conta gli elementi di una sezione
+	 *
+	 * @param tabella I blocchi del file
+	 * @param sezione La sezione
+	 *
+	 * @return Il numero di elementi
+	 *
+	 * @throws IOException Viene lanciata se il numero è troppo grande per un array
+	 */
+	private static int numeroElementi(List<Blocco> tabella, byte sezione) throws IOException {
+		long n = 0;
+		for (Blocco b : tabella)
+			if (b.sezione == sezione)
+				n += b.elementi;
+		if (n > Integer.MAX_VALUE - 8)
+			throw new IOException("Snapshot danneggiato: sezione troppo grande");
+		return (int) n;
+	}
+
+	/**
+	 * Esegue la decodifica dei blocchi di una sezione e ne attende il termine
+	 *
+	 * @param esecutore I thread di caricamento, {@code null} per eseguire i compiti su questo thread
+	 * @param compiti La decodifica di ciascun blocco
+	 *
+	 * @throws IOException Viene lanciata se un blocco non è valido o se l'attesa viene interrotta
+	 * @throws ArticoloException Viene lanciata se un articolo salvato non è valido
+	 * @throws ListaDiArticoliException Viene lanciata se una lista salvata non è valida
+	 */
+	private static void esegui(ExecutorService esecutore, List<Compito> compiti) throws IOException, ArticoloException, ListaDiArticoliException {
+		if (esecutore == null || compiti.size() <= 1) {
+			for (Compito c : compiti)
+				c.esegui();
+			return;
+		}
+
+		List<Future<Void>> risultati = new ArrayList<Future<Void>>();
+		for (Compito c : compiti) {
+			risultati.add(esecutore.submit(() -> {
+				c.esegui();
+				return null;
+			}));
+		}
+
+		try {
+			for (Future<Void> f : risultati)
+				f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Caricamento dello snapshot interrotto");
+		} catch (ExecutionException e) {
+			Throwable causa = e.getCause();
+			if (causa instanceof IOException io)
+				throw io;
+			if (causa instanceof ArticoloException ae)
+				throw ae;
+			if (causa instanceof ListaDiArticoliException le)
+				throw le;
+			if (causa instanceof RuntimeException re)
+				throw re;
+			if (causa instanceof Error err)
+				throw err;
+			throw new IOException(causa);
+		}
+	}
+
+	/**
+	 * Aggiunge una stringa alla tabella se non è ancora presente
+	 *
+	 * @param s La stringa da cercare
+	 * @param indici Gli indici delle stringhe già in tabella
+	 * @param stringhe La tabella delle stringhe
+	 */
+	private static void indice(String s, Map<String, Integer> indici, List<String> stringhe) {
+		if (!indici.containsKey(s)) {
+			indici.put(s, stringhe.size());
+			stringhe.add(s);
+		}
+	}
+
+	/**
+	 * Restituisce una stringa della tabella controllando che l'indice sia valido
+	 *
+	 * @param stringhe La tabella delle stringhe
+	 * @param i L'indice letto dal file
+	 *
+	 * @return La stringa corrispondente
+	 *
+	 * @throws IOException Viene lanciata se l'indice è fuori dalla tabella
+	 */
+	private static String stringa(String[] stringhe, int i) throws IOException {
+		if (i >= stringhe.length)
+			throw new IOException("Snapshot danneggiato: stringa " + i + " inesistente");
+		return stringhe[i];
+	}
+
+	/**
+	 * Restituisce un articolo del catalogo controllando che la posizione sia valida
+	 *
+	 * @param catalogo Gli articoli letti dal file
+	 * @param i La posizione letta dal file
+	 *
+	 * @return L'articolo corrispondente
+	 *
+	 * @throws IOException Viene lanciata se la posizione è fuori dal catalogo
+	 */
+	private static Articolo articolo(Articolo[] catalogo, int i) throws IOException {
+		if (i >= catalogo.length)
+			throw new IOException("Snapshot danneggiato: articolo " + i + " inesistente");
+		return catalogo[i];
+	}
+
+	/**
+	 * Articoli di una lista caricata su richiesta, ancora codificati come nel blocco dello snapshot:
+	 * gli indici di attivi e cancellati, come posizioni nel catalogo
+	 */
+	private static final class ListaSalvata implements ListaDiArticoli.Sorgente {
+		/** Gli articoli codificati, a partire dal numero degli attivi */
+		private final ByteBuffer dati;
+		/** Gli articoli del catalogo letto dallo snapshot */
+		private final Articolo[] catalogo;
+
+		ListaSalvata(ByteBuffer dati, Articolo[] catalogo) {
+			this.dati = dati;
+			this.catalogo = catalogo;
+		}
+
+		@Override
+		public void leggi(List<Articolo> attivi, List<Articolo> cancellati) throws IOException {
+			try {
+				Lettore l = new Lettore(dati.duplicate());
+				int numAttivi = l.varint();
+				for (int i = 0; i < numAttivi; i++)
+					attivi.add(articolo(catalogo, l.varint()));
+				int numCancellati = l.varint();
+				for (int i = 0; i < numCancellati; i++)
+					cancellati.add(articolo(catalogo, l.varint()));
+			} catch (BufferUnderflowException e) {
+				throw new IOException("Snapshot danneggiato: lista troncata");
+			}
+		}
+
+		@Override
+		public boolean contiene(Articolo a) throws IOException {
+			try {
+				Lettore l = new Lettore(dati.duplicate());
+				for (int sezione = 0; sezione < 2; sezione++) {
+					int n = l.varint();
+					for (int i = 0; i < n; i++)
+						if (articolo(catalogo, l.varint()) == a)
+							return true;
+				}
+				return false;
+			} catch (BufferUnderflowException e) {
+				throw new IOException("Snapshot danneggiato: lista troncata");
+			}
+		}
+	}
+
+	/**
+	 * Decodifica di un blocco, eseguita da uno dei thread di caricamento
+	 */
+	private interface Compito {
+		void esegui() throws IOException, ArticoloException, ListaDiArticoliException;
+	}
+
+	/**
+	 * Voce della tabella dei blocchi
+	 */
+	private static final class Blocco {
+		/** Sezione a cui appartiene il blocco */
+		final byte sezione;
+		/** Numero di elementi del blocco */
+		int elementi;
+		/** Posizione del blocco nel file; in scrittura, nel contenuto che segue la tabella */
+		long inizio;
+		/** Posizione della fine del blocco nel file, solo in lettura */
+		long fine;
+		/** Posizione del primo elemento del blocco nella sua sezione, solo in lettura */
+		int primo;
+
+		Blocco(byte sezione, long inizio) {
+			this.sezione = sezione;
+			this.inizio = inizio;
+		}
+	}
+
+	/**
+	 * Buffer in memoria in cui viene codificato lo snapshot prima della scrittura
+	 */
+	static final class Scrittore {
+		/** Byte codificati */
+		private byte[] buf;
+		/** Numero di byte validi in {@link #buf} */
+		private int dimensione;
+
+		Scrittore(int capacita) {
+			buf = new byte[capacita];
+		}
+
+		private void spazio(int n) {
+			if (dimensione + n > buf.length)
+				buf = Arrays.copyOf(buf, Math.max(dimensione + n, buf.length * 2));
+		}
+
+		/**
+		 * Scrive un intero non negativo usando 7 bit per byte; il bit più alto indica che seguono altri byte
+		 *
+		 * @param valore Il valore da scrivere
+		 */
+		void varint(int valore) {
+			spazio(5);
+			while ((valore & ~0x7F) != 0) {
+				buf[dimensione++] = (byte) ((valore & 0x7F) | 0x80);
+				valore >>>= 7;
+			}
+			buf[dimensione++] = (byte) valore;
+		}
+
+		/**
+		 * Scrive un intero su 4 byte, dal più significativo
+		 *
+		 * @param valore Il valore da scrivere
+		 */
+		void int_(int valore) {
+			spazio(4);
+			for (int shift = 24; shift >= 0; shift -= 8)
+				buf[dimensione++] = (byte) (valore >>> shift);
+		}
+
+		/**
+		 * Scrive un intero su 8 byte, dal più significativo
+		 *
+		 * @param valore Il valore da scrivere
+		 */
+		void long_(long valore) {
+			spazio(8);
+			for (int shift = 56; shift >= 0; shift -= 8)
+				buf[dimensione++] = (byte) (valore >>> shift);
+		}
+
+		/**
+		 * Scrive una sequenza di byte
+		 *
+		 * @param b I byte da scrivere
+		 */
+		void byte_(byte[] b) {
+			spazio(b.length);
+			System.arraycopy(b, 0, buf, dimensione, b.length);
+			dimensione += b.length;
+		}
+
+		/**
+		 * Restituisce il numero di byte codificati finora
+		 *
+		 * @return La dimensione del contenuto
+		 */
+		int dimensione() {
+			return dimensione;
+		}
+
+		/**
+		 * Scrive il contenuto codificato sullo stream
+		 *
+		 * @param out Lo stream di destinazione
+		 *
+		 * @throws IOException In caso di errori di scrittura
+		 */
+		void scriviSu(OutputStream out) throws IOException {
+			out.write(buf, 0, dimensione);
+		}
+	}
+
+	/**
+	 * Decodifica i valori scritti da {@link Scrittore} leggendoli da un {@link ByteBuffer}
+	 */
+	static final class Lettore {
+		/** Contenuto da leggere */
+		private final ByteBuffer buf;
+		/** Posizione nel buffer dell'inizio del file */
+		private final int origine;
+		/** Appoggio per la decodifica delle stringhe quando il buffer non espone un array */
+		private byte[] appoggio = new byte[64];
+
+		Lettore(ByteBuffer buf) {
+			this.buf = buf;
+			this.origine = buf.position();
+		}
+
+		byte byte_() {
+			return buf.get();
+		}
+
+		int int_() {
+			return buf.getInt();
+		}
+
+		long long_() {
+			return buf.getLong();
+		}
+
+		/**
+		 * Restituisce la posizione corrente, dall'inizio del file
+		 *
+		 * @return La posizione
+		 */
+		long posizione() {
+			return buf.position() - origine;
+		}
+
+		/**
+		 * Restituisce la dimensione del file
+		 *
+		 * @return Il numero di byte dall'inizio del file alla fine del buffer
+		 */
+		long dimensione() {
+			return buf.limit() - origine;
+		}
+
+		/**
+		 * Restituisce il numero di byte ancora da leggere
+		 *
+		 * @return I byte rimanenti
+		 */
+		int rimanenti() {
+			return buf.remaining();
+		}
+
+		/**
+		 * Crea un lettore indipendente per un blocco del file, che può essere usato da un altro thread
+		 *
+		 * @param b Il blocco da leggere
+		 *
+		 * @return Il lettore posizionato all'inizio del blocco, che termina alla fine del blocco
+		 */
+		Lettore blocco(Blocco b) {
+			return new Lettore(buf.slice(origine + (int) b.inizio, (int) (b.fine - b.inizio)));
+		}
+
+		/**
+		 * Crea un lettore su una copia in memoria del contenuto, così che non dipenda più dal file mappato
+		 *
+		 * @return Il lettore della copia, posizionato come questo lettore
+		 */
+		Lettore copia() {
+			ByteBuffer copia = ByteBuffer.allocate(buf.limit() - origine);
+			copia.put(buf.duplicate().position(origine)).flip();
+			Lettore l = new Lettore(copia);
+			copia.position((int) posizione());
+			return l;
+		}
+
+		/**
+		 * Restituisce una porzione del contenuto, che condivide i byte con questo lettore
+		 *
+		 * @param inizio Inizio della porzione, dall'inizio del file
+		 * @param fine Fine della porzione, dall'inizio del file
+		 *
+		 * @return La porzione, con posizione iniziale 0
+		 */
+		ByteBuffer porzione(long inizio, long fine) {
+			return buf.slice(origine + (int) inizio, (int) (fine - inizio));
+		}
+
+		/**
+		 * Salta gli interi scritti con {@link Scrittore#varint(int)}
+		 *
+		 * @param n Il numero di interi da saltare
+		 *
+		 * @throws IOException Viene lanciata se un intero non è valido
+		 */
+		void saltaInteri(int n) throws IOException {
+			for (int i = 0; i < n; i++)
+				varint();
+		}
+
+		/**
+		 * Legge un intero scritto con {@link Scrittore#varint(int)}
+		 *
+		 * @return Il valore letto
+		 *
+		 * @throws IOException Viene lanciata se il valore non è valido
+		 */
+		int varint() throws IOException {
+			int valore = 0;
+			for (int shift = 0; shift < 32; shift += 7) {
+				int b = buf.get();
+				valore |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					if (valore < 0)
+						throw new IOException("Snapshot danneggiato: intero negativo");
+					return valore;
+				}
+			}
+			throw new IOException("Snapshot danneggiato: intero troppo lungo");
+		}
+
+		/**
+		 * Legge una stringa UTF-8 della lunghezza indicata
+		 *
+		 * @param lunghezza Il numero di byte della stringa
+		 *
+		 * @return La stringa letta
+		 */
+		String stringa(int lunghezza) {
+			if (lunghezza > buf.remaining())
+				throw new BufferUnderflowException();
+
+			if (buf.hasArray()) {
+				String s = new String(buf.array(), buf.arrayOffset() + buf.position(), lunghezza, StandardCharsets.UTF_8);
+				buf.position(buf.position() + lunghezza);
+				return s;
+			}
+
+			if (appoggio.length < lunghezza)
+				appoggio = new byte[Math.max(lunghezza, appoggio.length * 2)];
+			buf.get(appoggio, 0, lunghezza);
+			return new String(appoggio, 0, lunghezza, StandardCharsets.UTF_8);
+		}
+	}
+}
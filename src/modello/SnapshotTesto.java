@@ -0,0 +1,538 @@
+package modello;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * La classe {@code SnapshotTesto} scrive e legge lo stato del sistema nel file di testo di
+ * {@link GestioneListe#salvaSistema(String)}, una riga per elemento con i campi separati da {@code ':'}
+ * <ul>
+ *   <li>{@code GESTIONELISTE:versione}, l'intestazione</li>
+ *   <li>{@code GIORNALE:n}, facoltativa: l'ultimo segmento del {@link Giornale} già compreso nel salvataggio</li>
+ *   <li>{@code CATEGORIA:nome}</li>
+ *   <li>{@code ARTICOLO:nome:categoria:prezzo:nota}</li>
+ *   <li>{@code LISTA:nome}, seguita dalle righe {@code ATTIVO:nome:categoria} e {@code CANCELLATO:nome:categoria}</li>
+ *   <li>{@code FINE:righe:crc}, la chiusura: il numero delle righe precedenti e il loro codice CRC32 in esadecimale</li>
+ * </ul>
+ * <p>Un file troncato o danneggiato viene riconosciuto da {@link #verifica(FileChannel)} prima di leggerne il contenuto.
+ * I file scritti prima dell'introduzione dell'intestazione non hanno la chiusura e vengono letti senza verifica
+ * <p>La lettura non dipende dallo stato del sistema: le righe vengono passate a una {@link Destinazione},
+ * così che lo stesso file possa essere caricato nel sistema o in una sua copia, vedi {@link Compattatore}.
+ * Le righe degli articoli di ciascuna lista possono anche essere conservate così come sono e interpretate al primo
+ * accesso alla lista, vedi {@link #leggi(FileChannel, Destinazione, boolean)}
+ *
+ * @author Angie Albitres
+ */
+final class SnapshotTesto {
+
+	/**
+	 * Riceve gli elementi letti dal file, nell'ordine in cui compaiono
+	 */
+	interface Destinazione {
+		/**
+		 * Riceve l'ultimo segmento del giornale compreso nel salvataggio
+		 *
+		 * @param segmento Il numero del segmento
+		 */
+		void segmento(int segmento);
+
+		/**
+		 * Riceve una categoria
+		 *
+		 * @param nome Il nome della categoria
+		 *
+		 * @throws Exception Se la categoria non può essere inserita
+		 */
+		void categoria(String nome) throws Exception;
+
+		/**
+		 * Riceve un articolo del registro globale
+		 *
+		 * @param a L'articolo letto
+		 *
+		 * @return L'articolo registrato con la stessa chiave, a cui fanno riferimento le righe delle liste:
+		 * quello letto o uno già presente
+		 *
+		 * @throws Exception Se l'articolo non può essere inserito
+		 */
+		Articolo articolo(Articolo a) throws Exception;
+
+		/**
+		 * Riceve una lista, gli articoli successivi appartengono a questa lista
+		 *
+		 * @param nome Il nome della lista
+		 *
+		 * @throws Exception Se la lista non può essere inserita
+		 */
+		void lista(String nome) throws Exception;
+
+		/**
+		 * Riceve una lista caricata su richiesta, con tutte le sue righe: gli articoli vengono letti dalla sorgente
+		 * al primo accesso alla lista
+		 *
+		 * @param nome Il nome della lista
+		 * @param sorgente Le righe degli articoli della lista, ancora da interpretare
+		 *
+		 * @throws Exception Se la lista non può essere inserita
+		 */
+		void lista(String nome, ListaDiArticoli.Sorgente sorgente) throws Exception;
+
+		/**
+		 * Riceve un articolo dell'ultima lista letta
+		 *
+		 * @param nome Il nome dell'articolo
+		 * @param categoria La categoria dell'articolo
+		 * @param cancellato true se l'articolo è nel cestino della lista, false se è attivo
+		 *
+		 * @throws Exception Se l'articolo non può essere inserito
+		 */
+		void articoloInLista(String nome, String categoria, boolean cancellato) throws Exception;
+	}
+
+	/**
+	 * Versione del formato scritta da questa classe, i file senza intestazione sono della versione 1
+	 * <p>Dalla versione 3 i caratteri {@code ':'}, {@code '\\'} e i terminatori di riga contenuti nei campi
+	 * vengono protetti con sequenze di escape, vedi {@link #testo(String)}
+	 */
+	static final int VERSIONE = 3;
+
+	/**
+	 * Prima versione del formato con le sequenze di escape nei campi
+	 */
+	private static final int VERSIONE_ESCAPE = 3;
+
+	/**
+	 * Intestazione del file, seguita dalla versione
+	 */
+	private static final String INTESTAZIONE = "GESTIONELISTE:";
+
+	/**
+	 * Riga di chiusura del file, seguita dal numero delle righe e dal codice CRC32
+	 */
+	private static final String FINE = "FINE:";
+
+	/**
+	 * Lunghezza massima della riga di chiusura
+	 */
+	private static final int MAX_FINE = 64;
+
+	/**
+	 * Costruttore privato per impedire l'istanziazione della classe
+	 */
+	private SnapshotTesto() {}
+
+	/**
+	 * Scrive lo stato del sistema in un file e attende che sia reso persistente
+	 * <p>Il file va poi portato al suo posto con {@link #sostituisci(Path, Path)}, così che un arresto durante
+	 * la scrittura non danneggi il salvataggio precedente
+	 *
+	 * @param file Il file da scrivere, di norma temporaneo
+	 * @param categorie Le categorie del sistema
+	 * @param catalogo Gli articoli del registro globale
+	 * @param liste Le versioni delle liste del sistema
+	 * @param segmento L'ultimo segmento del giornale compreso nello stato, 0 se non va indicato
+	 *
+	 * @throws IOException In caso di errori di scrittura, anche per disco pieno
+	 */
+	static void scrivi(Path file, Collection<String> categorie, Collection<Articolo> catalogo,
+			Collection<ListaDiArticoli.Versione> liste, int segmento) throws IOException {
+		try (FileOutputStream fos = new FileOutputStream(file.toFile())) {
+			codifica(fos, categorie, catalogo, liste, segmento);
+			fos.getFD().sync();
+		}
+	}
+
+	/**
+	 * Scrive in un file un contenuto già codificato in memoria e attende che sia reso persistente
+	 *
+	 * @param file Il file da scrivere, di norma temporaneo
+	 * @param contenuto Il contenuto del file
+	 *
+	 * @throws IOException In caso di errori di scrittura, anche per disco pieno
+	 */
+	static void scrivi(Path file, byte[] contenuto) throws IOException {
+		try (FileOutputStream fos = new FileOutputStream(file.toFile())) {
+			fos.write(contenuto);
+			fos.getFD().sync();
+		}
+	}
+
+	/**
+	 * Codifica lo stato del sistema, con intestazione e chiusura
+	 *
+	 * @param destinazione Lo stream di destinazione
+	 * @param categorie Le categorie del sistema
+	 * @param catalogo Gli articoli del registro globale
+	 * @param liste Le versioni delle liste del sistema
+	 * @param segmento L'ultimo segmento del giornale compreso nello stato, 0 se non va indicato
+	 *
+	 * @throws IOException In caso di errori di scrittura
+	 */
+	private static void codifica(OutputStream destinazione, Collection<String> categorie, Collection<Articolo> catalogo,
+			Collection<ListaDiArticoli.Versione> liste, int segmento) throws IOException {
+		CheckedOutputStream controllato = new CheckedOutputStream(destinazione, new CRC32());
+		PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(controllato, Charset.defaultCharset())));
+		long righe = 0;
+
+		out.println(INTESTAZIONE + VERSIONE);
+		righe++;
+
+		if (segmento > 0) {
+			out.println("GIORNALE:" + segmento);
+			righe++;
+		}
+
+		// salva categorie
+		for (String cat : categorie) {
+			out.println("CATEGORIA:" + testo(cat));
+			righe++;
+		}
+
+		// salva articoli
+		for (Articolo a : catalogo) {
+			out.println("ARTICOLO:" + testo(a.getNome()) + ":" + testo(a.getCategoria()) + ":"
+					+ Prezzo.formatta(a.getPrezzoCentesimi()) + ":" + testo(a.getNota()));
+			righe++;
+		}
+
+		// salva liste e articoli all'interno
+		for (ListaDiArticoli.Versione l : liste) {
+			out.println("LISTA:" + testo(l.nome));
+			righe++;
+
+			for (Articolo a : l.attivi) {
+				out.println("ATTIVO:" + testo(a.getNome()) + ":" + testo(a.getCategoria()));
+				righe++;
+			}
+			for (Articolo a : l.cancellati) {
+				out.println("CANCELLATO:" + testo(a.getNome()) + ":" + testo(a.getCategoria()));
+				righe++;
+			}
+		}
+
+		out.flush();
+		out.println(FINE + righe + ":" + Long.toHexString(controllato.getChecksum().getValue()));
+		out.flush();
+		if (out.checkError())
+			throw new IOException("Errore durante la scrittura del salvataggio");
+	}
+
+	/**
+	 * Protegge i caratteri di un campo che interferirebbero con la divisione in righe e campi
+	 *
+	 * @param campo Il testo del campo
+	 *
+	 * @return Il testo con {@code ':'}, {@code '\\'}, {@code '\n'} e {@code '\r'} sostituiti da
+	 * {@code \\:}, {@code \\\\}, {@code \\n} e {@code \\r}
+	 */
+	private static String testo(String campo) {
+		int i = 0;
+		while (i < campo.length() && !speciale(campo.charAt(i)))
+			i++;
+		if (i == campo.length())
+			return campo;
+
+		StringBuilder sb = new StringBuilder(campo.length() + 8).append(campo, 0, i);
+		for (; i < campo.length(); i++) {
+			char c = campo.charAt(i);
+			if (speciale(c))
+				sb.append('\\').append(c == '\n' ? 'n' : c == '\r' ? 'r' : c);
+			else
+				sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Controlla se un carattere va protetto da una sequenza di escape
+	 *
+	 * @param c Il carattere
+	 *
+	 * @return true se il carattere va protetto, false altrimenti
+	 */
+	private static boolean speciale(char c) {
+		return c == ':' || c == '\\' || c == '\n' || c == '\r';
+	}
+
+	/**
+	 * Sostituisce un file con uno appena scritto, con uno spostamento atomico: chi legge il file
+	 * vede il contenuto precedente o quello nuovo, mai uno parziale
+	 *
+	 * @param nuovo Il file appena scritto
+	 * @param file Il file da sostituire
+	 *
+	 * @throws IOException In caso di errori nello spostamento
+	 */
+	static void sostituisci(Path nuovo, Path file) throws IOException {
+		Files.move(nuovo, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		// rende persistente anche lo spostamento, dove il sistema operativo lo consente
+		try (FileChannel cartella = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+			cartella.force(true);
+		} catch (IOException e) {
+			// cartelle non apribili come file (Windows)
+		}
+	}
+
+	/**
+	 * Verifica che il file sia completo e integro confrontando la riga di chiusura con le righe che la precedono
+	 * <p>I file senza intestazione, scritti da versioni precedenti, non vengono verificati
+	 *
+	 * @param canale Il file da verificare
+	 *
+	 * @throws IOException Se il file è troncato, danneggiato o di una versione successiva
+	 */
+	static void verifica(FileChannel canale) throws IOException {
+		long dimensione = canale.size();
+		byte[] intestazione = new byte[INTESTAZIONE.length()];
+		if (dimensione < intestazione.length)
+			return;
+
+		canale.read(ByteBuffer.wrap(intestazione), 0);
+		if (!INTESTAZIONE.equals(new String(intestazione, StandardCharsets.US_ASCII)))
+			return;
+
+		// la riga di chiusura è l'ultima del file
+		int coda = (int) Math.min(MAX_FINE, dimensione);
+		ByteBuffer fine = ByteBuffer.allocate(coda);
+		canale.read(fine, dimensione - coda);
+		String ultime = new String(fine.array(), StandardCharsets.US_ASCII).stripTrailing();
+		int inizio = ultime.lastIndexOf('\n') + 1;
+		if (!ultime.startsWith(FINE, inizio))
+			throw new IOException("Salvataggio incompleto: manca la riga di chiusura");
+
+		String[] campi = ultime.substring(inizio).split(":");
+		long righeAttese;
+		long crcAtteso;
+		try {
+			righeAttese = Long.parseLong(campi[1]);
+			crcAtteso = Long.parseLong(campi[2], 16);
+		} catch (RuntimeException e) {
+			throw new IOException("Salvataggio danneggiato: riga di chiusura non valida");
+		}
+
+		long lunghezza = dimensione - coda + inizio;
+		CRC32 crc = new CRC32();
+		long righe = 0;
+		ByteBuffer buf = ByteBuffer.allocate((int) Math.min(RigheFile.FINESTRA, Math.max(lunghezza, 1)));
+		for (long pos = 0; pos < lunghezza; ) {
+			buf.clear().limit((int) Math.min(buf.capacity(), lunghezza - pos));
+			while (buf.hasRemaining())
+				if (canale.read(buf, pos + buf.position()) < 0)
+					throw new IOException("Salvataggio incompleto: il file è stato troncato durante la verifica");
+			byte[] b = buf.array();
+			for (int i = 0; i < buf.limit(); i++)
+				if (b[i] == '\n')
+					righe++;
+			crc.update(b, 0, buf.limit());
+			pos += buf.limit();
+		}
+
+		if (righe != righeAttese || crc.getValue() != crcAtteso)
+			throw new IOException("Salvataggio danneggiato: il contenuto non corrisponde alla riga di chiusura");
+
+		int versione = Integer.parseInt(new String(leggiRiga(canale, intestazione.length), StandardCharsets.US_ASCII).strip());
+		if (versione > VERSIONE)
+			throw new IOException("Salvataggio di una versione successiva non supportata: " + versione);
+	}
+
+	/**
+	 * Legge i byte dalla posizione indicata fino alla fine della riga, per righe brevi
+	 *
+	 * @param canale Il file da leggere
+	 * @param inizio La posizione da cui leggere
+	 *
+	 * @return I byte della riga, senza il terminatore
+	 *
+	 * @throws IOException In caso di errori di lettura
+	 */
+	private static byte[] leggiRiga(FileChannel canale, long inizio) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(MAX_FINE);
+		canale.read(buf, inizio);
+		int fine = 0;
+		while (fine < buf.position() && buf.get(fine) != '\n')
+			fine++;
+
+		byte[] ris = new byte[fine];
+		buf.get(0, ris);
+		return ris;
+	}
+
+	/**
+	 * Legge il file a finestre in un buffer riusato, vedi {@link RigheFile}: le righe non vengono copiate
+	 * e le stringhe vengono create solo per i campi utilizzati. Le righe non riconosciute, tra cui la chiusura,
+	 * vengono ignorate
+	 * <p>Nei file precedenti alla versione 3 i campi non sono protetti: la nota, ultimo campo della riga,
+	 * viene letta fino alla fine della riga, così che i {@code ':'} che contiene non vadano persi
+	 * <p>Il file va prima verificato con {@link #verifica(FileChannel)}, così che un file danneggiato
+	 * venga rifiutato prima di modificare la destinazione
+	 *
+	 * @param canale Il file da leggere
+	 * @param destinazione Chi riceve gli elementi letti
+	 *
+	 * @throws IOException In caso di errori di lettura
+	 * @throws Exception Per errori di validazione dei dati letti
+	 */
+	static void leggi(FileChannel canale, Destinazione destinazione) throws Exception {
+		leggi(canale, destinazione, false);
+	}
+
+	/**
+	 * Legge il file come {@link #leggi(FileChannel, Destinazione)}, conservando se richiesto le righe degli articoli
+	 * di ciascuna lista senza interpretarle
+	 * <p>Su richiesta vengono letti subito solo categorie, registro e nomi delle liste: le righe {@code ATTIVO}
+	 * e {@code CANCELLATO} di ogni lista vengono copiate in memoria così come sono e passate alla destinazione con
+	 * {@link Destinazione#lista(String, ListaDiArticoli.Sorgente)}. Le righe fanno riferimento agli articoli tramite
+	 * le chiavi che avevano alla lettura del file, per cui vengono risolte con una copia dell'indice del registro
+	 * presa in quel momento, che non risente dei cambi di categoria successivi
+	 *
+	 * @param canale Il file da leggere
+	 * @param destinazione Chi riceve gli elementi letti
+	 * @param suRichiesta true per conservare le righe delle liste e interpretarle al primo accesso
+	 *
+	 * @throws IOException In caso di errori di lettura
+	 * @throws Exception Per errori di validazione dei dati letti
+	 */
+	static void leggi(FileChannel canale, Destinazione destinazione, boolean suRichiesta) throws Exception {
+		RigheFile riga = new RigheFile(canale, Charset.defaultCharset());
+		boolean escape = false;
+		Map<String, Articolo> registro = suRichiesta ? new HashMap<String, Articolo>() : null;
+		String lista = null;
+		ByteArrayOutputStream righeLista = null;
+
+		while (riga.prossima()) {
+			if (riga.numCampi() < 2) continue;
+
+			if (suRichiesta && lista != null && (riga.campoUguale(0, "ATTIVO") || riga.campoUguale(0, "CANCELLATO"))) {
+				riga.copiaRiga(righeLista);
+				continue;
+			}
+			if (lista != null) {
+				// la lista precedente è completa
+				destinazione.lista(lista, new ListaSalvata(righeLista.toByteArray(), escape, registro));
+				lista = null;
+			}
+
+			if (riga.campoUguale(0, "GESTIONELISTE")) {
+				escape = Integer.parseInt(riga.campo(1)) >= VERSIONE_ESCAPE;
+				riga.setSequenzeEscape(escape);
+			}
+			else if (riga.campoUguale(0, "CATEGORIA")) {
+				destinazione.categoria(riga.campo(1));
+			}
+			else if (riga.campoUguale(0, "ARTICOLO")) {
+				String nota = "";
+				if (riga.numCampi() >= 5)
+					nota = escape ? riga.campo(4) : riga.resto(4);
+				Articolo nuovo = new Articolo(riga.campo(1), riga.campo(2), 0, nota);
+				nuovo.setPrezzoCentesimi(riga.prezzo(3));
+				String chiave = nuovo.chiave();
+				Articolo registrato = destinazione.articolo(nuovo);
+				if (registro != null && registrato != null)
+					registro.put(chiave, registrato);
+			}
+			else if (riga.campoUguale(0, "LISTA")) {
+				if (suRichiesta) {
+					lista = riga.campo(1);
+					righeLista = new ByteArrayOutputStream();
+				}
+				else
+					destinazione.lista(riga.campo(1));
+			}
+			else if (riga.campoUguale(0, "ATTIVO")) {
+				destinazione.articoloInLista(riga.campo(1), riga.campo(2), false);
+			}
+			else if (riga.campoUguale(0, "CANCELLATO")) {
+				destinazione.articoloInLista(riga.campo(1), riga.campo(2), true);
+			}
+			else if (riga.campoUguale(0, "GIORNALE")) {
+				destinazione.segmento(Integer.parseInt(riga.campo(1)));
+			}
+		}
+
+		if (lista != null)
+			destinazione.lista(lista, new ListaSalvata(righeLista.toByteArray(), escape, registro));
+	}
+
+	/**
+	 * Articoli di una lista caricata su richiesta: le sue righe {@code ATTIVO} e {@code CANCELLATO}, copiate dal file
+	 * senza interpretarle, e l'indice del registro al momento della lettura, condiviso da tutte le liste del file
+	 * <p>Come nella lettura immediata, le righe di articoli assenti dal registro vengono ignorate
+	 */
+	private static final class ListaSalvata implements ListaDiArticoli.Sorgente {
+		/** Le righe della lista */
+		private final byte[] righe;
+		/** Indica se le righe usano le sequenze di escape */
+		private final boolean escape;
+		/** Gli articoli del registro letti dal file, per chiave */
+		private final Map<String, Articolo> registro;
+
+		ListaSalvata(byte[] righe, boolean escape, Map<String, Articolo> registro) {
+			this.righe = righe;
+			this.escape = escape;
+			this.registro = registro;
+		}
+
+		@Override
+		public void leggi(List<Articolo> attivi, List<Articolo> cancellati) throws IOException {
+			RigheFile riga = righe();
+			while (riga.prossima()) {
+				Articolo a = articolo(riga);
+				if (a != null)
+					(riga.campoUguale(0, "CANCELLATO") ? cancellati : attivi).add(a);
+			}
+		}
+
+		@Override
+		public boolean contiene(Articolo a) throws IOException {
+			RigheFile riga = righe();
+			while (riga.prossima())
+				if (articolo(riga) == a)
+					return true;
+			return false;
+		}
+
+		/**
+		 * Crea il lettore delle righe della lista
+		 *
+		 * @return Il lettore, posizionato prima della prima riga
+		 */
+		private RigheFile righe() {
+			RigheFile riga = new RigheFile(righe, Charset.defaultCharset());
+			riga.setSequenzeEscape(escape);
+			return riga;
+		}
+
+		/**
+		 * Cerca nel registro l'articolo della riga corrente
+		 *
+		 * @param riga La riga, di tipo {@code ATTIVO} o {@code CANCELLATO}
+		 *
+		 * @return L'articolo, {@code null} se la riga non è valida o l'articolo non era nel registro
+		 */
+		private Articolo articolo(RigheFile riga) {
+			if (riga.numCampi() < 3)
+				return null;
+			return registro.get(Articolo.chiave(riga.campo(1), riga.campo(2)));
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package modello;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * La classe {@code Versioni} dà accesso, fuori dal modello, alle copie immutabili di articoli e liste
+ * <p>Le copie sono le stesse usate dai salvataggi (vedi {@link SistemaListe#versione()}): vengono riutilizzate finché
+ * l'originale non viene modificato e possono essere lette da qualsiasi thread senza lock. La loro creazione resta
+ * riservata al modello, questa classe si limita a restituirle
+ *
+ * @author Angie Albitres
+ */
+public final class Versioni {
+
+	/**
+	 * Costruttore privato per impedire l'istanziazione della classe
+	 */
+	private Versioni() {}
+
+	/**
+	 * Restituisce la copia immutabile di un articolo nel suo stato attuale
+	 * <p>La copia non è collegata a registro e liste e non va modificata
+	 *
+	 * @param a L'articolo
+	 *
+	 * @return La copia, o l'articolo stesso se è già una copia
+	 */
+	public static Articolo articolo(Articolo a) {
+		return a.versione();
+	}
+
+	/**
+	 * Restituisce le copie immutabili degli articoli del registro di un sistema
+	 *
+	 * @param sistema Il sistema
+	 *
+	 * @return Le copie, in ordine di inserimento
+	 */
+	public static List<Articolo> articoli(SistemaListe sistema) {
+		List<Articolo> articoli = sistema.getArticoli();
+		List<Articolo> ris = new ArrayList<Articolo>(articoli.size());
+		for (Articolo a : articoli)
+			ris.add(a.versione());
+		return ris;
+	}
+
+	/**
+	 * Restituisce la versione immutabile di una lista nel suo stato attuale
+	 *
+	 * @param l La lista
+	 *
+	 * @return La versione della lista
+	 */
+	public static ListaDiArticoli.Versione lista(ListaDiArticoli l) {
+		return l.versione();
+	}
+}
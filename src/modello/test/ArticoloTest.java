@@ -9,6 +9,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import modello.Articolo;
+import modello.Prezzo;
 import modello.exception.ArticoloException;
 
 /**
@@ -106,6 +107,24 @@ class ArticoloTest {
 			new Articolo("Vino!");
 		});
 	}
+	
+	/**
+	 * Verifica che la validazione del nome accetti e rifiuti gli stessi nomi dell'espressione {@link Articolo#NOME_REGEX}
+	 */
+	@Test
+	void testValidazioneNomeComeRegex() {
+		String[] nomi = {"Pane", "caffè", "Latte 1L", "pasta\tfresca", "À la carte", "Vino!", "ciao-mondo", "9", "ò", "Tè verde"};
+		
+		for (String nome : nomi) {
+			boolean valido = true;
+			try {
+				new Articolo(nome);
+			} catch (ArticoloException e) {
+				valido = false;
+			}
+			assertEquals(nome, nome.matches(Articolo.NOME_REGEX), valido);
+		}
+	}
 
     /**
      * Verifica il corretto aggiornamento dei campi e la validazione del prezzo tramite i setters
@@ -182,4 +201,25 @@ class ArticoloTest {
 	public void testToString() throws ArticoloException {
 		assertEquals("\n Articolo [nome=Latte, categoria=Cibo, prezzo=10.0, nota=Urgente!]", a1.toString());
 	}
+	
+	/**
+	 * Verifica che i prezzi vengano arrotondati al centesimo e interpretati e formattati senza errori di rappresentazione
+	 * 
+	 * @throws ArticoloException In caso di errore nei dati
+	 */
+	@Test
+	public void testPrezzoInCentesimi() throws ArticoloException {
+		a1.setPrezzo(0.1 + 0.2);
+		assertEquals(30, a1.getPrezzoCentesimi());
+		
+		a1.setPrezzoCentesimi(1205);
+		assertEquals(12.05, a1.getPrezzo(), 0.0);
+		assertEquals("12,05", Prezzo.formatta(a1.getPrezzoCentesimi()));
+		
+		assertEquals(1205, Prezzo.parse("12,05"));
+		assertEquals(350, Prezzo.parse(" 3.5 "));
+		assertEquals(1, Prezzo.parse("0,005"));
+		assertThrows(NumberFormatException.class, () -> Prezzo.parse("1,2,3"));
+		assertThrows(ArticoloException.class, () -> a1.setPrezzoCentesimi(-1));
+	}
 }
\ No newline at end of file
@@ -2,10 +2,23 @@ package modello.test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import modello.Articolo;
 import modello.GestioneListe;
@@ -22,6 +35,7 @@ import modello.exception.ListaDiArticoliException;
  *   <li>Gestione dell'anagrafica delle liste (inserimento, ricerca e cancellazione)</li>
  *   <li>Gestione delle categorie merceologiche e dei relativi vincoli</li>
  *   <li>Registrazione e rimozione globale degli articoli nel sistema</li>
+ *   <li>Salvataggio e caricamento dello stato del sistema</li>
  * </ul>
  * 
  * @author Angie Albitres
@@ -111,6 +125,32 @@ class GestioneListeTest {
 		});
 	}
 
+	/**
+	 * Verifica che la ricerca per nome non distingua maiuscole e minuscole e che l'elenco
+	 * delle liste mantenga l'ordine di inserimento
+	 *
+	 * @throws GestioneListeException Se si verificano errori durante l'inserimento delle liste
+	 * @throws ListaDiArticoliException Se il nome di una lista di test non è valido
+	 */
+	@Test
+	void testMatchListaIgnoraMaiuscole() throws GestioneListeException, ListaDiArticoliException {
+		ListaDiArticoli l2 = new ListaDiArticoli("Ufficio");
+		ListaDiArticoli l3 = new ListaDiArticoli("Casa");
+		GestioneListe.inserisciLista(l1);
+		GestioneListe.inserisciLista(l2);
+		GestioneListe.inserisciLista(l3);
+
+		assertSame(l2, GestioneListe.matchLista("UFFICIO"));
+		assertSame(l3, GestioneListe.matchLista("  casa "));
+
+		assertThrows(GestioneListeException.class, () -> {
+			GestioneListe.inserisciLista(new ListaDiArticoli("SPESA"));
+		});
+
+		GestioneListe.cancellaLista("ufficio");
+		assertEquals(List.of(l1, l3), GestioneListe.getListeArticoli());
+	}
+
 	/**
 	 * Verifica la rimozione definitiva di una lista dal sistema e la gestione degli errori di ricerca
 	 * 
@@ -223,7 +263,208 @@ class GestioneListeTest {
 			GestioneListe.cancellaArticolo(a1);
 		});
 	}
-	
+
+	/**
+	 * Verifica che le copie di un articolo registrato inserite nelle liste del sistema vengano sostituite
+	 * con l'articolo del registro, così da essere rimosse con la sua cancellazione
+	 *
+	 * @throws Exception Se si verificano errori durante gli inserimenti
+	 */
+	@Test
+	void testCancellaArticoloCopiatoNelleListe() throws Exception {
+		ListaDiArticoli l2 = new ListaDiArticoli("Ufficio");
+		GestioneListe.inserisciArticolo(a1);
+		l2.inserisciArticolo("Latte", "Alimentari", 1.50);
+		GestioneListe.inserisciLista(l1);
+		GestioneListe.inserisciLista(l2);
+		l1.inserisciArticolo("Latte", "Alimentari", 1.50);
+
+		assertEquals(List.of(l1, l2), GestioneListe.listeConArticolo(a1));
+
+		GestioneListe.cancellaArticolo(a1);
+		assertEquals(0, l1.numEl());
+		assertEquals(0, l2.numEl());
+	}
+
+	/**
+	 * Verifica che la cancellazione di una copia dell'articolo registrato porti nel cestino l'articolo della lista,
+	 * così che la cancellazione globale lo raggiunga anche lì
+	 *
+	 * @throws Exception Se si verificano errori durante gli inserimenti
+	 */
+	@Test
+	void testCancellaCopiaNelCestino() throws Exception {
+		GestioneListe.inserisciArticolo(a1);
+		GestioneListe.inserisciLista(l1);
+		l1.inserisciArticolo(a1);
+
+		l1.cancellaArticolo(new Articolo("Latte", "Alimentari", 1.50));
+		assertEquals(1, l1.numElCanc());
+		assertEquals(List.of(l1), GestioneListe.listeConArticolo(a1));
+
+		GestioneListe.cancellaArticolo(a1);
+		assertEquals(0, l1.numEl());
+		assertEquals(0, l1.numElCanc());
+		assertTrue(GestioneListe.listeConArticolo(a1).isEmpty());
+	}
+
+	/**
+	 * Verifica la ricerca nel registro globale per nome e categoria e l'aggiornamento dell'indice
+	 * quando un articolo registrato cambia categoria
+	 *
+	 * @throws GestioneListeException Se si verificano errori durante l'inserimento nel registro
+	 * @throws ArticoloException Se i dati degli articoli di test non sono validi
+	 */
+	@Test
+	void testTrovaArticoloGlobale() throws GestioneListeException, ArticoloException {
+		GestioneListe.inserisciArticolo(a1);
+		Articolo a2 = new Articolo("Latte", "Colazione", 1.20);
+		GestioneListe.inserisciArticolo(a2);
+
+		assertSame(a1, GestioneListe.trovaArticoloGlobale("LATTE", "alimentari"));
+		assertNull(GestioneListe.trovaArticoloGlobale("Pane", "Alimentari"));
+
+		a1.setCategoria("Bevande");
+		assertNull(GestioneListe.trovaArticoloGlobale("Latte", "Alimentari"));
+		assertSame(a1, GestioneListe.trovaArticoloGlobale("Latte", "Bevande"));
+
+		assertThrows(ArticoloException.class, () -> {
+			a2.setCategoria("bevande");
+		});
+		assertEquals("Colazione", a2.getCategoria());
+
+		GestioneListe.cancellaArticolo(a1);
+		a1.setCategoria("Colazione");
+		assertSame(a2, GestioneListe.trovaArticoloGlobale("Latte", "Colazione"));
+	}
+
+	/**
+	 * Verifica la ricerca per prefisso nel registro globale
+	 *
+	 * @throws GestioneListeException In caso di errori del gestore
+	 * @throws ArticoloException In caso di errore nei dati
+	 */
+	@Test
+	void testRicercaArticoloGlobale() throws GestioneListeException, ArticoloException {
+		Articolo lattuga = new Articolo("Lattuga", "Verdura", 0.90);
+		Articolo pane = new Articolo("Pane", "Forno", 1.50);
+		GestioneListe.inserisciArticolo(pane);
+		GestioneListe.inserisciArticolo(a1);
+		GestioneListe.inserisciArticolo(lattuga);
+
+		assertEquals(List.of(a1, lattuga), GestioneListe.ricercaArticoloGlobale("LAT"));
+		assertTrue(GestioneListe.ricercaArticoloGlobale("x").isEmpty());
+		assertTrue(GestioneListe.ricercaArticoloGlobale(null).isEmpty());
+
+		a1.setCategoria("Bevande");
+		assertEquals(List.of(a1), GestioneListe.ricercaArticoloGlobale("latte"));
+
+		GestioneListe.cancellaArticolo(a1);
+		assertEquals(List.of(lattuga), GestioneListe.ricercaArticoloGlobale("lat"));
+	}
+
+	/**
+	 * Verifica la ricerca approssimata nel registro: sottostringhe, accenti, errori di battitura e ordinamento per pertinenza
+	 *
+	 * @throws GestioneListeException In caso di errori del gestore
+	 * @throws ArticoloException In caso di errore nei dati
+	 */
+	@Test
+	void testRicercaApprossimata() throws GestioneListeException, ArticoloException {
+		Articolo caffe = new Articolo("Caffè macinato", "Colazione", 3.20);
+		Articolo latteSoia = new Articolo("Latte di soia", "Colazione", 1.80);
+		Articolo cioccolato = new Articolo("Cioccolato", "Dolci", 2.10);
+		GestioneListe.inserisciArticolo(latteSoia);
+		GestioneListe.inserisciArticolo(caffe);
+		GestioneListe.inserisciArticolo(a1);
+		GestioneListe.inserisciArticolo(cioccolato);
+
+		assertEquals(List.of(a1, latteSoia), GestioneListe.ricercaApprossimata("latte", 10));
+		assertEquals(List.of(caffe), GestioneListe.ricercaApprossimata("CAFFE", 10));
+		assertEquals(List.of(caffe), GestioneListe.ricercaApprossimata("macin", 10));
+		assertEquals(List.of(cioccolato), GestioneListe.ricercaApprossimata("ciocolato", 10));
+		assertEquals(List.of(latteSoia), GestioneListe.ricercaApprossimata("so", 10));
+		assertEquals(1, GestioneListe.ricercaApprossimata("latte", 1).size());
+		assertTrue(GestioneListe.ricercaApprossimata("  ", 10).isEmpty());
+
+		GestioneListe.cancellaArticolo(a1);
+		assertEquals(List.of(latteSoia), GestioneListe.ricercaApprossimata("latte", 10));
+	}
+
+	/**
+	 * Verifica che l'indice inverso riporti le liste che contengono un articolo, anche nel cestino,
+	 * e che la cancellazione globale lo rimuova solo da quelle
+	 *
+	 * @throws Exception In caso di errori nella preparazione dei dati di test
+	 */
+	@Test
+	void testListeConArticolo() throws Exception {
+		ListaDiArticoli l2 = new ListaDiArticoli("Ufficio");
+		ListaDiArticoli l3 = new ListaDiArticoli("Casa");
+		GestioneListe.inserisciLista(l1);
+		GestioneListe.inserisciLista(l2);
+		GestioneListe.inserisciLista(l3);
+		GestioneListe.inserisciArticolo(a1);
+
+		l1.inserisciArticolo(a1);
+		l2.inserisciArticolo(a1);
+		l2.cancellaArticolo(a1);
+		assertEquals(List.of(l1, l2), GestioneListe.listeConArticolo(a1));
+
+		GestioneListe.cancellaLista("Spesa");
+		assertEquals(List.of(l2), GestioneListe.listeConArticolo(a1));
+
+		GestioneListe.cancellaArticolo(a1);
+		assertEquals(0, l2.numElCanc());
+		assertTrue(GestioneListe.listeConArticolo(a1).isEmpty());
+	}
+
+	/**
+	 * Verifica che gli articoli di una categoria cancellata vengano spostati nella categoria di default
+	 *
+	 * @throws GestioneListeException Se si verificano errori nella gestione delle categorie
+	 * @throws ArticoloException Se i dati degli articoli di test non sono validi
+	 */
+	@Test
+	void testCancellaCategoriaSpostaArticoli() throws GestioneListeException, ArticoloException {
+		GestioneListe.inserisciArticolo(a1);
+		GestioneListe.cancellaCategoria("Alimentari");
+
+		assertEquals(GestioneListe.CATEGORIA_DEFAULT, a1.getCategoria());
+		assertSame(a1, GestioneListe.trovaArticoloGlobale("Latte", GestioneListe.CATEGORIA_DEFAULT));
+	}
+
+	/**
+	 * Verifica la rinomina di una categoria e l'aggiornamento dell'indice degli articoli per categoria
+	 *
+	 * @throws GestioneListeException Se si verificano errori nella gestione delle categorie
+	 * @throws ArticoloException Se i dati degli articoli di test non sono validi
+	 */
+	@Test
+	void testRinominaCategoria() throws GestioneListeException, ArticoloException {
+		Articolo pane = new Articolo("Pane", "alimentari", 2.00);
+		GestioneListe.inserisciArticolo(a1);
+		GestioneListe.inserisciArticolo(pane);
+		GestioneListe.inserisciCategoria("Bevande");
+
+		assertEquals(List.of(a1, pane), GestioneListe.articoliInCategoria("ALIMENTARI"));
+
+		GestioneListe.rinominaCategoria("Alimentari", "Cibo");
+		assertFalse(GestioneListe.esisteCategoria("Alimentari"));
+		assertTrue(GestioneListe.esisteCategoria("Cibo"));
+		assertEquals("Cibo", a1.getCategoria());
+		assertEquals("Cibo", pane.getCategoria());
+		assertTrue(GestioneListe.articoliInCategoria("Alimentari").isEmpty());
+		assertEquals(List.of(a1, pane), GestioneListe.articoliInCategoria("cibo"));
+
+		assertThrows(GestioneListeException.class, () -> {
+			GestioneListe.rinominaCategoria("Cibo", "Bevande");
+		});
+		assertThrows(GestioneListeException.class, () -> {
+			GestioneListe.rinominaCategoria(GestioneListe.CATEGORIA_DEFAULT, "Altro");
+		});
+	}
+
 	/**
 	 * Verifica che il metodo getListeArticoli restituisca correttamente l'elenco delle liste
 	 * 
@@ -271,4 +512,588 @@ class GestioneListeTest {
 	    GestioneListe.inserisciArticolo(a);
 	    assertTrue(GestioneListe.getArticoli().contains(a));
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Verifica che lo snapshot binario ripristini categorie, catalogo, prezzi esatti e liste con il relativo cestino,
+	 * anche quando una lista contiene una copia di un articolo del catalogo
+	 *
+	 * @param cartella Cartella temporanea in cui scrivere lo snapshot
+	 * @throws Exception In caso di errori di salvataggio o caricamento
+	 */
+	@Test
+	void testSnapshotBinario(@TempDir Path cartella) throws Exception {
+		String file = cartella.resolve("dati.bin").toString();
+		Articolo caffe = new Articolo("Caffè", "Colazione", 3.05, "Nota: macinato");
+		Articolo pane = new Articolo("Pane", "Forno", 1.20);
+		GestioneListe.inserisciCategoria("Vuota");
+		GestioneListe.inserisciArticolo(a1);
+		GestioneListe.inserisciArticolo(caffe);
+		GestioneListe.inserisciArticolo(pane);
+		l1.inserisciArticolo(a1);
+		l1.inserisciArticolo(caffe);
+		// copia uguale all'articolo del catalogo, risolta per nome e categoria
+		l1.inserisciArticolo("Pane", "Forno", 1.20);
+		l1.cancellaArticolo(caffe);
+		GestioneListe.inserisciLista(l1);
+		GestioneListe.inserisciLista(new ListaDiArticoli("Vuota"));
+
+		GestioneListe.salvaSistemaBinario(file);
+		GestioneListe.caricaSistemaBinario(file);
+
+		assertEquals(List.of(Articolo.CATEGORIA_DEFAULT, "Vuota", "Alimentari", "Colazione", "Forno"), GestioneListe.getCategorie());
+		assertEquals(3, GestioneListe.getArticoli().size());
+
+		Articolo caricato = GestioneListe.trovaArticoloGlobale("Caffè", "Colazione");
+		assertEquals(305, caricato.getPrezzoCentesimi());
+		assertEquals("Nota: macinato", caricato.getNota());
+
+		ListaDiArticoli spesa = GestioneListe.getListeArticoli().get(0);
+		assertEquals("Spesa", spesa.getNome());
+		assertEquals(2, spesa.numEl());
+		assertEquals(List.of(caricato), spesa.getArticoliCancellati());
+		assertEquals(270, spesa.calcoloPrezzoTotaleCentesimi());
+		assertEquals(List.of(spesa), GestioneListe.listeConArticolo(caricato));
+		assertEquals(0, GestioneListe.getListeArticoli().get(1).numEl());
+		assertFalse(GestioneListe.getModificato());
+	}
+
+	/**
+	 * Verifica che il caricamento di uno snapshot binario troncato o danneggiato venga rifiutato
+	 * lasciando invariato lo stato del sistema
+	 *
+	 * @param cartella Cartella temporanea in cui scrivere lo snapshot
+	 * @throws Exception In caso di errori di salvataggio o nella preparazione dei dati di test
+	 */
+	@Test
+	void testSnapshotBinarioDanneggiato(@TempDir Path cartella) throws Exception {
+		Path file = cartella.resolve("dati.bin");
+		for (int i = 0; i < 1000; i++)
+			GestioneListe.inserisciArticolo(new Articolo("Articolo " + i, "Dispensa", 1.00));
+		GestioneListe.salvaSistemaBinario(file.toString());
+
+		GestioneListe.reset();
+		GestioneListe.inserisciArticolo(a1);
+		GestioneListe.inserisciLista(l1);
+		l1.inserisciArticolo(a1);
+
+		byte[] contenuto = Files.readAllBytes(file);
+		byte[] danneggiato = contenuto.clone();
+		Arrays.fill(danneggiato, danneggiato.length / 2, danneggiato.length / 2 + 16, (byte) 0xFF);
+		for (byte[] dati : List.of(Arrays.copyOf(contenuto, contenuto.length / 2), danneggiato)) {
+			Files.write(file, dati);
+			assertThrows(IOException.class, () -> GestioneListe.caricaSistemaBinario(file.toString()));
+
+			assertEquals(List.of(a1), GestioneListe.getArticoli());
+			assertEquals(List.of(l1), GestioneListe.getListeArticoli());
+			assertEquals(List.of(l1), GestioneListe.listeConArticolo(a1));
+			assertFalse(GestioneListe.esisteCategoria("Dispensa"));
+		}
+
+		// lo stato resta collegato al sistema: la cancellazione globale raggiunge ancora la lista
+		GestioneListe.cancellaArticolo(a1);
+		assertEquals(0, l1.numEl());
+	}
+
+	/**
+	 * Verifica uno snapshot binario diviso in più blocchi per sezione, il rifiuto di uno snapshot troncato
+	 * e la lettura di uno snapshot della versione 1, senza tabella dei blocchi
+	 *
+	 * @param cartella Cartella temporanea in cui scrivere gli snapshot
+	 * @throws Exception In caso di errori di salvataggio o caricamento
+	 */
+	@Test
+	void testSnapshotBinarioABlocchi(@TempDir Path cartella) throws Exception {
+		Path file = cartella.resolve("dati.bin");
+		ListaDiArticoli tutti = new ListaDiArticoli("Tutti");
+		GestioneListe.inserisciLista(tutti);
+		for (int i = 0; i < 40000; i++) {
+			Articolo a = new Articolo("Articolo " + i, "Categoria " + (i % 7), 0.01);
+			GestioneListe.inserisciArticolo(a);
+			tutti.inserisciArticolo(a);
+			if (i % 3 == 0)
+				tutti.cancellaArticolo(a);
+		}
+		for (int i = 0; i < 5; i++)
+			GestioneListe.inserisciLista(new ListaDiArticoli("Vuota " + i));
+
+		GestioneListe.salvaSistemaBinario(file.toString());
+		GestioneListe.caricaSistemaBinario(file.toString());
+
+		assertEquals(40000, GestioneListe.getArticoli().size());
+		assertEquals(6, GestioneListe.getListeArticoli().size());
+		ListaDiArticoli caricata = GestioneListe.matchLista("Tutti");
+		assertEquals(13334, caricata.numElCanc());
+		assertEquals(26666, caricata.calcoloPrezzoTotaleCentesimi());
+		Articolo a = GestioneListe.trovaArticoloGlobale("Articolo 39999", "Categoria 1");
+		assertEquals(List.of(caricata), GestioneListe.listeConArticolo(a));
+		assertTrue(caricata.isCancellato(a));
+
+		byte[] contenuto = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(contenuto, contenuto.length - 1));
+		assertThrows(IOException.class, () -> GestioneListe.caricaSistemaBinario(file.toString()));
+
+		Files.write(file, new byte[] { 'G', 'L', 'S', 'B', 1,
+				3, 4, 'P', 'a', 'n', 'e', 5, 'F', 'o', 'r', 'n', 'o', 0,
+				1, 1,
+				1, 0, 1, 2, 0, 0, 0, 0, 0, 0, 0, 120,
+				1, 0, 1, 0, 0 });
+		GestioneListe.caricaSistemaBinario(file.toString());
+		assertEquals(120, GestioneListe.matchLista("Pane").calcoloPrezzoTotaleCentesimi());
+		assertTrue(GestioneListe.esisteCategoria("Forno"));
+	}
+
+	/**
+	 * Verifica il caricamento su richiesta delle liste: le modifiche agli articoli fatte prima di aprire una lista
+	 * si riflettono sul suo contenuto, e le liste non ancora aperte vengono considerate tra quelle che contengono un articolo
+	 *
+	 * @param cartella Cartella temporanea in cui scrivere lo snapshot
+	 * @throws Exception In caso di errori di salvataggio o caricamento
+	 */
+	@Test
+	void testSnapshotBinarioSuRichiesta(@TempDir Path cartella) throws Exception {
+		String file = cartella.resolve("dati.bin").toString();
+		Articolo pane = new Articolo("Pane", "Forno", 1.20);
+		Articolo caffe = new Articolo("Caffe", "Colazione", 3.05);
+		ListaDiArticoli colazione = new ListaDiArticoli("Colazione");
+		GestioneListe.inserisciArticolo(a1);
+		GestioneListe.inserisciArticolo(pane);
+		GestioneListe.inserisciArticolo(caffe);
+		l1.inserisciArticolo(a1);
+		l1.inserisciArticolo(pane);
+		l1.cancellaArticolo(pane);
+		colazione.inserisciArticolo(caffe);
+		colazione.inserisciArticolo(a1);
+		GestioneListe.inserisciLista(l1);
+		GestioneListe.inserisciLista(colazione);
+		GestioneListe.salvaSistemaBinario(file);
+
+		GestioneListe.caricaSistemaBinario(file, true);
+		Articolo latte = GestioneListe.trovaArticoloGlobale("Latte", "Alimentari");
+		latte.setPrezzo(2.00);
+		assertEquals(2, GestioneListe.listeConArticolo(latte).size());
+		GestioneListe.cancellaArticolo(GestioneListe.trovaArticoloGlobale("Caffe", "Colazione"));
+		GestioneListe.rinominaCategoria("Forno", "Panetteria");
+
+		ListaDiArticoli spesa = GestioneListe.matchLista("Spesa");
+		assertEquals(200, spesa.calcoloPrezzoTotaleCentesimi());
+		assertEquals(1, spesa.numElCanc());
+		assertTrue(spesa.isCancellato(GestioneListe.trovaArticoloGlobale("Pane", "Panetteria")));
+		assertEquals(List.of(latte), GestioneListe.matchLista("Colazione").ricercaArticolo(""));
+
+		GestioneListe.salvaSistemaBinario(file);
+		GestioneListe.caricaSistemaBinario(file);
+		assertEquals(1, GestioneListe.matchLista("Colazione").numEl());
+		assertEquals(200, GestioneListe.matchLista("Colazione").calcoloPrezzoTotaleCentesimi());
+	}
+
+	/**
+	 * Verifica il ripristino all'avvio con le liste lette su richiesta dal salvataggio di testo: le modifiche
+	 * fatte prima di aprire una lista, anche quelle rilette dal giornale, si riflettono sul suo contenuto
+	 *
+	 * @param cartella Cartella temporanea per salvataggio e giornale
+	 * @throws Exception In caso di errori di salvataggio o caricamento
+	 */
+	@Test
+	void testGiornaleSuRichiesta(@TempDir Path cartella) throws Exception {
+		String file = cartella.resolve("dati.txt").toString();
+		String giornale = cartella.resolve("dati.journal").toString();
+		Articolo pane = new Articolo("Pane", "Forno", 1.20);
+		Articolo caffe = new Articolo("Caffe", "Colazione", 3.05);
+		ListaDiArticoli colazione = new ListaDiArticoli("Colazione");
+		GestioneListe.inserisciArticolo(a1);
+		GestioneListe.inserisciArticolo(pane);
+		GestioneListe.inserisciArticolo(caffe);
+		l1.inserisciArticolo(a1);
+		l1.inserisciArticolo(pane);
+		l1.cancellaArticolo(pane);
+		colazione.inserisciArticolo(caffe);
+		colazione.inserisciArticolo(a1);
+		GestioneListe.inserisciLista(l1);
+		GestioneListe.inserisciLista(colazione);
+		GestioneListe.salvaSistema(file);
+
+		try {
+			assertTrue(GestioneListe.apriGiornale(file, giornale, true));
+			Articolo latte = GestioneListe.trovaArticoloGlobale("Latte", "Alimentari");
+			latte.setPrezzo(2.00);
+			assertEquals(2, GestioneListe.listeConArticolo(latte).size());
+			GestioneListe.cancellaArticolo(GestioneListe.trovaArticoloGlobale("Caffe", "Colazione"));
+			GestioneListe.rinominaCategoria("Forno", "Panetteria");
+			GestioneListe.chiudiGiornale();
+
+			// le modifiche vengono rilette dal giornale su liste non ancora aperte
+			assertTrue(GestioneListe.apriGiornale(file, giornale, true));
+			GestioneListe.salvaSistema(file);
+			ListaDiArticoli spesa = GestioneListe.matchLista("Spesa");
+			assertEquals(200, spesa.calcoloPrezzoTotaleCentesimi());
+			assertEquals(1, spesa.numElCanc());
+			assertTrue(spesa.isCancellato(GestioneListe.trovaArticoloGlobale("Pane", "Panetteria")));
+			assertEquals(List.of(GestioneListe.trovaArticoloGlobale("Latte", "Alimentari")),
+					GestioneListe.matchLista("Colazione").ricercaArticolo(""));
+		} finally {
+			GestioneListe.chiudiGiornale();
+		}
+
+		GestioneListe.caricaSistema(file);
+		assertEquals(2, GestioneListe.getArticoli().size());
+		assertEquals(1, GestioneListe.matchLista("Colazione").numEl());
+		assertEquals(200, GestioneListe.matchLista("Colazione").calcoloPrezzoTotaleCentesimi());
+	}
+
+	/**
+	 * Verifica che il salvataggio suddiviso riscriva solo i segmenti modificati, elimini quelli sostituiti
+	 * e che il caricamento ripristini lo stato o rifiuti un archivio incompleto lasciandolo invariato
+	 *
+	 * @param cartella Cartella temporanea per l'archivio
+	 * @throws Exception In caso di errori di scrittura o di caricamento
+	 */
+	@Test
+	void testArchivioSuddiviso(@TempDir Path cartella) throws Exception {
+		Path archivio = cartella.resolve("archivio");
+		Articolo pane = new Articolo("Pane", "Forno", 1.20);
+		ListaDiArticoli colazione = new ListaDiArticoli("Colazione");
+		ListaDiArticoli cena = new ListaDiArticoli("Cena");
+		GestioneListe.inserisciArticolo(a1);
+		GestioneListe.inserisciArticolo(pane);
+		l1.inserisciArticolo(a1);
+		l1.inserisciArticolo(pane);
+		l1.cancellaArticolo(pane);
+		colazione.inserisciArticolo(a1);
+		cena.inserisciArticolo(pane);
+		GestioneListe.inserisciLista(l1);
+		GestioneListe.inserisciLista(colazione);
+		GestioneListe.inserisciLista(cena);
+
+		// catalogo e tre liste, poi nulla da riscrivere
+		assertEquals(4, GestioneListe.salvaSistemaSuddiviso(archivio.toString()));
+		assertEquals(0, GestioneListe.salvaSistemaSuddiviso(archivio.toString()));
+
+		colazione.inserisciArticolo(pane);
+		assertEquals(1, GestioneListe.salvaSistemaSuddiviso(archivio.toString()));
+		a1.setPrezzo(2.00);
+		assertEquals(1, GestioneListe.salvaSistemaSuddiviso(archivio.toString()));
+		// il cambio di categoria modifica il catalogo e le liste che contengono l'articolo
+		GestioneListe.rinominaCategoria("Forno", "Panetteria");
+		assertEquals(4, GestioneListe.salvaSistemaSuddiviso(archivio.toString()));
+		try (Stream<Path> files = Files.list(archivio)) {
+			assertEquals(5, files.count());
+		}
+
+		GestioneListe.caricaSistemaSuddiviso(archivio.toString());
+		assertEquals(0, GestioneListe.salvaSistemaSuddiviso(archivio.toString()));
+		Articolo panetteria = GestioneListe.trovaArticoloGlobale("Pane", "Panetteria");
+		assertEquals(200, GestioneListe.matchLista("Spesa").calcoloPrezzoTotaleCentesimi());
+		assertTrue(GestioneListe.matchLista("Spesa").isCancellato(panetteria));
+		assertEquals(320, GestioneListe.matchLista("Colazione").calcoloPrezzoTotaleCentesimi());
+		assertEquals(List.of(panetteria), GestioneListe.matchLista("Cena").ricercaArticolo(""));
+		assertEquals(3, GestioneListe.listeConArticolo(panetteria).size());
+
+		// un segmento mancante rende l'archivio incompleto
+		try (Stream<Path> files = Files.list(archivio)) {
+			Files.delete(files.filter(f -> f.getFileName().toString().startsWith("lista-")).findFirst().get());
+		}
+		assertThrows(FileNotFoundException.class, () -> GestioneListe.caricaSistemaSuddiviso(archivio.toString()));
+		assertEquals(3, GestioneListe.getListeArticoli().size());
+		assertThrows(FileNotFoundException.class, () -> GestioneListe.caricaSistemaSuddiviso(cartella.resolve("vuota").toString()));
+	}
+
+	/**
+	 * Verifica il ripristino delle modifiche registrate nel giornale, anche con un ultimo record incompleto,
+	 * e lo svuotamento del giornale dopo un salvataggio completo
+	 *
+	 * @param cartella Cartella temporanea per salvataggio e giornale
+	 * @throws Exception In caso di errori di scrittura o di ripristino
+	 */
+	@Test
+	void testGiornale(@TempDir Path cartella) throws Exception {
+		String salvataggio = cartella.resolve("dati.txt").toString();
+		Path giornale = cartella.resolve("dati.journal");
+
+		try {
+			assertFalse(GestioneListe.apriGiornale(salvataggio, giornale.toString()));
+			Articolo pane = new Articolo("Pane", "Forno", 1.20);
+			GestioneListe.inserisciArticolo(a1);
+			GestioneListe.inserisciArticolo(pane);
+			GestioneListe.inserisciLista(l1);
+			l1.inserisciArticolo(a1);
+			l1.inserisciArticolo(pane);
+			a1.setPrezzo(1.75);
+			GestioneListe.rinominaCategoria("Alimentari", "Latticini");
+			l1.cancellaArticolo(a1);
+			GestioneListe.chiudiGiornale();
+
+			// record troncato da un arresto improvviso
+			Files.write(giornale, new byte[] { 0, 0, 0, 20, 1, 2 }, StandardOpenOption.APPEND);
+			long dimensione = Files.size(giornale);
+
+			GestioneListe.reset();
+			assertTrue(GestioneListe.apriGiornale(salvataggio, giornale.toString()));
+			assertEquals(dimensione - 6, Files.size(giornale));
+			assertTrue(GestioneListe.getModificato());
+
+			Articolo latte = GestioneListe.trovaArticoloGlobale("Latte", "Latticini");
+			assertEquals(175, latte.getPrezzoCentesimi());
+			ListaDiArticoli spesa = GestioneListe.getListeArticoli().get(0);
+			assertEquals(List.of(latte), spesa.getArticoliCancellati());
+			assertEquals(120, spesa.calcoloPrezzoTotaleCentesimi());
+
+			GestioneListe.salvaSistema(salvataggio);
+			assertEquals(0, Files.size(giornale));
+			spesa.recuperaArticolo(latte);
+			GestioneListe.chiudiGiornale();
+
+			GestioneListe.reset();
+			GestioneListe.apriGiornale(salvataggio, giornale.toString());
+			assertEquals(295, GestioneListe.getListeArticoli().get(0).calcoloPrezzoTotaleCentesimi());
+		} finally {
+			GestioneListe.chiudiGiornale();
+		}
+	}
+
+	/**
+	 * Verifica che un campo più lungo di 64 KB venga registrato nel giornale senza impedire la registrazione
+	 * delle modifiche successive
+	 *
+	 * @param cartella Cartella temporanea per salvataggio e giornale
+	 * @throws Exception In caso di errori di scrittura o di ripristino
+	 */
+	@Test
+	void testGiornaleCampiLunghi(@TempDir Path cartella) throws Exception {
+		String salvataggio = cartella.resolve("dati.txt").toString();
+		Path giornale = cartella.resolve("dati.journal");
+		String nota = "n".repeat(70000);
+
+		try {
+			GestioneListe.apriGiornale(salvataggio, giornale.toString());
+			GestioneListe.inserisciArticolo(new Articolo("Pane", "Forno", 1.20, nota));
+			GestioneListe.inserisciArticolo(new Articolo("Riso"));
+			GestioneListe.chiudiGiornale();
+
+			GestioneListe.reset();
+			GestioneListe.apriGiornale(salvataggio, giornale.toString());
+			assertEquals(nota, GestioneListe.trovaArticoloGlobale("Pane", "Forno").getNota());
+			assertNotNull(GestioneListe.trovaArticoloGlobale("Riso", GestioneListe.CATEGORIA_DEFAULT));
+		} finally {
+			GestioneListe.chiudiGiornale();
+		}
+	}
+
+	/**
+	 * Verifica la compattazione del giornale nel salvataggio: le modifiche successive restano nel giornale
+	 * e il ripristino dal salvataggio compattato riproduce lo stesso stato
+	 *
+	 * @param cartella Cartella temporanea per salvataggio e giornale
+	 * @throws Exception In caso di errori di scrittura o di ripristino
+	 */
+	@Test
+	void testCompattazioneGiornale(@TempDir Path cartella) throws Exception {
+		String salvataggio = cartella.resolve("dati.txt").toString();
+		Path giornale = cartella.resolve("dati.journal");
+
+		try {
+			GestioneListe.apriGiornale(salvataggio, giornale.toString());
+			Articolo pane = new Articolo("Pane", "Forno", 1.20);
+			GestioneListe.inserisciArticolo(a1);
+			GestioneListe.inserisciArticolo(pane);
+			GestioneListe.inserisciLista(l1);
+			l1.inserisciArticolo(a1);
+			l1.inserisciArticolo(pane);
+			GestioneListe.cancellaCategoria("Alimentari");
+
+			assertTrue(GestioneListe.compattaGiornale().get());
+			assertTrue(Files.readString(Path.of(salvataggio)).contains("ARTICOLO:Latte:" + GestioneListe.CATEGORIA_DEFAULT));
+			assertEquals(0, Files.size(giornale));
+
+			l1.cancellaArticolo(pane);
+			GestioneListe.chiudiGiornale();
+			assertTrue(Files.size(giornale) > 0);
+
+			GestioneListe.reset();
+			GestioneListe.apriGiornale(salvataggio, giornale.toString());
+			ListaDiArticoli spesa = GestioneListe.matchLista("Spesa");
+			assertEquals(150, spesa.calcoloPrezzoTotaleCentesimi());
+			assertEquals(1, spesa.getArticoliCancellati().size());
+			assertNotNull(GestioneListe.trovaArticoloGlobale("Latte", GestioneListe.CATEGORIA_DEFAULT));
+			assertFalse(GestioneListe.esisteCategoria("Alimentari"));
+		} finally {
+			GestioneListe.chiudiGiornale();
+		}
+	}
+
+	/**
+	 * Verifica il caricamento del file di testo, anche con terminatori di riga Windows e righe non valide
+	 *
+	 * @param cartella Cartella temporanea in cui scrivere il file
+	 * @throws Exception In caso di errori di salvataggio o caricamento
+	 */
+	@Test
+	void testCaricaSistemaTesto(@TempDir Path cartella) throws Exception {
+		Path file = cartella.resolve("dati.txt");
+		Files.writeString(file, "CATEGORIA:Forno\r\n"
+				+ "ARTICOLO:Pane:Forno:1,20:Integrale\r\n"
+				+ "ARTICOLO:Caffe:Colazione:3.05\r\n"
+				+ "\r\n"
+				+ "LISTA:Spesa\r\n"
+				+ "ATTIVO:pane:forno\r\n"
+				+ "CANCELLATO:Caffe:Colazione\r\n"
+				+ "ATTIVO:Inesistente:Forno", Charset.defaultCharset());
+
+		GestioneListe.caricaSistema(file.toString());
+
+		assertEquals(2, GestioneListe.getArticoli().size());
+		assertEquals("Integrale", GestioneListe.trovaArticoloGlobale("Pane", "Forno").getNota());
+		ListaDiArticoli spesa = GestioneListe.getListeArticoli().get(0);
+		assertEquals(120, spesa.calcoloPrezzoTotaleCentesimi());
+		assertEquals(1, spesa.numElCanc());
+
+		GestioneListe.salvaSistema(file.toString());
+		GestioneListe.caricaSistema(file.toString());
+		assertEquals(305, GestioneListe.trovaArticoloGlobale("Caffe", "Colazione").getPrezzoCentesimi());
+		assertEquals(1, GestioneListe.getListeArticoli().get(0).numElCanc());
+
+		assertThrows(FileNotFoundException.class, () -> GestioneListe.caricaSistema(cartella.resolve("manca.txt").toString()));
+	}
+
+	/**
+	 * Verifica che i separatori contenuti nei campi non danneggino il salvataggio, e che le note dei file
+	 * precedenti, in cui non erano protetti, vengano lette fino alla fine della riga
+	 *
+	 * @param cartella Cartella temporanea in cui scrivere il file
+	 * @throws Exception In caso di errori di salvataggio o caricamento
+	 */
+	@Test
+	void testCampiConSeparatori(@TempDir Path cartella) throws Exception {
+		Path file = cartella.resolve("dati.txt");
+		Files.writeString(file, "CATEGORIA:Colazione\n"
+				+ "ARTICOLO:Caffe:Colazione:3,05:Nota: macinato, moka:\n", Charset.defaultCharset());
+		GestioneListe.caricaSistema(file.toString());
+		assertEquals("Nota: macinato, moka:", GestioneListe.trovaArticoloGlobale("Caffe", "Colazione").getNota());
+
+		Articolo the = new Articolo("The", "Bar:Tisane\\Infusi", 2.5, "Ore 17:00\\nero\nda 20 filtri");
+		GestioneListe.inserisciArticolo(the);
+		ListaDiArticoli lista = new ListaDiArticoli("Spesa");
+		lista.inserisciArticolo(the);
+		GestioneListe.inserisciLista(lista);
+
+		GestioneListe.salvaSistema(file.toString());
+		GestioneListe.caricaSistema(file.toString());
+
+		Articolo letto = GestioneListe.trovaArticoloGlobale("The", "Bar:Tisane\\Infusi");
+		assertNotNull(letto);
+		assertEquals("Ore 17:00\\nero\nda 20 filtri", letto.getNota());
+		assertEquals(250, letto.getPrezzoCentesimi());
+		assertEquals("Nota: macinato, moka:", GestioneListe.trovaArticoloGlobale("Caffe", "Colazione").getNota());
+		assertEquals(250, GestioneListe.getListeArticoli().get(0).calcoloPrezzoTotaleCentesimi());
+	}
+
+	/**
+	 * Verifica che un salvataggio troncato o danneggiato venga rifiutato senza modificare lo stato del sistema
+	 *
+	 * @param cartella Cartella temporanea in cui scrivere il file
+	 * @throws Exception In caso di errori di salvataggio
+	 */
+	@Test
+	void testSalvataggioVerificato(@TempDir Path cartella) throws Exception {
+		Path file = cartella.resolve("dati.txt");
+		GestioneListe.inserisciArticolo(a1);
+		l1.inserisciArticolo(a1);
+		GestioneListe.inserisciLista(l1);
+		GestioneListe.salvaSistema(file.toString());
+		assertEquals(List.of(file), Files.list(cartella).toList());
+
+		byte[] contenuto = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(contenuto, contenuto.length - 10));
+		assertThrows(IOException.class, () -> GestioneListe.caricaSistema(file.toString()));
+
+		contenuto[contenuto.length / 2] ^= 1;
+		Files.write(file, contenuto);
+		assertThrows(IOException.class, () -> GestioneListe.caricaSistema(file.toString()));
+
+		assertEquals(1, GestioneListe.getListeArticoli().size());
+		assertEquals(150, l1.calcoloPrezzoTotaleCentesimi());
+	}
+
+	/**
+	 * Verifica il salvataggio automatico dopo un numero di modifiche: la scrittura avviene in background
+	 * e il flag modifica si azzera solo se non ci sono state modifiche successive alla cattura
+	 *
+	 * @param cartella Cartella temporanea in cui scrivere il file
+	 * @throws Exception In caso di errori di salvataggio
+	 */
+	@Test
+	void testAutosalvataggio(@TempDir Path cartella) throws Exception {
+		Path file = cartella.resolve("dati.txt");
+		GestioneListe.setModificato(false);
+
+		try {
+			GestioneListe.avviaAutosalvataggio(file.toString(), 60_000, 2, null);
+			GestioneListe.inserisciArticolo(a1);
+			GestioneListe.setModificato(true);
+			assertFalse(Files.exists(file));
+
+			GestioneListe.inserisciLista(l1);
+			GestioneListe.setModificato(true);
+			l1.inserisciArticolo(a1);
+			GestioneListe.setModificato(true);
+		} finally {
+			GestioneListe.fermaAutosalvataggio();
+		}
+
+		// salvato lo stato dopo la seconda modifica, la terza è ancora in sospeso
+		assertTrue(GestioneListe.getModificato());
+		GestioneListe.caricaSistema(file.toString());
+		assertEquals(1, GestioneListe.getArticoli().size());
+		assertEquals(0, GestioneListe.matchLista("Spesa").numEl());
+		assertFalse(GestioneListe.getModificato());
+	}
+
+	/**
+	 * Verifica che i salvataggi eseguiti mentre un altro thread rinomina una categoria contengano ogni volta
+	 * il catalogo e le liste tutti prima o tutti dopo la rinomina, mai a metà
+	 *
+	 * @param cartella Cartella temporanea in cui scrivere il file
+	 * @throws Exception In caso di errori di salvataggio
+	 */
+	@Test
+	void testSalvataggioDuranteModifiche(@TempDir Path cartella) throws Exception {
+		Path file = cartella.resolve("dati.txt");
+		GestioneListe.inserisciCategoria("Dispensa");
+		ListaDiArticoli l2 = new ListaDiArticoli("Scorte");
+		for (int i = 0; i < 200; i++) {
+			Articolo a = new Articolo("Articolo " + i, "Dispensa", 1.00 + i);
+			GestioneListe.inserisciArticolo(a);
+			l1.inserisciArticolo(a);
+			l2.inserisciArticolo(a);
+		}
+		GestioneListe.inserisciLista(l1);
+		GestioneListe.inserisciLista(l2);
+
+		AtomicBoolean fine = new AtomicBoolean();
+		ExecutorService esecutore = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> scrittore = esecutore.submit(() -> {
+				for (int i = 0; !fine.get(); i++) {
+					GestioneListe.rinominaCategoria(i % 2 == 0 ? "Dispensa" : "Credenza", i % 2 == 0 ? "Credenza" : "Dispensa");
+					l1.cancellaArticolo(l1.iterator().next());
+					l1.recuperaArticolo(l1.getArticoliCancellati().get(0));
+				}
+				return null;
+			});
+
+			for (int i = 0; i < 20; i++) {
+				GestioneListe.salvaSistema(file.toString());
+				List<String> righe = Files.readAllLines(file, Charset.defaultCharset()).stream()
+						.filter(r -> r.startsWith("ARTICOLO:") || r.startsWith("ATTIVO:") || r.startsWith("CANCELLATO:"))
+						.toList();
+				assertEquals(600, righe.size());
+				assertEquals(1, righe.stream().map(r -> r.split(":")[2]).distinct().count());
+			}
+
+			fine.set(true);
+			scrittore.get();
+		} finally {
+			fine.set(true);
+			esecutore.shutdownNow();
+		}
+	}
+}
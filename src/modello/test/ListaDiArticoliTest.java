@@ -2,6 +2,7 @@ package modello.test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -178,6 +179,35 @@ class ListaDiArticoliTest {
 	    assertEquals("Latte", ris.get(0).getNome());
 	}
 	
+	/**
+	 * Verifica che la ricerca per prefisso resti coerente dopo cancellazioni, recuperi e cambi di categoria,
+	 * restituendo prima gli attivi e poi i cancellati
+	 * 
+	 * @throws ArticoloException In caso di errore nei dati
+	 * @throws ListaDiArticoliException In caso di errori nella lista
+	 */
+	@Test
+	void testRicercaPrefissoAggiornata() throws ArticoloException, ListaDiArticoliException {
+		Articolo pasta = new Articolo("Pasta", "Cibo", 1.00);
+		Articolo panna = new Articolo("Panna", "Cibo", 2.00);
+		Articolo pane = new Articolo("Pane", "Cibo", 1.50);
+		l1.inserisciArticolo(pasta);
+		l1.inserisciArticolo(panna);
+		l1.inserisciArticolo(pane);
+		
+		l1.cancellaArticolo(pane);
+		assertEquals(List.of(panna, pasta, pane), l1.ricercaArticolo("Pa"));
+		
+		pane.setCategoria("Forno");
+		assertEquals(List.of(pane), l1.ricercaArticolo("pane"));
+		
+		l1.recuperaArticolo(pane);
+		assertEquals(List.of(pane, panna), l1.ricercaArticolo("pan"));
+		
+		l1.rimuoviCompletamente(panna);
+		assertEquals(List.of(pane), l1.ricercaArticolo("pan"));
+	}
+	
 	/**
 	 * Verifica che il calcolo del prezzo totale consideri solo gli articoli attualmente attivi
 	 * 
@@ -195,6 +225,49 @@ class ListaDiArticoliTest {
 		assertEquals(3.50, l1.calcoloPrezzoTotale(), 0.001);
 	}
 	
+	/**
+	 * Verifica che il totale mantenuto dalla lista segua inserimenti, spostamenti nel cestino,
+	 * recuperi, rimozioni definitive e cambi di prezzo degli articoli
+	 * 
+	 * @throws ArticoloException In caso di errore nei dati
+	 * @throws ListaDiArticoliException In caso di errori nella lista
+	 */
+	@Test
+	void testTotaleAggiornato() throws ArticoloException, ListaDiArticoliException {
+		riempiLista(l1);
+		Articolo vino = l1.ricercaArticolo("Vino").get(0);
+		Articolo latte = l1.ricercaArticolo("Latte").get(0);
+		
+		l1.cancellaArticolo(vino);
+		vino.setPrezzo(12.00);
+		assertEquals(3.50, l1.calcoloPrezzoTotale(), 0.001);
+		
+		l1.recuperaArticolo(vino);
+		assertEquals(15.50, l1.calcoloPrezzoTotale(), 0.001);
+		
+		latte.setPrezzo(2.50);
+		assertEquals(16.50, l1.calcoloPrezzoTotale(), 0.001);
+		
+		l1.rimuoviCompletamente(latte);
+		latte.setPrezzo(100.00);
+		assertEquals(14.00, l1.calcoloPrezzoTotale(), 0.001);
+	}
+	
+	/**
+	 * Verifica che il totale resti esatto anche dopo molte somme di importi non rappresentabili in virgola mobile
+	 * 
+	 * @throws ArticoloException In caso di errore nei dati
+	 * @throws ListaDiArticoliException In caso di errori nella lista
+	 */
+	@Test
+	void testTotaleEsatto() throws ArticoloException, ListaDiArticoliException {
+		for (int i = 0; i < 1000; i++)
+			l1.inserisciArticolo(new Articolo("Articolo " + i, "Varie", 0.10));
+		
+		assertEquals(10000, l1.calcoloPrezzoTotaleCentesimi());
+		assertEquals(100.00, l1.calcoloPrezzoTotale(), 0.0);
+	}
+	
 	/**
 	 * Verifica la cancellazione definitiva degli articoli dalla lista dei rimossi
 	 * 
@@ -307,6 +380,54 @@ class ListaDiArticoliTest {
 	    assertEquals(0, l1.numElCanc());
 	}
 
+	/**
+	 * Verifica che l'iteratore restituisca gli attivi in ordine di inserimento seguiti dai cancellati
+	 * in ordine di rimozione, anche dopo il cambio di categoria di un articolo
+	 * 
+	 * @throws ArticoloException In caso di errore nei dati
+	 * @throws ListaDiArticoliException In caso di errori nella lista
+	 */
+	@Test
+	void testOrdineIterazione() throws ArticoloException, ListaDiArticoliException {
+		riempiLista(l1);
+		l1.inserisciArticolo("Acqua", "Bevande", 0.50);
+		Articolo vino = l1.ricercaArticolo("Vino").get(0);
+		Articolo latte = l1.ricercaArticolo("Latte").get(0);
+		
+		l1.cancellaArticolo(vino);
+		l1.cancellaArticolo(latte);
+		
+		latte.setCategoria("Latticini");
+		assertTrue(l1.isCancellato(new Articolo("Latte", "latticini")));
+		assertFalse(l1.isCancellato(new Articolo("Latte", "Alimentari")));
+		
+		List<String> nomi = new ArrayList<String>();
+		for (Articolo a : l1)
+			nomi.add(a.getNome());
+		
+		assertEquals(List.of("Pane", "Acqua", "Vino", "Latte"), nomi);
+	}
+	
+	/**
+	 * Verifica che il cambio di categoria venga rifiutato se renderebbe l'articolo un duplicato all'interno della lista
+	 * 
+	 * @throws ArticoloException In caso di errore nei dati
+	 * @throws ListaDiArticoliException In caso di errori nella lista
+	 */
+	@Test
+	void testCambioCategoriaDuplicato() throws ArticoloException, ListaDiArticoliException {
+		Articolo acqua = new Articolo("Acqua", "Bevande");
+		Articolo acquaFrizzante = new Articolo("Acqua", "Frizzanti");
+		l1.inserisciArticolo(acqua);
+		l1.inserisciArticolo(acquaFrizzante);
+		
+		assertThrows(ArticoloException.class, () -> {
+			acquaFrizzante.setCategoria("bevande");
+		});
+		assertEquals("Frizzanti", acquaFrizzante.getCategoria());
+		assertEquals(2, l1.numEl());
+	}
+
 	/**
 	 * Metodo ausiliario per popolare la lista con articoli predefiniti
 	 * 
@@ -0,0 +1,419 @@
+package modello.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import modello.Articolo;
+import modello.ListaDiArticoli;
+import modello.Persistenza;
+import modello.SistemaListe;
+import modello.exception.GestioneListeException;
+import modello.exception.ListaDiArticoliException;
+
+/**
+ * La classe {@code SistemaListeTest} contiene i test unitari per verificare la classe {@code SistemaListe}
+ * <p> Vengono verificati i seguenti aspetti:
+ * <ul>
+ *   <li>L'indipendenza di più sistemi nella stessa JVM</li>
+ *   <li>Il salvataggio e il giornale di un sistema con una propria persistenza</li>
+ *   <li>Il conteggio dei record del giornale che non possono essere applicati</li>
+ *   <li>Il rifiuto, nelle liste di un sistema, degli articoli che il sistema non registra</li>
+ *   <li>Le copie restituite dagli elenchi</li>
+ *   <li>L'uso del sistema da più thread contemporaneamente</li>
+ *   <li>Le letture eseguite in parallelo alle modifiche</li>
+ *   <li>Le modifiche in parallelo di liste diverse insieme alle cancellazioni che si propagano a tutte le liste</li>
+ * </ul>
+ *
+ * @author Angie Albitres
+ */
+class SistemaListeTest {
+
+	private SistemaListe s1, s2;
+
+	/**
+	 * Crea due sistemi vuoti prima di ogni test
+	 */
+	@BeforeEach
+	void setUp() {
+		s1 = new SistemaListe();
+		s2 = new SistemaListe();
+	}
+
+	/**
+	 * Verifica che due sistemi non condividano liste, categorie e articoli, e che un articolo o una lista
+	 * non possano essere inseriti in due sistemi contemporaneamente
+	 *
+	 * @throws Exception In caso di errori negli inserimenti
+	 */
+	@Test
+	void testSistemiIndipendenti() throws Exception {
+		Articolo latte = new Articolo("Latte", "Alimentari", 1.50);
+		ListaDiArticoli spesa = new ListaDiArticoli("Spesa");
+		s1.inserisciArticolo(latte);
+		s1.inserisciLista(spesa);
+		s2.inserisciArticolo(new Articolo("Latte", "Alimentari", 1.20));
+		s2.inserisciLista(new ListaDiArticoli("Cena"));
+
+		assertNotSame(s1.trovaArticoloGlobale("Latte", "Alimentari"), s2.trovaArticoloGlobale("Latte", "Alimentari"));
+		assertThrows(GestioneListeException.class, () -> s2.inserisciArticolo(latte));
+		assertThrows(GestioneListeException.class, () -> new SistemaListe().inserisciLista(spesa));
+
+		spesa.inserisciArticolo(latte);
+		s1.cancellaArticolo(latte);
+		assertEquals(0, spesa.numEl());
+		assertEquals(1, s2.getArticoli().size());
+		assertFalse(s2.esisteCategoria("Inesistente"));
+
+		s1.svuota();
+		s2.inserisciLista(spesa);
+		assertEquals(spesa, s2.matchLista("spesa"));
+	}
+
+	/**
+	 * Verifica che due sistemi con una propria {@link Persistenza} vengano salvati, registrati nel giornale e ripristinati
+	 * separatamente, senza passare dal sistema condiviso di {@code GestioneListe}
+	 *
+	 * @param cartella Cartella temporanea per i file
+	 *
+	 * @throws Exception In caso di errori negli inserimenti o nei file
+	 */
+	@Test
+	void testPersistenzaIndipendente(@TempDir Path cartella) throws Exception {
+		String salvataggio = cartella.resolve("s1.txt").toString();
+		String giornale = cartella.resolve("s1.giornale").toString();
+		Persistenza p1 = new Persistenza(s1);
+		Persistenza p2 = new Persistenza(s2);
+
+		assertFalse(p1.apriGiornale(salvataggio, giornale));
+		s1.inserisciArticolo(new Articolo("Latte", "Alimentari", 1.50));
+		s1.inserisciLista(new ListaDiArticoli("Spesa"));
+		p1.setModificato(true);
+		assertTrue(p1.getModificato());
+		assertFalse(p2.getModificato());
+		p1.chiudiGiornale();
+
+		// il secondo sistema ripristina salvataggio e giornale del primo, il primo resta invariato
+		assertTrue(p2.apriGiornale(salvataggio, giornale));
+		p2.chiudiGiornale();
+		assertNotNull(s2.trovaArticoloGlobale("Latte", "Alimentari"));
+		assertEquals("Spesa", s2.matchLista("spesa").getNome());
+		assertNotSame(s1.trovaArticoloGlobale("Latte", "Alimentari"), s2.trovaArticoloGlobale("Latte", "Alimentari"));
+
+		p1.salvaSistema(salvataggio);
+		assertFalse(p1.getModificato());
+		s2.svuota();
+		p2.caricaSistema(salvataggio);
+		assertEquals(1, s2.getArticoli().size());
+	}
+
+	/**
+	 * Verifica che i record del giornale già compresi nel salvataggio, come dopo un arresto tra il salvataggio
+	 * completo e lo svuotamento del giornale, vengano saltati e contati
+	 *
+	 * @param cartella Cartella temporanea per i file
+	 *
+	 * @throws Exception In caso di errori negli inserimenti o nei file
+	 */
+	@Test
+	void testRecordIgnorati(@TempDir Path cartella) throws Exception {
+		String salvataggio = cartella.resolve("s1.txt").toString();
+		Path giornale = cartella.resolve("s1.giornale");
+		Persistenza p1 = new Persistenza(s1);
+		p1.apriGiornale(salvataggio, giornale.toString());
+		s1.inserisciArticolo(new Articolo("Latte", "Alimentari", 1.50));
+		s1.inserisciArticolo(new Articolo("Pane", "Forno", 1.20));
+		p1.sincronizzaGiornale();
+
+		Path copia = cartella.resolve("copia.giornale");
+		Files.copy(giornale, copia);
+		p1.salvaSistema(salvataggio);
+		p1.chiudiGiornale();
+		Files.copy(copia, giornale, StandardCopyOption.REPLACE_EXISTING);
+
+		Persistenza p2 = new Persistenza(s2);
+		assertTrue(p2.apriGiornale(salvataggio, giornale.toString()));
+		p2.chiudiGiornale();
+		assertEquals(2, p2.getRecordIgnorati());
+		assertEquals(2, s2.getArticoli().size());
+		assertEquals(0, p1.getRecordIgnorati());
+	}
+
+	/**
+	 * Verifica che le liste di un sistema accettino solo articoli registrati nel sistema stesso:
+	 * non quelli di un altro sistema, né quelli mai registrati o appena cancellati dal registro
+	 *
+	 * @throws Exception In caso di errori negli inserimenti
+	 */
+	@Test
+	void testListeSoloArticoliRegistrati() throws Exception {
+		Articolo latte = new Articolo("Latte", "Alimentari", 1.50);
+		Articolo pane = new Articolo("Pane", "Forno", 1.20);
+		ListaDiArticoli spesa = new ListaDiArticoli("Spesa");
+		s1.inserisciArticolo(latte);
+		s2.inserisciArticolo(pane);
+		s1.inserisciLista(spesa);
+
+		assertThrows(ListaDiArticoliException.class, () -> spesa.inserisciArticolo(pane));
+		assertThrows(ListaDiArticoliException.class, () -> spesa.inserisciArticolo(new Articolo("Riso")));
+
+		s1.cancellaArticolo(latte);
+		assertThrows(ListaDiArticoliException.class, () -> spesa.inserisciArticolo(latte));
+		assertEquals(0, spesa.numEl());
+
+		ListaDiArticoli cena = new ListaDiArticoli("Cena");
+		cena.inserisciArticolo(latte);
+		assertThrows(GestioneListeException.class, () -> s1.inserisciLista(cena));
+		assertThrows(GestioneListeException.class, () -> s1.matchLista("Cena"));
+	}
+
+	/**
+	 * Verifica che gli elenchi restituiti siano copie che non cambiano con le modifiche successive
+	 *
+	 * @throws Exception In caso di errori negli inserimenti
+	 */
+	@Test
+	void testElenchiCopiati() throws Exception {
+		s1.inserisciArticolo(new Articolo("Pane", "Forno", 1.20));
+		List<Articolo> articoli = s1.getArticoli();
+		List<String> categorie = s1.getCategorie();
+
+		s1.inserisciArticolo(new Articolo("Burro", "Latticini", 2.00));
+		assertEquals(1, articoli.size());
+		assertEquals(List.of(SistemaListe.CATEGORIA_DEFAULT, "Forno"), categorie);
+		assertEquals(3, s1.getCategorie().size());
+	}
+
+	/**
+	 * Verifica che inserimenti, cancellazioni e letture eseguiti da più thread sullo stesso sistema
+	 * non perdano modifiche e non lancino eccezioni
+	 *
+	 * @throws Exception In caso di errori nei thread
+	 */
+	@Test
+	void testAccessoConcorrente() throws Exception {
+		int numThread = 4, perThread = 500;
+		ExecutorService esecutore = Executors.newFixedThreadPool(numThread + 1);
+		try {
+			List<Future<?>> compiti = new ArrayList<Future<?>>();
+			for (int t = 0; t < numThread; t++) {
+				int n = t;
+				compiti.add(esecutore.submit(() -> {
+					ListaDiArticoli lista = new ListaDiArticoli("Lista " + n);
+					s1.inserisciLista(lista);
+					for (int i = 0; i < perThread; i++) {
+						Articolo a = new Articolo("Articolo " + i, "Categoria " + n, 1.00);
+						s1.inserisciArticolo(a);
+						lista.inserisciArticolo(a);
+						if (i % 5 == 0)
+							s1.cancellaArticolo(a);
+					}
+					return null;
+				}));
+			}
+			compiti.add(esecutore.submit(() -> {
+				for (int i = 0; i < 200; i++) {
+					s1.getArticoli();
+					s1.ricercaArticoloGlobale("art");
+					s1.ricercaApprossimata("Articolo 1", 5);
+					s1.getListeArticoli();
+				}
+				return null;
+			}));
+			for (Future<?> f : compiti)
+				f.get();
+		} finally {
+			esecutore.shutdownNow();
+		}
+
+		assertEquals(numThread * perThread * 4 / 5, s1.getArticoli().size());
+		assertEquals(numThread + 1, s1.getCategorie().size());
+		for (int t = 0; t < numThread; t++)
+			assertEquals(perThread * 4 / 5, s1.matchLista("Lista " + t).numEl());
+	}
+
+	/**
+	 * Verifica che ricerche e letture eseguite da più thread mentre un altro thread modifica il catalogo
+	 * trovino sempre gli elementi non modificati e con lo stesso risultato
+	 *
+	 * @throws Exception In caso di errori nei thread
+	 */
+	@Test
+	void testLettureDuranteModifiche() throws Exception {
+		Articolo latte = new Articolo("Latte intero", "Latticini", 1.50);
+		s1.inserisciArticolo(latte);
+		s1.inserisciLista(new ListaDiArticoli("Spesa"));
+		List<Articolo> attesi = s1.ricercaApprossimata("latte intero", 1);
+
+		int numLettori = 4;
+		AtomicBoolean fine = new AtomicBoolean();
+		ExecutorService esecutore = Executors.newFixedThreadPool(numLettori + 1);
+		try {
+			List<Future<?>> lettori = new ArrayList<Future<?>>();
+			for (int t = 0; t < numLettori; t++) {
+				lettori.add(esecutore.submit(() -> {
+					while (!fine.get()) {
+						assertEquals(attesi, s1.ricercaApprossimata("latte intero", 1));
+						assertSame(latte, s1.trovaArticoloGlobale("Latte intero", "Latticini"));
+						assertTrue(s1.getArticoli().contains(latte));
+						assertTrue(s1.esisteCategoria("Latticini"));
+						assertNotNull(s1.matchLista("Spesa"));
+					}
+					return null;
+				}));
+			}
+			Future<?> scrittore = esecutore.submit(() -> {
+				try {
+					for (int i = 0; i < 2000; i++) {
+						Articolo a = new Articolo("Latte " + i, "Categoria " + i % 10, 1.00);
+						s1.inserisciArticolo(a);
+						if (i % 2 == 0)
+							s1.cancellaArticolo(a);
+					}
+				} finally {
+					fine.set(true);
+				}
+				return null;
+			});
+
+			scrittore.get();
+			for (Future<?> f : lettori)
+				f.get();
+		} finally {
+			esecutore.shutdownNow();
+		}
+
+		assertEquals(1001, s1.getArticoli().size());
+	}
+
+	/**
+	 * Verifica che più thread possano modificare liste diverse con articoli in comune mentre un altro thread
+	 * cancella dal sistema articoli contenuti in tutte le liste, senza bloccarsi a vicenda e mantenendo coerenti
+	 * contenuto e totale di ogni lista
+	 *
+	 * @throws Exception In caso di errori nei thread
+	 */
+	@Test
+	void testListeInParallelo() throws Exception {
+		int numListe = 4, numComuni = 50;
+		List<Articolo> comuni = new ArrayList<Articolo>();
+		for (int i = 0; i < numComuni; i++) {
+			Articolo a = new Articolo("Comune " + i, "Dispensa", 1.00 + i);
+			s1.inserisciArticolo(a);
+			comuni.add(a);
+		}
+		List<ListaDiArticoli> liste = new ArrayList<ListaDiArticoli>();
+		for (int t = 0; t < numListe; t++) {
+			liste.add(new ListaDiArticoli("Lista " + t));
+			s1.inserisciLista(liste.get(t));
+		}
+
+		ExecutorService esecutore = Executors.newFixedThreadPool(numListe + 1);
+		try {
+			List<Future<?>> compiti = new ArrayList<Future<?>>();
+			for (ListaDiArticoli lista : liste) {
+				compiti.add(esecutore.submit(() -> {
+					for (int i = 0; i < 300; i++) {
+						Articolo a = comuni.get(i % numComuni);
+						try {
+							lista.inserisciArticolo(a);
+						} catch (ListaDiArticoliException e) {
+							lista.cancellaArticolo(a);
+							lista.recuperaArticolo(a);
+							lista.cancellaArticolo(a);
+						}
+					}
+					return null;
+				}));
+			}
+			compiti.add(esecutore.submit(() -> {
+				for (int i = 0; i < 100; i++) {
+					Articolo temporaneo = new Articolo("Temporaneo " + i, "Dispensa", 2.00);
+					s1.inserisciArticolo(temporaneo);
+					for (ListaDiArticoli lista : liste)
+						lista.inserisciArticolo(temporaneo);
+					s1.cancellaArticolo(temporaneo);
+				}
+				return null;
+			}));
+			for (Future<?> f : compiti)
+				f.get(30, TimeUnit.SECONDS);
+		} finally {
+			esecutore.shutdownNow();
+		}
+
+		for (ListaDiArticoli lista : liste) {
+			assertTrue(lista.ricercaArticolo("temporaneo").isEmpty());
+			assertEquals(numComuni, lista.numEl() + lista.numElCanc());
+
+			long totale = 0;
+			for (Articolo a : lista)
+				if (!lista.isCancellato(a))
+					totale += a.getPrezzoCentesimi();
+			assertEquals(totale, lista.calcoloPrezzoTotaleCentesimi());
+		}
+	}
+
+	/**
+	 * Verifica che gli inserimenti di un articolo in più liste, eseguiti mentre un altro thread ne cambia la categoria,
+	 * lascino in ogni lista l'articolo indicizzato con la categoria attuale
+	 *
+	 * @throws Exception In caso di errori nei thread
+	 */
+	@Test
+	void testInserimentiDuranteCambioCategoria() throws Exception {
+		Articolo latte = new Articolo("Latte", "Latticini", 1.50);
+		s1.inserisciArticolo(latte);
+		int numListe = 4, ripetizioni = 300;
+		List<ListaDiArticoli> liste = new ArrayList<ListaDiArticoli>();
+		for (int t = 0; t < numListe; t++) {
+			liste.add(new ListaDiArticoli("Lista " + t));
+			s1.inserisciLista(liste.get(t));
+		}
+
+		ExecutorService esecutore = Executors.newFixedThreadPool(numListe + 1);
+		try {
+			List<Future<?>> compiti = new ArrayList<Future<?>>();
+			for (ListaDiArticoli lista : liste) {
+				compiti.add(esecutore.submit(() -> {
+					for (int i = 0; i < ripetizioni; i++) {
+						lista.inserisciArticolo(latte);
+						if (i < ripetizioni - 1)
+							lista.rimuoviCompletamente(latte);
+					}
+					return null;
+				}));
+			}
+			compiti.add(esecutore.submit(() -> {
+				for (int i = 0; i < ripetizioni; i++)
+					latte.setCategoria(i % 2 == 0 ? "Colazione" : "Latticini");
+				return null;
+			}));
+			for (Future<?> f : compiti)
+				f.get(30, TimeUnit.SECONDS);
+		} finally {
+			esecutore.shutdownNow();
+		}
+
+		assertEquals(liste, s1.listeConArticolo(latte));
+		for (ListaDiArticoli lista : liste) {
+			// la cancellazione cerca l'articolo con la categoria attuale
+			lista.cancellaArticolo(latte);
+			assertEquals(0, lista.numEl());
+			assertEquals(1, lista.numElCanc());
+		}
+	}
+}
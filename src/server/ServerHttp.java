@@ -0,0 +1,377 @@
+package server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import modello.Articolo;
+import modello.ListaDiArticoli;
+import modello.SistemaListe;
+import modello.Versioni;
+import modello.exception.GestioneListeException;
+
+/**
+ * La classe {@code ServerHttp} espone in sola lettura lo stato di un {@link SistemaListe} come risorse JSON,
+ * tramite il server HTTP incluso nel JDK ({@code com.sun.net.httpserver})
+ * <p>Le risorse disponibili, tutte con il metodo {@code GET}, sono:
+ * <ul>
+ *   <li>{@code /categorie}: le categorie, in ordine di inserimento</li>
+ *   <li>{@code /articoli}: il registro globale degli articoli</li>
+ *   <li>{@code /liste}: nome, numero di articoli attivi e cancellati e totale di ogni lista</li>
+ *   <li>{@code /liste/{nome}}: articoli attivi, cestino e totale di una lista</li>
+ *   <li>{@code /liste/{nome}/cestino}: gli articoli cancellati di una lista</li>
+ *   <li>{@code /liste/{nome}/totale}: il totale degli articoli attivi di una lista</li>
+ * </ul>
+ * <p>Ogni risposta è costruita da versioni immutabili degli articoli e delle liste (vedi {@link Versioni}),
+ * per cui le richieste non attendono i lock del sistema e non vedono mai una lista modificata a metà.
+ * Le connessioni sono gestite dal thread del server, le richieste da un insieme fisso di thread
+ * <p>Il server del JDK non imposta {@code TCP_NODELAY} sulle connessioni, per cui ogni risposta breve attende l'ACK
+ * ritardato del client, circa 40 ms; per evitarlo il costruttore imposta la proprietà {@code sun.net.httpserver.nodelay}
+ * a {@code true}, se non indicata altrimenti, prima di creare il server
+ *
+ * @author Angie Albitres
+ */
+public final class ServerHttp implements Closeable {
+
+	/**
+	 * Porta su cui il server resta in ascolto se non ne viene indicata un'altra
+	 */
+	public static final int PORTA_DEFAULT = 8080;
+
+	/**
+	 * Numero massimo di connessioni in attesa di essere accettate
+	 */
+	private static final int CONNESSIONI_IN_ATTESA = 1024;
+
+	/**
+	 * Numero di thread che eseguono le richieste: le richieste non si bloccano, per cui bastano pochi thread per processore
+	 */
+	private static final int NUM_THREAD = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Tipo del contenuto delle risposte
+	 */
+	private static final String JSON = "application/json; charset=utf-8";
+
+	/**
+	 * Il sistema esposto
+	 */
+	private final SistemaListe sistema;
+
+	/**
+	 * Il server HTTP del JDK
+	 */
+	private final HttpServer server;
+
+	/**
+	 * Thread che eseguono le richieste
+	 */
+	private final ExecutorService esecutore;
+
+	/**
+	 * Avvia il server sull'interfaccia locale ({@code localhost})
+	 *
+	 * @param sistema Il sistema da esporre
+	 * @param porta La porta su cui restare in ascolto, 0 per sceglierne una libera
+	 *
+	 * @throws IOException Viene lanciata se la porta non è disponibile
+	 */
+	public ServerHttp(SistemaListe sistema, int porta) throws IOException {
+		this.sistema = sistema;
+
+		AtomicInteger numero = new AtomicInteger();
+		esecutore = Executors.newFixedThreadPool(NUM_THREAD, r -> {
+			Thread t = new Thread(r, "server-http-" + numero.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+
+		// il server del JDK legge la proprietà alla creazione del primo server
+		if (System.getProperty("sun.net.httpserver.nodelay") == null)
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), porta), CONNESSIONI_IN_ATTESA);
+		server.createContext("/", this::gestisci);
+		server.setExecutor(esecutore);
+		server.start();
+	}
+
+	/**
+	 * Restituisce la porta su cui il server è in ascolto
+	 *
+	 * @return La porta
+	 */
+	public int getPorta() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Ferma il server: le richieste in corso vengono completate, le nuove connessioni rifiutate
+	 */
+	@Override
+	public void close() {
+		server.stop(0);
+		esecutore.shutdown();
+		try {
+			esecutore.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Risponde a una richiesta in base al percorso
+	 *
+	 * @param scambio La richiesta e la sua risposta
+	 *
+	 * @throws IOException In caso di errori di comunicazione con il client
+	 */
+	private void gestisci(HttpExchange scambio) throws IOException {
+		try {
+			String metodo = scambio.getRequestMethod();
+			if (!metodo.equals("GET") && !metodo.equals("HEAD")) {
+				scambio.getResponseHeaders().set("Allow", "GET, HEAD");
+				rispondi(scambio, 405, errore("Metodo non consentito"));
+				return;
+			}
+
+			List<String> percorso = segmenti(scambio.getRequestURI().getRawPath());
+			String risposta = risorsa(percorso);
+			if (risposta == null)
+				rispondi(scambio, 404, errore("Risorsa non trovata"));
+			else
+				rispondi(scambio, 200, risposta);
+		} catch (GestioneListeException e) {
+			rispondi(scambio, 404, errore(e.getMessage()));
+		} catch (RuntimeException e) {
+			rispondi(scambio, 500, errore("Errore interno"));
+			throw e;
+		} finally {
+			scambio.close();
+		}
+	}
+
+	/**
+	 * Codifica la risorsa indicata da un percorso
+	 *
+	 * @param percorso I segmenti del percorso, già decodificati
+	 *
+	 * @return La risorsa in JSON, {@code null} se il percorso non corrisponde a nessuna risorsa
+	 *
+	 * @throws GestioneListeException Viene lanciata se la lista indicata non esiste
+	 */
+	private String risorsa(List<String> percorso) throws GestioneListeException {
+		StringBuilder sb = new StringBuilder(256);
+
+		if (percorso.size() == 1 && percorso.get(0).equals("categorie")) {
+			sb.append('[');
+			boolean primo = true;
+			for (String cat : sistema.getCategorie()) {
+				if (!primo)
+					sb.append(',');
+				stringa(sb, cat);
+				primo = false;
+			}
+			return sb.append(']').toString();
+		}
+
+		if (percorso.size() == 1 && percorso.get(0).equals("articoli")) {
+			articoli(sb, Versioni.articoli(sistema));
+			return sb.toString();
+		}
+
+		if (percorso.isEmpty() || !percorso.get(0).equals("liste") || percorso.size() > 3)
+			return null;
+
+		if (percorso.size() == 1) {
+			sb.append('[');
+			boolean primo = true;
+			for (ListaDiArticoli l : sistema.getListeArticoli()) {
+				ListaDiArticoli.Versione v = Versioni.lista(l);
+				if (!primo)
+					sb.append(',');
+				sb.append("{\"nome\":");
+				stringa(sb, v.getNome());
+				sb.append(",\"articoli\":").append(v.getAttivi().size());
+				sb.append(",\"cancellati\":").append(v.getCancellati().size());
+				sb.append(",\"totale\":");
+				prezzo(sb, v.getTotaleCentesimi());
+				sb.append('}');
+				primo = false;
+			}
+			return sb.append(']').toString();
+		}
+
+		ListaDiArticoli.Versione v = Versioni.lista(sistema.matchLista(percorso.get(1)));
+		if (percorso.size() == 2) {
+			sb.append("{\"nome\":");
+			stringa(sb, v.getNome());
+			sb.append(",\"articoli\":");
+			articoli(sb, v.getAttivi());
+			sb.append(",\"cancellati\":");
+			articoli(sb, v.getCancellati());
+			sb.append(",\"totale\":");
+			prezzo(sb, v.getTotaleCentesimi());
+			return sb.append('}').toString();
+		}
+
+		switch (percorso.get(2)) {
+			case "cestino" -> articoli(sb, v.getCancellati());
+			case "totale" -> {
+				sb.append("{\"nome\":");
+				stringa(sb, v.getNome());
+				sb.append(",\"totale\":");
+				prezzo(sb, v.getTotaleCentesimi());
+				sb.append('}');
+			}
+			default -> {
+				return null;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Divide un percorso nei suoi segmenti non vuoti e li decodifica
+	 *
+	 * @param percorso Il percorso della richiesta, non decodificato ma già validato dal server
+	 *
+	 * @return I segmenti decodificati
+	 */
+	private static List<String> segmenti(String percorso) {
+		List<String> ris = new ArrayList<String>(3);
+		for (String s : percorso.split("/")) {
+			// nel percorso il '+' non rappresenta uno spazio
+			if (!s.isEmpty())
+				ris.add(URLDecoder.decode(s.replace("+", "%2B"), StandardCharsets.UTF_8));
+		}
+		return ris;
+	}
+
+	/**
+	 * Invia la risposta e ne chiude il corpo
+	 *
+	 * @param scambio La richiesta a cui rispondere
+	 * @param codice Il codice di stato HTTP
+	 * @param json Il corpo della risposta
+	 *
+	 * @throws IOException In caso di errori di comunicazione con il client
+	 */
+	private static void rispondi(HttpExchange scambio, int codice, String json) throws IOException {
+		byte[] corpo = json.getBytes(StandardCharsets.UTF_8);
+		scambio.getResponseHeaders().set("Content-Type", JSON);
+
+		if (scambio.getRequestMethod().equals("HEAD")) {
+			scambio.sendResponseHeaders(codice, -1);
+			return;
+		}
+
+		scambio.sendResponseHeaders(codice, corpo.length);
+		try (OutputStream out = scambio.getResponseBody()) {
+			out.write(corpo);
+		}
+	}
+
+	/**
+	 * Codifica un messaggio di errore
+	 *
+	 * @param messaggio Il messaggio
+	 *
+	 * @return L'errore in JSON
+	 */
+	private static String errore(String messaggio) {
+		StringBuilder sb = new StringBuilder("{\"errore\":");
+		stringa(sb, messaggio);
+		return sb.append('}').toString();
+	}
+
+	/**
+	 * Codifica un elenco di articoli
+	 *
+	 * @param sb Il testo a cui aggiungere l'elenco
+	 * @param articoli Gli articoli, di norma copie immutabili
+	 */
+	private static void articoli(StringBuilder sb, Collection<Articolo> articoli) {
+		sb.append('[');
+		boolean primo = true;
+		for (Articolo a : articoli) {
+			if (!primo)
+				sb.append(',');
+			sb.append("{\"nome\":");
+			stringa(sb, a.getNome());
+			sb.append(",\"categoria\":");
+			stringa(sb, a.getCategoria());
+			sb.append(",\"prezzo\":");
+			prezzo(sb, a.getPrezzoCentesimi());
+			sb.append(",\"nota\":");
+			stringa(sb, a.getNota());
+			sb.append('}');
+			primo = false;
+		}
+		sb.append(']');
+	}
+
+	/**
+	 * Codifica un importo come numero in euro con due decimali, senza passare dalla virgola mobile
+	 *
+	 * @param sb Il testo a cui aggiungere l'importo
+	 * @param centesimi L'importo in centesimi
+	 */
+	private static void prezzo(StringBuilder sb, long centesimi) {
+		if (centesimi < 0) {
+			sb.append('-');
+			centesimi = -centesimi;
+		}
+
+		long decimali = centesimi % 100;
+		sb.append(centesimi / 100).append('.');
+		if (decimali < 10)
+			sb.append('0');
+		sb.append(decimali);
+	}
+
+	/**
+	 * Codifica una stringa tra virgolette, proteggendo i caratteri che non possono comparire in JSON
+	 *
+	 * @param sb Il testo a cui aggiungere la stringa
+	 * @param s La stringa
+	 */
+	private static void stringa(StringBuilder sb, String s) {
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+				case '"' -> sb.append("\\\"");
+				case '\\' -> sb.append("\\\\");
+				case '\n' -> sb.append("\\n");
+				case '\r' -> sb.append("\\r");
+				case '\t' -> sb.append("\\t");
+				default -> {
+					if (c < 0x20)
+						sb.append(String.format("\\u%04x", (int) c));
+					else
+						sb.append(c);
+				}
+			}
+		}
+		sb.append('"');
+	}
+
+	@Override
+	public String toString() {
+		return "ServerHttp [porta=" + getPorta() + "]";
+	}
+}
@@ -0,0 +1,123 @@
+package server.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import modello.Articolo;
+import modello.ListaDiArticoli;
+import modello.SistemaListe;
+import server.ServerHttp;
+
+/**
+ * La classe {@code ServerHttpTest} contiene i test unitari per verificare la classe {@code ServerHttp}
+ * <p> Vengono verificati i seguenti aspetti:
+ * <ul>
+ *   <li>Le risorse JSON di categorie, catalogo, liste, cestino e totali</li>
+ *   <li>Le risposte alle richieste non valide</li>
+ * </ul>
+ *
+ * @author Angie Albitres
+ */
+class ServerHttpTest {
+
+	private SistemaListe sistema;
+	private ServerHttp server;
+	private HttpClient client;
+
+	/**
+	 * Avvia il server su una porta libera, con una lista di due articoli di cui uno nel cestino
+	 *
+	 * @throws Exception In caso di errori negli inserimenti o nell'avvio del server
+	 */
+	@BeforeEach
+	void setUp() throws Exception {
+		sistema = new SistemaListe();
+		Articolo latte = new Articolo("Latte", "Alimentari", 1.50);
+		Articolo pane = new Articolo("Pane", "Forno", 2.05, "Da \"affettare\"");
+		sistema.inserisciArticolo(latte);
+		sistema.inserisciArticolo(pane);
+
+		ListaDiArticoli spesa = new ListaDiArticoli("Spesa di casa");
+		spesa.inserisciArticolo(latte);
+		spesa.inserisciArticolo(pane);
+		spesa.cancellaArticolo(pane);
+		sistema.inserisciLista(spesa);
+
+		server = new ServerHttp(sistema, 0);
+		client = HttpClient.newHttpClient();
+	}
+
+	/**
+	 * Ferma il server dopo ogni test
+	 */
+	@AfterEach
+	void tearDown() {
+		server.close();
+	}
+
+	/**
+	 * Invia una richiesta {@code GET} al server
+	 *
+	 * @param percorso Il percorso della risorsa
+	 *
+	 * @return La risposta
+	 *
+	 * @throws Exception In caso di errori di comunicazione
+	 */
+	private HttpResponse<String> get(String percorso) throws Exception {
+		HttpRequest richiesta = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPorta() + percorso)).build();
+		return client.send(richiesta, HttpResponse.BodyHandlers.ofString());
+	}
+
+	/**
+	 * Verifica il contenuto JSON delle risorse e il loro aggiornamento dopo una modifica
+	 *
+	 * @throws Exception In caso di errori di comunicazione o negli inserimenti
+	 */
+	@Test
+	void testRisorse() throws Exception {
+		assertEquals("[\"" + SistemaListe.CATEGORIA_DEFAULT + "\",\"Alimentari\",\"Forno\"]", get("/categorie").body());
+		assertEquals("[{\"nome\":\"Latte\",\"categoria\":\"Alimentari\",\"prezzo\":1.50,\"nota\":\"\"},"
+				+ "{\"nome\":\"Pane\",\"categoria\":\"Forno\",\"prezzo\":2.05,\"nota\":\"Da \\\"affettare\\\"\"}]",
+				get("/articoli").body());
+		assertEquals("[{\"nome\":\"Spesa di casa\",\"articoli\":1,\"cancellati\":1,\"totale\":1.50}]", get("/liste").body());
+
+		HttpResponse<String> lista = get("/liste/spesa%20di%20casa");
+		assertEquals(200, lista.statusCode());
+		assertEquals("application/json; charset=utf-8", lista.headers().firstValue("Content-Type").orElse(null));
+		assertTrue(lista.body().startsWith("{\"nome\":\"Spesa di casa\",\"articoli\":[{\"nome\":\"Latte\""));
+		assertTrue(get("/liste/Spesa%20di%20casa/cestino").body().startsWith("[{\"nome\":\"Pane\""));
+
+		sistema.trovaArticoloGlobale("Latte", "Alimentari").setPrezzo(1.75);
+		assertEquals("{\"nome\":\"Spesa di casa\",\"totale\":1.75}", get("/liste/Spesa%20di%20casa/totale").body());
+	}
+
+	/**
+	 * Verifica le risposte a risorse inesistenti e metodi non consentiti
+	 *
+	 * @throws Exception In caso di errori di comunicazione
+	 */
+	@Test
+	void testRichiesteNonValide() throws Exception {
+		HttpResponse<String> mancante = get("/liste/Cena");
+		assertEquals(404, mancante.statusCode());
+		assertEquals("{\"errore\":\"Lista non trovata\"}", mancante.body());
+
+		assertEquals(404, get("/").statusCode());
+		assertEquals(404, get("/liste/Spesa%20di%20casa/prezzi").statusCode());
+
+		HttpRequest post = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPorta() + "/liste"))
+				.POST(HttpRequest.BodyPublishers.ofString("{}")).build();
+		HttpResponse<String> risposta = client.send(post, HttpResponse.BodyHandlers.ofString());
+		assertEquals(405, risposta.statusCode());
+		assertEquals("GET, HEAD", risposta.headers().firstValue("Allow").orElse(null));
+	}
+}